@@ -0,0 +1,270 @@
+package no.sikt.benchmark;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.badRequest;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static no.sikt.lum.serialize.SerializerUtils.serializeUser;
+import static no.sikt.rsp.serialize.SerializerUtils.serializePartner;
+import static test.utils.WireMocker.ALMA_PARTNER_NOT_FOUND_JSON;
+import static test.utils.WireMocker.ALMA_USER_NOT_FOUND_JSON;
+import static test.utils.WireMocker.URL_PATH_PARTNER;
+import static test.utils.WireMocker.URL_PATH_USERS;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.jetty12.Jetty12HttpServerFactory;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import no.sikt.alma.partners.generated.Partner;
+import no.sikt.alma.user.generated.User;
+import no.sikt.clients.InFlightRequestLimiter;
+import no.sikt.clients.alma.AlmaPartnerUpserter;
+import no.sikt.clients.alma.AlmaRequestSettings;
+import no.sikt.clients.alma.AlmaUserUpserter;
+import no.sikt.clients.alma.HttpUrlConnectionAlmaPartnerUpserter;
+import no.sikt.clients.alma.HttpUrlConnectionAlmaUserUpserter;
+import no.sikt.clients.alma.UpsertResult;
+import no.sikt.clients.basebibliotek.BaseBibliotekUtils;
+import no.sikt.commons.ConversionResult;
+import no.sikt.commons.LibraryRecord;
+import no.sikt.lum.SensitiveXmlDataRedacter;
+import no.sikt.lum.UserConverter;
+import no.sikt.lum.serialize.SerializedUser;
+import no.sikt.rsp.AlmaCodeProvider;
+import no.sikt.rsp.PartnerConverter;
+import no.sikt.rsp.serialize.SerializedPartner;
+import nva.commons.core.ioutils.IoUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import test.utils.RecordBuilder;
+
+/**
+ * Drives the Alma upserters against an in-process WireMock stub that answers every request after a fixed delay, the
+ * way the handlers drive them: a batch of new users or partners goes through an {@link InFlightRequestLimiter}, and
+ * each upsert is a fetch that finds nothing followed by a create. The stub runs on Jetty 12, which speaks HTTP/1.1
+ * and cleartext HTTP/2, and the executor given to the {@link HttpClient} is the one that completes the response
+ * futures.
+ *
+ * <p>Run with {@code ./gradlew :alma-integrations:jmh -PjmhIncludes=AlmaUpsertThroughput}. The {@code upserts}
+ * counter is the sustained number of upserts per second, the primary score counts batches. {@link
+ * UpsertLatencyProfiler} reports the median and p99 of the single upserts, and how many of them failed.
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlmaUpsertThroughputBenchmark {
+
+    private static final String API_KEY = "benchmark";
+    private static final String ALMA_CODE = "NTNU";
+    private static final String LIB_CODE_TO_ALMA_CODE_MAPPING =
+        "[{\"libCode\":\"0000000\",\"almaCode\":\"" + ALMA_CODE + "\"}]";
+    private static final String ILL_SERVER = "ill.example.com";
+    private static final String ANY_IDENTIFIER = "/.*";
+    private static final String PROBE_PATH = "/users/probe";
+    private static final int ROUNDS_PER_BATCH = 8;
+    private static final int SERVER_THREADS = 512;
+    private static final int DELAYED_RESPONSE_THREADS = 16;
+    private static final int FIXED_POOL_THREADS = 8;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * The executors the HTTP client is compared with. The common pool is what the client falls back to without one,
+     * the fixed pool is sized like a small Lambda, and virtual threads are what {@code HttpClientFactory} uses.
+     **/
+    public enum ExecutorChoice {
+        COMMON_POOL,
+        FIXED_POOL,
+        VIRTUAL_THREADS;
+
+        /* default */ ExecutorService create() {
+            return switch (this) {
+                case COMMON_POOL -> ForkJoinPool.commonPool();
+                case FIXED_POOL -> Executors.newFixedThreadPool(FIXED_POOL_THREADS);
+                case VIRTUAL_THREADS -> Executors.newVirtualThreadPerTaskExecutor();
+            };
+        }
+    }
+
+    /**
+     * Counts every upsert, so JMH reports upserts per second next to the batches.
+     **/
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Upserts {
+
+        public long upserts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            upserts = 0;
+        }
+    }
+
+    @Param({"HTTP_1_1", "HTTP_2"})
+    public HttpClient.Version protocol;
+
+    @Param({"COMMON_POOL", "FIXED_POOL", "VIRTUAL_THREADS"})
+    public ExecutorChoice executor;
+
+    @Param({"1", "16", "64", "256"})
+    public int concurrency;
+
+    @Param({"25"})
+    public int latencyMillis;
+
+    private WireMockServer server;
+    private ExecutorService httpExecutor;
+    private HttpClient httpClient;
+    private AlmaUserUpserter userUpserter;
+    private AlmaPartnerUpserter partnerUpserter;
+    private List<SerializedUser> users;
+    private List<SerializedPartner> partners;
+
+    @Setup
+    public void startStub() throws IOException, InterruptedException {
+        server = new WireMockServer(options().httpServerFactory(new Jetty12HttpServerFactory())
+                                        .dynamicPort()
+                                        .containerThreads(SERVER_THREADS)
+                                        .asynchronousResponseEnabled(true)
+                                        .asynchronousResponseThreads(DELAYED_RESPONSE_THREADS)
+                                        .http2PlainDisabled(false)
+                                        .disableRequestJournal());
+        server.start();
+        stubAlma();
+
+        httpExecutor = executor.create();
+        httpClient = HttpClient.newBuilder()
+                         .version(protocol)
+                         .executor(httpExecutor)
+                         .connectTimeout(CONNECT_TIMEOUT)
+                         .build();
+        var almaApiHost = URI.create(server.baseUrl());
+        userUpserter = new HttpUrlConnectionAlmaUserUpserter(httpClient, almaApiHost, new SensitiveXmlDataRedacter(),
+                                                             AlmaRequestSettings.defaults());
+        partnerUpserter = new HttpUrlConnectionAlmaPartnerUpserter(httpClient, API_KEY, almaApiHost,
+                                                                   AlmaRequestSettings.defaults());
+
+        var records = IntStream.range(0, concurrency * ROUNDS_PER_BATCH)
+                          .mapToObj(AlmaUpsertThroughputBenchmark::libraryRecord)
+                          .toList();
+        var statisticNote = UserConverter.currentTime();
+        var almaCodeProvider = new AlmaCodeProvider(LIB_CODE_TO_ALMA_CODE_MAPPING);
+        users = records.stream().map(record -> serializeUser(toUser(record, statisticNote)).orElseThrow()).toList();
+        partners = records.stream()
+                       .map(record -> serializePartner(toPartner(record, almaCodeProvider)).orElseThrow())
+                       .toList();
+        verifyNegotiatedProtocol(almaApiHost);
+    }
+
+    @TearDown
+    public void stopStub() {
+        httpClient.close();
+        httpExecutor.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public long userUpserts(Upserts upserts) {
+        var limiter = new InFlightRequestLimiter(concurrency);
+        var results = users.stream()
+                          .map(user -> limiter.submit(() -> userUpserter.upsertUserAsync(user, API_KEY)
+                                                                .thenApply(UpsertLatencyProfiler::record)))
+                          .toList();
+        return countSuccessful(results, upserts);
+    }
+
+    @Benchmark
+    public long partnerUpserts(Upserts upserts) {
+        var limiter = new InFlightRequestLimiter(concurrency);
+        var results = partners.stream()
+                          .map(partner -> limiter.submit(() -> partnerUpserter.upsertPartnerAsync(partner)
+                                                                   .thenApply(UpsertLatencyProfiler::record)))
+                          .toList();
+        return countSuccessful(results, upserts);
+    }
+
+    private static long countSuccessful(List<CompletableFuture<UpsertResult>> results, Upserts upserts) {
+        upserts.upserts += results.size();
+        return results.stream().map(CompletableFuture::join).filter(UpsertResult::isSuccessful).count();
+    }
+
+    private void stubAlma() {
+        var userNotFound = IoUtils.stringFromResources(Path.of(ALMA_USER_NOT_FOUND_JSON));
+        var partnerNotFound = IoUtils.stringFromResources(Path.of(ALMA_PARTNER_NOT_FOUND_JSON));
+        server.stubFor(get(urlPathMatching(URL_PATH_USERS + ANY_IDENTIFIER))
+                           .willReturn(badRequest().withBody(userNotFound).withFixedDelay(latencyMillis)));
+        server.stubFor(post(urlPathEqualTo(URL_PATH_USERS)).willReturn(ok().withFixedDelay(latencyMillis)));
+        server.stubFor(get(urlPathMatching(URL_PATH_PARTNER + ANY_IDENTIFIER))
+                           .willReturn(badRequest().withBody(partnerNotFound).withFixedDelay(latencyMillis)));
+        server.stubFor(post(urlPathEqualTo(URL_PATH_PARTNER)).willReturn(ok().withFixedDelay(latencyMillis)));
+    }
+
+    /**
+     * The client silently falls back to HTTP/1.1 when the stub does not take the upgrade, which would make the two
+     * protocols measure the same thing. The probe also leaves an upgraded connection for the upserts to share.
+     **/
+    private void verifyNegotiatedProtocol(URI almaApiHost) throws IOException, InterruptedException {
+        var probe = HttpRequest.newBuilder().uri(almaApiHost.resolve(PROBE_PATH)).GET().build();
+        var response = httpClient.send(probe, HttpResponse.BodyHandlers.discarding());
+        if (response.version() != protocol) {
+            throw new IllegalStateException(String.format(Locale.ROOT, "Stub answered with %s, expected %s",
+                                                          response.version(), protocol));
+        }
+    }
+
+    private static LibraryRecord libraryRecord(int index) {
+        return LibraryRecord.from(new RecordBuilder(BigInteger.valueOf(index), LocalDate.now(),
+                                                    BaseBibliotekUtils.KATSYST_BIBSYS)
+                                      .withBibnr(String.format(Locale.ROOT, "%07d", index))
+                                      .withLandkode(BaseBibliotekUtils.COUNTRY_CODE_NORWEGIAN)
+                                      .withInst("Bibliotek " + index)
+                                      .withBiblType("FAG")
+                                      .withEpostAdr("adr" + index + "@example.com")
+                                      .withEpostBest("best" + index + "@example.com")
+                                      .withPaddr("Postboks " + index, "0001", "OSLO")
+                                      .withVaddr("Gate " + index, "0001", "OSLO")
+                                      .build());
+    }
+
+    private static User toUser(LibraryRecord record, String statisticNote) {
+        var result = new UserConverter(record, ALMA_CODE, statisticNote).toUser();
+        return ((ConversionResult.Converted<User>) result).value();
+    }
+
+    private static Partner toPartner(LibraryRecord record, AlmaCodeProvider almaCodeProvider) {
+        var result = new PartnerConverter(almaCodeProvider, ILL_SERVER, record).toPartner();
+        return ((ConversionResult.Converted<Partner>) result).value();
+    }
+}
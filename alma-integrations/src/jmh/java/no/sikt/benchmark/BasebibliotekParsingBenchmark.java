@@ -0,0 +1,182 @@
+package no.sikt.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import jakarta.xml.bind.JAXB;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import no.nb.basebibliotek.generated.BaseBibliotek;
+import no.nb.basebibliotek.generated.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import test.utils.BasebibliotekGenerator;
+import test.utils.RecordSpecification;
+
+/**
+ * Compares ways of parsing a Basebibliotek export: JAXB as the fetch cronjob and the Basebibliotek client do it
+ * today, JAXB with a context that is kept, StAX handing each record to JAXB, and StAX picking out the fields that
+ * {@link no.sikt.commons.LibraryRecord} keeps without binding anything. The documents are generated once per trial,
+ * with a single library as the REST API returns and with ten thousand as in a full export.
+ *
+ * <p>Run with {@code ./gradlew :alma-integrations:jmh -PjmhIncludes=BasebibliotekParsing}. The gc profiler reports
+ * allocation per operation and {@link PeakHeapProfiler} the heap high-water mark of each iteration.
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BasebibliotekParsingBenchmark {
+
+    private static final String RECORD_ELEMENT = "record";
+    private static final String KATSYST = "Alma";
+    private static final List<String> LIBRARY_RECORD_FIELDS = List.of("bibnr", "landkode", "bibltype", "katsyst",
+                                                                      "inst", "aut", "tlf", "epost_adr",
+                                                                      "epost_best", "padr", "ppostnr", "ppoststed",
+                                                                      "vadr", "vpostnr", "vpoststed", "stengt",
+                                                                      "stengt_fra", "stengt_til");
+    private static final Map<String, Integer> FIELD_INDEX = IntStream.range(0, LIBRARY_RECORD_FIELDS.size())
+                                                                .boxed()
+                                                                .collect(Collectors.toUnmodifiableMap(
+                                                                    LIBRARY_RECORD_FIELDS::get, index -> index));
+
+    @Param({"1", "10000"})
+    public int records;
+
+    private byte[] document;
+    private JAXBContext context;
+    private XMLInputFactory xmlInputFactory;
+
+    @Setup
+    public void generateDocument() throws JAXBException, XMLStreamException {
+        var generated = IntStream.range(0, records)
+                            .mapToObj(BasebibliotekParsingBenchmark::randomRecord)
+                            .toArray(Record[]::new);
+        var baseBibliotek = new BasebibliotekGenerator(generated).generateBaseBibliotek();
+        document = BasebibliotekGenerator.toXml(baseBibliotek).getBytes(UTF_8);
+        context = JAXBContext.newInstance(BaseBibliotek.class);
+        xmlInputFactory = XMLInputFactory.newFactory();
+        verifyEveryParserFindsAllRecords();
+    }
+
+    @Benchmark
+    public BaseBibliotek jaxbUnmarshal() {
+        return JAXB.unmarshal(new ByteArrayInputStream(document), BaseBibliotek.class);
+    }
+
+    @Benchmark
+    public BaseBibliotek cachedContextUnmarshal() throws JAXBException {
+        return (BaseBibliotek) context.createUnmarshaller().unmarshal(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public void staxPerRecordUnmarshal(Blackhole blackhole) throws JAXBException, XMLStreamException {
+        unmarshalRecordByRecord(blackhole::consume);
+    }
+
+    @Benchmark
+    public void staxFieldExtraction(Blackhole blackhole) throws XMLStreamException {
+        extractFieldsRecordByRecord(blackhole::consume);
+    }
+
+    private void unmarshalRecordByRecord(Consumer<Record> consumer) throws JAXBException, XMLStreamException {
+        var unmarshaller = context.createUnmarshaller();
+        var reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(document));
+        try {
+            while (advanceToNextRecord(reader)) {
+                consumer.accept(unmarshaller.unmarshal(reader, Record.class).getValue());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void extractFieldsRecordByRecord(Consumer<String[]> consumer) throws XMLStreamException {
+        var reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(document));
+        try {
+            while (advanceToNextRecord(reader)) {
+                consumer.accept(extractFields(reader));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean advanceToNextRecord(XMLStreamReader reader) throws XMLStreamException {
+        while (!reader.isStartElement() || !RECORD_ELEMENT.equals(reader.getLocalName())) {
+            if (!reader.hasNext()) {
+                return false;
+            }
+            reader.next();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the text of the wanted direct children of the record the reader is at, and leaves the reader at the end
+     * of that record.
+     **/
+    private static String[] extractFields(XMLStreamReader reader) throws XMLStreamException {
+        var fields = new String[LIBRARY_RECORD_FIELDS.size()];
+        var depth = 0;
+        while (reader.hasNext()) {
+            var event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                var index = FIELD_INDEX.get(reader.getLocalName());
+                if (depth == 0 && index != null) {
+                    fields[index] = reader.getElementText();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    return fields;
+                }
+                depth--;
+            }
+        }
+        return fields;
+    }
+
+    private void verifyEveryParserFindsAllRecords() throws JAXBException, XMLStreamException {
+        var counts = new int[4];
+        counts[0] = jaxbUnmarshal().getRecord().size();
+        counts[1] = cachedContextUnmarshal().getRecord().size();
+        unmarshalRecordByRecord(record -> counts[2]++);
+        extractFieldsRecordByRecord(fields -> counts[3]++);
+        for (var count : counts) {
+            if (count != records) {
+                throw new IllegalStateException(String.format(Locale.ROOT, "Expected %d records, parsed %d",
+                                                              records, count));
+            }
+        }
+    }
+
+    private static Record randomRecord(int index) {
+        var specification = new RecordSpecification(String.format(Locale.ROOT, "%07d", index), true, null, true,
+                                                    true, true, true, true, KATSYST);
+        return new BasebibliotekGenerator(specification).generateBaseBibliotek().getRecord().getFirst();
+    }
+}
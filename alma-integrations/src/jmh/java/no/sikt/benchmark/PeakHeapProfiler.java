@@ -0,0 +1,50 @@
+package no.sikt.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collection;
+import java.util.List;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Reports the highest heap use seen during each iteration, as the sum of the peaks of the heap pools. The pools may
+ * peak at different times, and garbage that was not yet collected counts too, so the number is only comparable
+ * between benchmarks run with the same heap settings.
+ **/
+public class PeakHeapProfiler implements InternalProfiler {
+
+    private static final String PEAK_HEAP = "peak.heap";
+    private static final String MEGABYTES = "MB";
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    @Override
+    public String getDescription() {
+        return "Heap high-water mark per iteration";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams,
+                                                       IterationResult result) {
+        var peakBytes = heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        return List.of(new ScalarResult(PEAK_HEAP, peakBytes / BYTES_PER_MEGABYTE, MEGABYTES, AggregationPolicy.MAX));
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                   .filter(pool -> pool.getType() == MemoryType.HEAP)
+                   .toList();
+    }
+}
@@ -0,0 +1,81 @@
+package no.sikt.benchmark;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import no.sikt.clients.LatencyTracker;
+import no.sikt.clients.alma.UpsertResult;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Reports percentiles of the upsert latencies a benchmark passes to {@link #record(UpsertResult)} during each
+ * iteration, as the upserters measure them from the first request to the last response, and how many upserts
+ * failed. Iterations without upserts report nothing.
+ **/
+public class UpsertLatencyProfiler implements InternalProfiler {
+
+    private static final int CAPACITY = 1 << 17;
+    private static final List<Double> PERCENTILES = List.of(0.5, 0.99);
+    private static final String PERCENTILE_LABEL = "upsert.p%.0f";
+    private static final String FAILURES = "upsert.failures";
+    private static final String MILLISECONDS = "ms";
+    private static final String UPSERTS = "upserts";
+    private static final double NANOS_PER_MILLISECOND = 1_000_000.0;
+
+    private static volatile LatencyTracker latencies = new LatencyTracker(CAPACITY);
+    private static final AtomicLong recorded = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Records the latency of an upsert, and passes the result on so the method can be chained onto the future.
+     **/
+    public static UpsertResult record(UpsertResult result) {
+        latencies.record(result.latency());
+        recorded.incrementAndGet();
+        if (!result.isSuccessful()) {
+            failures.incrementAndGet();
+        }
+        return result;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Upsert latency percentiles per iteration";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        latencies = new LatencyTracker(CAPACITY);
+        recorded.set(0);
+        failures.set(0);
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams,
+                                                       IterationResult result) {
+        if (recorded.get() == 0) {
+            return List.of();
+        }
+        var tracker = latencies;
+        var percentiles = PERCENTILES.stream().flatMap(percentile -> percentileResult(tracker, percentile).stream());
+        var failed = new ScalarResult(FAILURES, failures.get(), UPSERTS, AggregationPolicy.SUM);
+        return Stream.concat(percentiles, Stream.of(failed)).toList();
+    }
+
+    private static Optional<Result> percentileResult(LatencyTracker tracker, double percentile) {
+        return tracker.percentile(percentile, 1)
+                   .map(latency -> new ScalarResult(String.format(Locale.ROOT, PERCENTILE_LABEL, percentile * 100),
+                                                    latency.toNanos() / NANOS_PER_MILLISECOND, MILLISECONDS,
+                                                    AggregationPolicy.AVG));
+    }
+}
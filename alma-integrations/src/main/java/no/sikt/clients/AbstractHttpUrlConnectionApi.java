@@ -1,36 +1,54 @@
 package no.sikt.clients;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandler;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 
 public abstract class AbstractHttpUrlConnectionApi {
 
     public static final String LOG_MESSAGE_COMMUNICATION_PROBLEM = "Problem communicating with external API.";
     protected final transient HttpClient httpClient;
+    protected final transient Duration requestTimeout;
 
     protected AbstractHttpUrlConnectionApi(HttpClient httpClient) {
+        this(httpClient, HttpClientFactory.defaultRequestTimeout());
+    }
+
+    protected AbstractHttpUrlConnectionApi(HttpClient httpClient, Duration requestTimeout) {
         this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
     }
 
     protected abstract Logger getLogger();
 
-    protected <T> Optional<T> doRequest(final HttpRequest request, final BodyHandler<T> bodyHandler) {
+    /**
+     * Sends the request and hands the decoded body to the parser. The parser may return null to signal a body it
+     * could not make sense of.
+     **/
+    protected <T> Optional<T> doRequest(final HttpRequest request, final Function<InputStream, T> bodyParser) {
         try {
-            final HttpResponse<T> response = httpClient.send(request, bodyHandler);
-            if (successfulResponse(response)) {
-                return Optional.of(response.body());
-            } else {
+            final HttpResponse<Supplier<InputStream>> response =
+                httpClient.send(request, DecompressingBodyHandlers.ofDecodedInputStream());
+            try (InputStream body = response.body().get()) {
+                if (successfulResponse(response)) {
+                    return Optional.ofNullable(bodyParser.apply(body));
+                }
+                var errorBody = body.readNBytes(ErrorBodyHandlers.MAX_ERROR_BODY_BYTES);
                 getLogger().warn("Unexpected response from external API. Status code {} with body '{}'!",
-                                 response.statusCode(), response.body());
+                                 response.statusCode(), new String(errorBody, StandardCharsets.UTF_8));
                 return Optional.empty();
             }
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException | UncheckedIOException | InterruptedException e) {
             getLogger().warn(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
             return Optional.empty();
         }
@@ -0,0 +1,88 @@
+package no.sikt.clients;
+
+import java.net.HttpURLConnection;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscription;
+
+/**
+ * Body handlers for requests whose response only matters when it is an error. A successful response body is dropped
+ * as it arrives, and an error body is kept up to a fixed size, which is plenty for the error codes Alma sends.
+ **/
+public final class ErrorBodyHandlers {
+
+    public static final int MAX_ERROR_BODY_BYTES = 16 * 1024;
+    public static final String TRUNCATED_SUFFIX = "...[truncated]";
+
+    private ErrorBodyHandlers() {
+    }
+
+    /**
+     * Hands out an empty string for 2xx responses and the first {@link #MAX_ERROR_BODY_BYTES} bytes of any other.
+     **/
+    public static BodyHandler<String> ofErrorBody() {
+        return ofErrorBody(MAX_ERROR_BODY_BYTES);
+    }
+
+    /* default */ static BodyHandler<String> ofErrorBody(int maxBytes) {
+        return responseInfo -> isSuccessful(responseInfo.statusCode())
+                                   ? BodySubscribers.replacing("")
+                                   : new CappedStringSubscriber(maxBytes);
+    }
+
+    private static boolean isSuccessful(int statusCode) {
+        return statusCode >= HttpURLConnection.HTTP_OK && statusCode < HttpURLConnection.HTTP_MULT_CHOICE;
+    }
+
+    /**
+     * Keeps reading past the cap, so that the connection is drained and can go back to the pool.
+     **/
+    private static final class CappedStringSubscriber implements BodySubscriber<String> {
+
+        private final transient CompletableFuture<String> body = new CompletableFuture<>();
+        private final transient byte[] buffer;
+        private transient int length;
+        private transient boolean truncated;
+
+        private CappedStringSubscriber(int maxBytes) {
+            this.buffer = new byte[maxBytes];
+        }
+
+        @Override
+        public CompletionStage<String> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            for (var item : items) {
+                var count = Math.min(item.remaining(), buffer.length - length);
+                item.get(buffer, length, count);
+                length += count;
+                truncated = truncated || item.hasRemaining();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            var text = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            body.complete(truncated ? text + TRUNCATED_SUFFIX : text);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package no.sikt.clients;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends idempotent requests and, when the first attempt has not answered within the recent p95 latency, fires a
+ * second identical request. Whichever attempt answers first wins and the other one is cancelled. Only use this for
+ * requests that are safe to send twice.
+ **/
+public class HedgedRequestSender {
+
+    public static final double HEDGE_PERCENTILE = 0.95;
+    public static final int MINIMUM_SAMPLES_BEFORE_USING_PERCENTILE = 20;
+    private static final int LATENCY_SAMPLE_CAPACITY = 512;
+    private static final int NUMBER_OF_ATTEMPTS = 2;
+
+    private final transient HttpClient httpClient;
+    private final transient Duration initialHedgeDelay;
+    private final transient LatencyTracker latencyTracker;
+
+    /**
+     * Creates a sender that hedges after initialHedgeDelay until enough latencies are recorded to use the p95.
+     **/
+    public HedgedRequestSender(HttpClient httpClient, Duration initialHedgeDelay) {
+        this(httpClient, initialHedgeDelay, new LatencyTracker(LATENCY_SAMPLE_CAPACITY));
+    }
+
+    public HedgedRequestSender(HttpClient httpClient, Duration initialHedgeDelay, LatencyTracker latencyTracker) {
+        this.httpClient = httpClient;
+        this.initialHedgeDelay = initialHedgeDelay;
+        this.latencyTracker = latencyTracker;
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> bodyHandler)
+        throws IOException, InterruptedException {
+        try {
+            return sendAsync(request, bodyHandler).get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Sends the request without blocking. The hedge is fired from a delayed task, and only if the first attempt has
+     * neither answered nor failed by then.
+     **/
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, BodyHandler<T> bodyHandler) {
+        var started = System.nanoTime();
+        var winner = new CompletableFuture<HttpResponse<T>>();
+        var hedgeClaimed = new AtomicBoolean();
+        var failedAttempts = new AtomicInteger();
+        var primary = httpClient.sendAsync(request, bodyHandler);
+        primary.whenComplete((response, failure) -> {
+            if (failure != null && hedgeClaimed.compareAndSet(false, true)) {
+                winner.completeExceptionally(failure);
+            } else {
+                complete(winner, failedAttempts, response, failure);
+            }
+        });
+        CompletableFuture.delayedExecutor(hedgeDelay().toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+            if (!winner.isDone() && hedgeClaimed.compareAndSet(false, true)) {
+                var hedge = httpClient.sendAsync(request, bodyHandler);
+                hedge.whenComplete((response, failure) -> complete(winner, failedAttempts, response, failure));
+                winner.whenComplete((response, failure) -> hedge.cancel(true));
+            }
+        });
+        winner.whenComplete((response, failure) -> {
+            primary.cancel(true);
+            if (failure == null) {
+                latencyTracker.record(Duration.ofNanos(System.nanoTime() - started));
+            }
+        });
+        return winner;
+    }
+
+    public Duration hedgeDelay() {
+        return latencyTracker.percentile(HEDGE_PERCENTILE, MINIMUM_SAMPLES_BEFORE_USING_PERCENTILE)
+                   .orElse(initialHedgeDelay);
+    }
+
+    private static <T> void complete(CompletableFuture<HttpResponse<T>> winner, AtomicInteger failedAttempts,
+                                     HttpResponse<T> response, Throwable failure) {
+        if (failure == null) {
+            winner.complete(response);
+        } else if (failedAttempts.incrementAndGet() == NUMBER_OF_ATTEMPTS) {
+            winner.completeExceptionally(failure);
+        }
+    }
+
+    private static IOException unwrap(ExecutionException exception) {
+        var cause = exception.getCause();
+        return cause instanceof IOException ioException ? ioException : new IOException(cause);
+    }
+}
@@ -0,0 +1,26 @@
+package no.sikt.clients;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one {@link HedgedRequestSender} per key, so each Alma tenant is hedged at its own p95 instead of one mixed
+ * from the latencies of every tenant the upserter talks to.
+ **/
+public class HedgedRequestSenders {
+
+    private final transient HttpClient httpClient;
+    private final transient Duration initialHedgeDelay;
+    private final transient Map<String, HedgedRequestSender> senders = new ConcurrentHashMap<>();
+
+    public HedgedRequestSenders(HttpClient httpClient, Duration initialHedgeDelay) {
+        this.httpClient = httpClient;
+        this.initialHedgeDelay = initialHedgeDelay;
+    }
+
+    public HedgedRequestSender forKey(String key) {
+        return senders.computeIfAbsent(key, ignored -> new HedgedRequestSender(httpClient, initialHedgeDelay));
+    }
+}
@@ -0,0 +1,62 @@
+package no.sikt.clients;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import nva.commons.core.Environment;
+
+/**
+ * Builds the HTTP clients used against Basebibliotek and Alma. The shared client lives for the lifetime of the Lambda
+ * container, so its connections and HTTP/2 streams stay warm between invocations.
+ **/
+public final class HttpClientFactory {
+
+    public static final String HTTP_CONNECT_TIMEOUT_SECONDS_ENV_NAME = "HTTP_CONNECT_TIMEOUT_SECONDS";
+    public static final String HTTP_REQUEST_TIMEOUT_SECONDS_ENV_NAME = "HTTP_REQUEST_TIMEOUT_SECONDS";
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private HttpClientFactory() {
+    }
+
+    public static HttpClient sharedClient() {
+        return SharedClientHolder.CLIENT;
+    }
+
+    /**
+     * Timeout applied to requests that have no operation specific timeout of their own.
+     **/
+    public static Duration defaultRequestTimeout() {
+        return SharedClientHolder.REQUEST_TIMEOUT;
+    }
+
+    /**
+     * Creates a client speaking HTTP/2 where the server allows it, with a bounded connect timeout and a virtual
+     * thread per task for the client's internal work.
+     **/
+    @SuppressWarnings("PMD.DoNotUseThreads")
+    public static HttpClient newClient(Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                   .version(HttpClient.Version.HTTP_2)
+                   .connectTimeout(connectTimeout)
+                   .executor(Executors.newVirtualThreadPerTaskExecutor())
+                   .build();
+    }
+
+    public static Duration readTimeout(Environment environment, String environmentName, Duration defaultTimeout) {
+        return environment.readEnvOpt(environmentName)
+                   .map(String::trim)
+                   .map(Long::parseLong)
+                   .map(Duration::ofSeconds)
+                   .orElse(defaultTimeout);
+    }
+
+    private static final class SharedClientHolder {
+
+        private static final Environment ENVIRONMENT = new Environment();
+        private static final HttpClient CLIENT = newClient(
+            readTimeout(ENVIRONMENT, HTTP_CONNECT_TIMEOUT_SECONDS_ENV_NAME, DEFAULT_CONNECT_TIMEOUT));
+        private static final Duration REQUEST_TIMEOUT =
+            readTimeout(ENVIRONMENT, HTTP_REQUEST_TIMEOUT_SECONDS_ENV_NAME, DEFAULT_REQUEST_TIMEOUT);
+    }
+}
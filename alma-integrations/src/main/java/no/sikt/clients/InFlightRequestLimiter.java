@@ -0,0 +1,47 @@
+package no.sikt.clients;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import nva.commons.core.Environment;
+
+/**
+ * Bounds how many asynchronous requests are in flight at once. The caller blocks when the bound is reached, so a
+ * handler can submit a whole chunk from one thread without flooding Alma.
+ **/
+public class InFlightRequestLimiter {
+
+    public static final String ALMA_MAX_IN_FLIGHT_REQUESTS_ENV_NAME = "ALMA_MAX_IN_FLIGHT_REQUESTS";
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 16;
+
+    private final transient Semaphore permits;
+
+    public InFlightRequestLimiter(int maxInFlightRequests) {
+        this.permits = new Semaphore(maxInFlightRequests);
+    }
+
+    public static int readMaxInFlightRequests(Environment environment) {
+        return environment.readEnvOpt(ALMA_MAX_IN_FLIGHT_REQUESTS_ENV_NAME)
+                   .map(String::trim)
+                   .map(Integer::parseInt)
+                   .orElse(DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+    }
+
+    /**
+     * Waits for a free slot and starts the request. The slot is released once the returned future completes, so
+     * anything chained inside the supplier has run before the next request is started.
+     **/
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        permits.acquireUninterruptibly();
+        try {
+            return request.get().whenComplete((result, failure) -> permits.release());
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int availableSlots() {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,43 @@
+package no.sikt.clients;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the most recent request latencies in a fixed size ring buffer and answers percentile queries over them.
+ **/
+public class LatencyTracker {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong recordedSamples = new AtomicLong();
+
+    public LatencyTracker(int capacity) {
+        this.samples = new AtomicLongArray(capacity);
+    }
+
+    public void record(Duration latency) {
+        var index = recordedSamples.getAndIncrement() % samples.length();
+        samples.set((int) index, latency.toNanos());
+    }
+
+    /**
+     * Returns the given percentile (0.0 - 1.0) of the recorded latencies, or empty until at least minimumSamples
+     * latencies have been recorded.
+     **/
+    public Optional<Duration> percentile(double percentile, int minimumSamples) {
+        var sampleCount = (int) Math.min(recordedSamples.get(), samples.length());
+        if (sampleCount == 0 || sampleCount < minimumSamples) {
+            return Optional.empty();
+        }
+        var snapshot = new long[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            snapshot[i] = samples.get(i);
+        }
+        Arrays.sort(snapshot);
+        var index = Math.max(0, (int) Math.ceil(percentile * sampleCount) - 1);
+        return Optional.of(Duration.ofNanos(snapshot[index]));
+    }
+}
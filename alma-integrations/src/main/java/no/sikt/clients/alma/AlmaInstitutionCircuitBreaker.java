@@ -0,0 +1,62 @@
+package no.sikt.clients.alma;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import nva.commons.core.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks consecutive failures per Alma institution. Once an institution reaches the failure threshold its circuit
+ * opens and stays open for the lifetime of the breaker, so the rest of a chunk fails fast instead of waiting on a
+ * tenant that is down. Create one breaker per chunk.
+ **/
+public class AlmaInstitutionCircuitBreaker {
+
+    public static final String ALMA_CIRCUIT_BREAKER_FAILURE_THRESHOLD_ENV_NAME =
+        "ALMA_CIRCUIT_BREAKER_FAILURE_THRESHOLD";
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final Logger logger = LoggerFactory.getLogger(AlmaInstitutionCircuitBreaker.class);
+    private static final String CIRCUIT_OPENED_MESSAGE =
+        "Opening circuit for alma instance {} after {} consecutive failures";
+
+    private final transient int failureThreshold;
+    private final transient Map<String, AtomicInteger> consecutiveFailures = new ConcurrentHashMap<>();
+    private final transient Set<String> openInstitutions = ConcurrentHashMap.newKeySet();
+
+    public AlmaInstitutionCircuitBreaker(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public static int readFailureThreshold(Environment environment) {
+        return environment.readEnvOpt(ALMA_CIRCUIT_BREAKER_FAILURE_THRESHOLD_ENV_NAME)
+                   .map(String::trim)
+                   .map(Integer::parseInt)
+                   .orElse(DEFAULT_FAILURE_THRESHOLD);
+    }
+
+    public boolean allowsRequest(String institution) {
+        return !openInstitutions.contains(institution);
+    }
+
+    public void recordSuccess(String institution) {
+        failuresFor(institution).set(0);
+    }
+
+    public void recordFailure(String institution) {
+        var failures = failuresFor(institution).incrementAndGet();
+        if (failures >= failureThreshold && openInstitutions.add(institution)) {
+            logger.warn(CIRCUIT_OPENED_MESSAGE, institution, failures);
+        }
+    }
+
+    public Set<String> getOpenInstitutions() {
+        return Set.copyOf(openInstitutions);
+    }
+
+    private AtomicInteger failuresFor(String institution) {
+        return consecutiveFailures.computeIfAbsent(institution, key -> new AtomicInteger());
+    }
+}
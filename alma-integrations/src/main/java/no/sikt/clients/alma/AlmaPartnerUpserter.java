@@ -1,9 +1,41 @@
 package no.sikt.clients.alma;
 
-import no.sikt.alma.partners.generated.Partner;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import no.sikt.rsp.serialize.SerializedPartner;
 
-@FunctionalInterface
 public interface AlmaPartnerUpserter {
 
-    boolean upsertPartner(Partner partner);
+    /**
+     * Fetches the partner to decide between update and create.
+     **/
+    default boolean upsertPartner(SerializedPartner serializedPartner) {
+        return upsertPartnerAsync(serializedPartner).join().isSuccessful();
+    }
+
+    /**
+     * Decides between create, update and no change from a snapshot fetched earlier.
+     **/
+    default boolean upsertPartner(SerializedPartner serializedPartner, PartnerSnapshot snapshot) {
+        return upsertPartnerAsync(serializedPartner, snapshot).join().isSuccessful();
+    }
+
+    /**
+     * Non-blocking variant of {@link #upsertPartner(SerializedPartner)}. The future never completes exceptionally;
+     * failures are reported in the result.
+     **/
+    CompletableFuture<UpsertResult> upsertPartnerAsync(SerializedPartner serializedPartner);
+
+    /**
+     * Non-blocking variant of {@link #upsertPartner(SerializedPartner, PartnerSnapshot)}.
+     **/
+    CompletableFuture<UpsertResult> upsertPartnerAsync(SerializedPartner serializedPartner,
+                                                       PartnerSnapshot snapshot);
+
+    /**
+     * Pages through all partners.
+     *
+     * @return empty if the listing could not be completed
+     **/
+    Optional<PartnerSnapshot> fetchPartnerSnapshot();
 }
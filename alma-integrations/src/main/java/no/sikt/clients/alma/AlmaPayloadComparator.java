@@ -0,0 +1,292 @@
+package no.sikt.clients.alma;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Decides whether an object in Alma already holds everything we are about to PUT. The payload we send is XML while
+ * Alma answers in JSON, so the payload is first turned into the JSON shape Alma uses: attributes become fields,
+ * elements with a desc attribute become value/desc objects, and plural wrappers such as emails/email become a plain
+ * array under the singular name.
+ *
+ * <p>Fields Alma keeps but the converter never writes, such as links and creation dates, are ignored. Fields the
+ * converter owns but writes only for some libraries are compared both ways: one that holds a value in Alma but is
+ * missing from the payload counts as changed, so a field the converter stops sending is still cleared. Lists must
+ * have the same size so that removed entries are still written. Anything the comparator cannot interpret counts as
+ * changed.
+ **/
+public final class AlmaPayloadComparator {
+
+    private static final String VALUE_FIELD = "value";
+    private static final String DESCRIPTION_FIELD = "desc";
+    private static final String ROOT_PATH = "";
+    private static final String PATH_SEPARATOR = ".";
+    private static final String DISALLOW_DOCTYPE_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+    private static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.instance;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    /**
+     * Looking up and hardening a factory costs more than the comparison itself, so it is done once. The factory is
+     * only read after this, and each parse gets its own builder.
+     **/
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = hardenedDocumentBuilderFactory();
+
+    private AlmaPayloadComparator() {
+    }
+
+    /**
+     * Returns true if every field of the XML payload, except the ignored ones, already has the same value in the
+     * JSON returned by Alma, and Alma holds no value for an owned field that the payload leaves out.
+     *
+     * @param ignoredFields names of fields that are never compared, at whatever level they appear
+     * @param ownedFields   dotted paths in Alma's JSON, such as partner_details.holding_code, of the fields the
+     *                      converter leaves out for some libraries
+     **/
+    public static boolean isUnchanged(byte[] payloadXml, JsonNode current, Set<String> ignoredFields,
+                                      Set<String> ownedFields) {
+        try {
+            var desired = toAlmaJson(parse(payloadXml));
+            return contains(current, desired, new Fields(ignoredFields, ownedFields), ROOT_PATH);
+        } catch (IOException | SAXException | ParserConfigurationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Same as {@link #isUnchanged(byte[], JsonNode, Set, Set)} for the raw body of an Alma GET response.
+     **/
+    public static boolean isUnchanged(byte[] payloadXml, String currentJson, Set<String> ignoredFields,
+                                      Set<String> ownedFields) {
+        try {
+            return isUnchanged(payloadXml, OBJECT_MAPPER.readTree(currentJson), ignoredFields, ownedFields);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /* default */ static JsonNode toAlmaJson(Element element) {
+        var children = childElements(element);
+        if (children.isEmpty() && attributes(element).isEmpty()) {
+            return TextNode.valueOf(element.getTextContent().trim());
+        }
+        var node = NODE_FACTORY.objectNode();
+        attributes(element).forEach(attribute -> node.put(attribute.getLocalName(), attribute.getValue()));
+        if (children.isEmpty()) {
+            node.put(VALUE_FIELD, element.getTextContent().trim());
+            return node;
+        }
+        groupByName(children).forEach((name, elements) -> addChildren(node, name, elements));
+        return node;
+    }
+
+    private static void addChildren(ObjectNode node, String name, List<Element> elements) {
+        if (elements.size() > 1) {
+            node.set(name, toArray(elements));
+            return;
+        }
+        var element = elements.getFirst();
+        var grandChildren = childElements(element);
+        var singularName = singularOf(name);
+        if (!grandChildren.isEmpty()
+            && grandChildren.stream().allMatch(grandChild -> singularName.equals(grandChild.getLocalName()))) {
+            node.set(singularName, toArray(grandChildren));
+            return;
+        }
+        node.set(name, toAlmaJson(element));
+        if (isBlankLeaf(element, grandChildren) && !singularName.equals(name) && !node.has(singularName)) {
+            // an empty wrapper such as <emails/> means that Alma's flattened "email" list should be empty
+            node.set(singularName, NODE_FACTORY.arrayNode());
+        }
+    }
+
+    private static ArrayNode toArray(List<Element> elements) {
+        var array = NODE_FACTORY.arrayNode();
+        elements.forEach(element -> array.add(toAlmaJson(element)));
+        return array;
+    }
+
+    private static boolean contains(JsonNode currentNode, JsonNode desired, Fields fields, String path) {
+        if (desired.isArray()) {
+            return containsAll(elementsOf(currentNode), desired, fields, path);
+        }
+        var current = singleElementOf(currentNode);
+        if (desired.isObject()) {
+            return desired.properties().stream()
+                       .filter(field -> !fields.ignored().contains(field.getKey()))
+                       .filter(field -> !DESCRIPTION_FIELD.equals(field.getKey()))
+                       .allMatch(field -> contains(fieldOf(current, field.getKey()), field.getValue(), fields,
+                                                   pathOf(path, field.getKey())))
+                   && !holdsOwnedFieldMissingFrom(current, desired, fields, path);
+        }
+        return desired.asText().equals(textOf(current));
+    }
+
+    private static boolean holdsOwnedFieldMissingFrom(JsonNode current, JsonNode desired, Fields fields,
+                                                      String path) {
+        return current != null && current.isObject()
+               && current.properties().stream()
+                      .filter(field -> !desired.has(field.getKey()))
+                      .filter(field -> fields.owned().contains(pathOf(path, field.getKey())))
+                      .anyMatch(field -> holdsValue(field.getValue()));
+    }
+
+    private static String pathOf(String parent, String fieldName) {
+        return parent.isEmpty() ? fieldName : parent + PATH_SEPARATOR + fieldName;
+    }
+
+    /**
+     * Alma answers with false, 0 or an empty value for many fields that were never sent, so those count as absent.
+     **/
+    private static boolean holdsValue(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return false;
+        }
+        if (node.isArray()) {
+            return elementsOf(node).stream().anyMatch(AlmaPayloadComparator::holdsValue);
+        }
+        if (node.isObject()) {
+            return node.properties().stream()
+                       .filter(field -> !DESCRIPTION_FIELD.equals(field.getKey()))
+                       .anyMatch(field -> holdsValue(field.getValue()));
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        if (node.isNumber()) {
+            return node.doubleValue() != 0;
+        }
+        return !node.asText().isBlank();
+    }
+
+    private static boolean containsAll(List<JsonNode> current, JsonNode desired, Fields fields, String path) {
+        if (current.size() != desired.size()) {
+            return false;
+        }
+        var unmatched = new ArrayList<>(current);
+        for (JsonNode desiredElement : desired) {
+            var match = unmatched.stream()
+                            .filter(candidate -> contains(candidate, desiredElement, fields, path))
+                            .findFirst();
+            if (match.isEmpty()) {
+                return false;
+            }
+            unmatched.remove(match.get());
+        }
+        return true;
+    }
+
+    private static JsonNode fieldOf(JsonNode node, String fieldName) {
+        return node != null && node.isObject() ? node.get(fieldName) : null;
+    }
+
+    private static JsonNode singleElementOf(JsonNode node) {
+        return node != null && node.isArray() && node.size() == 1 ? node.get(0) : node;
+    }
+
+    private static List<JsonNode> elementsOf(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return List.of();
+        }
+        if (node.isArray()) {
+            var elements = new ArrayList<JsonNode>();
+            node.forEach(elements::add);
+            return elements;
+        }
+        return List.of(node);
+    }
+
+    private static String textOf(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return "";
+        }
+        if (node.isObject() && node.has(VALUE_FIELD)) {
+            return textOf(node.get(VALUE_FIELD));
+        }
+        return node.isValueNode() ? node.asText() : null;
+    }
+
+    private static DocumentBuilderFactory hardenedDocumentBuilderFactory() {
+        var factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.setFeature(DISALLOW_DOCTYPE_FEATURE, true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+        return factory;
+    }
+
+    private static Element parse(byte[] xml) throws ParserConfigurationException, IOException, SAXException {
+        return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder().parse(new ByteArrayInputStream(xml)).getDocumentElement();
+    }
+
+    private static List<Element> childElements(Element element) {
+        var children = new ArrayList<Element>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    private static List<Attr> attributes(Element element) {
+        var attributes = element.getAttributes();
+        return Stream.iterate(0, index -> index < attributes.getLength(), index -> index + 1)
+                   .map(index -> (Attr) attributes.item(index))
+                   .filter(attribute -> !XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI()))
+                   .filter(attribute -> !XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(
+                       attribute.getNamespaceURI()))
+                   .collect(Collectors.toList());
+    }
+
+    private static Map<String, List<Element>> groupByName(List<Element> elements) {
+        return elements.stream()
+                   .collect(Collectors.groupingBy(Element::getLocalName, LinkedHashMap::new, Collectors.toList()));
+    }
+
+    private static boolean isBlankLeaf(Element element, List<Element> children) {
+        return children.isEmpty() && attributes(element).isEmpty() && element.getTextContent().isBlank();
+    }
+
+    /**
+     * Turns the name of an Alma list wrapper into the name of its entries, e.g. addresses into address and
+     * user_statistics into user_statistic. Names ending in ss or us, such as address and status, are not plurals.
+     **/
+    /* default */ static String singularOf(String name) {
+        if (name.endsWith("sses")) {
+            return name.substring(0, name.length() - 2);
+        }
+        if (name.endsWith("ies")) {
+            return name.substring(0, name.length() - 3) + "y";
+        }
+        if (name.endsWith("s") && !name.endsWith("ss") && !name.endsWith("us")) {
+            return name.substring(0, name.length() - 1);
+        }
+        return name;
+    }
+
+    private record Fields(Set<String> ignored, Set<String> owned) {
+
+    }
+}
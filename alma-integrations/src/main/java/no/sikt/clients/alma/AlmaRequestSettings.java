@@ -0,0 +1,46 @@
+package no.sikt.clients.alma;
+
+import static no.sikt.clients.HttpClientFactory.readTimeout;
+import java.time.Duration;
+import nva.commons.core.Environment;
+
+/**
+ * Deadlines for the individual Alma operations, and whether idempotent fetches should be hedged.
+ **/
+public record AlmaRequestSettings(Duration fetchTimeout,
+                                  Duration createTimeout,
+                                  Duration updateTimeout,
+                                  boolean hedgeFetches,
+                                  Duration initialHedgeDelay) {
+
+    public static final String ALMA_FETCH_TIMEOUT_SECONDS_ENV_NAME = "ALMA_FETCH_TIMEOUT_SECONDS";
+    public static final String ALMA_CREATE_TIMEOUT_SECONDS_ENV_NAME = "ALMA_CREATE_TIMEOUT_SECONDS";
+    public static final String ALMA_UPDATE_TIMEOUT_SECONDS_ENV_NAME = "ALMA_UPDATE_TIMEOUT_SECONDS";
+    public static final String ALMA_HEDGE_FETCHES_ENV_NAME = "ALMA_HEDGE_FETCHES";
+    public static final String ALMA_INITIAL_HEDGE_DELAY_MILLIS_ENV_NAME = "ALMA_INITIAL_HEDGE_DELAY_MILLIS";
+    public static final Duration DEFAULT_FETCH_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_CREATE_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_UPDATE_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_INITIAL_HEDGE_DELAY = Duration.ofMillis(500);
+
+    public static AlmaRequestSettings defaults() {
+        return new AlmaRequestSettings(DEFAULT_FETCH_TIMEOUT, DEFAULT_CREATE_TIMEOUT, DEFAULT_UPDATE_TIMEOUT, false,
+                                       DEFAULT_INITIAL_HEDGE_DELAY);
+    }
+
+    /**
+     * Reads the settings from the environment, falling back to the defaults for anything not set. Timeouts are
+     * given in seconds.
+     **/
+    public static AlmaRequestSettings fromEnvironment(Environment environment) {
+        return new AlmaRequestSettings(
+            readTimeout(environment, ALMA_FETCH_TIMEOUT_SECONDS_ENV_NAME, DEFAULT_FETCH_TIMEOUT),
+            readTimeout(environment, ALMA_CREATE_TIMEOUT_SECONDS_ENV_NAME, DEFAULT_CREATE_TIMEOUT),
+            readTimeout(environment, ALMA_UPDATE_TIMEOUT_SECONDS_ENV_NAME, DEFAULT_UPDATE_TIMEOUT),
+            environment.readEnvOpt(ALMA_HEDGE_FETCHES_ENV_NAME).map(String::trim).map(Boolean::parseBoolean)
+                .orElse(false),
+            environment.readEnvOpt(ALMA_INITIAL_HEDGE_DELAY_MILLIS_ENV_NAME).map(String::trim).map(Long::parseLong)
+                .map(Duration::ofMillis)
+                .orElse(DEFAULT_INITIAL_HEDGE_DELAY));
+    }
+}
@@ -0,0 +1,56 @@
+package no.sikt.clients.alma;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.Serial;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Alma answered, but not with the expected status. Keeps the error codes from the response body so they can be
+ * reported per upsert.
+ **/
+class AlmaResponseException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+    private static final Pattern XML_ERROR_CODE = Pattern.compile("<errorCode>\\s*([^<\\s]+)\\s*</errorCode>");
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+                                                         .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
+                                                                    false);
+
+    private final transient List<String> errorCodes;
+
+    /* default */ AlmaResponseException(String message, String responseBody) {
+        super(message);
+        this.errorCodes = extractErrorCodes(responseBody);
+    }
+
+    public List<String> getErrorCodes() {
+        return errorCodes;
+    }
+
+    /**
+     * Alma answers in json or xml depending on the request, so both shapes of the error list are read.
+     **/
+    /* default */ static List<String> extractErrorCodes(String responseBody) {
+        if (responseBody == null || responseBody.isBlank()) {
+            return List.of();
+        }
+        try {
+            var errorResponse = objectMapper.readValue(responseBody, AlmaErrorResponse.class);
+            return errorResponse.getErrorList() == null || errorResponse.getErrorList().getError() == null
+                       ? List.of()
+                       : errorResponse.getErrorList().getError().stream()
+                             .map(AlmaError::getErrorCode)
+                             .filter(Objects::nonNull)
+                             .toList();
+        } catch (IOException e) {
+            return XML_ERROR_CODE.matcher(responseBody).results()
+                       .map(match -> match.group(1))
+                       .toList();
+        }
+    }
+}
@@ -1,9 +1,32 @@
 package no.sikt.clients.alma;
 
+import java.util.concurrent.CompletableFuture;
 import no.sikt.lum.serialize.SerializedUser;
 
-@FunctionalInterface
 public interface AlmaUserUpserter {
 
-    boolean upsertUser(SerializedUser serializedUser, String almaApikey);
+    /**
+     * Fetches the user to decide between update and create.
+     **/
+    default boolean upsertUser(SerializedUser serializedUser, String almaApikey) {
+        return upsertUserAsync(serializedUser, almaApikey).join().isSuccessful();
+    }
+
+    /**
+     * Non-blocking variant of {@link #upsertUser(SerializedUser, String)}. The future never completes
+     * exceptionally; failures are reported in the result.
+     **/
+    default CompletableFuture<UpsertResult> upsertUserAsync(SerializedUser serializedUser, String almaApikey) {
+        return upsertUserAsync(serializedUser, almaApikey, false);
+    }
+
+    /**
+     * Alma never returns the password of a user, so a payload with a password always differs from what Alma holds.
+     * When the caller knows Alma already has the password of the payload, the password is left out of the
+     * comparison and an otherwise unchanged user is not updated.
+     *
+     * @param passwordInAlma whether Alma already holds the password of the payload
+     **/
+    CompletableFuture<UpsertResult> upsertUserAsync(SerializedUser serializedUser, String almaApikey,
+                                                    boolean passwordInAlma);
 }
@@ -1,9 +1,9 @@
 package no.sikt.clients.alma;
 
+import static java.util.Objects.nonNull;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.xml.bind.JAXB;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
@@ -11,10 +11,18 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
-import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
-import no.sikt.alma.partners.generated.Partner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import no.sikt.clients.AbstractHttpUrlConnectionApi;
+import no.sikt.clients.ErrorBodyHandlers;
+import no.sikt.clients.HedgedRequestSender;
+import no.sikt.clients.HttpClientFactory;
+import no.sikt.clients.alma.UpsertResult.Status;
+import no.sikt.commons.flightrecorder.AlmaCallEvent;
+import no.sikt.rsp.serialize.SerializedPartner;
 import nva.commons.core.paths.UriWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,12 +42,25 @@ public class HttpUrlConnectionAlmaPartnerUpserter extends AbstractHttpUrlConnect
                                                                                          + "creating partner";
     public static final String UNEXPECTED_RESPONSE_FETCHING_PARTNER_LOG_MESSAGE_PREFIX = "Unexpected response "
                                                                                          + "fetching partner";
+    public static final String LOG_MESSAGE_PARTNER_LISTING_FAILED =
+        "Could not list partners from Alma, falling back to fetching partners one by one";
+    public static final int PARTNER_LISTING_PAGE_SIZE = 100;
 
     private static final String ALMA_ERROR_CODE_PARTNER_NOT_FOUND = "402118";
     private static final String AUTHORIZATION_HEADER_NAME = "Authorization";
     private static final String ACCEPT_HEADER_NAME = "Accept";
     private static final String APIKEY_KEY = "apikey";
     private static final String SPACE_KEY = " ";
+    private static final String LIMIT_PARAMETER_NAME = "limit";
+    private static final String OFFSET_PARAMETER_NAME = "offset";
+    private static final String PARTNER_LIST_FIELD = "partner";
+    private static final String PARTNER_DETAILS_FIELD = "partner_details";
+    private static final String CODE_FIELD = "code";
+    private static final String TOTAL_RECORD_COUNT_FIELD = "total_record_count";
+    private static final String SKIPPING_UNCHANGED_PARTNER = "Partner {} is unchanged in Alma, skipping update";
+    private static final String PARTNER_SNAPSHOT_FETCHED = "Fetched {} partners from Alma";
+    private static final String UNEXPECTED_RESPONSE_LISTING_PARTNERS_MESSAGE_FORMAT =
+        "Unexpected response listing partners from Alma at offset %d.\nStatus code: %d\nResponse body: %s";
     private static final String UNEXPECTED_RESPONSE_UPDATING_PARTNER_MESSAGE_FORMAT =
         UNEXPECTED_RESPONSE_UPDATING_PARTNER_LOG_MESSAGE_PREFIX + " '%s' in Alma:\n%s\nStatus code: "
         + "%d\nResponse body: %s";
@@ -49,6 +70,20 @@ public class HttpUrlConnectionAlmaPartnerUpserter extends AbstractHttpUrlConnect
     private static final String UNEXPECTED_RESPONSE_FETCHING_PARTNER_MESSAGE_FORMAT =
         UNEXPECTED_RESPONSE_FETCHING_PARTNER_LOG_MESSAGE_PREFIX + " '%s' from Alma.\nStatus code: "
         + "%d\nResponse body: %s";
+    /**
+     * Fields the converter writes only for some libraries. When Alma still holds one of them the partner is updated.
+     **/
+    private static final Set<String> OPTIONAL_PARTNER_FIELDS = Set.of(
+        "partner_details.holding_code",
+        "partner_details.locate_profile",
+        "partner_details.auto_claim_supported",
+        "partner_details.auto_claim_time",
+        "partner_details.profile_details.iso_details",
+        "partner_details.profile_details.ncip_p2p_details",
+        "partner_details.profile_details.email_details",
+        "partner_details.profile_details.ncip_p2p_details.email_address",
+        "contact_info.address.city",
+        "contact_info.address.postal_code");
 
     private final transient String almaApikey;
     private final transient URI almaApiHost;
@@ -56,130 +91,228 @@ public class HttpUrlConnectionAlmaPartnerUpserter extends AbstractHttpUrlConnect
                                                          .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
                                                                     false);
 
-    public HttpUrlConnectionAlmaPartnerUpserter(final String almaApiKey, final URI almaApiHost) {
-        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build(), almaApiKey, almaApiHost);
+    private final transient AlmaRequestSettings requestSettings;
+    private final transient HedgedRequestSender hedgedRequestSender;
+
+    public HttpUrlConnectionAlmaPartnerUpserter(final String almaApiKey, final URI almaApiHost,
+                                                final AlmaRequestSettings requestSettings) {
+        this(HttpClientFactory.sharedClient(), almaApiKey, almaApiHost, requestSettings);
     }
 
     public HttpUrlConnectionAlmaPartnerUpserter(final HttpClient httpClient, final String almaApiKey,
-                                                final URI almaApiHost) {
+                                                final URI almaApiHost, final AlmaRequestSettings requestSettings) {
         super(httpClient);
         this.almaApikey = almaApiKey;
         this.almaApiHost = almaApiHost;
+        this.requestSettings = requestSettings;
+        this.hedgedRequestSender = requestSettings.hedgeFetches()
+                                       ? new HedgedRequestSender(httpClient, requestSettings.initialHedgeDelay())
+                                       : null;
+    }
+
+    private HttpRequest fetchPartnerRequest(final String code) {
+        return HttpRequest.newBuilder()
+                   .GET()
+                   .uri(UriWrapper.fromUri(almaApiHost)
+                            .addChild(PARTNERS_URL_PATH)
+                            .addChild(code).getUri())
+                   .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
+                   .timeout(requestSettings.fetchTimeout())
+                   .setHeader(ACCEPT_HEADER_NAME, APPLICATION_JSON)
+                   .build();
+    }
+
+    private Optional<String> existingPartner(final String code, final HttpResponse<String> response) {
+        if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+            return Optional.of(response.body());
+        }
+        if (HttpURLConnection.HTTP_BAD_REQUEST == response.statusCode() && partnerNotFound(response.body())) {
+            return Optional.empty();
+        }
+        final String message = String.format(
+            UNEXPECTED_RESPONSE_FETCHING_PARTNER_MESSAGE_FORMAT,
+            code,
+            response.statusCode(),
+            response.body());
+        throw new AlmaResponseException(message, response.body());
     }
 
-    private Optional<String> fetchPartner(final String code) {
+    private HttpResponse<String> sendFetch(final HttpRequest request) throws IOException, InterruptedException {
+        return AlmaCallEvent.timed(request, () -> nonNull(hedgedRequestSender)
+                                                      ? hedgedRequestSender.send(request, BodyHandlers.ofString())
+                                                      : httpClient.send(request, BodyHandlers.ofString()));
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendFetchAsync(final HttpRequest request) {
+        return AlmaCallEvent.timedAsync(request, () -> nonNull(hedgedRequestSender)
+                                                           ? hedgedRequestSender.sendAsync(request,
+                                                                                           BodyHandlers.ofString())
+                                                           : httpClient.sendAsync(request, BodyHandlers.ofString()));
+    }
+
+    private JsonNode fetchPartnerListPage(final int offset) {
         final HttpRequest request = HttpRequest.newBuilder()
                                         .GET()
                                         .uri(UriWrapper.fromUri(almaApiHost)
                                                  .addChild(PARTNERS_URL_PATH)
-                                                 .addChild(code).getUri())
+                                                 .addQueryParameter(LIMIT_PARAMETER_NAME,
+                                                                    String.valueOf(PARTNER_LISTING_PAGE_SIZE))
+                                                 .addQueryParameter(OFFSET_PARAMETER_NAME, String.valueOf(offset))
+                                                 .getUri())
                                         .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
+                                        .timeout(requestSettings.fetchTimeout())
                                         .setHeader(ACCEPT_HEADER_NAME, APPLICATION_JSON)
                                         .build();
         try {
-            final HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-            if (response.statusCode() == HttpURLConnection.HTTP_OK) {
-                return Optional.of(response.body());
-            } else if (HttpURLConnection.HTTP_BAD_REQUEST == response.statusCode()) {
-                final AlmaErrorResponse almaErrorResponse = objectMapper.readValue(response.body(),
-                                                                                   AlmaErrorResponse.class);
-                if (partnerNotFound(almaErrorResponse)) {
-                    return Optional.empty();
-                } else {
-                    final String message = String.format(
-                        UNEXPECTED_RESPONSE_FETCHING_PARTNER_MESSAGE_FORMAT,
-                        code,
-                        response.statusCode(),
-                        response.body());
-                    throw new RuntimeException(message);
-                }
-            } else {
-                final String message = String.format(
-                    UNEXPECTED_RESPONSE_FETCHING_PARTNER_MESSAGE_FORMAT,
-                    code,
-                    response.statusCode(),
-                    response.body());
-                throw new RuntimeException(message);
+            final HttpResponse<String> response = sendFetch(request);
+            if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                throw new RuntimeException(String.format(UNEXPECTED_RESPONSE_LISTING_PARTNERS_MESSAGE_FORMAT,
+                                                         offset,
+                                                         response.statusCode(),
+                                                         response.body()));
             }
+            return objectMapper.readTree(response.body());
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
         }
     }
 
-    private boolean partnerNotFound(final AlmaErrorResponse almaErrorResponse) {
-        return almaErrorResponse.isErrorsExist() && almaErrorResponse.getErrorList().getError().stream()
-                                                        .anyMatch(almaError -> ALMA_ERROR_CODE_PARTNER_NOT_FOUND.equals(
-                                                            almaError.getErrorCode()));
+    private boolean partnerNotFound(final String responseBody) {
+        return AlmaResponseException.extractErrorCodes(responseBody).contains(ALMA_ERROR_CODE_PARTNER_NOT_FOUND);
     }
 
-    private void updatePartner(final Partner partner) {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            JAXB.marshal(partner, outputStream);
-            final String partnerAsString = outputStream.toString(StandardCharsets.UTF_8);
+    private CompletableFuture<HttpResponse<String>> sendUpsert(final HttpRequest request) {
+        return AlmaCallEvent.timedAsync(request, () -> httpClient.sendAsync(request, ErrorBodyHandlers.ofErrorBody()));
+    }
 
-            final HttpRequest request = HttpRequest.newBuilder()
-                                            .PUT(HttpRequest.BodyPublishers.ofString(partnerAsString))
-                                            .uri(UriWrapper.fromUri(almaApiHost)
-                                                     .addChild(PARTNERS_URL_PATH)
-                                                     .addChild(partner.getPartnerDetails().getCode()).getUri())
-                                            .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
-                                            .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
-                                            .build();
+    private CompletableFuture<Status> updatePartner(final SerializedPartner partner) {
+        final HttpRequest request = HttpRequest.newBuilder()
+                                        .PUT(HttpRequest.BodyPublishers.ofByteArray(partner.payload()))
+                                        .uri(UriWrapper.fromUri(almaApiHost)
+                                                 .addChild(PARTNERS_URL_PATH)
+                                                 .addChild(partner.code()).getUri())
+                                        .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
+                                        .timeout(requestSettings.updateTimeout())
+                                        .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
+                                        .build();
 
-            final HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+        return sendUpsert(request).thenApply(response -> {
             if (!successfulResponse(response)) {
                 final String message = String.format(
                     UNEXPECTED_RESPONSE_UPDATING_PARTNER_MESSAGE_FORMAT,
-                    partner.getPartnerDetails().getCode(),
-                    partnerAsString,
+                    partner.code(),
+                    partner.serializedXml(),
                     response.statusCode(),
                     response.body());
-                throw new RuntimeException(message);
+                throw new AlmaResponseException(message, response.body());
             }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
-        }
+            return Status.UPDATED;
+        });
     }
 
-    private void createPartner(final Partner partner) {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            JAXB.marshal(partner, outputStream);
-            final String partnerAsString = outputStream.toString(StandardCharsets.UTF_8);
-
-            final HttpRequest request = HttpRequest.newBuilder()
-                                            .POST(
-                                                HttpRequest.BodyPublishers.ofString(partnerAsString))
-                                            .uri(UriWrapper.fromUri(almaApiHost)
-                                                     .addChild(PARTNERS_URL_PATH)
-                                                     .getUri())
-                                            .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
-                                            .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
-                                            .build();
+    private CompletableFuture<Status> createPartner(final SerializedPartner partner) {
+        final HttpRequest request = HttpRequest.newBuilder()
+                                        .POST(
+                                            HttpRequest.BodyPublishers.ofByteArray(partner.payload()))
+                                        .uri(UriWrapper.fromUri(almaApiHost)
+                                                 .addChild(PARTNERS_URL_PATH)
+                                                 .getUri())
+                                        .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
+                                        .timeout(requestSettings.createTimeout())
+                                        .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
+                                        .build();
 
-            final HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+        return sendUpsert(request).thenApply(response -> {
             if (response.statusCode() != HttpURLConnection.HTTP_OK) {
                 final String message = String.format(
                     UNEXPECTED_RESPONSE_CREATING_PARTNER_MESSAGE_FORMAT,
-                    partner.getPartnerDetails().getCode(),
-                    partnerAsString,
+                    partner.code(),
+                    partner.serializedXml(),
                     response.statusCode(),
                     response.body());
-                throw new RuntimeException(message);
+                throw new AlmaResponseException(message, response.body());
             }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
+            return Status.CREATED;
+        });
+    }
+
+    private CompletableFuture<Status> updatePartnerIfChanged(final SerializedPartner partner,
+                                                             final String currentPartnerJson) {
+        if (AlmaPayloadComparator.isUnchanged(partner.payload(), currentPartnerJson, Set.of(),
+                                                 OPTIONAL_PARTNER_FIELDS)) {
+            LOGGER.debug(SKIPPING_UNCHANGED_PARTNER, partner.code());
+            return CompletableFuture.completedFuture(Status.UNCHANGED);
+        }
+        return updatePartner(partner);
+    }
+
+    private static UpsertResult toResult(Status status, Throwable failure, long startedNanos) {
+        if (failure == null) {
+            return UpsertResult.succeeded(status, startedNanos);
+        }
+        LOGGER.warn(LOG_MESSAGE_COMMUNICATION_PROBLEM, UpsertResult.unwrap(failure));
+        return UpsertResult.failed(failure, startedNanos);
+    }
+
+    @Override
+    public CompletableFuture<UpsertResult> upsertPartnerAsync(final SerializedPartner partner) {
+        final long started = System.nanoTime();
+        try {
+            return sendFetchAsync(fetchPartnerRequest(partner.code()))
+                       .thenCompose(response -> existingPartner(partner.code(), response)
+                                                    .map(currentPartner -> updatePartnerIfChanged(partner,
+                                                                                                  currentPartner))
+                                                    .orElseGet(() -> createPartner(partner)))
+                       .handle((status, failure) -> toResult(status, failure, started));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(toResult(null, e, started));
+        }
+    }
+
+    @Override
+    public CompletableFuture<UpsertResult> upsertPartnerAsync(final SerializedPartner partner,
+                                                              final PartnerSnapshot snapshot) {
+        final long started = System.nanoTime();
+        try {
+            final Optional<JsonNode> almaPartner = snapshot.find(partner.code());
+            final CompletableFuture<Status> upsert;
+            if (almaPartner.isEmpty()) {
+                upsert = createPartner(partner);
+            } else if (AlmaPayloadComparator.isUnchanged(partner.payload(), almaPartner.get(), Set.of(),
+                                                            OPTIONAL_PARTNER_FIELDS)) {
+                LOGGER.debug(SKIPPING_UNCHANGED_PARTNER, partner.code());
+                upsert = CompletableFuture.completedFuture(Status.UNCHANGED);
+            } else {
+                upsert = updatePartner(partner);
+            }
+            return upsert.handle((status, failure) -> toResult(status, failure, started));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(toResult(null, e, started));
         }
     }
 
     @Override
-    public boolean upsertPartner(final Partner partner) {
+    public Optional<PartnerSnapshot> fetchPartnerSnapshot() {
+        final Map<String, JsonNode> partnersByCode = new HashMap<>();
         try {
-            final Optional<String> almaPartner = fetchPartner(partner.getPartnerDetails().getCode());
-            almaPartner.ifPresentOrElse(currentPartner -> updatePartner(partner), () -> createPartner(partner));
-            return true;
+            int offset = 0;
+            int totalRecordCount;
+            do {
+                final JsonNode page = fetchPartnerListPage(offset);
+                page.path(PARTNER_LIST_FIELD).forEach(almaPartner -> {
+                    final JsonNode code = almaPartner.path(PARTNER_DETAILS_FIELD).path(CODE_FIELD);
+                    if (code.isTextual()) {
+                        partnersByCode.put(code.asText(), almaPartner);
+                    }
+                });
+                totalRecordCount = page.path(TOTAL_RECORD_COUNT_FIELD).asInt();
+                offset += PARTNER_LISTING_PAGE_SIZE;
+            } while (offset < totalRecordCount);
+            LOGGER.info(PARTNER_SNAPSHOT_FETCHED, partnersByCode.size());
+            return Optional.of(new PartnerSnapshot(partnersByCode));
         } catch (Exception e) {
-            LOGGER.warn(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
-            return false;
+            LOGGER.warn(LOG_MESSAGE_PARTNER_LISTING_FAILED, e);
+            return Optional.empty();
         }
     }
 
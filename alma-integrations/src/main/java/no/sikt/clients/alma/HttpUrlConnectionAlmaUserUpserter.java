@@ -1,8 +1,6 @@
 package no.sikt.clients.alma;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.IOException;
+import static java.util.Objects.nonNull;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.http.HttpClient;
@@ -10,8 +8,15 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import no.sikt.clients.AbstractHttpUrlConnectionApi;
+import no.sikt.clients.ErrorBodyHandlers;
+import no.sikt.clients.HedgedRequestSenders;
+import no.sikt.clients.HttpClientFactory;
+import no.sikt.clients.alma.UpsertResult.Status;
 import no.sikt.commons.Redacter;
+import no.sikt.commons.flightrecorder.AlmaCallEvent;
 import no.sikt.lum.SensitiveXmlDataRedacter;
 import no.sikt.lum.serialize.SerializedUser;
 import nva.commons.core.paths.UriWrapper;
@@ -39,6 +44,18 @@ public class HttpUrlConnectionAlmaUserUpserter extends AbstractHttpUrlConnection
     private static final String ACCEPT_HEADER_NAME = "Accept";
     private static final String APIKEY_KEY = "apikey";
     private static final String SPACE_KEY = " ";
+    private static final String SKIPPING_UNCHANGED_USER = "User {} is unchanged in Alma, skipping update";
+    /**
+     * The statistic note holds the time of conversion, so it differs on every run.
+     **/
+    private static final Set<String> VOLATILE_USER_FIELDS = Set.of("statistic_note");
+    private static final Set<String> VOLATILE_USER_FIELDS_AND_PASSWORD = Set.of("statistic_note", "password");
+    /**
+     * Fields the converter leaves out for some libraries. When Alma still holds one of them the user is updated.
+     **/
+    private static final Set<String> OPTIONAL_USER_FIELDS = Set.of("preferred_language",
+                                                                   "contact_info.address.city",
+                                                                   "contact_info.address.postal_code");
     private static final String UNEXPECTED_RESPONSE_UPDATING_USER_MESSAGE_FORMAT =
         UNEXPECTED_RESPONSE_UPDATING_USER_LOG_MESSAGE_PREFIX + " '%s' in Alma:\n%s\nStatus code: "
         + "%d\nResponse body: %s";
@@ -50,82 +67,88 @@ public class HttpUrlConnectionAlmaUserUpserter extends AbstractHttpUrlConnection
         + "%d\nResponse body: %s";
 
     private final transient URI almaApiHost;
-    private static final ObjectMapper objectMapper = new ObjectMapper()
-        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
-                   false);
     private final Redacter redacter;
+    private final transient AlmaRequestSettings requestSettings;
+    private final transient HedgedRequestSenders hedgedRequestSenders;
 
-    public HttpUrlConnectionAlmaUserUpserter(final URI almaApiHost) {
-        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build(),
+    public HttpUrlConnectionAlmaUserUpserter(final URI almaApiHost, final AlmaRequestSettings requestSettings) {
+        this(HttpClientFactory.sharedClient(),
              almaApiHost,
-             new SensitiveXmlDataRedacter());
+             new SensitiveXmlDataRedacter(),
+             requestSettings);
     }
 
     public HttpUrlConnectionAlmaUserUpserter(final HttpClient httpClient,
                                              final URI almaApiHost,
-                                             Redacter redacter) {
+                                             Redacter redacter,
+                                             final AlmaRequestSettings requestSettings) {
         super(httpClient);
         this.almaApiHost = almaApiHost;
         this.redacter = redacter;
+        this.requestSettings = requestSettings;
+        this.hedgedRequestSenders = requestSettings.hedgeFetches()
+                                        ? new HedgedRequestSenders(httpClient, requestSettings.initialHedgeDelay())
+                                        : null;
     }
 
-    private Optional<String> fetchUser(final String userID, String almaApikey) {
-        final HttpRequest request = HttpRequest.newBuilder()
+    private HttpRequest fetchUserRequest(final String userID, final String almaApikey) {
+        return HttpRequest.newBuilder()
             .GET()
             .uri(UriWrapper.fromUri(almaApiHost)
                      .addChild(USERS_URL_PATH)
                      .addChild(userID).getUri())
             .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
+            .timeout(requestSettings.fetchTimeout())
             .setHeader(ACCEPT_HEADER_NAME, APPLICATION_JSON)
             .build();
-        try {
-            final HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-            if (response.statusCode() == HttpURLConnection.HTTP_OK) {
-                return Optional.of(response.body());
-            } else if (HttpURLConnection.HTTP_BAD_REQUEST == response.statusCode()) {
-                final AlmaErrorResponse almaErrorResponse = objectMapper.readValue(response.body(),
-                                                                                   AlmaErrorResponse.class);
-                if (userNotFound(almaErrorResponse)) {
-                    return Optional.empty();
-                } else {
-                    final String message = String.format(
-                        UNEXPECTED_RESPONSE_FETCHING_USER_MESSAGE_FORMAT,
-                        userID,
-                        response.statusCode(),
-                        response.body());
-                    throw new RuntimeException(message);
-                }
-            } else {
-                final String message = String.format(
-                    UNEXPECTED_RESPONSE_FETCHING_USER_MESSAGE_FORMAT,
-                    userID,
-                    response.statusCode(),
-                    response.body());
-                throw new RuntimeException(message);
-            }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
+    }
+
+    private Optional<String> existingUser(final String userID, final HttpResponse<String> response) {
+        if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+            return Optional.of(response.body());
+        }
+        if (HttpURLConnection.HTTP_BAD_REQUEST == response.statusCode() && userNotFound(response.body())) {
+            return Optional.empty();
         }
+        final String message = String.format(
+            UNEXPECTED_RESPONSE_FETCHING_USER_MESSAGE_FORMAT,
+            userID,
+            response.statusCode(),
+            response.body());
+        throw new AlmaResponseException(message, response.body());
     }
 
-    private boolean userNotFound(final AlmaErrorResponse almaErrorResponse) {
-        return almaErrorResponse.isErrorsExist() && almaErrorResponse.getErrorList().getError().stream()
-            .anyMatch(almaError -> ALMA_ERROR_CODE_USER_NOT_FOUND.equals(
-                almaError.getErrorCode()));
+    /**
+     * Fetches are hedged per API key, as every institution is its own Alma tenant with its own latencies.
+     **/
+    private CompletableFuture<HttpResponse<String>> sendFetchAsync(final HttpRequest request,
+                                                                   final String almaApikey) {
+        return AlmaCallEvent.timedAsync(request, () -> nonNull(hedgedRequestSenders)
+                                                           ? hedgedRequestSenders.forKey(almaApikey)
+                                                                 .sendAsync(request, BodyHandlers.ofString())
+                                                           : httpClient.sendAsync(request, BodyHandlers.ofString()));
     }
 
-    private void updateUser(SerializedUser user, String almaApikey) {
-        try {
-            final HttpRequest request = HttpRequest.newBuilder()
-                .PUT(HttpRequest.BodyPublishers.ofString(user.serializedXml()))
-                .uri(UriWrapper.fromUri(almaApiHost)
-                         .addChild(USERS_URL_PATH)
-                         .addChild(user.primaryId()).getUri())
-                .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
-                .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
-                .build();
-
-            final HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+    private boolean userNotFound(final String responseBody) {
+        return AlmaResponseException.extractErrorCodes(responseBody).contains(ALMA_ERROR_CODE_USER_NOT_FOUND);
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendUpsert(final HttpRequest request) {
+        return AlmaCallEvent.timedAsync(request, () -> httpClient.sendAsync(request, ErrorBodyHandlers.ofErrorBody()));
+    }
+
+    private CompletableFuture<Status> updateUser(SerializedUser user, String almaApikey) {
+        final HttpRequest request = HttpRequest.newBuilder()
+            .PUT(HttpRequest.BodyPublishers.ofByteArray(user.payload()))
+            .uri(UriWrapper.fromUri(almaApiHost)
+                     .addChild(USERS_URL_PATH)
+                     .addChild(user.primaryId()).getUri())
+            .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
+            .timeout(requestSettings.updateTimeout())
+            .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
+            .build();
+
+        return sendUpsert(request).thenApply(response -> {
             if (!successfulResponse(response)) {
                 final String message = String.format(
                     UNEXPECTED_RESPONSE_UPDATING_USER_MESSAGE_FORMAT,
@@ -133,25 +156,24 @@ public class HttpUrlConnectionAlmaUserUpserter extends AbstractHttpUrlConnection
                     redacter.redact(user.serializedXml()),
                     response.statusCode(),
                     response.body());
-                throw new RuntimeException(message);
+                throw new AlmaResponseException(message, response.body());
             }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
-        }
+            return Status.UPDATED;
+        });
     }
 
-    private void createUser(SerializedUser user, String almaApikey) {
-        try {
-            final HttpRequest request = HttpRequest.newBuilder()
-                .POST(HttpRequest.BodyPublishers.ofString(user.serializedXml()))
-                .uri(UriWrapper.fromUri(almaApiHost)
-                         .addChild(USERS_URL_PATH)
-                         .getUri())
-                .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
-                .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
-                .build();
-
-            final HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+    private CompletableFuture<Status> createUser(SerializedUser user, String almaApikey) {
+        final HttpRequest request = HttpRequest.newBuilder()
+            .POST(HttpRequest.BodyPublishers.ofByteArray(user.payload()))
+            .uri(UriWrapper.fromUri(almaApiHost)
+                     .addChild(USERS_URL_PATH)
+                     .getUri())
+            .setHeader(AUTHORIZATION_HEADER_NAME, APIKEY_KEY + SPACE_KEY + almaApikey)
+            .timeout(requestSettings.createTimeout())
+            .header(CONTENT_TYPE_HEADER_NAME, APPLICATION_XML)
+            .build();
+
+        return sendUpsert(request).thenApply(response -> {
             if (response.statusCode() != HttpURLConnection.HTTP_OK) {
                 final String message = String.format(
                     UNEXPECTED_RESPONSE_CREATING_USER_MESSAGE_FORMAT,
@@ -159,23 +181,45 @@ public class HttpUrlConnectionAlmaUserUpserter extends AbstractHttpUrlConnection
                     redacter.redact(user.serializedXml()),
                     response.statusCode(),
                     response.body());
-                throw new RuntimeException(message);
+                throw new AlmaResponseException(message, response.body());
             }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
+            return Status.CREATED;
+        });
+    }
+
+    private CompletableFuture<Status> updateUserIfChanged(SerializedUser user, String currentUserJson,
+                                                          String almaApikey, boolean passwordInAlma) {
+        var ignoredFields = passwordInAlma ? VOLATILE_USER_FIELDS_AND_PASSWORD : VOLATILE_USER_FIELDS;
+        if (AlmaPayloadComparator.isUnchanged(user.payload(), currentUserJson, ignoredFields,
+                                                OPTIONAL_USER_FIELDS)) {
+            LOGGER.debug(SKIPPING_UNCHANGED_USER, user.primaryId());
+            return CompletableFuture.completedFuture(Status.UNCHANGED);
+        }
+        return updateUser(user, almaApikey);
+    }
+
+    private static UpsertResult toResult(Status status, Throwable failure, long startedNanos) {
+        if (failure == null) {
+            return UpsertResult.succeeded(status, startedNanos);
         }
+        LOGGER.warn(LOG_MESSAGE_COMMUNICATION_PROBLEM, UpsertResult.unwrap(failure));
+        return UpsertResult.failed(failure, startedNanos);
     }
 
     @Override
-    public boolean upsertUser(SerializedUser user, String almaApikey) {
+    public CompletableFuture<UpsertResult> upsertUserAsync(SerializedUser user, String almaApikey,
+                                                           boolean passwordInAlma) {
+        final long started = System.nanoTime();
         try {
-            final Optional<String> almaUser = fetchUser(user.primaryId(), almaApikey);
-            almaUser.ifPresentOrElse(currentPartner -> updateUser(user, almaApikey),
-                                     () -> createUser(user, almaApikey));
-            return true;
-        } catch (Exception e) {
-            LOGGER.warn(LOG_MESSAGE_COMMUNICATION_PROBLEM, e);
-            return false;
+            return sendFetchAsync(fetchUserRequest(user.primaryId(), almaApikey), almaApikey)
+                       .thenCompose(response -> existingUser(user.primaryId(), response)
+                                                    .map(currentUser -> updateUserIfChanged(user, currentUser,
+                                                                                            almaApikey,
+                                                                                            passwordInAlma))
+                                                    .orElseGet(() -> createUser(user, almaApikey)))
+                       .handle((status, failure) -> toResult(status, failure, started));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(toResult(null, e, started));
         }
     }
 
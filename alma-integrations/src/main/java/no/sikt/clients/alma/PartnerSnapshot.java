@@ -0,0 +1,25 @@
+package no.sikt.clients.alma;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The partners of the network zone as Alma returned them, keyed by partner code.
+ **/
+public class PartnerSnapshot {
+
+    private final transient Map<String, JsonNode> partnersByCode;
+
+    public PartnerSnapshot(Map<String, JsonNode> partnersByCode) {
+        this.partnersByCode = Map.copyOf(partnersByCode);
+    }
+
+    public Optional<JsonNode> find(String code) {
+        return Optional.ofNullable(partnersByCode.get(code));
+    }
+
+    public int size() {
+        return partnersByCode.size();
+    }
+}
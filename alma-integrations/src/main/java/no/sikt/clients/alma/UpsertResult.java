@@ -0,0 +1,40 @@
+package no.sikt.clients.alma;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Outcome of one upsert: what was done in Alma, how long it took, and the error codes Alma gave if it failed.
+ **/
+public record UpsertResult(Status status, Duration latency, List<String> almaErrorCodes) {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        UNCHANGED,
+        FAILED
+    }
+
+    public boolean isSuccessful() {
+        return status != Status.FAILED;
+    }
+
+    /* default */ static UpsertResult succeeded(Status status, long startedNanos) {
+        return new UpsertResult(status, Duration.ofNanos(System.nanoTime() - startedNanos), List.of());
+    }
+
+    /* default */ static UpsertResult failed(Throwable failure, long startedNanos) {
+        var cause = unwrap(failure);
+        var errorCodes = cause instanceof AlmaResponseException almaResponseException
+                             ? almaResponseException.getErrorCodes()
+                             : List.<String>of();
+        return new UpsertResult(Status.FAILED, Duration.ofNanos(System.nanoTime() - startedNanos), errorCodes);
+    }
+
+    /* default */ static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null
+                   ? failure.getCause()
+                   : failure;
+    }
+}
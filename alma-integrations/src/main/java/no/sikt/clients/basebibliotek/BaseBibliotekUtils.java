@@ -2,7 +2,7 @@ package no.sikt.clients.basebibliotek;
 
 import java.util.Locale;
 import java.util.Objects;
-import no.nb.basebibliotek.generated.Record;
+import no.sikt.commons.LibraryRecord;
 
 public final class BaseBibliotekUtils {
     public static final String COUNTRY_CODE_NORWEGIAN = "NO";
@@ -14,20 +14,16 @@ public final class BaseBibliotekUtils {
     private BaseBibliotekUtils() {
     }
 
-    public static boolean isNorwegian(final Record record) {
+    public static boolean isNorwegian(final LibraryRecord record) {
         return COUNTRY_CODE_NORWEGIAN.equalsIgnoreCase(record.getLandkode());
     }
 
-    public static boolean isAlmaOrBibsysLibrary(final Record record) {
+    public static boolean isAlmaOrBibsysLibrary(final LibraryRecord record) {
         return Objects.nonNull(record.getKatsyst()) && isAlmaOrBibsysLibrary(record.getKatsyst());
     }
 
     public static boolean isAlmaOrBibsysLibrary(final String katsyst) {
-        return katsyst
-                   .toLowerCase(Locale.ROOT)
-                   .contains(KATSYST_BIBSYS)
-               || katsyst
-                      .toLowerCase(Locale.ROOT)
-                      .contains(KATSYST_ALMA);
+        var lowerCaseKatsyst = katsyst.toLowerCase(Locale.ROOT);
+        return lowerCaseKatsyst.contains(KATSYST_BIBSYS) || lowerCaseKatsyst.contains(KATSYST_ALMA);
     }
 }
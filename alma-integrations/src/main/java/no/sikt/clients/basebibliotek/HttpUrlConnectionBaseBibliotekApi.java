@@ -2,15 +2,16 @@ package no.sikt.clients.basebibliotek;
 
 import jakarta.xml.bind.DataBindingException;
 import jakarta.xml.bind.JAXB;
-import java.io.StringReader;
+import java.io.InputStream;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.util.Optional;
 import no.nb.basebibliotek.generated.BaseBibliotek;
-import no.sikt.clients.BaseBibliotekApi;
 import no.sikt.clients.AbstractHttpUrlConnectionApi;
+import no.sikt.clients.BaseBibliotekApi;
+import no.sikt.clients.DecompressingBodyHandlers;
+import no.sikt.clients.HttpClientFactory;
+import no.sikt.commons.flightrecorder.XmlBindingEvent;
 import nva.commons.core.paths.UriWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +23,7 @@ public class HttpUrlConnectionBaseBibliotekApi extends AbstractHttpUrlConnection
     private final transient URI host;
 
     public HttpUrlConnectionBaseBibliotekApi(final URI host) {
-        super(HttpClient.newHttpClient());
+        super(HttpClientFactory.sharedClient());
         this.host = host;
     }
 
@@ -31,21 +32,27 @@ public class HttpUrlConnectionBaseBibliotekApi extends AbstractHttpUrlConnection
         HttpRequest request = HttpRequest.newBuilder()
                                   .GET()
                                   .uri(UriWrapper.fromUri(host).addChild(bibNr).getUri())
+                                  .timeout(requestTimeout)
+                                  .header(DecompressingBodyHandlers.ACCEPT_ENCODING_HEADER_NAME,
+                                          DecompressingBodyHandlers.SUPPORTED_ENCODINGS)
                                   .build();
 
-        final Optional<String> response = doRequest(request, BodyHandlers.ofString());
+        return doRequest(request, body -> parseBasebibliotekXml(bibNr, body));
+    }
+
+    private BaseBibliotek parseBasebibliotekXml(String bibNr, InputStream xml) {
+        var event = XmlBindingEvent.start(XmlBindingEvent.UNMARSHAL, BaseBibliotek.class, bibNr);
         try {
-            return response.map(this::parseBasebibliotekXml);
+            var baseBibliotek = JAXB.unmarshal(xml, BaseBibliotek.class);
+            event.complete(0);
+            return baseBibliotek;
         } catch (DataBindingException e) {
-            LOGGER.warn(String.format("Unable to unmarshal XML from BaseBibliotek: %s", response.get()), e);
-            return Optional.empty();
+            event.fail();
+            LOGGER.warn(String.format("Unable to unmarshal XML from BaseBibliotek for bibnr %s", bibNr), e);
+            return null;
         }
     }
 
-    private BaseBibliotek parseBasebibliotekXml(String xml) {
-        return JAXB.unmarshal(new StringReader(xml), BaseBibliotek.class);
-    }
-
     @Override
     protected Logger getLogger() {
         return LOGGER;
@@ -1,55 +1,41 @@
 package no.sikt.commons;
 
-import jakarta.xml.bind.JAXB;
-import java.io.StringWriter;
 import java.util.List;
-import java.util.Locale;
-import no.nb.basebibliotek.generated.BaseBibliotek;
-import no.nb.basebibliotek.generated.Record;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import no.sikt.rsp.AlmaCodeProvider;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public abstract class AlmaObjectConverter {
 
-    private static final Logger logger = LoggerFactory.getLogger(AlmaObjectConverter.class);
-    protected static final String EMAIL_PATTERN = ".+@.+";
-    protected static final String COULD_NOT_CONVERT_RECORD = "Could not convert record, missing %s, record: %s";
+    protected static final Pattern EMAIL_PATTERN = Pattern.compile(".+@.+");
     public static final String PERMANENTLY_CLOSED = "X";
     public static final String LINEFEED = "\n";
     public static final String INSTITUTION_CODE_PREFIX = "47BIBSYS_";
     protected final transient AlmaCodeProvider almaCodeProvider;
-    protected final transient BaseBibliotek baseBibliotek;
+    protected final transient LibraryRecord libraryRecord;
 
-    public AlmaObjectConverter(BaseBibliotek baseBibliotek) {
-        this(null, baseBibliotek);
+    public AlmaObjectConverter(LibraryRecord libraryRecord) {
+        this(null, libraryRecord);
     }
 
-    public AlmaObjectConverter(AlmaCodeProvider almaCodeProvider, BaseBibliotek baseBibliotek) {
+    public AlmaObjectConverter(AlmaCodeProvider almaCodeProvider, LibraryRecord libraryRecord) {
         this.almaCodeProvider = almaCodeProvider;
-        this.baseBibliotek = baseBibliotek;
+        this.libraryRecord = libraryRecord;
     }
 
-    protected String toXml(Record record) {
-        StringWriter xmlWriter = new StringWriter();
-        JAXB.marshal(record, xmlWriter);
-        return xmlWriter.toString();
+    protected String extractSymbol(final LibraryRecord record) {
+        return record.getSymbol();
     }
 
-    protected String extractSymbol(final Record record) {
-        return record.getLandkode().toUpperCase(Locale.ROOT) + HandlerUtils.HYPHEN + record.getBibnr();
+    /**
+     * Converts the record when it has every required field, and otherwise says which ones it is missing.
+     **/
+    protected <T> ConversionResult<T> convertWhenValid(Function<LibraryRecord, T> conversion) {
+        List<String> missingFields = findMissingRequiredFields(libraryRecord);
+        return missingFields.isEmpty()
+                   ? ConversionResult.converted(conversion.apply(libraryRecord))
+                   : ConversionResult.invalid(libraryRecord, missingFields);
     }
 
-    protected boolean satisfiesConstraints(Record record) {
-        List<String> missingFields = findMissingRequiredFields(record);
-        if (!missingFields.isEmpty()) {
-            logger.warn(String.format(COULD_NOT_CONVERT_RECORD, missingFields, toXml(record)));
-        }
-
-        return missingFields.isEmpty();
-    }
-
-    protected abstract void logProblemAndThrowException(Record record);
-
-    protected abstract List<String> findMissingRequiredFields(Record record);
+    protected abstract List<String> findMissingRequiredFields(LibraryRecord record);
 }
@@ -0,0 +1,68 @@
+package no.sikt.commons;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import software.amazon.awssdk.services.s3.S3Client;
+
+/**
+ * Releases the successor of a chunk when closed after the chunk completed, or shortly before the invocation runs out
+ * of time, whichever comes first. Lambda kills a timed out invocation without running finally blocks, and the lane of
+ * the chunk would otherwise stay pending for good.
+ *
+ * <p>A failed invocation keeps the successor pending. Lambda retries the chunk, and a released successor would run
+ * next to the retry in the same lane. {@link FailedChunkHandler} releases it once the retries are used up.
+ **/
+public final class ChunkReleaseGuard implements AutoCloseable {
+
+    public static final Duration RELEASE_MARGIN = Duration.ofSeconds(30);
+
+    private final transient AtomicBoolean released = new AtomicBoolean();
+    private final transient String chunk;
+    private final transient S3Client s3Client;
+    private final transient String bucketName;
+    private final transient CompletableFuture<Void> deadlineRelease;
+    private transient boolean completed;
+
+    private ChunkReleaseGuard(String chunk, S3Client s3Client, String bucketName, Duration remainingTime) {
+        this.chunk = chunk;
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        var delay = remainingTime.minus(RELEASE_MARGIN);
+        this.deadlineRelease = delay.isPositive()
+                                   ? CompletableFuture.runAsync(this::release, CompletableFuture.delayedExecutor(
+                                       delay.toMillis(), TimeUnit.MILLISECONDS))
+                                   : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Guards the chunk for an invocation with the given time left. Without time to spare before the margin, the
+     * successor is only released on close after the chunk completed.
+     **/
+    public static ChunkReleaseGuard start(String chunk, S3Client s3Client, String bucketName,
+                                          Duration remainingTime) {
+        return new ChunkReleaseGuard(chunk, s3Client, bucketName, remainingTime);
+    }
+
+    /**
+     * Marks the chunk as done, so that closing the guard releases the successor.
+     **/
+    public void complete() {
+        completed = true;
+    }
+
+    @Override
+    public void close() {
+        deadlineRelease.cancel(false);
+        if (completed) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            ChunkReleaser.releaseNext(chunk, s3Client, bucketName);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package no.sikt.commons;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import no.sikt.commons.retry.RetryBackoff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+/**
+ * Keeps a paced dispatch going. The cronjob only puts as many chunks in the watched folder as the handler may run at
+ * once, and parks the rest under {@link #PENDING_FOLDER}. A chunk names its successor in a "#next=" header, and the
+ * handler moves that successor into the watched folder when it is done, which starts the next invocation. A lane
+ * stalls for good at a successor that is never released, so failed releases are retried before giving up.
+ **/
+public final class ChunkReleaser {
+
+    public static final String NEXT_HEADER_PREFIX = "#next=";
+    public static final String PENDING_FOLDER = "pending/";
+    private static final Logger logger = LoggerFactory.getLogger(ChunkReleaser.class);
+    private static final String LINE_DELIMITER = "\n";
+    private static final String RELEASED = "Released chunk {}";
+    private static final String ALREADY_RELEASED = "Chunk {} is no longer pending, nothing to release";
+    private static final String NOT_PENDING = "Ignoring next chunk {} outside the pending folder";
+    private static final String COULD_NOT_RELEASE = "Could not release chunk {}";
+    private static final String COULD_NOT_DELETE = "Released chunk {} could not be removed from the pending folder";
+    private static final String GAVE_UP_RELEASING = "Gave up releasing chunk {}, its lane is stalled";
+    private static final RetryBackoff RELEASE_BACKOFF = new RetryBackoff(3, Duration.ofMillis(200));
+
+    private ChunkReleaser() {
+    }
+
+    public static Optional<String> findNextChunkKey(String chunk) {
+        return Arrays.stream(chunk.split(LINE_DELIMITER))
+                   .map(String::trim)
+                   .takeWhile(line -> line.startsWith(HandlerUtils.CHUNK_HEADER_PREFIX))
+                   .filter(line -> line.startsWith(NEXT_HEADER_PREFIX))
+                   .map(line -> line.substring(NEXT_HEADER_PREFIX.length()).trim())
+                   .findFirst();
+    }
+
+    /**
+     * Moves the successor named by the chunk, if any, out of the pending folder. Never throws, since a failed release
+     * must not fail the chunk that has already been sent to Alma.
+     **/
+    public static void releaseNext(String chunk, S3Client s3Client, String bucketName) {
+        findNextChunkKey(chunk).ifPresent(pendingKey -> releaseWithRetries(pendingKey, s3Client, bucketName));
+    }
+
+    private static void releaseWithRetries(String pendingKey, S3Client s3Client, String bucketName) {
+        if (!pendingKey.startsWith(PENDING_FOLDER)) {
+            logger.warn(NOT_PENDING, pendingKey);
+            return;
+        }
+        var releasedKey = pendingKey.substring(PENDING_FOLDER.length());
+        if (!RELEASE_BACKOFF.attempt(() -> copy(pendingKey, releasedKey, s3Client, bucketName))) {
+            logger.error(GAVE_UP_RELEASING, pendingKey);
+            return;
+        }
+        // the copy already started the next invocation, so it is never repeated when only the delete fails
+        RELEASE_BACKOFF.attempt(() -> delete(pendingKey, s3Client, bucketName));
+    }
+
+    private static boolean copy(String pendingKey, String releasedKey, S3Client s3Client, String bucketName) {
+        try {
+            s3Client.copyObject(CopyObjectRequest.builder()
+                                    .sourceBucket(bucketName)
+                                    .sourceKey(pendingKey)
+                                    .destinationBucket(bucketName)
+                                    .destinationKey(releasedKey)
+                                    .build());
+            logger.info(RELEASED, releasedKey);
+            return true;
+        } catch (NoSuchKeyException e) {
+            logger.info(ALREADY_RELEASED, pendingKey);
+            return true;
+        } catch (SdkException e) {
+            logger.warn(COULD_NOT_RELEASE, pendingKey, e);
+            return false;
+        }
+    }
+
+    private static boolean delete(String pendingKey, S3Client s3Client, String bucketName) {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(pendingKey).build());
+            return true;
+        } catch (SdkException e) {
+            logger.warn(COULD_NOT_DELETE, pendingKey, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package no.sikt.commons;
+
+import java.util.List;
+
+/**
+ * What came out of converting a Basebibliotek record: either the Alma object, or the fields the record was missing.
+ * An invalid record is an expected outcome and is returned rather than thrown, so a batch full of them costs no
+ * stack traces. The record is only rendered when {@link Invalid#toString()} is called, which a parameterized log
+ * statement does only when its level is enabled.
+ **/
+public sealed interface ConversionResult<T> {
+
+    static <T> ConversionResult<T> converted(T value) {
+        return new Converted<>(value);
+    }
+
+    static <T> ConversionResult<T> invalid(LibraryRecord record, List<String> missingFields) {
+        return new Invalid<>(record, List.copyOf(missingFields));
+    }
+
+    record Converted<T>(T value) implements ConversionResult<T> {
+
+    }
+
+    record Invalid<T>(LibraryRecord record, List<String> missingFields) implements ConversionResult<T> {
+
+        public static final String COULD_NOT_CONVERT_RECORD = "Could not convert record, missing %s, record: %s";
+        private static final String FIELD_DELIMITER = ", ";
+
+        public String bibnr() {
+            return record.getBibnr();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(COULD_NOT_CONVERT_RECORD, String.join(FIELD_DELIMITER, missingFields), record);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package no.sikt.commons;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import no.sikt.commons.retry.RetryManifest;
+import no.unit.nva.s3.S3Driver;
+import nva.commons.core.JacocoGenerated;
+import nva.commons.core.paths.UnixPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3Client;
+
+/**
+ * On-failure destination of the chunk handlers. Lambda sends the original S3 event here once every retry of a chunk
+ * has failed, and the successor of the chunk is released so that the rest of its lane still runs.
+ **/
+public class FailedChunkHandler implements RequestStreamHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FailedChunkHandler.class);
+    private static final Gson GSON = new Gson();
+    private static final String GAVE_UP_ON_CHUNK = "Retries exhausted for chunk {} in {}, releasing its successor";
+    private static final String NO_CHUNK_IN_EVENT = "No S3 object in failed invocation, nothing to release";
+
+    private final transient S3Client s3Client;
+
+    @JacocoGenerated
+    public FailedChunkHandler() {
+        this(S3Driver.defaultS3Client().build());
+    }
+
+    public FailedChunkHandler(S3Client s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) {
+        var failedInvocation = GSON.fromJson(new InputStreamReader(input, StandardCharsets.UTF_8),
+                                             FailedInvocation.class);
+        failedObject(failedInvocation)
+            .filter(object -> !RetryManifest.isManifestKey(object.key()))
+            .ifPresentOrElse(this::releaseSuccessor, () -> logger.info(NO_CHUNK_IN_EVENT));
+    }
+
+    private void releaseSuccessor(FailedObject object) {
+        logger.info(GAVE_UP_ON_CHUNK, object.key(), object.bucket());
+        var chunk = new S3Driver(s3Client, object.bucket()).getFile(UnixPath.of(object.key()));
+        ChunkReleaser.releaseNext(chunk, s3Client, object.bucket());
+    }
+
+    private static Optional<FailedObject> failedObject(FailedInvocation failedInvocation) {
+        return Optional.ofNullable(failedInvocation)
+                   .map(FailedInvocation::requestPayload)
+                   .map(RequestPayload::records)
+                   .flatMap(records -> records.stream().findFirst())
+                   .map(S3Record::s3)
+                   .filter(s3 -> s3.bucket() != null && s3.object() != null)
+                   .map(s3 -> new FailedObject(s3.bucket().name(), s3.object().key()));
+    }
+
+    private record FailedInvocation(RequestPayload requestPayload) {
+
+    }
+
+    private record RequestPayload(@SerializedName("Records") List<S3Record> records) {
+
+    }
+
+    private record S3Record(S3Entity s3) {
+
+    }
+
+    private record S3Entity(Bucket bucket, S3ObjectEntity object) {
+
+    }
+
+    private record Bucket(String name) {
+
+    }
+
+    private record S3ObjectEntity(String key) {
+
+    }
+
+    private record FailedObject(String bucket, String key) {
+
+    }
+}
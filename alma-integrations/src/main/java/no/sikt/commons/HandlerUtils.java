@@ -1,16 +1,15 @@
 package no.sikt.commons;
 
 import com.amazonaws.services.lambda.runtime.events.S3Event;
-import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
-import no.nb.basebibliotek.generated.BaseBibliotek;
 import no.sikt.clients.BaseBibliotekApi;
+import no.sikt.commons.flightrecorder.BasebibliotekFetchEvent;
+import no.sikt.commons.flightrecorder.S3ReadEvent;
 import no.unit.nva.s3.S3Driver;
-import nva.commons.core.paths.UnixPath;
 import nva.commons.core.paths.UriWrapper;
 import software.amazon.awssdk.services.s3.S3Client;
 
@@ -21,45 +20,57 @@ public class HandlerUtils {
     public static final String COULD_NOT_FETCH_BASEBIBLIOTEK_REPORT_MESSAGE = " could not fetch basebibliotek\n";
     public static final String REPORT_FILE_NAME_PREFIX = "report-";
     public static final String HYPHEN = "-";
+    public static final String CHUNK_HEADER_PREFIX = "#";
 
     public static String readFile(S3Event event, S3Client s3Client) {
         var s3Driver = new S3Driver(s3Client, extractBucketName(event));
         var fileUri = createS3BucketUri(event);
-        return s3Driver.getFile(UriWrapper.fromUri(fileUri).toS3bucketPath());
+        return S3ReadEvent.timed(extractBucketName(event), extractFilename(event),
+                                 () -> s3Driver.getFile(UriWrapper.fromUri(fileUri).toS3bucketPath()));
     }
 
+    /**
+     * The bibnrs of a chunk file. Lines starting with "#" are headers, such as the institution filter of a backfill.
+     **/
     public static List<String> getBibNrList(String bibNrFile) {
-        return Arrays.stream(bibNrFile.split("\n")).map(String::trim).collect(Collectors.toList());
+        return Arrays.stream(bibNrFile.split("\n"))
+                   .map(String::trim)
+                   .filter(line -> !line.startsWith(CHUNK_HEADER_PREFIX))
+                   .collect(Collectors.toList());
     }
 
-    public static List<BaseBibliotek> generateBasebibliotek(List<String> bibnrList, StringBuilder reportStringBuilder,
-                                                            BaseBibliotekApi baseBibliotekApi) {
-        final List<BaseBibliotek> basebiblioteks = new ArrayList<>();
+    /**
+     * Fetches the libraries and keeps only their {@link LibraryRecord} projection.
+     **/
+    public static List<LibraryRecord> fetchLibraryRecords(List<String> bibnrList, ReportSink reportSink,
+                                                          BaseBibliotekApi baseBibliotekApi) {
+        final List<LibraryRecord> libraryRecords = new ArrayList<>();
         for (final String bibnr : bibnrList) {
-            baseBibliotekApi.fetchBasebibliotek(bibnr)
-                .ifPresentOrElse(basebiblioteks::add, () ->
-                                                          reportStringBuilder
-                                                              .append(bibnr)
-                                                              .append(
-                                                                  COULD_NOT_FETCH_BASEBIBLIOTEK_REPORT_MESSAGE)
-                );
+            var event = BasebibliotekFetchEvent.start(bibnr);
+            var records = baseBibliotekApi.fetchBasebibliotek(bibnr).map(LibraryRecord::fromBaseBibliotek);
+            event.complete(records.map(List::size).orElse(0));
+            records.ifPresentOrElse(libraryRecords::addAll, () ->
+                                                        reportSink
+                                                            .append(bibnr)
+                                                            .append(COULD_NOT_FETCH_BASEBIBLIOTEK_REPORT_MESSAGE)
+            );
         }
-        return basebiblioteks;
+        return libraryRecords;
     }
 
-    public static void reportToS3Bucket(StringBuilder reportStringBuilder, S3Event s3Event, S3Client s3Client,
-                                        String reportS3BucketName, String handlerName) throws IOException {
-        var report = reportStringBuilder.toString();
-        var s3Driver = new S3Driver(s3Client, reportS3BucketName);
-        s3Driver.insertFile(UnixPath.of(extractReportFilename(s3Event, handlerName)),
-                            report);
+    /**
+     * Opens a sink that streams the report for the file in the given event to the report bucket.
+     **/
+    public static ReportSink openReportSink(S3Event s3Event, S3Client s3Client, String reportS3BucketName,
+                                            String handlerName) {
+        return new S3MultipartReportSink(s3Client, reportS3BucketName, extractReportFilename(s3Event, handlerName));
     }
 
     public static String extractReportFilename(S3Event s3Event, String handlerName) {
         return REPORT_FILE_NAME_PREFIX + handlerName + HYPHEN + extractFilename(s3Event);
     }
 
-    private static String extractBucketName(S3Event event) {
+    public static String extractBucketName(S3Event event) {
         return event.getRecords().get(SINGLE_EXPECTED_RECORD).getS3().getBucket().getName();
     }
 
@@ -0,0 +1,280 @@
+package no.sikt.commons;
+
+import jakarta.xml.bind.JAXBElement;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.StringJoiner;
+import javax.xml.datatype.XMLGregorianCalendar;
+import no.nb.basebibliotek.generated.Aut;
+import no.nb.basebibliotek.generated.BaseBibliotek;
+import no.nb.basebibliotek.generated.Eressurser;
+import no.nb.basebibliotek.generated.Record;
+import no.sikt.lum.UserGroupConverter;
+import nva.commons.core.StringUtils;
+
+/**
+ * The part of a Basebibliotek record that the converters read. Records are projected as soon as they are fetched, so
+ * the JAXB graph with every exported field can be collected right away. Values with few distinct values across the
+ * registry, such as country codes, library types and postal places, are interned and shared between records.
+ **/
+public final class LibraryRecord {
+
+    public static final String NNCIP_URI = "nncip_uri";
+    private static final String REDACTED = "redacted";
+    private static final char PREFIX_SEPARATOR = '-';
+
+    private final transient String bibnr;
+    private final transient String landkode;
+    private final transient String bibltype;
+    private final transient String katsyst;
+    private final transient String inst;
+    private final transient String aut;
+    private final transient String tlf;
+    private final transient String epostAdr;
+    private final transient String epostBest;
+    private final transient String nncipUri;
+    private final transient PostalAddress postAddress;
+    private final transient PostalAddress visitingAddress;
+    private final transient Closure closure;
+    private transient Derived derived;
+
+    private LibraryRecord(Record record) {
+        this.bibnr = record.getBibnr();
+        this.landkode = intern(record.getLandkode());
+        this.bibltype = intern(record.getBibltype());
+        this.katsyst = intern(record.getKatsyst());
+        this.inst = record.getInst();
+        this.aut = Optional.ofNullable(record.getAut()).map(Aut::getContent).orElse(null);
+        this.tlf = record.getTlf();
+        this.epostAdr = record.getEpostAdr();
+        this.epostBest = record.getEpostBest();
+        this.nncipUri = extractNncipUri(record.getEressurser());
+        this.postAddress = new PostalAddress(record.getPadr(), intern(record.getPpostnr()),
+                                             intern(record.getPpoststed()));
+        this.visitingAddress = new PostalAddress(record.getVadr(), intern(record.getVpostnr()),
+                                                 intern(record.getVpoststed()));
+        this.closure = new Closure(intern(record.getStengt()), toInstant(record.getStengtFra()),
+                                   toInstant(record.getStengtTil()));
+    }
+
+    public static LibraryRecord from(Record record) {
+        return new LibraryRecord(record);
+    }
+
+    public static List<LibraryRecord> fromBaseBibliotek(BaseBibliotek baseBibliotek) {
+        return baseBibliotek.getRecord().stream().map(LibraryRecord::from).toList();
+    }
+
+    public String getBibnr() {
+        return bibnr;
+    }
+
+    public String getLandkode() {
+        return landkode;
+    }
+
+    public String getBibltype() {
+        return bibltype;
+    }
+
+    public String getKatsyst() {
+        return katsyst;
+    }
+
+    public String getInst() {
+        return inst;
+    }
+
+    /**
+     * The library's password, if it has one. Left out of {@link #toString()}.
+     **/
+    public String getAut() {
+        return aut;
+    }
+
+    public String getTlf() {
+        return tlf;
+    }
+
+    public String getEpostAdr() {
+        return epostAdr;
+    }
+
+    public String getEpostBest() {
+        return epostBest;
+    }
+
+    public Optional<String> getNncipUri() {
+        return Optional.ofNullable(nncipUri);
+    }
+
+    public String getPadr() {
+        return postAddress.adr();
+    }
+
+    public String getPpostnr() {
+        return postAddress.postnr();
+    }
+
+    public String getPpoststed() {
+        return postAddress.poststed();
+    }
+
+    public String getVadr() {
+        return visitingAddress.adr();
+    }
+
+    public String getVpostnr() {
+        return visitingAddress.postnr();
+    }
+
+    public String getVpoststed() {
+        return visitingAddress.poststed();
+    }
+
+    public String getStengt() {
+        return closure.stengt();
+    }
+
+    public Instant getStengtFra() {
+        return closure.fra();
+    }
+
+    public Instant getStengtTil() {
+        return closure.til();
+    }
+
+    /**
+     * The bibnr without a country prefix, as used in Alma user ids.
+     **/
+    public String getLibraryNumber() {
+        return derived().libraryNumber();
+    }
+
+    /**
+     * The ISIL-style symbol, upper case country code and bibnr, or null when the record has no country code.
+     **/
+    public String getSymbol() {
+        return derived().symbol();
+    }
+
+    public String getUserGroupCode() {
+        return derived().userGroupCode();
+    }
+
+    @Override
+    public String toString() {
+        var joiner = new StringJoiner(", ", "LibraryRecord[", "]");
+        append(joiner, "bibnr", bibnr);
+        append(joiner, "landkode", landkode);
+        append(joiner, "bibltype", bibltype);
+        append(joiner, "katsyst", katsyst);
+        append(joiner, "inst", inst);
+        append(joiner, "aut", Objects.nonNull(aut) ? REDACTED : null);
+        append(joiner, "tlf", tlf);
+        append(joiner, "epost_adr", epostAdr);
+        append(joiner, "epost_best", epostBest);
+        append(joiner, NNCIP_URI, nncipUri);
+        append(joiner, "padr", postAddress.adr());
+        append(joiner, "ppostnr", postAddress.postnr());
+        append(joiner, "ppoststed", postAddress.poststed());
+        append(joiner, "vadr", visitingAddress.adr());
+        append(joiner, "vpostnr", visitingAddress.postnr());
+        append(joiner, "vpoststed", visitingAddress.poststed());
+        append(joiner, "stengt", closure.stengt());
+        append(joiner, "stengt_fra", closure.fra());
+        append(joiner, "stengt_til", closure.til());
+        return joiner.toString();
+    }
+
+    /**
+     * Values the converters derive from the record, worked out on first use and kept, since a chunk converts every
+     * record once for each institution. Racing threads compute equal values, so the field needs no locking.
+     **/
+    private Derived derived() {
+        var values = derived;
+        if (Objects.isNull(values)) {
+            var libraryNumber = stripCountryPrefix(bibnr);
+            values = new Derived(libraryNumber,
+                                 Objects.nonNull(landkode)
+                                     ? landkode.toUpperCase(Locale.ROOT) + PREFIX_SEPARATOR + bibnr
+                                     : null,
+                                 UserGroupConverter.userGroupCode(libraryNumber, bibltype));
+            derived = values;
+        }
+        return values;
+    }
+
+    /**
+     * Drops every run of word characters that is followed by a dash, like "NO-" in "NO-0030100". Same result as
+     * {@code replaceAll("\\w+-", "")}, without a regex for every record.
+     **/
+    /* default */ static String stripCountryPrefix(String bibnr) {
+        if (bibnr == null || bibnr.indexOf(PREFIX_SEPARATOR) < 0) {
+            return bibnr;
+        }
+        var stripped = new StringBuilder(bibnr.length());
+        var runStart = 0;
+        for (var i = 0; i < bibnr.length(); i++) {
+            var current = bibnr.charAt(i);
+            if (current == PREFIX_SEPARATOR && stripped.length() > runStart) {
+                stripped.setLength(runStart);
+            } else {
+                stripped.append(current);
+                if (!isWordCharacter(current)) {
+                    runStart = stripped.length();
+                }
+            }
+        }
+        return stripped.toString();
+    }
+
+    private static boolean isWordCharacter(char character) {
+        return character >= 'a' && character <= 'z'
+               || character >= 'A' && character <= 'Z'
+               || character >= '0' && character <= '9'
+               || character == '_';
+    }
+
+
+    private static void append(StringJoiner joiner, String name, Object value) {
+        if (Objects.nonNull(value)) {
+            joiner.add(name + "=" + value);
+        }
+    }
+
+    private static String intern(String value) {
+        return Objects.nonNull(value) ? value.intern() : null;
+    }
+
+    private static Instant toInstant(XMLGregorianCalendar date) {
+        return Objects.nonNull(date) ? date.toGregorianCalendar().toInstant() : null;
+    }
+
+    private static String extractNncipUri(Eressurser eressurser) {
+        if (Objects.isNull(eressurser)) {
+            return null;
+        }
+        return eressurser.getOAIOrSRUOrArielIp().stream()
+                   .filter(element -> NNCIP_URI.equals(element.getName().getLocalPart()))
+                   .map(JAXBElement::getValue)
+                   .filter(StringUtils::isNotEmpty)
+                   .findFirst()
+                   .orElse(null);
+    }
+
+    private record PostalAddress(String adr, String postnr, String poststed) {
+
+    }
+
+    private record Closure(String stengt, Instant fra, Instant til) {
+
+    }
+
+    private record Derived(String libraryNumber, String symbol, String userGroupCode) {
+
+    }
+}
@@ -0,0 +1,23 @@
+package no.sikt.commons;
+
+import java.io.Closeable;
+
+/**
+ * Destination for report lines that are written while a handler runs, so the full report never has to be held in
+ * memory. The report is published by {@link #complete()}. A sink that is closed without being completed discards
+ * what was written, so a failed run never leaves a partial report that looks whole.
+ **/
+public interface ReportSink extends Closeable {
+
+    ReportSink append(String text);
+
+    long getLineCount();
+
+    String getLocation();
+
+    void complete();
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,164 @@
+package no.sikt.commons;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Streams a report to S3 as a multipart upload, holding at most one part in memory. Reports smaller than one part
+ * are written with a single put when the sink is completed. An upload that fails, or a sink that is closed without
+ * being completed, is aborted so that no orphaned parts are left in the bucket. Not meant to be fed from several
+ * threads at once.
+ **/
+public class S3MultipartReportSink implements ReportSink {
+
+    public static final int MINIMUM_PART_SIZE_BYTES = 5 * 1024 * 1024;
+    private static final String S3_LOCATION_TEMPLATE = "s3://%s/%s";
+    private static final char LINE_BREAK = '\n';
+    private static final String FINISHED_MESSAGE = "Report is already completed or discarded: ";
+
+    private final transient S3Client s3Client;
+    private final transient String bucketName;
+    private final transient String key;
+    private final transient int partSizeBytes;
+    private final transient ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final transient List<CompletedPart> completedParts = new ArrayList<>();
+    private transient String uploadId;
+    private transient long lineCount;
+    private transient boolean finished;
+
+    public S3MultipartReportSink(S3Client s3Client, String bucketName, String key) {
+        this(s3Client, bucketName, key, MINIMUM_PART_SIZE_BYTES);
+    }
+
+    /**
+     * Creates a sink with a custom part size. S3 rejects parts below 5 MiB except for the last one, so anything
+     * smaller is only useful against a fake client.
+     **/
+    public S3MultipartReportSink(S3Client s3Client, String bucketName, String key, int partSizeBytes) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSizeBytes = partSizeBytes;
+    }
+
+    @Override
+    public ReportSink append(String text) {
+        if (finished) {
+            throw new IllegalStateException(FINISHED_MESSAGE + getLocation());
+        }
+        buffer.writeBytes(text.getBytes(UTF_8));
+        lineCount += text.chars().filter(character -> character == LINE_BREAK).count();
+        if (buffer.size() >= partSizeBytes) {
+            abortOnFailure(this::uploadBufferedPart);
+        }
+        return this;
+    }
+
+    @Override
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public String getLocation() {
+        return String.format(S3_LOCATION_TEMPLATE, bucketName, key);
+    }
+
+    @Override
+    public void complete() {
+        if (finished) {
+            return;
+        }
+        if (uploadId == null) {
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+                               RequestBody.fromBytes(buffer.toByteArray()));
+            buffer.reset();
+            finished = true;
+            return;
+        }
+        abortOnFailure(() -> {
+            if (buffer.size() > 0) {
+                uploadBufferedPart();
+            }
+            completeUpload();
+        });
+        finished = true;
+    }
+
+    /**
+     * Discards the report unless it was completed.
+     **/
+    @Override
+    public void close() {
+        if (!finished) {
+            discard();
+        }
+    }
+
+    private void abortOnFailure(Runnable upload) {
+        try {
+            upload.run();
+        } catch (RuntimeException exception) {
+            discard();
+            throw exception;
+        }
+    }
+
+    private void discard() {
+        finished = true;
+        buffer.reset();
+        if (uploadId != null) {
+            abortUpload();
+        }
+    }
+
+    private void uploadBufferedPart() {
+        if (uploadId == null) {
+            uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                                                          .bucket(bucketName)
+                                                          .key(key)
+                                                          .build())
+                           .uploadId();
+        }
+        var partNumber = completedParts.size() + 1;
+        var uploadPartRequest = UploadPartRequest.builder()
+                                    .bucket(bucketName)
+                                    .key(key)
+                                    .uploadId(uploadId)
+                                    .partNumber(partNumber)
+                                    .build();
+        var eTag = s3Client.uploadPart(uploadPartRequest, RequestBody.fromBytes(buffer.toByteArray())).eTag();
+        completedParts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+        buffer.reset();
+    }
+
+    private void completeUpload() {
+        s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                                             .bucket(bucketName)
+                                             .key(key)
+                                             .uploadId(uploadId)
+                                             .multipartUpload(CompletedMultipartUpload.builder()
+                                                                  .parts(completedParts)
+                                                                  .build())
+                                             .build());
+    }
+
+    private void abortUpload() {
+        s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                                          .bucket(bucketName)
+                                          .key(key)
+                                          .uploadId(uploadId)
+                                          .build());
+    }
+}
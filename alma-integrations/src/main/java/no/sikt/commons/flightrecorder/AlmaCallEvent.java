@@ -0,0 +1,88 @@
+package no.sikt.commons.flightrecorder;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One HTTP exchange with Alma, from sending the request until the response or the failure is in. The path names the
+ * user or partner, and the payload size is the size of the request body.
+ **/
+@Name("no.sikt.AlmaCall")
+@Label("Alma Call")
+@Category({"Basebibliotek Integrations", "Alma"})
+@StackTrace(false)
+public class AlmaCallEvent extends Event {
+
+    private static final int NO_RESPONSE = -1;
+
+    @Label("Method")
+    private String method;
+
+    @Label("Path")
+    private String path;
+
+    @Label("Status Code")
+    private int statusCode;
+
+    @Label("Payload Size")
+    @DataAmount
+    private long payloadSize;
+
+    /**
+     * Sends the request and records the exchange when a recording is running.
+     **/
+    public static <T> HttpResponse<T> timed(HttpRequest request, Call<T> call)
+        throws IOException, InterruptedException {
+        var event = start(request);
+        var statusCode = NO_RESPONSE;
+        try {
+            var response = call.send();
+            statusCode = response.statusCode();
+            return response;
+        } finally {
+            event.complete(statusCode);
+        }
+    }
+
+    /**
+     * Sends the request and records the exchange once the response has arrived, when a recording is running.
+     **/
+    public static <T> CompletableFuture<HttpResponse<T>> timedAsync(
+        HttpRequest request, Supplier<CompletableFuture<HttpResponse<T>>> call) {
+        var event = start(request);
+        if (!event.isEnabled()) {
+            return call.get();
+        }
+        return call.get().whenComplete((response, failure) -> event.complete(
+            response == null ? NO_RESPONSE : response.statusCode()));
+    }
+
+    private static AlmaCallEvent start(HttpRequest request) {
+        var event = new AlmaCallEvent();
+        event.method = request.method();
+        event.path = request.uri().getPath();
+        event.payloadSize = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+        event.begin();
+        return event;
+    }
+
+    private void complete(int statusCode) {
+        this.statusCode = statusCode;
+        commit();
+    }
+
+    @FunctionalInterface
+    public interface Call<T> {
+
+        HttpResponse<T> send() throws IOException, InterruptedException;
+    }
+}
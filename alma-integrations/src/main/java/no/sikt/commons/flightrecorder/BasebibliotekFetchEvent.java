@@ -0,0 +1,38 @@
+package no.sikt.commons.flightrecorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Fetching one library from Basebibliotek, including unmarshalling the response.
+ **/
+@Name("no.sikt.BasebibliotekFetch")
+@Label("Basebibliotek Fetch")
+@Category({"Basebibliotek Integrations", "Basebibliotek"})
+@StackTrace(false)
+public class BasebibliotekFetchEvent extends Event {
+
+    @Label("Bibnr")
+    private String bibnr;
+
+    @Label("Records")
+    private int records;
+
+    public static BasebibliotekFetchEvent start(String bibnr) {
+        var event = new BasebibliotekFetchEvent();
+        event.bibnr = bibnr;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records the fetch. A library that could not be fetched has no records.
+     **/
+    public void complete(int records) {
+        this.records = records;
+        commit();
+    }
+}
@@ -0,0 +1,52 @@
+package no.sikt.commons.flightrecorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import no.sikt.commons.ConversionResult;
+
+/**
+ * Converting one library to a user for an Alma institution, or to a partner, which has no institution.
+ **/
+@Name("no.sikt.Conversion")
+@Label("Conversion")
+@Category({"Basebibliotek Integrations", "Conversion"})
+@StackTrace(false)
+public class ConversionEvent extends Event {
+
+    public static final String CONVERTED = "converted";
+    public static final String INVALID = "invalid";
+    public static final String FAILED = "failed";
+
+    @Label("Bibnr")
+    private String bibnr;
+
+    @Label("Institution")
+    private String institution;
+
+    @Label("Status")
+    private String status;
+
+    public static ConversionEvent start(String bibnr, String institution) {
+        var event = new ConversionEvent();
+        event.bibnr = bibnr;
+        event.institution = institution;
+        event.begin();
+        return event;
+    }
+
+    public void complete(ConversionResult<?> result) {
+        complete(result instanceof ConversionResult.Converted<?> ? CONVERTED : INVALID);
+    }
+
+    public void fail() {
+        complete(FAILED);
+    }
+
+    private void complete(String status) {
+        this.status = status;
+        commit();
+    }
+}
@@ -0,0 +1,153 @@
+package no.sikt.commons.flightrecorder;
+
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import no.sikt.commons.HandlerUtils;
+import nva.commons.core.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * A Java Flight Recorder recording of one handler invocation, written to the report bucket when closed, or shortly
+ * before the invocation runs out of time, since the recording of a timed out invocation is the one most worth
+ * reading. It uses the JDK's default settings, which are meant for production, and adds the pipeline events of this
+ * package. When recording is switched off nothing is started, and the events cost little more than creating them.
+ **/
+public final class FlightRecording implements AutoCloseable {
+
+    public static final String FLIGHT_RECORDING_ENV_NAME = "FLIGHT_RECORDING";
+    public static final String RECORDING_KEY_PREFIX = "flight-recording-";
+    public static final String RECORDING_SUFFIX = ".jfr";
+    public static final Duration WRITE_MARGIN = Duration.ofSeconds(20);
+    private static final String DEFAULT_CONFIGURATION = "default";
+    private static final List<Class<? extends Event>> PIPELINE_EVENTS = List.of(S3ReadEvent.class,
+                                                                                BasebibliotekFetchEvent.class,
+                                                                                ConversionEvent.class,
+                                                                                XmlBindingEvent.class,
+                                                                                AlmaCallEvent.class);
+    private static final String RECORDING_WRITTEN = "Flight recording written to s3://{}/{}";
+    private static final String RECORDING_NOT_WRITTEN = "Could not write flight recording to s3://{}/{}";
+    private static final String DEFAULT_CONFIGURATION_MISSING =
+        "Could not read the default flight recorder settings, recording pipeline events only";
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecording.class);
+
+    private final transient Recording recording;
+    private final transient S3Client s3Client;
+    private final transient String bucketName;
+    private final transient String key;
+    private final transient ReentrantLock writeLock = new ReentrantLock();
+    private final transient CompletableFuture<Void> deadlineWrite;
+    private transient boolean written;
+
+    private FlightRecording(Recording recording, S3Client s3Client, String bucketName, String key,
+                            Duration remainingTime) {
+        this.recording = recording;
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        var delay = remainingTime.minus(WRITE_MARGIN);
+        this.deadlineWrite = recording != null && delay.isPositive()
+                                 ? CompletableFuture.runAsync(this::write, CompletableFuture.delayedExecutor(
+                                     delay.toMillis(), TimeUnit.MILLISECONDS))
+                                 : CompletableFuture.completedFuture(null);
+    }
+
+    public static boolean isEnabled(Environment environment) {
+        return environment.readEnvOpt(FLIGHT_RECORDING_ENV_NAME)
+                   .map(String::trim)
+                   .map(Boolean::parseBoolean)
+                   .orElse(false);
+    }
+
+    /**
+     * Starts a recording that is written to the given key when closed or {@link #WRITE_MARGIN} before the remaining
+     * time of the invocation is up, or does nothing when not enabled.
+     **/
+    public static FlightRecording start(boolean enabled, S3Client s3Client, String bucketName, String key,
+                                        Duration remainingTime) {
+        if (!enabled) {
+            return new FlightRecording(null, s3Client, bucketName, key, remainingTime);
+        }
+        var recording = newRecording();
+        PIPELINE_EVENTS.forEach(recording::enable);
+        recording.setName(key);
+        recording.start();
+        return new FlightRecording(recording, s3Client, bucketName, key, remainingTime);
+    }
+
+    /**
+     * Names the recording after the file the handler was triggered by, next to the report of the same run.
+     **/
+    public static String recordingKey(S3Event s3Event, String handlerName) {
+        return RECORDING_KEY_PREFIX + handlerName + HandlerUtils.HYPHEN + HandlerUtils.extractFilename(s3Event)
+               + RECORDING_SUFFIX;
+    }
+
+    /**
+     * Stops the recording and writes it to S3, unless it was already written at the deadline. A recording that cannot
+     * be written is logged and dropped, so that it never fails the run it recorded.
+     **/
+    @Override
+    public void close() {
+        deadlineWrite.cancel(false);
+        write();
+    }
+
+    private void write() {
+        if (recording == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (!written) {
+                written = true;
+                stopAndUpload();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void stopAndUpload() {
+        try (recording) {
+            recording.stop();
+            upload();
+        } catch (IOException | RuntimeException e) {
+            logger.warn(RECORDING_NOT_WRITTEN, bucketName, key, e);
+        }
+    }
+
+    private void upload() throws IOException {
+        var file = Files.createTempFile(RECORDING_KEY_PREFIX, RECORDING_SUFFIX);
+        try {
+            recording.dump(file);
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+                               RequestBody.fromFile(file));
+            logger.info(RECORDING_WRITTEN, bucketName, key);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static Recording newRecording() {
+        try {
+            return new Recording(Configuration.getConfiguration(DEFAULT_CONFIGURATION));
+        } catch (IOException | ParseException e) {
+            logger.warn(DEFAULT_CONFIGURATION_MISSING, e);
+            return new Recording();
+        }
+    }
+}
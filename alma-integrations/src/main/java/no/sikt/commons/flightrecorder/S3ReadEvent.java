@@ -0,0 +1,38 @@
+package no.sikt.commons.flightrecorder;
+
+import java.util.function.Supplier;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Reading a text object from S3, such as a chunk of bibnrs or the library code mapping.
+ **/
+@Name("no.sikt.S3Read")
+@Label("S3 Read")
+@Category({"Basebibliotek Integrations", "S3"})
+@StackTrace(false)
+public class S3ReadEvent extends Event {
+
+    @Label("Bucket")
+    private String bucket;
+
+    @Label("Key")
+    private String key;
+
+    @Label("Characters")
+    private long characters;
+
+    public static String timed(String bucket, String key, Supplier<String> read) {
+        var event = new S3ReadEvent();
+        event.bucket = bucket;
+        event.key = key;
+        event.begin();
+        var content = read.get();
+        event.characters = content.length();
+        event.commit();
+        return content;
+    }
+}
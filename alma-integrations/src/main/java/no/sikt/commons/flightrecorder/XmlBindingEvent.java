@@ -0,0 +1,57 @@
+package no.sikt.commons.flightrecorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JAXB marshal or unmarshal of one object. The payload size is zero for unmarshalling, as that XML is streamed
+ * straight from the response and never measured.
+ **/
+@Name("no.sikt.XmlBinding")
+@Label("XML Binding")
+@Category({"Basebibliotek Integrations", "JAXB"})
+@StackTrace(false)
+public class XmlBindingEvent extends Event {
+
+    public static final String MARSHAL = "marshal";
+    public static final String UNMARSHAL = "unmarshal";
+
+    @Label("Operation")
+    private String operation;
+
+    @Label("Type")
+    private String type;
+
+    @Label("Identifier")
+    private String identifier;
+
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    @Label("Payload Size")
+    @DataAmount
+    private long payloadSize;
+
+    public static XmlBindingEvent start(String operation, Class<?> type, String identifier) {
+        var event = new XmlBindingEvent();
+        event.operation = operation;
+        event.type = type.getSimpleName();
+        event.identifier = identifier;
+        event.begin();
+        return event;
+    }
+
+    public void complete(long payloadSize) {
+        this.succeeded = true;
+        this.payloadSize = payloadSize;
+        commit();
+    }
+
+    public void fail() {
+        commit();
+    }
+}
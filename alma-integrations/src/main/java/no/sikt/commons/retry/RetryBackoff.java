@@ -0,0 +1,49 @@
+package no.sikt.commons.retry;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+import nva.commons.core.Environment;
+
+/**
+ * Repeats an attempt with exponentially growing pauses until it succeeds or the attempts are used up.
+ **/
+public record RetryBackoff(int maxAttempts, Duration initialDelay) {
+
+    public static final String RETRY_MAX_ATTEMPTS_ENV_NAME = "RETRY_MAX_ATTEMPTS";
+    public static final String RETRY_INITIAL_DELAY_MILLIS_ENV_NAME = "RETRY_INITIAL_DELAY_MILLIS";
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final Duration DEFAULT_INITIAL_DELAY = Duration.ofSeconds(1);
+
+    public static RetryBackoff fromEnvironment(Environment environment) {
+        return new RetryBackoff(
+            environment.readEnvOpt(RETRY_MAX_ATTEMPTS_ENV_NAME).map(String::trim).map(Integer::parseInt)
+                .orElse(DEFAULT_MAX_ATTEMPTS),
+            environment.readEnvOpt(RETRY_INITIAL_DELAY_MILLIS_ENV_NAME).map(String::trim).map(Long::parseLong)
+                .map(Duration::ofMillis)
+                .orElse(DEFAULT_INITIAL_DELAY));
+    }
+
+    public boolean attempt(BooleanSupplier action) {
+        var delay = initialDelay;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (action.getAsBoolean()) {
+                return true;
+            }
+            if (attempt < maxAttempts && !pause(delay)) {
+                return false;
+            }
+            delay = delay.multipliedBy(2);
+        }
+        return false;
+    }
+
+    private static boolean pause(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
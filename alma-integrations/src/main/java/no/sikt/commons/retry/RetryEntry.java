@@ -0,0 +1,10 @@
+package no.sikt.commons.retry;
+
+/**
+ * A single failed upsert: the library it came from, the Alma instance it was meant for (null when the handler only
+ * talks to one instance), the identifier of the Alma object and the payload exactly as it was sent. The payload is
+ * null when it holds secrets that must not be stored in the chunk bucket, as a user holds the library password, and
+ * the handler then builds it again from Basebibliotek when replaying.
+ **/
+public record RetryEntry(String bibnr, String almaCode, String targetId, String payload) {
+}
@@ -0,0 +1,48 @@
+package no.sikt.commons.retry;
+
+import com.google.gson.Gson;
+import java.util.List;
+
+/**
+ * The failed upserts of one handler run, stored as json so that a later run can replay exactly those upserts.
+ **/
+public record RetryManifest(String handlerName, String sourceKey, List<RetryEntry> entries) {
+
+    public static final String MANIFEST_SUFFIX = ".json";
+    private static final String RETRY_FOLDER = "retry/";
+    private static final String FAILED_REPLAY_PREFIX = "retry-failed-";
+    private static final String FOLDER_SEPARATOR = "/";
+    private static final String EXTENSION_SEPARATOR = ".";
+    private static final Gson GSON = new Gson();
+
+    public static RetryManifest fromJson(String json) {
+        return GSON.fromJson(json, RetryManifest.class);
+    }
+
+    public static boolean isManifestKey(String key) {
+        return key.endsWith(MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Places the manifest in a retry folder next to the chunk it was created from, e.g. "lum/0.txt" becomes
+     * "lum/retry/0.json", so that it triggers the same handler again.
+     **/
+    public static String manifestKey(String sourceKey) {
+        var folderEnd = sourceKey.lastIndexOf(FOLDER_SEPARATOR) + 1;
+        var filename = sourceKey.substring(folderEnd);
+        var extensionStart = filename.lastIndexOf(EXTENSION_SEPARATOR);
+        var basename = extensionStart > 0 ? filename.substring(0, extensionStart) : filename;
+        return sourceKey.substring(0, folderEnd) + RETRY_FOLDER + basename + MANIFEST_SUFFIX;
+    }
+
+    /**
+     * Key in the report bucket for upserts that still fail after a replay. These are not replayed automatically.
+     **/
+    public static String failedReplayKey(String handlerName, String sourceKey) {
+        return FAILED_REPLAY_PREFIX + handlerName + "-" + sourceKey;
+    }
+
+    public String toJson() {
+        return GSON.toJson(this);
+    }
+}
@@ -0,0 +1,57 @@
+package no.sikt.commons.retry;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Collects failed upserts from concurrent senders and writes them as a {@link RetryManifest}.
+ **/
+public class RetryManifestCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryManifestCollector.class);
+    private static final String MANIFEST_WRITTEN = "Retry manifest with {} entries written to s3://{}/{}";
+
+    private final transient String handlerName;
+    private final transient String sourceKey;
+    private final transient Queue<RetryEntry> entries = new ConcurrentLinkedQueue<>();
+
+    public RetryManifestCollector(String handlerName, String sourceKey) {
+        this.handlerName = handlerName;
+        this.sourceKey = sourceKey;
+    }
+
+    public void add(RetryEntry entry) {
+        entries.add(entry);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public RetryManifest toManifest() {
+        return new RetryManifest(handlerName, sourceKey, List.copyOf(entries));
+    }
+
+    /**
+     * Writes the manifest to the given location, unless nothing failed.
+     *
+     * @return the key of the written manifest, if one was written
+     **/
+    public Optional<String> writeTo(S3Client s3Client, String bucketName, String key) {
+        if (entries.isEmpty()) {
+            return Optional.empty();
+        }
+        var manifest = toManifest();
+        s3Client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+                           RequestBody.fromString(manifest.toJson()));
+        logger.info(MANIFEST_WRITTEN, manifest.entries().size(), bucketName, key);
+        return Optional.of(key);
+    }
+}
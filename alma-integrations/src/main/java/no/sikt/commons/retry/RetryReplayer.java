@@ -0,0 +1,100 @@
+package no.sikt.commons.retry;
+
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import no.sikt.clients.InFlightRequestLimiter;
+import no.sikt.commons.HandlerUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3Client;
+
+/**
+ * Replays the upserts listed in a {@link RetryManifest}, with backoff per upsert. Upserts that still fail are
+ * written to the report bucket instead of back to the chunk bucket, so a replay never triggers another replay.
+ * Each entry is replayed on its own virtual thread, so the pauses between attempts do not hold carrier threads of the
+ * common pool that the HTTP client and its futures complete on.
+ **/
+public class RetryReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryReplayer.class);
+    private static final String REPLAYED_REPORT_MESSAGE = " OK\n";
+    private static final String STILL_FAILING_REPORT_MESSAGE = " still failing after retry\n";
+    private static final String REPLAY_SUMMARY = "Replayed {} of {} failed upserts from {}";
+    private static final int MAX_CONCURRENT_ATTEMPTS = InFlightRequestLimiter.DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+
+    private final transient S3Client s3Client;
+    private final transient String reportS3BucketName;
+    private final transient RetryBackoff backoff;
+
+    public RetryReplayer(S3Client s3Client, String reportS3BucketName, RetryBackoff backoff) {
+        this.s3Client = s3Client;
+        this.reportS3BucketName = reportS3BucketName;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Replays the manifest the event points to.
+     *
+     * @param upsert sends one entry to Alma, returning whether it succeeded
+     * @return the number of entries that succeeded
+     **/
+    public int replay(S3Event s3Event, String handlerName, Predicate<RetryEntry> upsert) {
+        var sourceKey = HandlerUtils.extractFilename(s3Event);
+        var manifest = RetryManifest.fromJson(HandlerUtils.readFile(s3Event, s3Client));
+        var outcomes = replayAll(manifest.entries(), upsert);
+        var stillFailing = new RetryManifestCollector(handlerName, sourceKey);
+        try (var reportSink = HandlerUtils.openReportSink(s3Event, s3Client, reportS3BucketName, handlerName)) {
+            outcomes.get(true).forEach(entry -> reportSink.append(describe(entry)).append(REPLAYED_REPORT_MESSAGE));
+            outcomes.get(false).forEach(entry -> {
+                stillFailing.add(entry);
+                reportSink.append(describe(entry)).append(STILL_FAILING_REPORT_MESSAGE);
+            });
+            reportSink.complete();
+        }
+        stillFailing.writeTo(s3Client, reportS3BucketName, RetryManifest.failedReplayKey(handlerName, sourceKey));
+        var replayed = outcomes.get(true).size();
+        logger.info(REPLAY_SUMMARY, replayed, manifest.entries().size(), sourceKey);
+        return replayed;
+    }
+
+    /**
+     * Attempts are limited to as many at a time as a chunk has in flight against Alma. A permit is only held while
+     * an attempt runs, not during the pause before the next one.
+     **/
+    @SuppressWarnings("PMD.DoNotUseThreads")
+    private Map<Boolean, List<RetryEntry>> replayAll(List<RetryEntry> entries, Predicate<RetryEntry> upsert) {
+        var permits = new Semaphore(MAX_CONCURRENT_ATTEMPTS);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var replays = entries.stream()
+                              .map(entry -> CompletableFuture.supplyAsync(
+                                  () -> backoff.attempt(() -> attemptWithPermit(permits, upsert, entry)), executor))
+                              .toList();
+            return IntStream.range(0, entries.size())
+                       .boxed()
+                       .collect(Collectors.partitioningBy(index -> replays.get(index).join(),
+                                                          Collectors.mapping(entries::get, Collectors.toList())));
+        }
+    }
+
+    private static boolean attemptWithPermit(Semaphore permits, Predicate<RetryEntry> upsert, RetryEntry entry) {
+        permits.acquireUninterruptibly();
+        try {
+            return upsert.test(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static String describe(RetryEntry entry) {
+        return entry.almaCode() == null
+                   ? entry.targetId()
+                   : entry.targetId() + " " + entry.almaCode();
+    }
+}
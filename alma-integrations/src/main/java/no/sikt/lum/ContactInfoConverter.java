@@ -4,7 +4,6 @@ import static no.sikt.commons.HandlerUtils.HYPHEN;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
-import no.nb.basebibliotek.generated.Record;
 import no.sikt.alma.user.generated.Address;
 import no.sikt.alma.user.generated.Address.AddressTypes;
 import no.sikt.alma.user.generated.Address.Country;
@@ -17,6 +16,7 @@ import no.sikt.alma.user.generated.Phone;
 import no.sikt.alma.user.generated.Phone.PhoneTypes;
 import no.sikt.alma.user.generated.Phones;
 import no.sikt.commons.LanguageCodeConverter;
+import no.sikt.commons.LibraryRecord;
 import nva.commons.core.JacocoGenerated;
 import nva.commons.core.StringUtils;
 
@@ -32,7 +32,7 @@ public final class ContactInfoConverter {
     private ContactInfoConverter() {
     }
 
-    public static ContactInfo extractContactInfo(Record record) {
+    public static ContactInfo extractContactInfo(LibraryRecord record) {
         var contactInfo = new ContactInfo();
         contactInfo.setAddresses(extractAddressesFromRecord(record));
         contactInfo.setPhones(createPhones(record));
@@ -40,7 +40,7 @@ public final class ContactInfoConverter {
         return contactInfo;
     }
 
-    private static Emails createEmails(Record record) {
+    private static Emails createEmails(LibraryRecord record) {
         var emailBest = createEmailBest(record);
         var emailRegular = createEmailRegular(record, emailBest.isPresent());
         var emails = new Emails();
@@ -49,13 +49,13 @@ public final class ContactInfoConverter {
         return emails;
     }
 
-    private static Optional<Email> createEmailRegular(Record record, Boolean emailBestIsPresent) {
+    private static Optional<Email> createEmailRegular(LibraryRecord record, Boolean emailBestIsPresent) {
         return Objects.nonNull(record.getEpostAdr())
                    ? Optional.of(createEmail(record.getEpostAdr(), !emailBestIsPresent))
                    : Optional.empty();
     }
 
-    private static Optional<Email> createEmailBest(Record record) {
+    private static Optional<Email> createEmailBest(LibraryRecord record) {
         return Objects.nonNull(record.getEpostBest())
                    ? Optional.of(createEmail(record.getEpostBest(), BEST_EMAIL_IS_ALWAYS_PREFERRED))
                    : Optional.empty();
@@ -70,21 +70,16 @@ public final class ContactInfoConverter {
     }
 
     private static EmailTypes createEmailTypes() {
-        var emailTypes = new EmailTypes();
-        Email.EmailTypes.EmailType emailType = new Email.EmailTypes.EmailType();
-        emailType.setValue(WORK.toLowerCase(Locale.ROOT));
-        emailType.setDesc(WORK);
-        emailTypes.getEmailType().add(emailType);
-        return emailTypes;
+        return UserFragments.EMAIL_TYPES;
     }
 
-    private static Phones createPhones(Record record) {
+    private static Phones createPhones(LibraryRecord record) {
         var phones = new Phones();
         phones.getPhone().add(createPhone(record));
         return phones;
     }
 
-    private static Phone createPhone(Record record) {
+    private static Phone createPhone(LibraryRecord record) {
         var phone = new Phone();
         phone.setPhoneNumber(Objects.nonNull(record.getTlf()) ? record.getTlf() : StringUtils.EMPTY_STRING);
         phone.setPreferred(THERE_IS_ONLY_ONE_PHONE_SO_IT_IS_ALWAYS_PREFERRED);
@@ -93,15 +88,10 @@ public final class ContactInfoConverter {
     }
 
     private static PhoneTypes createPhoneTypes() {
-        var phoneTypes = new PhoneTypes();
-        Phone.PhoneTypes.PhoneType phoneType = new Phone.PhoneTypes.PhoneType();
-        phoneType.setValue(OFFICE.toLowerCase(Locale.ROOT));
-        phoneType.setDesc(OFFICE);
-        phoneTypes.getPhoneType().add(phoneType);
-        return phoneTypes;
+        return UserFragments.PHONE_TYPES;
     }
 
-    private static Addresses extractAddressesFromRecord(Record record) {
+    private static Addresses extractAddressesFromRecord(LibraryRecord record) {
         var addresses = new Addresses();
         var postAddress = createPAddress(record);
         var visitationAddress = createVAddress(record, postAddress.isPresent());
@@ -110,7 +100,7 @@ public final class ContactInfoConverter {
         return addresses;
     }
 
-    private static Optional<Address> createPAddress(Record record) {
+    private static Optional<Address> createPAddress(LibraryRecord record) {
         return Objects.nonNull(record.getPadr())
                    ? Optional.of(createAddress(record.getPadr(),
                                                record.getBibnr(),
@@ -121,7 +111,7 @@ public final class ContactInfoConverter {
                    : Optional.empty();
     }
 
-    private static Optional<Address> createVAddress(Record record, boolean postAddressAlreadyExists) {
+    private static Optional<Address> createVAddress(LibraryRecord record, boolean postAddressAlreadyExists) {
         return Objects.nonNull(record.getVadr())
                    ? Optional.of(createAddress(record.getVadr(),
                                                record.getBibnr(),
@@ -152,12 +142,7 @@ public final class ContactInfoConverter {
     }
 
     private static AddressTypes createAddressTypes() {
-        var addressTypes = new AddressTypes();
-        Address.AddressTypes.AddressType addressType = new Address.AddressTypes.AddressType();
-        addressType.setValue(WORK.toLowerCase(Locale.ROOT));
-        addressType.setDesc(WORK);
-        addressTypes.getAddressType().add(addressType);
-        return addressTypes;
+        return UserFragments.ADDRESS_TYPES;
     }
 
     private static Country createCountry(String landkode) {
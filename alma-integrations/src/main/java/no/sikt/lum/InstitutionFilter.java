@@ -0,0 +1,61 @@
+package no.sikt.lum;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restricts a chunk to some of the Alma instances, so that a backfill for one tenant does not touch the other
+ * instances. The restriction is the first line of the chunk, e.g. "#institutions=AHO,BI". Chunks without that line
+ * are sent to every instance with an api key.
+ **/
+public record InstitutionFilter(Set<String> institutions) {
+
+    public static final String HEADER_PREFIX = "#institutions=";
+    private static final Logger logger = LoggerFactory.getLogger(InstitutionFilter.class);
+    private static final String INSTITUTION_DELIMITER = ",";
+    private static final String LINE_DELIMITER = "\n";
+    private static final String UNKNOWN_INSTITUTIONS = "No alma api key for institutions {} in backfill filter";
+    private static final String RESTRICTED_TO = "Chunk restricted to {} of {} alma instances";
+
+    public static InstitutionFilter fromChunk(String chunk) {
+        var firstLine = chunk.split(LINE_DELIMITER, 2)[0].trim();
+        if (!firstLine.startsWith(HEADER_PREFIX)) {
+            return new InstitutionFilter(Set.of());
+        }
+        return new InstitutionFilter(Arrays.stream(firstLine.substring(HEADER_PREFIX.length())
+                                                       .split(INSTITUTION_DELIMITER))
+                                         .map(String::trim)
+                                         .filter(institution -> !institution.isEmpty())
+                                         .map(institution -> institution.toUpperCase(Locale.ROOT))
+                                         .collect(Collectors.toSet()));
+    }
+
+    public boolean isRestricted() {
+        return !institutions.isEmpty();
+    }
+
+    /**
+     * The api keys of the instances this chunk is meant for.
+     **/
+    public Map<String, String> select(Map<String, String> almaApiKeys) {
+        if (!isRestricted()) {
+            return almaApiKeys;
+        }
+        var selected = almaApiKeys.entrySet().stream()
+                           .filter(entry -> institutions.contains(entry.getKey().toUpperCase(Locale.ROOT)))
+                           .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (selected.size() < institutions.size()) {
+            var known = selected.keySet().stream()
+                            .map(almaCode -> almaCode.toUpperCase(Locale.ROOT))
+                            .collect(Collectors.toSet());
+            logger.warn(UNKNOWN_INSTITUTIONS, institutions.stream().filter(code -> !known.contains(code)).toList());
+        }
+        logger.info(RESTRICTED_TO, selected.size(), almaApiKeys.size());
+        return selected;
+    }
+}
@@ -0,0 +1,107 @@
+package no.sikt.lum;
+
+import com.google.gson.Gson;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import no.unit.nva.s3.S3Driver;
+import nva.commons.core.paths.UnixPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * How long each Alma instance took per user in earlier runs, kept as a small json file in the report bucket. The
+ * handler works through the instances longest first, so that the slowest tenants are not the ones left running when
+ * the invocation times out. Each run is blended into the history, so a tenant that gets faster or slower moves in
+ * the order over a few runs.
+ *
+ * <p>Concurrent invocations each write their own view, and the last one wins. That is good enough for ordering.
+ **/
+public class InstitutionLatencyHistory {
+
+    public static final String HISTORY_KEY = "latency/lum-institutions.json";
+    /* default */ static final double WEIGHT_OF_LATEST_RUN = 0.3;
+    private static final Logger logger = LoggerFactory.getLogger(InstitutionLatencyHistory.class);
+    private static final Gson GSON = new Gson();
+    private static final String NO_HISTORY = "No latency history for alma instances, using the default order";
+    private static final String COULD_NOT_SAVE = "Could not save latency history for alma instances";
+
+    private final transient Map<String, Double> millisPerUser;
+
+    public InstitutionLatencyHistory(Map<String, Double> millisPerUser) {
+        this.millisPerUser = new ConcurrentHashMap<>(millisPerUser);
+    }
+
+    /**
+     * Reads the history, or starts an empty one if there is none or it cannot be read.
+     **/
+    public static InstitutionLatencyHistory load(S3Client s3Client, String bucketName) {
+        try {
+            var json = new S3Driver(s3Client, bucketName).getFile(UnixPath.of(HISTORY_KEY));
+            var snapshot = GSON.fromJson(json, Snapshot.class);
+            return new InstitutionLatencyHistory(Optional.ofNullable(snapshot)
+                                                     .map(Snapshot::millisPerUser)
+                                                     .orElse(Map.of()));
+        } catch (Exception e) {
+            logger.info(NO_HISTORY);
+            return new InstitutionLatencyHistory(Map.of());
+        }
+    }
+
+    /**
+     * Orders the instances by expected time per user, slowest first. Instances without history go first, since
+     * nothing says they are fast. Ties keep the given order.
+     **/
+    public List<String> longestFirst(Collection<String> almaCodes) {
+        return almaCodes.stream()
+                   .sorted(Comparator.comparingDouble(this::expectedMillisPerUser).reversed())
+                   .toList();
+    }
+
+    public Optional<Double> millisPerUser(String almaCode) {
+        return Optional.ofNullable(millisPerUser.get(almaCode));
+    }
+
+    /**
+     * Blends the time an instance took in this run into its history. Runs without users say nothing about the
+     * instance and are left out.
+     **/
+    public void record(String almaCode, Duration elapsed, int numberOfUsers) {
+        if (numberOfUsers <= 0) {
+            return;
+        }
+        var latest = (double) elapsed.toMillis() / numberOfUsers;
+        millisPerUser.merge(almaCode, latest,
+                            (earlier, current) -> earlier + WEIGHT_OF_LATEST_RUN * (current - earlier));
+    }
+
+    /**
+     * Writes the history back. Never throws, since a lost history only costs the ordering of a later run.
+     **/
+    public void save(S3Client s3Client, String bucketName) {
+        if (millisPerUser.isEmpty()) {
+            return;
+        }
+        try {
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucketName).key(HISTORY_KEY).build(),
+                               RequestBody.fromString(GSON.toJson(new Snapshot(Map.copyOf(millisPerUser)))));
+        } catch (Exception e) {
+            logger.warn(COULD_NOT_SAVE, e);
+        }
+    }
+
+    private double expectedMillisPerUser(String almaCode) {
+        return millisPerUser.getOrDefault(almaCode, Double.MAX_VALUE);
+    }
+
+    private record Snapshot(Map<String, Double> millisPerUser) {
+
+    }
+}
@@ -6,23 +6,46 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
 import com.google.gson.Gson;
 import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import no.nb.basebibliotek.generated.BaseBibliotek;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import no.sikt.alma.user.generated.User;
 import no.sikt.clients.BaseBibliotekApi;
+import no.sikt.clients.InFlightRequestLimiter;
+import no.sikt.clients.alma.AlmaInstitutionCircuitBreaker;
+import no.sikt.clients.alma.AlmaRequestSettings;
 import no.sikt.clients.alma.AlmaUserUpserter;
 import no.sikt.clients.alma.HttpUrlConnectionAlmaUserUpserter;
+import no.sikt.clients.alma.UpsertResult;
 import no.sikt.clients.basebibliotek.HttpUrlConnectionBaseBibliotekApi;
+import no.sikt.commons.ChunkReleaseGuard;
+import no.sikt.commons.ChunkReleaser;
+import no.sikt.commons.ConversionResult;
 import no.sikt.commons.HandlerUtils;
+import no.sikt.commons.LibraryRecord;
+import no.sikt.commons.flightrecorder.ConversionEvent;
+import no.sikt.commons.flightrecorder.FlightRecording;
+import no.sikt.commons.retry.RetryBackoff;
+import no.sikt.commons.retry.RetryEntry;
+import no.sikt.commons.retry.RetryManifest;
+import no.sikt.commons.retry.RetryManifestCollector;
+import no.sikt.commons.retry.RetryReplayer;
 import no.sikt.lum.reporting.AlmaReportBuilder;
 import no.sikt.lum.reporting.ReportGenerator;
 import no.sikt.lum.reporting.UserReportBuilder;
 import no.sikt.lum.secret.AlmaKeysFetcher;
 import no.sikt.lum.secret.SecretFetcher;
 import no.sikt.lum.serialize.SerializedUser;
+import no.sikt.lum.serialize.SerializerUtils;
 import no.unit.nva.s3.S3Driver;
 import nva.commons.core.Environment;
 import nva.commons.core.JacocoGenerated;
@@ -41,12 +64,19 @@ public class LibraryUserManagementHandler implements RequestHandler<S3Event, Int
     public static final String ALMA_API_HOST = "ALMA_API_HOST";
     public static final String BASEBIBLIOTEK_URI_ENVIRONMENT_NAME = "BASEBIBLIOTEK_REST_URL";
     public static final String HANDLER_NAME = "lum";
+    public static final String INSTITUTION_WORKERS_ENV_NAME = "LUM_INSTITUTION_WORKERS";
+    public static final int DEFAULT_INSTITUTION_WORKERS = 1;
     private static final String EVENT = "event";
     private static final String SKIPPING_HANDLING_OF_REQUESTS =
         "No alma api keys found. Skipping handling of requests.";
     private static final String SUCCESSFUL_UPDATES_SENT_TO_ALMA = "{} successful updates sent to Alma";
     private static final String SUCCESSFULLY_OF_TOTAL =
         "{} users updated successfully for alma instance {}, of total {} users";
+    private static final String SKIPPED_OPEN_CIRCUITS =
+        "Remaining users were skipped for alma instances with open circuit: {}";
+    private static final String UPSERT_OUTCOMES = "Upsert outcomes for alma instance {}: {}";
+    private static final String REPORT_SUMMARY = "Report with {} lines written to {}";
+    private static final String INVALID_RECORD = "Could not convert {} to user for alma instance {}, missing {}";
     private static final String UNKNOWN_EXCEPTION_WHEN_SERIALIZING_USER =
         "Unknown exception when serializing user for updating alma instance {}";
 
@@ -58,6 +88,11 @@ public class LibraryUserManagementHandler implements RequestHandler<S3Event, Int
     private final transient AlmaUserUpserter almaUserUpserter;
     private final transient Map<String, String> almaApiKeyMap;
     private final transient Map<String, List<User>> usersPerAlmaInstanceMap = new ConcurrentHashMap<>();
+    private final transient int circuitBreakerFailureThreshold;
+    private final transient RetryReplayer retryReplayer;
+    private final transient int maxInFlightRequests;
+    private final transient int institutionWorkers;
+    private final transient boolean flightRecordingEnabled;
 
     @JacocoGenerated
     @SuppressWarnings("unused")
@@ -76,11 +111,20 @@ public class LibraryUserManagementHandler implements RequestHandler<S3Event, Int
         this.s3Client = s3Client;
         final URI almaUri = UriWrapper.fromUri(environment.readEnv(ALMA_API_HOST)).getUri();
         almaApiKeyMap = almaKeysFetcher.fetchSecret();
-        this.almaUserUpserter = new HttpUrlConnectionAlmaUserUpserter(almaUri);
+        final AlmaRequestSettings almaRequestSettings = AlmaRequestSettings.fromEnvironment(environment);
+        this.almaUserUpserter = new HttpUrlConnectionAlmaUserUpserter(almaUri, almaRequestSettings);
         final URI basebibliotekUri =
             UriWrapper.fromUri(environment.readEnv(BASEBIBLIOTEK_URI_ENVIRONMENT_NAME)).getUri();
         this.baseBibliotekApi = new HttpUrlConnectionBaseBibliotekApi(basebibliotekUri);
         this.reportS3BucketName = environment.readEnv(REPORT_BUCKET_ENVIRONMENT_NAME);
+        this.circuitBreakerFailureThreshold = AlmaInstitutionCircuitBreaker.readFailureThreshold(environment);
+        this.retryReplayer = new RetryReplayer(s3Client, reportS3BucketName, RetryBackoff.fromEnvironment(environment));
+        this.maxInFlightRequests = InFlightRequestLimiter.readMaxInFlightRequests(environment);
+        this.institutionWorkers = environment.readEnvOpt(INSTITUTION_WORKERS_ENV_NAME)
+                                      .map(String::trim)
+                                      .map(Integer::parseInt)
+                                      .orElse(DEFAULT_INSTITUTION_WORKERS);
+        this.flightRecordingEnabled = FlightRecording.isEnabled(environment);
     }
 
     @Override
@@ -88,22 +132,38 @@ public class LibraryUserManagementHandler implements RequestHandler<S3Event, Int
         logger.info(EVENT + gson.toJson(s3event));
         if (almaApiKeyMap.isEmpty()) {
             logger.info(SKIPPING_HANDLING_OF_REQUESTS);
+            releaseNextChunk(s3event);
             return 0;
         }
-        try {
+        var remainingTime = Duration.ofMillis(context.getRemainingTimeInMillis());
+        try (var ignored = FlightRecording.start(flightRecordingEnabled, s3Client, reportS3BucketName,
+                                                 FlightRecording.recordingKey(s3event, HANDLER_NAME), remainingTime)) {
+            var sourceKey = HandlerUtils.extractFilename(s3event);
+            if (RetryManifest.isManifestKey(sourceKey)) {
+                return retryReplayer.replay(s3event, HANDLER_NAME, this::replayEntry);
+            }
             var bibNrFile = HandlerUtils.readFile(s3event, s3Client);
             logger.info("done collecting bibNrFile");
             var bibnrList = HandlerUtils.getBibNrList(bibNrFile);
-            var reportStringBuilder = new StringBuilder();
-            var baseBibliotekList =
-                HandlerUtils.generateBasebibliotek(bibnrList, reportStringBuilder, baseBibliotekApi);
-            List<ReportGenerator> reports = new ArrayList<>();
-            final int counter = sendBaseBibliotekToAlma(reports, baseBibliotekList);
-            reports.forEach(report -> reportStringBuilder.append(report.generateReport()));
-            HandlerUtils.reportToS3Bucket(reportStringBuilder, s3event, s3Client, reportS3BucketName, HANDLER_NAME);
-            logger.info(SUCCESSFUL_UPDATES_SENT_TO_ALMA, counter);
-            logger.info(reportStringBuilder.toString());
-            return counter;
+            var almaApiKeys = InstitutionFilter.fromChunk(bibNrFile).select(almaApiKeyMap);
+            var bucketName = HandlerUtils.extractBucketName(s3event);
+            try (var chunkRelease = ChunkReleaseGuard.start(bibNrFile, s3Client, bucketName, remainingTime);
+                var reportSink = HandlerUtils.openReportSink(s3event, s3Client, reportS3BucketName, HANDLER_NAME)) {
+                var libraryRecords = HandlerUtils.fetchLibraryRecords(bibnrList, reportSink, baseBibliotekApi);
+                List<ReportGenerator> reports = new ArrayList<>();
+                var circuitBreaker = new AlmaInstitutionCircuitBreaker(circuitBreakerFailureThreshold);
+                var retryCollector = new RetryManifestCollector(HANDLER_NAME, sourceKey);
+                final int counter = sendBaseBibliotekToAlma(reports, libraryRecords, almaApiKeys,
+                                                            circuitBreaker, retryCollector);
+                logOpenCircuits(circuitBreaker);
+                retryCollector.writeTo(s3Client, bucketName, RetryManifest.manifestKey(sourceKey));
+                reports.forEach(report -> report.writeReport(reportSink::append));
+                reportSink.complete();
+                chunkRelease.complete();
+                logger.info(SUCCESSFUL_UPDATES_SENT_TO_ALMA, counter);
+                logger.info(REPORT_SUMMARY, reportSink.getLineCount(), reportSink.getLocation());
+                return counter;
+            }
         } catch (Exception exception) {
             throw logErrorAndThrowException(exception);
         }
@@ -113,24 +173,44 @@ public class LibraryUserManagementHandler implements RequestHandler<S3Event, Int
         return usersPerAlmaInstanceMap;
     }
 
+    /**
+     * A skipped chunk must still release its successor, or the rest of its lane stays pending.
+     **/
+    private void releaseNextChunk(S3Event s3event) {
+        if (!RetryManifest.isManifestKey(HandlerUtils.extractFilename(s3event))) {
+            ChunkReleaser.releaseNext(HandlerUtils.readFile(s3event, s3Client), s3Client,
+                                      HandlerUtils.extractBucketName(s3event));
+        }
+    }
+
     private int sendBaseBibliotekToAlma(List<ReportGenerator> reports,
-                                        List<BaseBibliotek> baseBibliotekList) {
+                                        List<LibraryRecord> libraryRecords,
+                                        Map<String, String> almaApiKeys,
+                                        AlmaInstitutionCircuitBreaker circuitBreaker,
+                                        RetryManifestCollector retryCollector) {
         var userReportBuilder = new UserReportBuilder();
         var almaReportBuilder = new AlmaReportBuilder();
+        var latencyHistory = InstitutionLatencyHistory.load(s3Client, reportS3BucketName);
+        var pendingInstitutions = new ConcurrentLinkedQueue<>(latencyHistory.longestFirst(almaApiKeys.keySet()));
+        var statisticNote = UserConverter.currentTime();
+        var passwordDigests = new PasswordDigests(s3Client, reportS3BucketName);
 
-        var totalCounter = almaApiKeyMap.entrySet().stream()
-            .mapToInt(entry -> {
-                var almaCode = entry.getKey();
-                var apiKey = entry.getValue();
-
-                var users = generateUsers(baseBibliotekList, userReportBuilder, almaCode);
-                var successCount = sendToAlmaAndCountSuccess(users, almaCode, apiKey, almaReportBuilder);
-
+        Supplier<Integer> worker = () -> {
+            var successCount = 0;
+            for (var almaCode = pendingInstitutions.poll(); almaCode != null; almaCode = pendingInstitutions.poll()) {
+                var started = System.nanoTime();
+                var users = generateUsers(libraryRecords, userReportBuilder, almaCode, statisticNote);
+                successCount += sendToAlmaAndCountSuccess(users, almaCode, almaApiKeys.get(almaCode),
+                                                          almaReportBuilder, circuitBreaker, retryCollector,
+                                                          passwordDigests);
                 usersPerAlmaInstanceMap.put(almaCode, users);
-
-                return successCount;
-            })
-            .sum();
+                latencyHistory.record(almaCode, Duration.ofNanos(System.nanoTime() - started), users.size());
+            }
+            return successCount;
+        };
+        var totalCounter = runInstitutionWorkers(worker, pendingInstitutions.size());
+        latencyHistory.save(s3Client, reportS3BucketName);
+        passwordDigests.save();
 
         reports.add(userReportBuilder);
         reports.add(almaReportBuilder);
@@ -138,22 +218,67 @@ public class LibraryUserManagementHandler implements RequestHandler<S3Event, Int
         return totalCounter;
     }
 
-    private List<User> generateUsers(List<BaseBibliotek> baseBibliotekList,
+    /**
+     * Runs the workers side by side. Each worker takes the next institution in longest-first order as soon as it is
+     * done with its last one, which is list scheduling with the longest jobs first.
+     **/
+    @SuppressWarnings("PMD.DoNotUseThreads")
+    private int runInstitutionWorkers(Supplier<Integer> worker, int numberOfInstitutions) {
+        var workers = Math.min(institutionWorkers, numberOfInstitutions);
+        if (workers <= 1) {
+            return worker.get();
+        }
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var runningWorkers = IntStream.range(0, workers)
+                                     .mapToObj(i -> CompletableFuture.supplyAsync(worker, executor))
+                                     .toList();
+            return runningWorkers.stream().mapToInt(CompletableFuture::join).sum();
+        }
+    }
+
+    private List<User> generateUsers(List<LibraryRecord> libraryRecords,
                                      UserReportBuilder userReportBuilder,
-                                     String targetAlmaCode) {
-        var users = new ArrayList<User>();
-        for (BaseBibliotek baseBibliotek : baseBibliotekList) {
-            users.addAll(new UserConverter(baseBibliotek, targetAlmaCode).toUsers(userReportBuilder));
+                                     String targetAlmaCode,
+                                     String statisticNote) {
+        var users = new ArrayList<User>(libraryRecords.size());
+        for (LibraryRecord libraryRecord : libraryRecords) {
+            convertToUser(libraryRecord, targetAlmaCode, statisticNote).ifPresentOrElse(
+                users::add, () -> userReportBuilder.addFailure(libraryRecord.getBibnr(), targetAlmaCode));
         }
         return users;
     }
 
+    private static Optional<User> convertToUser(LibraryRecord libraryRecord,
+                                                String targetAlmaCode,
+                                                String statisticNote) {
+        var event = ConversionEvent.start(libraryRecord.getBibnr(), targetAlmaCode);
+        try {
+            var result = new UserConverter(libraryRecord, targetAlmaCode, statisticNote).toUser();
+            event.complete(result);
+            return switch (result) {
+                case ConversionResult.Converted<User> converted -> Optional.of(converted.value());
+                case ConversionResult.Invalid<User> invalid -> {
+                    logger.info(INVALID_RECORD, invalid.bibnr(), targetAlmaCode, invalid.missingFields());
+                    yield Optional.empty();
+                }
+            };
+        } catch (Exception e) {
+            event.fail();
+            //Errors in individual libraries should not cause crash in entire execution.
+            logger.info(UserConverter.COULD_NOT_CONVERT_TO_USER_ERROR_MESSAGE, e);
+            return Optional.empty();
+        }
+    }
+
     private int sendToAlmaAndCountSuccess(List<User> users,
                                           String almaId,
                                           String almaApikey,
-                                          AlmaReportBuilder almaReportBuilder) {
+                                          AlmaReportBuilder almaReportBuilder,
+                                          AlmaInstitutionCircuitBreaker circuitBreaker,
+                                          RetryManifestCollector retryCollector,
+                                          PasswordDigests passwordDigests) {
 
-        // Serialize all users to XML strings before entering parallelStream
+        // Serialize all users to XML strings before sending them concurrently
         // This avoids JAXB thread-safety issues
         var serializedUsers = new ArrayList<SerializedUser>();
 
@@ -168,24 +293,102 @@ public class LibraryUserManagementHandler implements RequestHandler<S3Event, Int
             logger.error(UNKNOWN_EXCEPTION_WHEN_SERIALIZING_USER, almaId, e);
         }
 
-        var successes = serializedUsers.parallelStream()
-                            .mapToInt(serializedUser -> {
-                                var primaryId = serializedUser.primaryId();
-                                if (sendToAlma(serializedUser, almaApikey)) {
-                                    almaReportBuilder.addSuccess(primaryId);
-                                    return 1;
-                                } else {
-                                    almaReportBuilder.addFailure(primaryId, almaId);
-                                    return 0;
-                                }
-                            })
-                            .sum();
+        var passwordDigestPerUser = users.stream()
+                                        .collect(Collectors.toMap(User::getPrimaryId,
+                                                                  user -> PasswordDigests.digest(user.getPassword(),
+                                                                                                 almaApikey),
+                                                                  (first, second) -> first));
+        var limiter = new InFlightRequestLimiter(maxInFlightRequests);
+        var upserts = serializedUsers.stream()
+                          .map(serializedUser -> limiter.submit(
+                              () -> upsertUnlessCircuitOpen(serializedUser, almaId, almaApikey, almaReportBuilder,
+                                                            circuitBreaker, retryCollector, passwordDigests,
+                                                            passwordDigestPerUser.get(serializedUser.primaryId()))))
+                          .toList();
+        var results = upserts.stream()
+                          .map(CompletableFuture::join)
+                          .flatMap(Optional::stream)
+                          .toList();
+        var successes = (int) results.stream().filter(UpsertResult::isSuccessful).count();
+        logger.info(UPSERT_OUTCOMES, almaId, results.stream()
+                                                 .collect(Collectors.groupingBy(UpsertResult::status,
+                                                                                Collectors.counting())));
 
         logger.info(SUCCESSFULLY_OF_TOTAL, successes, almaId, users.size());
 
         return successes;
     }
 
+    /**
+     * Checks the circuit when the user gets its in-flight slot, so that failures of the requests ahead of it are
+     * already recorded. The password is only compared when the instance has not been sent it before.
+     *
+     * @return empty if the user was skipped because the circuit is open
+     **/
+    private CompletableFuture<Optional<UpsertResult>> upsertUnlessCircuitOpen(
+        SerializedUser serializedUser, String almaId, String almaApikey, AlmaReportBuilder almaReportBuilder,
+        AlmaInstitutionCircuitBreaker circuitBreaker, RetryManifestCollector retryCollector,
+        PasswordDigests passwordDigests, String passwordDigest) {
+        var primaryId = serializedUser.primaryId();
+        if (!circuitBreaker.allowsRequest(almaId)) {
+            almaReportBuilder.addSkipped(primaryId, almaId);
+            retryCollector.add(toRetryEntry(serializedUser, almaId));
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        var passwordInAlma = passwordDigests.isSent(primaryId, almaId, passwordDigest);
+        return almaUserUpserter.upsertUserAsync(serializedUser, almaApikey, passwordInAlma).thenApply(result -> {
+            if (result.isSuccessful()) {
+                passwordDigests.record(primaryId, almaId, passwordDigest);
+                circuitBreaker.recordSuccess(almaId);
+                almaReportBuilder.addSuccess(primaryId);
+            } else {
+                circuitBreaker.recordFailure(almaId);
+                almaReportBuilder.addFailure(primaryId, almaId);
+                retryCollector.add(toRetryEntry(serializedUser, almaId));
+            }
+            return Optional.of(result);
+        });
+    }
+
+    private void logOpenCircuits(AlmaInstitutionCircuitBreaker circuitBreaker) {
+        var openInstitutions = circuitBreaker.getOpenInstitutions();
+        if (!openInstitutions.isEmpty()) {
+            logger.warn(SKIPPED_OPEN_CIRCUITS, openInstitutions);
+        }
+    }
+
+    /**
+     * The entry leaves out the payload, as the serialized user holds the library password in plain text.
+     **/
+    private static RetryEntry toRetryEntry(SerializedUser serializedUser, String almaId) {
+        var primaryId = serializedUser.primaryId();
+        var bibnr = primaryId.startsWith(UserConverter.LIB_USER_PREFIX)
+                        ? primaryId.substring(UserConverter.LIB_USER_PREFIX.length())
+                        : primaryId;
+        return new RetryEntry(bibnr, almaId, primaryId, null);
+    }
+
+    private boolean replayEntry(RetryEntry entry) {
+        var almaApikey = almaApiKeyMap.get(entry.almaCode());
+        return almaApikey != null
+               && rebuildUser(entry).map(serializedUser -> sendToAlma(serializedUser, almaApikey)).orElse(false);
+    }
+
+    /**
+     * Fetches the library from Basebibliotek again and converts it for the institution of the entry, so the replay
+     * sends the current record.
+     **/
+    private Optional<SerializedUser> rebuildUser(RetryEntry entry) {
+        var statisticNote = UserConverter.currentTime();
+        return baseBibliotekApi.fetchBasebibliotek(entry.bibnr()).stream()
+                   .flatMap(baseBibliotek -> LibraryRecord.fromBaseBibliotek(baseBibliotek).stream())
+                   .map(libraryRecord -> convertToUser(libraryRecord, entry.almaCode(), statisticNote))
+                   .flatMap(Optional::stream)
+                   .filter(user -> entry.targetId().equals(user.getPrimaryId()))
+                   .findFirst()
+                   .flatMap(SerializerUtils::serializeUser);
+    }
+
     private boolean sendToAlma(SerializedUser serializedUser, String almaApikey) {
         return almaUserUpserter.upsertUser(serializedUser, almaApikey);
     }
@@ -0,0 +1,114 @@
+package no.sikt.lum;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import no.unit.nva.s3.S3Driver;
+import nva.commons.core.paths.UnixPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Which password each Alma instance got for a user, kept as a digest in the report bucket. Alma never returns the
+ * password of a user, so without this every user with a password would be updated on every run.
+ *
+ * <p>The digest is an HMAC of the password keyed by the api key of the instance, which is not stored in the bucket.
+ * There is one small json file per user, and a user is only in one chunk, so the lanes that run side by side never
+ * write the same file.
+ **/
+public class PasswordDigests {
+
+    public static final String DIGEST_FOLDER = "password-digests/";
+    private static final String DIGEST_FILE_SUFFIX = ".json";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Logger logger = LoggerFactory.getLogger(PasswordDigests.class);
+    private static final Gson GSON = new Gson();
+    private static final TypeToken<Map<String, String>> DIGESTS_TYPE = new TypeToken<>() {
+    };
+    private static final String COULD_NOT_SAVE = "Could not save password digests of user {}";
+
+    private final transient S3Client s3Client;
+    private final transient String bucketName;
+    private final transient Map<String, Map<String, String>> digestsPerUser = new ConcurrentHashMap<>();
+    private final transient Set<String> changedUsers = ConcurrentHashMap.newKeySet();
+
+    public PasswordDigests(S3Client s3Client, String bucketName) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    public static String digest(String password, String almaApikey) {
+        try {
+            var mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(almaApikey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            var bytes = mac.doFinal(Objects.requireNonNullElse(password, "").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(bytes);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns true if the instance was last sent the password with the given digest. The digests of a user are read
+     * the first time the user is asked for; a user without a readable file has sent nothing.
+     **/
+    public boolean isSent(String primaryId, String almaCode, String digest) {
+        return digest.equals(digestsOf(primaryId).get(almaCode));
+    }
+
+    /**
+     * Remembers that the instance now holds the password with the given digest.
+     **/
+    public void record(String primaryId, String almaCode, String digest) {
+        if (!digest.equals(digestsOf(primaryId).put(almaCode, digest))) {
+            changedUsers.add(primaryId);
+        }
+    }
+
+    /**
+     * Writes back the users whose digests changed. Never throws, since a lost digest only costs one more update of
+     * the user in a later run.
+     **/
+    public void save() {
+        changedUsers.forEach(this::save);
+    }
+
+    private void save(String primaryId) {
+        try {
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucketName).key(keyOf(primaryId)).build(),
+                               RequestBody.fromString(GSON.toJson(Map.copyOf(digestsOf(primaryId)))));
+        } catch (Exception e) {
+            logger.warn(COULD_NOT_SAVE, primaryId, e);
+        }
+    }
+
+    private Map<String, String> digestsOf(String primaryId) {
+        return digestsPerUser.computeIfAbsent(primaryId, this::load);
+    }
+
+    private Map<String, String> load(String primaryId) {
+        try {
+            var json = new S3Driver(s3Client, bucketName).getFile(UnixPath.of(keyOf(primaryId)));
+            return new ConcurrentHashMap<>(Optional.ofNullable(GSON.fromJson(json, DIGESTS_TYPE))
+                                               .orElse(Map.of()));
+        } catch (Exception e) {
+            return new ConcurrentHashMap<>();
+        }
+    }
+
+    private static String keyOf(String primaryId) {
+        return DIGEST_FOLDER + primaryId + DIGEST_FILE_SUFFIX;
+    }
+}
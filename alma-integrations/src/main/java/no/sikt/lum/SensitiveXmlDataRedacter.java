@@ -1,18 +1,27 @@
 package no.sikt.lum;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import no.sikt.commons.Redacter;
 
+/**
+ * Redacts all configured tags in one pass over the input. The tags are alternatives in a single pattern, and the
+ * closing tag has to match the opening one, so each element is replaced as a whole.
+ **/
 public class SensitiveXmlDataRedacter implements Redacter {
 
-    private static final String PATTERN_STRING = "<%s(>| .*?>).*?</%s>";
+    private static final String PATTERN_STRING = "<(%s)(?:>| .*?>).*?</\\1>";
     private static final String REPLACEMENT_STRING = "<%s>redacted</%s>";
+    private static final String TAG_DELIMITER = "|";
+    private static final int TAG_GROUP = 1;
     private static final Set<String> DEFAULT_TAGS = Set.of("aut", "password");
 
-    private final Map<String, Pattern> patterns;
+    private final Pattern pattern;
     private final Map<String, String> replacements;
 
     /**
@@ -23,30 +32,24 @@ public class SensitiveXmlDataRedacter implements Redacter {
     }
 
     public SensitiveXmlDataRedacter(Set<String> tags) {
-        patterns = new HashMap<>();
-        replacements = new HashMap<>();
-
-        for (String tag : tags) {
-            patterns.put(tag, Pattern.compile(String.format(PATTERN_STRING, tag, tag)));
-            replacements.put(tag, String.format(REPLACEMENT_STRING, tag, tag));
-        }
+        pattern = Pattern.compile(String.format(PATTERN_STRING, tags.stream()
+                                                                    .map(Pattern::quote)
+                                                                    .collect(Collectors.joining(TAG_DELIMITER))));
+        replacements = tags.stream()
+                           .collect(Collectors.toUnmodifiableMap(Function.identity(),
+                                                                     SensitiveXmlDataRedacter::replacement));
     }
 
     @Override
     public String redact(String input) {
-        var output = input;
-
-        for (String tag : patterns.keySet()) {
-            output = replaceUsingPattern(output, tag);
-        }
-
-        return output;
+        return replacements.isEmpty() ? input : pattern.matcher(input).replaceAll(this::replacementFor);
     }
 
-    private String replaceUsingPattern(String input, String tag) {
-        return patterns.get(tag)
-                   .matcher(input)
-                   .replaceAll(replacements.get(tag));
+    private String replacementFor(MatchResult match) {
+        return replacements.get(match.group(TAG_GROUP));
     }
 
+    private static String replacement(String tag) {
+        return Matcher.quoteReplacement(String.format(REPLACEMENT_STRING, tag, tag));
+    }
 }
@@ -1,19 +1,13 @@
 package no.sikt.lum;
 
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
-import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
-import no.nb.basebibliotek.generated.Aut;
-import no.nb.basebibliotek.generated.BaseBibliotek;
-import no.nb.basebibliotek.generated.Record;
 import no.sikt.alma.user.generated.User;
 import no.sikt.alma.user.generated.User.AccountType;
 import no.sikt.alma.user.generated.User.Gender;
@@ -21,22 +15,19 @@ import no.sikt.alma.user.generated.User.RecordType;
 import no.sikt.alma.user.generated.User.Status;
 import no.sikt.alma.user.generated.UserIdentifier;
 import no.sikt.alma.user.generated.UserIdentifiers;
-import no.sikt.alma.user.generated.UserRole;
 import no.sikt.alma.user.generated.UserRoles;
 import no.sikt.alma.user.generated.UserStatistic;
 import no.sikt.alma.user.generated.UserStatistics;
 import no.sikt.commons.AlmaObjectConverter;
+import no.sikt.commons.ConversionResult;
 import no.sikt.commons.HandlerUtils;
-import no.sikt.lum.reporting.UserReportBuilder;
+import no.sikt.commons.LibraryRecord;
 import nva.commons.core.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 @SuppressWarnings({"PMD.GodClass", "PMD.CouplingBetweenObjects"})
 public class UserConverter extends AlmaObjectConverter {
 
     public static final String COUNTRYCODE_NORWAY = "NO";
-    private static final Logger logger = LoggerFactory.getLogger(UserConverter.class);
     public static final String COULD_NOT_CONVERT_TO_USER_ERROR_MESSAGE = " Could not convert to user";
     public static final String INST = "inst";
     public static final String BIBLTYPE = "bibltype";
@@ -89,48 +80,30 @@ public class UserConverter extends AlmaObjectConverter {
     public static final String UNIV_ID = "UNIV_ID";
     public static final String UNIVERSITY_ID = "University ID";
     public static final Set<String> USER_IDENTIFIER_REALMS = Set.of("@bibsys.no", "@basebibliotek.no");
+    private static final DateTimeFormatter STATISTIC_NOTE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss", Locale.ROOT);
     private final transient String targetAlmaCode;
+    private final transient String statisticNote;
 
-    public UserConverter(BaseBibliotek baseBibliotek, String targetAlmaCode) {
-        super(baseBibliotek);
+    /**
+     * The statistic note is the time the run started, formatted once by the caller with {@link #currentTime()}.
+     **/
+    public UserConverter(LibraryRecord libraryRecord, String targetAlmaCode, String statisticNote) {
+        super(libraryRecord);
         this.targetAlmaCode = targetAlmaCode;
+        this.statisticNote = statisticNote;
     }
 
-    @Override
-    protected void logProblemAndThrowException(Record record) {
-        var missingParameters = Objects.nonNull(record.getInst()) ? StringUtils.EMPTY_STRING : INST;
-        logger.info(String.format(COULD_NOT_CONVERT_RECORD, missingParameters, toXml(record)));
-        throw new RuntimeException(String.format(COULD_NOT_CONVERT_RECORD, missingParameters, toXml(record)));
-    }
-
-    public List<User> toUsers(UserReportBuilder userReportBuilder) {
-        List<User> users = new ArrayList<>();
-        baseBibliotek
-            .getRecord()
-            .forEach(record -> convertRecordToUserWhenConstraintsSatisfied(record, userReportBuilder)
-                .ifPresent(users::add));
-        return users;
+    public static String currentTime() {
+        return STATISTIC_NOTE_FORMAT.format(LocalDateTime.now());
     }
 
-    private Optional<User> convertRecordToUserWhenConstraintsSatisfied(Record record,
-                                                                       UserReportBuilder userReportBuilder) {
-        try {
-            if (satisfiesConstraints(record)) {
-                return Optional.of(convertRecordToUser(record));
-            } else {
-                logProblemAndThrowException(record);
-                return Optional.empty();
-            }
-        } catch (Exception e) {
-            //Errors in individual libraries should not cause crash in entire execution.
-            logger.info(COULD_NOT_CONVERT_TO_USER_ERROR_MESSAGE, e);
-            userReportBuilder.addFailure(baseBibliotek.getRecord().getFirst().getBibnr(), targetAlmaCode);
-            return Optional.empty();
-        }
+    public ConversionResult<User> toUser() {
+        return convertWhenValid(this::convertRecordToUser);
     }
 
     @Override
-    protected List<String> findMissingRequiredFields(Record record) {
+    protected List<String> findMissingRequiredFields(LibraryRecord record) {
         final List<String> missingFields = new ArrayList<>();
         if (StringUtils.isEmpty(record.getInst())) {
             missingFields.add(INST);
@@ -141,7 +114,7 @@ public class UserConverter extends AlmaObjectConverter {
         return missingFields;
     }
 
-    private User convertRecordToUser(Record record) {
+    private User convertRecordToUser(LibraryRecord record) {
         var user = new User();
         user.setRecordType(defaultRecordType());
         user.setStatus(defineUserStatus(record));
@@ -162,26 +135,15 @@ public class UserConverter extends AlmaObjectConverter {
     }
 
     private RecordType defaultRecordType() {
-        User.RecordType recordType = new User.RecordType();
-        recordType.setValue(PUBLIC.toUpperCase(Locale.ROOT));
-        recordType.setDesc(PUBLIC);
-        return recordType;
+        return UserFragments.RECORD_TYPE;
     }
 
-    private Status defineUserStatus(Record record) {
-        User.Status status = new User.Status();
-        if (Optional.of(PERMANENTLY_CLOSED).equals(Optional.ofNullable(record.getStengt()))) {
-            status.setValue(INACTIVE.toUpperCase(Locale.ROOT));
-            status.setDesc(INACTIVE);
-        } else {
-            status.setValue(ACTIVE.toUpperCase(Locale.ROOT));
-            status.setDesc(ACTIVE);
-        }
-        return status;
+    private Status defineUserStatus(LibraryRecord record) {
+        return PERMANENTLY_CLOSED.equals(record.getStengt()) ? UserFragments.INACTIVE : UserFragments.ACTIVE;
     }
 
     @SuppressWarnings("PMD.ImplicitSwitchFallThrough")
-    public String extractPrettyLibraryNameWithoutAmpersand(Record record) {
+    public String extractPrettyLibraryNameWithoutAmpersand(LibraryRecord record) {
         // replace linefeed with " - "
         String libraryName = record.getInst()
             .replace(LINEFEED, StringUtils.SPACE + HandlerUtils.HYPHEN + StringUtils.SPACE);
@@ -204,74 +166,46 @@ public class UserConverter extends AlmaObjectConverter {
     }
 
     private Gender defaultGender() {
-        User.Gender gender = new User.Gender();
-        gender.setValue(NONE);
-        return gender;
+        return UserFragments.GENDER;
     }
 
-    private void extractPreferredLanguage(Record record, User user) {
+    private void extractPreferredLanguage(LibraryRecord record, User user) {
         String landkode = record.getLandkode();
         if (isNotEmpty(landkode)) {
-            User.PreferredLanguage lang = new User.PreferredLanguage();
-            lang.setValue(COUNTRYCODE_NORWAY.equals(landkode) ? LANGUAGECODE_BOKMAAL : LANGUAGECODE_ENGLISH);
-            user.setPreferredLanguage(lang);
+            user.setPreferredLanguage(COUNTRYCODE_NORWAY.equals(landkode)
+                                          ? UserFragments.BOKMAAL
+                                          : UserFragments.ENGLISH);
         }
     }
 
     private UserRoles defineUserRoles() {
-        UserRole userRole = new UserRole();
-        UserRole.RoleType roleType = new UserRole.RoleType();
-        roleType.setValue(DEFAULT_PATRON_ROLE_200);
-        roleType.setDesc(PATRON_ROLE);
-        userRole.setRoleType(roleType);
-        UserRole.Scope scope = new UserRole.Scope();
-        scope.setValue(INSTITUTION_CODE_PREFIX + targetAlmaCode);
-        userRole.setScope(scope);
-        UserRoles userRoles = new UserRoles();
-        userRoles.getUserRole().add(userRole);
-        return userRoles;
+        return UserFragments.userRoles(targetAlmaCode);
     }
 
     private UserStatistics defaultUserStatistics() {
-        String now = getCurrentTime();
         UserStatistic userStatistic = new UserStatistic();
-        userStatistic.setStatisticNote(now);
-        UserStatistic.StatisticCategory statisticCategory = new UserStatistic.StatisticCategory();
-        statisticCategory.setValue(STATISTICS_CATEGORY_BIM);
-        statisticCategory.setDesc(STATISTICS_CATEGORY_BIM);
-        userStatistic.setStatisticCategory(statisticCategory);
-        UserStatistic.CategoryType categoryType = new UserStatistic.CategoryType();
-        categoryType.setValue(STATISTICS_TYPE_USER_UPDATE);
-        categoryType.setDesc(STATISTICS_TYPE_BRUKEROPPDATERING);
-        userStatistic.setCategoryType(categoryType);
+        userStatistic.setStatisticNote(statisticNote);
+        userStatistic.setStatisticCategory(UserFragments.STATISTIC_CATEGORY);
+        userStatistic.setCategoryType(UserFragments.STATISTIC_CATEGORY_TYPE);
         UserStatistics userStatistics = new UserStatistics();
         userStatistics.getUserStatistic().add(userStatistic);
         return userStatistics;
     }
 
-    private String getCurrentTime() {
-        SimpleDateFormat patternString = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ROOT);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(patternString.toPattern());
-        return formatter.format(LocalDateTime.now());
-    }
-
     private AccountType defaultAccountType() {
         // Account Type - mandatory field for ExLibris
-        User.AccountType accountType = new User.AccountType();
-        accountType.setValue(ACCOUNT_TYPE_EXTERNAL);
-        return accountType;
+        return UserFragments.ACCOUNT_TYPE;
     }
 
-    private String extractPassword(Record record) {
-        return Optional.ofNullable(Optional.ofNullable(record.getAut()).orElse(new Aut()).getContent()).orElse(
-            StringUtils.EMPTY_STRING);
+    private String extractPassword(LibraryRecord record) {
+        return Objects.requireNonNullElse(record.getAut(), StringUtils.EMPTY_STRING);
     }
 
-    private String extractPrimaryID(Record record) {
-        return LIB_USER_PREFIX + getLibraryNumber(record);
+    private String extractPrimaryID(LibraryRecord record) {
+        return LIB_USER_PREFIX + record.getLibraryNumber();
     }
 
-    private UserIdentifiers extractUserIdentifiers(Record record) {
+    private UserIdentifiers extractUserIdentifiers(LibraryRecord record) {
         var allUserIdentifiers = createAllUserIdentifiers(record);
         var userIdentifiers = new UserIdentifiers();
         userIdentifiers.getUserIdentifier().addAll(allUserIdentifiers);
@@ -279,29 +213,23 @@ public class UserConverter extends AlmaObjectConverter {
         return userIdentifiers;
     }
 
-    private List<UserIdentifier> createAllUserIdentifiers(Record record) {
-        return USER_IDENTIFIER_REALMS
-                   .stream()
-                   .map(realm -> createUserIdentifier(record, realm))
-                   .collect(Collectors.toList());
+    private List<UserIdentifier> createAllUserIdentifiers(LibraryRecord record) {
+        var userIdentifiers = new ArrayList<UserIdentifier>(USER_IDENTIFIER_REALMS.size());
+        for (var realm : USER_IDENTIFIER_REALMS) {
+            userIdentifiers.add(createUserIdentifier(record, realm));
+        }
+        return userIdentifiers;
     }
 
-    private UserIdentifier createUserIdentifier(Record record, String realm) {
+    private UserIdentifier createUserIdentifier(LibraryRecord record, String realm) {
         var userIdentifier = new UserIdentifier();
-        userIdentifier.setValue(getLibraryNumber(record) + realm);
+        userIdentifier.setValue(record.getLibraryNumber() + realm);
         userIdentifier.setStatus(ACTIVE.toUpperCase(Locale.ROOT));
         userIdentifier.setSegmentType(EXTERNAL);
 
-        var value = new UserIdentifier.IdType();
-        value.setValue(UNIV_ID);
-        value.setDesc(UNIVERSITY_ID);
-        userIdentifier.setIdType(value);
+        userIdentifier.setIdType(UserFragments.UNIVERSITY_ID);
 
         return userIdentifier;
     }
-
-    private String getLibraryNumber(Record record) {
-        return record.getBibnr().replaceAll("\\w+-", StringUtils.EMPTY_STRING);
-    }
 }
 
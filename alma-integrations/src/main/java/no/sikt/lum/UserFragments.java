@@ -0,0 +1,143 @@
+package no.sikt.lum;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import no.sikt.alma.user.generated.Address;
+import no.sikt.alma.user.generated.Email;
+import no.sikt.alma.user.generated.Phone;
+import no.sikt.alma.user.generated.User;
+import no.sikt.alma.user.generated.UserIdentifier;
+import no.sikt.alma.user.generated.UserRole;
+import no.sikt.alma.user.generated.UserRoles;
+import no.sikt.alma.user.generated.UserStatistic;
+import nva.commons.core.JacocoGenerated;
+
+/**
+ * The parts of a user that are the same for every library, built once and shared by all converted users. The JAXB
+ * classes are mutable, so nothing may call a setter or add to a list on these after they are handed out. Users are
+ * only marshalled, which reads them, so sharing them between threads is safe.
+ **/
+/* default */ final class UserFragments {
+
+    /* default */ static final User.RecordType RECORD_TYPE = recordType();
+    /* default */ static final User.Status ACTIVE = status(UserConverter.ACTIVE);
+    /* default */ static final User.Status INACTIVE = status(UserConverter.INACTIVE);
+    /* default */ static final User.Gender GENDER = gender();
+    /* default */ static final User.PreferredLanguage BOKMAAL = preferredLanguage(UserConverter.LANGUAGECODE_BOKMAAL);
+    /* default */ static final User.PreferredLanguage ENGLISH = preferredLanguage(UserConverter.LANGUAGECODE_ENGLISH);
+    /* default */ static final User.AccountType ACCOUNT_TYPE = accountType();
+    /* default */ static final UserStatistic.StatisticCategory STATISTIC_CATEGORY = statisticCategory();
+    /* default */ static final UserStatistic.CategoryType STATISTIC_CATEGORY_TYPE = statisticCategoryType();
+    /* default */ static final UserIdentifier.IdType UNIVERSITY_ID = universityId();
+    /* default */ static final Email.EmailTypes EMAIL_TYPES = emailTypes();
+    /* default */ static final Phone.PhoneTypes PHONE_TYPES = phoneTypes();
+    /* default */ static final Address.AddressTypes ADDRESS_TYPES = addressTypes();
+    private static final Map<String, UserRoles> USER_ROLES_BY_INSTITUTION = new ConcurrentHashMap<>();
+
+    @JacocoGenerated
+    private UserFragments() {
+    }
+
+    /**
+     * The patron role scoped to the institution. There is one per Alma instance, so they are kept once made.
+     **/
+    /* default */ static UserRoles userRoles(String almaCode) {
+        return USER_ROLES_BY_INSTITUTION.computeIfAbsent(almaCode, UserFragments::patronRole);
+    }
+
+    private static UserRoles patronRole(String almaCode) {
+        UserRole.RoleType roleType = new UserRole.RoleType();
+        roleType.setValue(UserConverter.DEFAULT_PATRON_ROLE_200);
+        roleType.setDesc(UserConverter.PATRON_ROLE);
+        UserRole.Scope scope = new UserRole.Scope();
+        scope.setValue(UserConverter.INSTITUTION_CODE_PREFIX + almaCode);
+        UserRole userRole = new UserRole();
+        userRole.setRoleType(roleType);
+        userRole.setScope(scope);
+        UserRoles userRoles = new UserRoles();
+        userRoles.getUserRole().add(userRole);
+        return userRoles;
+    }
+
+    private static User.RecordType recordType() {
+        User.RecordType recordType = new User.RecordType();
+        recordType.setValue(UserConverter.PUBLIC.toUpperCase(Locale.ROOT));
+        recordType.setDesc(UserConverter.PUBLIC);
+        return recordType;
+    }
+
+    private static User.Status status(String desc) {
+        User.Status status = new User.Status();
+        status.setValue(desc.toUpperCase(Locale.ROOT));
+        status.setDesc(desc);
+        return status;
+    }
+
+    private static User.Gender gender() {
+        User.Gender gender = new User.Gender();
+        gender.setValue(UserConverter.NONE);
+        return gender;
+    }
+
+    private static User.PreferredLanguage preferredLanguage(String languageCode) {
+        User.PreferredLanguage preferredLanguage = new User.PreferredLanguage();
+        preferredLanguage.setValue(languageCode);
+        return preferredLanguage;
+    }
+
+    private static User.AccountType accountType() {
+        // Account Type - mandatory field for ExLibris
+        User.AccountType accountType = new User.AccountType();
+        accountType.setValue(UserConverter.ACCOUNT_TYPE_EXTERNAL);
+        return accountType;
+    }
+
+    private static UserStatistic.StatisticCategory statisticCategory() {
+        UserStatistic.StatisticCategory statisticCategory = new UserStatistic.StatisticCategory();
+        statisticCategory.setValue(UserConverter.STATISTICS_CATEGORY_BIM);
+        statisticCategory.setDesc(UserConverter.STATISTICS_CATEGORY_BIM);
+        return statisticCategory;
+    }
+
+    private static UserStatistic.CategoryType statisticCategoryType() {
+        UserStatistic.CategoryType categoryType = new UserStatistic.CategoryType();
+        categoryType.setValue(UserConverter.STATISTICS_TYPE_USER_UPDATE);
+        categoryType.setDesc(UserConverter.STATISTICS_TYPE_BRUKEROPPDATERING);
+        return categoryType;
+    }
+
+    private static UserIdentifier.IdType universityId() {
+        UserIdentifier.IdType idType = new UserIdentifier.IdType();
+        idType.setValue(UserConverter.UNIV_ID);
+        idType.setDesc(UserConverter.UNIVERSITY_ID);
+        return idType;
+    }
+
+    private static Email.EmailTypes emailTypes() {
+        Email.EmailTypes.EmailType emailType = new Email.EmailTypes.EmailType();
+        emailType.setValue(ContactInfoConverter.WORK.toLowerCase(Locale.ROOT));
+        emailType.setDesc(ContactInfoConverter.WORK);
+        Email.EmailTypes emailTypes = new Email.EmailTypes();
+        emailTypes.getEmailType().add(emailType);
+        return emailTypes;
+    }
+
+    private static Phone.PhoneTypes phoneTypes() {
+        Phone.PhoneTypes.PhoneType phoneType = new Phone.PhoneTypes.PhoneType();
+        phoneType.setValue(ContactInfoConverter.OFFICE.toLowerCase(Locale.ROOT));
+        phoneType.setDesc(ContactInfoConverter.OFFICE);
+        Phone.PhoneTypes phoneTypes = new Phone.PhoneTypes();
+        phoneTypes.getPhoneType().add(phoneType);
+        return phoneTypes;
+    }
+
+    private static Address.AddressTypes addressTypes() {
+        Address.AddressTypes.AddressType addressType = new Address.AddressTypes.AddressType();
+        addressType.setValue(ContactInfoConverter.WORK.toLowerCase(Locale.ROOT));
+        addressType.setDesc(ContactInfoConverter.WORK);
+        Address.AddressTypes addressTypes = new Address.AddressTypes();
+        addressTypes.getAddressType().add(addressType);
+        return addressTypes;
+    }
+}
@@ -1,159 +1,169 @@
 package no.sikt.lum;
 
-import java.util.Arrays;
-import java.util.List;
-import no.nb.basebibliotek.generated.Record;
+import static java.util.Map.entry;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import no.sikt.alma.user.generated.User;
 import no.sikt.alma.user.generated.User.UserGroup;
-import nva.commons.core.JacocoGenerated;
-import nva.commons.core.StringUtils;
-
+import no.sikt.commons.LibraryRecord;
+
+/**
+ * Produserer code for tilordning av User Group for libbruker som skal importeres til Alma, basert på feltene
+ * &lt;bibnr&gt; og &lt;bibltype&gt; fra Base bibliotek.
+ *
+ * <p>The rules come from the old webframework and are kept as tables that are filled once, when the class is loaded.
+ * The first three digits of the library number decide the category for the national library and for libraries
+ * outside Norway. For the rest the first known customer type decides, and the first digit is the last resort.
+ **/
 public class UserGroupConverter {
 
-    public static final List<String> VALID_USER_GROUPS = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "11",
-                                                                       "12", "13", "14", "15", "16", "17", "20", "21",
-                                                                       "22", "23", "24", "25", "50");
+    public static final Set<String> VALID_USER_GROUPS = Set.of("1", "2", "3", "4", "5", "6", "7", "8", "11", "12",
+                                                               "13", "14", "15", "16", "17", "20", "21", "22", "23",
+                                                               "24", "25", "50");
     public static final String NOTFOUND = "NOTFOUND";
+    /* default */ static final int PREFIX_LENGTH = 3;
+    private static final int NUMBER_OF_PREFIXES = 1000;
+    private static final char CUSTOMER_TYPE_SEPARATOR = '+';
 
-    public static UserGroup extractUserGroup(Record record) {
-        String libraryNumber = record.getBibnr().replaceAll("\\w+-", StringUtils.EMPTY_STRING);
-        BibKategori bibKategori = konverterBibKategori(libraryNumber, record.getBibltype());
-        String patronCategory = bibKategori.getCode();
+    //Libnr inneholder informasjon. Kan skape krøll hvis et bibliotek går fra å være et høyskole bibliotek til
+    // universitetsbibliotek.
+    private static final Map<String, BibKategori> CATEGORY_BY_PREFIX = Map.ofEntries(
+        entry("0", BibKategori.NasjonalBiblioteket),
+        entry("61", BibKategori.Finland),
+        entry("63", BibKategori.Sverige),
+        entry("647", BibKategori.Island_Faroyene_Gronland),
+        entry("648", BibKategori.Island_Faroyene_Gronland),
+        entry("649", BibKategori.Island_Faroyene_Gronland),
+        entry("65", BibKategori.Danmark),
+        entry("66", BibKategori.Danmark),
+        entry("67", BibKategori.Danmark),
+        entry("68", BibKategori.Danmark),
+        entry("69", BibKategori.Danmark),
+        entry("7", BibKategori.Europeisk),
+        entry("8", BibKategori.Verden));
+
+    private static final Map<String, BibKategori> FALLBACK_BY_PREFIX = Map.of(
+        "2", BibKategori.Folkebibliotek,
+        "3", BibKategori.GrunnkoleOgVideregaaendeBib,
+        "4", BibKategori.GrunnkoleOgVideregaaendeBib,
+        "5", BibKategori.BedriftsBibNorge);
+
+    private static final Map<String, BibKategori> CATEGORY_BY_CUSTOMER_TYPE = Map.ofEntries(
+        entry("UNB", BibKategori.UniversitetsBibNorge),
+        entry("UNI", BibKategori.UniversitetsBibNorge),
+        entry("HØY", BibKategori.HoyskoleBibNorge),
+        entry("FIR", BibKategori.BedriftsBibNorge),
+        entry("ORG", BibKategori.BedriftsBibNorge),
+        entry("FAG", BibKategori.AndreFagOgForskningsbibliotek),
+        entry("AVD", BibKategori.AndreFagOgForskningsbibliotek),
+        entry("ARK", BibKategori.AndreFagOgForskningsbibliotek),
+        entry("MUS", BibKategori.AndreFagOgForskningsbibliotek),
+        entry("FBI", BibKategori.Folkebibliotek),
+        entry("FIL", BibKategori.Folkebibliotek),
+        entry("FYB", BibKategori.Folkebibliotek),
+        entry("FEN", BibKategori.Folkebibliotek),
+        entry("GSK", BibKategori.GrunnkoleOgVideregaaendeBib),
+        entry("VGS", BibKategori.GrunnkoleOgVideregaaendeBib),
+        entry("FHS", BibKategori.GrunnkoleOgVideregaaendeBib));
+
+    private static final BibKategori[] PREFIX_CATEGORIES = tabulate(CATEGORY_BY_PREFIX);
+    private static final BibKategori[] FALLBACK_CATEGORIES = tabulate(FALLBACK_BY_PREFIX);
+    private static final Map<BibKategori, String> USER_GROUP_CODES = userGroupCodes();
+
+    public static UserGroup extractUserGroup(LibraryRecord record) {
         User.UserGroup userGroup = new User.UserGroup();
-        if (VALID_USER_GROUPS.contains(patronCategory)) {
-            userGroup.setValue(patronCategory);
-        } else {
-            userGroup.setValue(NOTFOUND);
-        }
+        userGroup.setValue(record.getUserGroupCode());
         return userGroup;
     }
 
     /**
-     * NB! gammelt kode, overført fra gode gamle webframework.
-     * Produserer code for tilordning av User Group for libbruker som skal importeres til Alma, basert på feltene
-     * &lt;bibnr&gt; og &lt;bibltype&gt; fra Base bibliotek.
+     * The user group for a library, or {@link #NOTFOUND} when its category is not a user group in Alma.
+     **/
+    public static String userGroupCode(String libraryNumber, String bibltype) {
+        return USER_GROUP_CODES.get(konverterBibKategori(libraryNumber, bibltype));
+    }
+
+    /**
+     * Finner bibliotekskategorien som skal brukes ved Almaimport.
      *
      * @param libnr     Heltall som brukes til å å bestemme bibliotekskategori
      * @param kundeType Streng som inneholder en liste med kundetyper. Separator mellom elementer er \"[+]\"
      * @return Bibliotekskategorien som skal brukes til ved Almaimport
      */
-
-    //Libnr inneholder informasjon. Kan skape krøll hvis et bibliotek går fra å være et høyskole bibliotek til
-    // universitetsbibliotek.
-    @JacocoGenerated
-    @SuppressWarnings({
-        "PMD.AvoidLiteralsInIfCondition",
-        "PMD.CognitiveComplexity",
-        "PMD.NPathComplexity",
-        "PMD.CollapsibleIfStatements",
-        "PMD.NullAssignment"
-    })
     public static BibKategori konverterBibKategori(String libnr, String kundeType) {
         if (libnr == null) {
             throw new RuntimeException("libnr er null");
         }
-        BibKategori kat = null;
-        char pos1 = libnr.charAt(0);
-        char pos2 = libnr.charAt(1);
-        char pos3 = libnr.charAt(2);
-        String customerType2 = null;
-        String customerType1;
-
-        if (kundeType != null && kundeType.contains("+")) {
-            customerType1 = kundeType.split(
-                "[+]")[0].trim(); // ta vare på første forekomst og fjern eventuelle whitespace
-            customerType2 = kundeType.split(
-                "[+]")[1].trim(); // ta vare på andre forekomst og fjern eventuelle whitespace
-        } else {
-            customerType1 = kundeType != null ? kundeType.trim() : null;
-        }
-
-        if (pos1 == '0') {
-            kat = BibKategori.NasjonalBiblioteket;
-        }
-        if (kat == null) {
-            if (pos1 == '6') {
-                if (pos2 == '5' || pos2 == '6' || pos2 == '7' || pos2 == '8' || pos2 == '9') {
-                    kat = BibKategori.Danmark;
-                } else if (pos2 == '1') {
-                    kat = BibKategori.Finland;
-                } else if (pos2 == '3') {
-                    kat = BibKategori.Sverige;
-                } else if (pos2 == '4') {
-                    if (pos3 == '7' || pos3 == '8' || pos3 == '9') {
-                        kat = BibKategori.Island_Faroyene_Gronland;
-                    }
-                }
-            }
+        var prefix = prefixIndex(libnr);
+        if (prefix >= 0 && PREFIX_CATEGORIES[prefix] != null) {
+            return PREFIX_CATEGORIES[prefix];
         }
-        if (kat == null) {
-            if (pos1 == '7') {
-                kat = BibKategori.Europeisk;
-            } else if (pos1 == '8') {
-                kat = BibKategori.Verden;
-            }
+        var fromCustomerType = findBibKategoriFromCustomerTypes(kundeType);
+        if (fromCustomerType != null) {
+            return fromCustomerType;
         }
+        return prefix >= 0 && FALLBACK_CATEGORIES[prefix] != null
+                   ? FALLBACK_CATEGORIES[prefix]
+                   : BibKategori.Ukjent;
+    }
 
-        if (kat == null) {
-            kat = finnBibKategoriFraKundetype(customerType1);
-            if (kat == null && customerType2 != null) {
-                kat = finnBibKategoriFraKundetype(customerType2);
-            }
+    private static int prefixIndex(String libnr) {
+        if (libnr.length() < PREFIX_LENGTH) {
+            return -1;
         }
-        if (kat == null) {
-            if (pos1 == '2') {
-                kat = BibKategori.Folkebibliotek;
-            } else if (pos1 == '3' || pos1 == '4') {
-                kat = BibKategori.GrunnkoleOgVideregaaendeBib;
-            } else if (pos1 == '5') {
-                kat = BibKategori.BedriftsBibNorge;
-            }
-            if (kat == null) {
-                kat = BibKategori.Ukjent;
+        var index = 0;
+        for (var i = 0; i < PREFIX_LENGTH; i++) {
+            var digit = libnr.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
             }
+            index = index * 10 + digit - '0';
         }
-        return kat;
+        return index;
     }
 
-    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
-    private static BibKategori finnBibKategoriFraKundetype(String customerType) {
-        BibKategori kat = null;
+    /**
+     * Only the first two customer types count, as in the old webframework.
+     **/
+    private static BibKategori findBibKategoriFromCustomerTypes(String kundeType) {
+        if (kundeType == null) {
+            return null;
+        }
+        var separator = kundeType.indexOf(CUSTOMER_TYPE_SEPARATOR);
+        if (separator < 0) {
+            return findBibKategoriFromCustomerType(kundeType);
+        }
+        var first = findBibKategoriFromCustomerType(kundeType.substring(0, separator));
+        if (first != null) {
+            return first;
+        }
+        var end = kundeType.indexOf(CUSTOMER_TYPE_SEPARATOR, separator + 1);
+        return findBibKategoriFromCustomerType(kundeType.substring(separator + 1, end < 0 ? kundeType.length() : end));
+    }
 
-        if (matches(customerType, "UNB", "UNI")) {
-            kat = BibKategori.UniversitetsBibNorge;
-        }
-        if (matches(customerType, "HØY")) {
-            kat = BibKategori.HoyskoleBibNorge;
-        }
-        if (matches(customerType, "FIR", "ORG")) {
-            kat = BibKategori.BedriftsBibNorge;
-        }
-        if (matches(customerType, "FAG", "AVD", "ARK", "MUS")) {
-            kat = BibKategori.AndreFagOgForskningsbibliotek;
-        }
-        if (matches(customerType, "FBI", "FIL", "FYB", "FEN")) {
-            kat = BibKategori.Folkebibliotek;
-        }
-        if (matches(customerType, "GSK", "VGS", "FHS")) {
-            kat = BibKategori.GrunnkoleOgVideregaaendeBib;
-        }
-        return kat;
+    private static BibKategori findBibKategoriFromCustomerType(String customerType) {
+        return CATEGORY_BY_CUSTOMER_TYPE.get(customerType.trim().toUpperCase(Locale.ROOT));
     }
 
-    /**
-     * utility method for string matching on multiple values.
-     *
-     * @param input  string to check
-     * @param values matching criteria
-     * @return true if any criteria matches input (case ignored)
-     */
-    private static boolean matches(String input, String... values) {
-        for (String value : values) {
-            if (input.trim().equalsIgnoreCase(value)) {
-                return true;
+    private static BibKategori[] tabulate(Map<String, BibKategori> categoryByPrefix) {
+        var table = new BibKategori[NUMBER_OF_PREFIXES];
+        for (var prefix = 0; prefix < NUMBER_OF_PREFIXES; prefix++) {
+            var digits = String.format(Locale.ROOT, "%03d", prefix);
+            for (var length = PREFIX_LENGTH; length > 0 && table[prefix] == null; length--) {
+                table[prefix] = categoryByPrefix.get(digits.substring(0, length));
             }
         }
-        return false;
+        return table;
+    }
+
+    private static Map<BibKategori, String> userGroupCodes() {
+        var codes = new EnumMap<BibKategori, String>(BibKategori.class);
+        for (var kategori : BibKategori.values()) {
+            codes.put(kategori, VALID_USER_GROUPS.contains(kategori.getCode()) ? kategori.getCode() : NOTFOUND);
+        }
+        return codes;
     }
 
     public enum BibKategori {
@@ -1,60 +1,49 @@
 package no.sikt.lum.reporting;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-@SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
+import java.util.function.Consumer;
+
 public class AlmaReportBuilder implements ReportGenerator {
 
-    // Example: lib1000000 ok:70 failures:2 failed:[MOLDESYS, NTNU]
-    public static final String TEMPLATE = "%s \t ok:%s \t failures:%s \t failed:[%s]";
+    // Example: lib1000000 ok:70 failures:2 failed:[MOLDESYS, NTNU] skipped:[UIT]
+    public static final String TEMPLATE = "%s \t ok:%s \t failures:%s \t failed:[%s] \t skipped:[%s]";
     public static final String FAILED_INSTANCES_DELIMITER = ", ";
     public static final String LINE_BREAK = "\n";
 
-    private final Map<String, Integer> successes;
-    private final Map<String, List<String>> failures;
-    private final Set<String> allLibraryCodes;
+    private final LibraryReportEntries entries;
 
     /**
      * Creates a report builder that builds a report of alma request successes and failures in String format.
+     * Safe to feed from many threads at once without locking.
      **/
     public AlmaReportBuilder() {
-        successes = new HashMap<>();
-        failures = new HashMap<>();
-        allLibraryCodes = new LinkedHashSet<>();
+        entries = new LibraryReportEntries();
     }
 
-    public synchronized void addSuccess(String libraryCode) {
-        allLibraryCodes.add(libraryCode);
-        successes.put(libraryCode, successes.getOrDefault(libraryCode, 0) + 1);
+    public void addSuccess(String libraryCode) {
+        entries.entryFor(libraryCode).recordSuccess();
     }
 
-    public synchronized void addFailure(String libraryCode, String failedInstance) {
-        allLibraryCodes.add(libraryCode);
-        var failuresForLibrary = failures.getOrDefault(libraryCode, new ArrayList<>());
-        failuresForLibrary.add(failedInstance);
-        failures.put(libraryCode, failuresForLibrary);
+    public void addFailure(String libraryCode, String failedInstance) {
+        entries.entryFor(libraryCode).recordFailure(failedInstance);
     }
 
-    @Override
-    public synchronized StringBuilder generateReport() {
-        var reportStringBuilder = new StringBuilder();
-
-        allLibraryCodes.forEach(libraryCode -> {
-            int successNumber = successes.getOrDefault(libraryCode, 0);
-            var failedInstances = failures.getOrDefault(libraryCode, List.of());
-            var failNumber = failedInstances.size();
-            var failedInstancesString = String.join(FAILED_INSTANCES_DELIMITER, failedInstances);
-            var line = String.format(TEMPLATE, libraryCode, successNumber, failNumber, failedInstancesString);
+    /**
+     * Records a request that was never sent because the circuit for the alma instance was open.
+     **/
+    public void addSkipped(String libraryCode, String skippedInstance) {
+        entries.entryFor(libraryCode).recordSkipped(skippedInstance);
+    }
 
-            reportStringBuilder.append(line).append(LINE_BREAK);
+    @Override
+    public void writeReport(Consumer<String> lineWriter) {
+        entries.inFirstSeenOrder().forEach(entry -> {
+            var failedInstancesString = String.join(FAILED_INSTANCES_DELIMITER, entry.getFailedInstances());
+            var skippedInstancesString = String.join(FAILED_INSTANCES_DELIMITER, entry.getSkippedInstances());
+            var line = String.format(TEMPLATE, entry.getLibraryCode(), entry.getSuccessCount(),
+                                     entry.getFailureCount(), failedInstancesString, skippedInstancesString);
+
+            lineWriter.accept(line + LINE_BREAK);
         });
-
-        return reportStringBuilder;
     }
 
 }
@@ -0,0 +1,89 @@
+package no.sikt.lum.reporting;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free per-library counters shared by the report builders. Libraries are reported in the order they were
+ * first seen, regardless of which thread saw them.
+ **/
+class LibraryReportEntries {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong firstSeenSequence = new AtomicLong();
+
+    /* default */ Entry entryFor(String libraryCode) {
+        var key = String.valueOf(libraryCode);
+        var entry = entries.get(key);
+        return entry != null ? entry : entries.computeIfAbsent(key, this::newEntry);
+    }
+
+    /* default */ List<Entry> inFirstSeenOrder() {
+        return entries.values()
+                   .stream()
+                   .sorted(Comparator.comparingLong(Entry::getFirstSeen))
+                   .toList();
+    }
+
+    private Entry newEntry(String libraryCode) {
+        return new Entry(libraryCode, firstSeenSequence.getAndIncrement());
+    }
+
+    /* default */ static final class Entry {
+
+        private final String libraryCode;
+        private final long firstSeen;
+        private final LongAdder successCount = new LongAdder();
+        private final LongAdder failureCount = new LongAdder();
+        private final Queue<String> failedInstances = new ConcurrentLinkedQueue<>();
+        private final Queue<String> skippedInstances = new ConcurrentLinkedQueue<>();
+
+        private Entry(String libraryCode, long firstSeen) {
+            this.libraryCode = libraryCode;
+            this.firstSeen = firstSeen;
+        }
+
+        /* default */ void recordSuccess() {
+            successCount.increment();
+        }
+
+        /* default */ void recordFailure(String failedInstance) {
+            failedInstances.add(String.valueOf(failedInstance));
+            failureCount.increment();
+        }
+
+        /* default */ void recordSkipped(String skippedInstance) {
+            skippedInstances.add(String.valueOf(skippedInstance));
+        }
+
+        /* default */ String getLibraryCode() {
+            return libraryCode;
+        }
+
+        /* default */ long getFirstSeen() {
+            return firstSeen;
+        }
+
+        /* default */ long getSuccessCount() {
+            return successCount.sum();
+        }
+
+        /* default */ long getFailureCount() {
+            return failureCount.sum();
+        }
+
+        /* default */ Iterable<String> getFailedInstances() {
+            return failedInstances;
+        }
+
+        /* default */ Iterable<String> getSkippedInstances() {
+            return skippedInstances;
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package no.sikt.lum.reporting;
 
+import java.util.function.Consumer;
+
 @FunctionalInterface
 public interface ReportGenerator {
 
-    StringBuilder generateReport();
+    /**
+     * Hands the report to the given writer one line at a time, line break included.
+     **/
+    void writeReport(Consumer<String> lineWriter);
+
+    default StringBuilder generateReport() {
+        var reportStringBuilder = new StringBuilder();
+        writeReport(reportStringBuilder::append);
+        return reportStringBuilder;
+    }
 
 }
@@ -1,13 +1,7 @@
 package no.sikt.lum.reporting;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-@SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
+import java.util.function.Consumer;
+
 public class UserReportBuilder implements ReportGenerator {
 
     // Example: 1000000 failures:2 Could not convert to user failed:[MOLDESYS, NTNU]
@@ -15,38 +9,29 @@ public class UserReportBuilder implements ReportGenerator {
     public static final String FAILED_INSTANCES_DELIMITER = ", ";
     public static final String LINE_BREAK = "\n";
 
-    private final Map<String, List<String>> failures;
-    private final Set<String> allLibraryCodes;
+    private final LibraryReportEntries entries;
 
     /**
      * Creates a report builder that builds a report of user conversion failures in String format.
+     * Safe to feed from many threads at once without locking.
      **/
     public UserReportBuilder() {
-        failures = new HashMap<>();
-        allLibraryCodes = new LinkedHashSet<>();
+        entries = new LibraryReportEntries();
     }
 
-    public synchronized void addFailure(String libraryCode, String failedInstance) {
-        allLibraryCodes.add(libraryCode);
-        var failuresForLibrary = failures.getOrDefault(libraryCode, new ArrayList<>());
-        failuresForLibrary.add(failedInstance);
-        failures.put(libraryCode, failuresForLibrary);
+    public void addFailure(String libraryCode, String failedInstance) {
+        entries.entryFor(libraryCode).recordFailure(failedInstance);
     }
 
     @Override
-    public synchronized StringBuilder generateReport() {
-        var reportStringBuilder = new StringBuilder();
-
-        allLibraryCodes.forEach(libraryCode -> {
-            var failedInstances = failures.getOrDefault(libraryCode, List.of());
-            var failNumber = failedInstances.size();
-            var failedInstancesString = String.join(FAILED_INSTANCES_DELIMITER, failedInstances);
-            var line = String.format(TEMPLATE, libraryCode, failNumber, failedInstancesString);
+    public void writeReport(Consumer<String> lineWriter) {
+        entries.inFirstSeenOrder().forEach(entry -> {
+            var failedInstancesString = String.join(FAILED_INSTANCES_DELIMITER, entry.getFailedInstances());
+            var line = String.format(TEMPLATE, entry.getLibraryCode(), entry.getFailureCount(),
+                                     failedInstancesString);
 
-            reportStringBuilder.append(line).append(LINE_BREAK);
+            lineWriter.accept(line + LINE_BREAK);
         });
-
-        return reportStringBuilder;
     }
 
 }
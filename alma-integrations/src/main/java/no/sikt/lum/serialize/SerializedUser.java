@@ -1,4 +1,21 @@
 package no.sikt.lum.serialize;
 
-public record SerializedUser(String primaryId, String serializedXml) {
-}
\ No newline at end of file
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A user marshalled once to UTF-8, ready to be sent to every Alma instance. The payload array is shared, not copied,
+ * and must not be modified.
+ **/
+public record SerializedUser(String primaryId, byte[] payload) {
+
+    public SerializedUser(String primaryId, String serializedXml) {
+        this(primaryId, serializedXml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The payload as text, for logs and retry files.
+     **/
+    public String serializedXml() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -2,9 +2,9 @@ package no.sikt.lum.serialize;
 
 import jakarta.xml.bind.JAXB;
 import java.io.ByteArrayOutputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import no.sikt.alma.user.generated.User;
+import no.sikt.commons.flightrecorder.XmlBindingEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,12 +20,14 @@ public class SerializerUtils {
             logger.error(USER_OR_PRIMARY_ID_IS_NULL);
             return Optional.empty();
         }
+        var event = XmlBindingEvent.start(XmlBindingEvent.MARSHAL, User.class, user.getPrimaryId());
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
             JAXB.marshal(user, outputStream);
-            var serializedXml = outputStream.toString(StandardCharsets.UTF_8);
-            var serializedUser = new SerializedUser(user.getPrimaryId(), serializedXml);
+            var serializedUser = new SerializedUser(user.getPrimaryId(), outputStream.toByteArray());
+            event.complete(outputStream.size());
             return Optional.of(serializedUser);
         } catch (Exception e) {
+            event.fail();
             logger.error(FAILED_TO_SERIALIZE_USER, user.getPrimaryId(), e.getMessage());
             return Optional.empty();
         }
@@ -1,10 +1,8 @@
 package no.sikt.rsp;
 
-import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
-import no.nb.basebibliotek.generated.Record;
 import no.sikt.alma.partners.generated.Address;
 import no.sikt.alma.partners.generated.Address.AddressTypes;
 import no.sikt.alma.partners.generated.Address.Country;
@@ -17,6 +15,7 @@ import no.sikt.alma.partners.generated.Phone;
 import no.sikt.alma.partners.generated.Phone.PhoneTypes;
 import no.sikt.alma.partners.generated.Phones;
 import no.sikt.commons.LanguageCodeConverter;
+import no.sikt.commons.LibraryRecord;
 import nva.commons.core.JacocoGenerated;
 import nva.commons.core.StringUtils;
 
@@ -26,17 +25,12 @@ public final class ContactInfoConverter {
     private static final boolean THERE_IS_ONLY_ONE_PHONE_SO_IT_IS_ALWAYS_PREFERRED = true;
     private static final boolean P_ADDRESS_IS_ALWAYS_PREFERRED = true;
     private static final String HYPHEN = "-";
-    private static final List<String> PHONE_TYPES = List.of("claimPhone", "orderPhone", "paymentPhone", "returnsPhone");
-    private static final List<String> ADDRESS_TYPES = List.of("billing", "claim", "order", "payment", "returns",
-                                                              "shipping");
-    private static final List<String> EMAIL_TYPES = List.of("claimMail", "orderMail", "paymentMail", "queries",
-                                                            "returnsMail");
 
     @JacocoGenerated
     private ContactInfoConverter() {
     }
 
-    public static ContactInfo extractContactInfoFromRecord(Record record) {
+    public static ContactInfo extractContactInfoFromRecord(LibraryRecord record) {
         var contactInfo = new ContactInfo();
         contactInfo.setAddresses(extractAddressesFromRecord(record));
         contactInfo.setPhones(createPhones(record));
@@ -44,7 +38,7 @@ public final class ContactInfoConverter {
         return contactInfo;
     }
 
-    private static Emails createEmails(Record record) {
+    private static Emails createEmails(LibraryRecord record) {
         var emailBest = createEmailBest(record);
         var emailBestExists = emailBest.isPresent();
         var emailRegular = createEmailRegular(record, emailBestExists);
@@ -54,13 +48,13 @@ public final class ContactInfoConverter {
         return emails;
     }
 
-    private static Optional<Email> createEmailRegular(Record record, boolean emailBestExists) {
+    private static Optional<Email> createEmailRegular(LibraryRecord record, boolean emailBestExists) {
         return Objects.nonNull(record.getEpostAdr())
                    ? Optional.of(createEmail(record.getEpostAdr(), !emailBestExists))
                    : Optional.empty();
     }
 
-    private static Optional<Email> createEmailBest(Record record) {
+    private static Optional<Email> createEmailBest(LibraryRecord record) {
         return Objects.nonNull(record.getEpostBest())
                    ? Optional.of(createEmail(record.getEpostBest(), BEST_EMAIL_IS_ALWAYS_PREFERRED))
                    : Optional.empty();
@@ -75,19 +69,16 @@ public final class ContactInfoConverter {
     }
 
     private static EmailTypes createEmailTypes() {
-
-        var emailTypes = new Email.EmailTypes();
-        emailTypes.getEmailType().addAll(EMAIL_TYPES);
-        return emailTypes;
+        return PartnerFragments.EMAIL_TYPE_LIST;
     }
 
-    private static Phones createPhones(Record record) {
+    private static Phones createPhones(LibraryRecord record) {
         var phones = new Phones();
         phones.getPhone().add(createPhone(record));
         return phones;
     }
 
-    private static Phone createPhone(Record record) {
+    private static Phone createPhone(LibraryRecord record) {
         var phone = new Phone();
         phone.setPhoneNumber(Objects.nonNull(record.getTlf()) ? record.getTlf() : StringUtils.EMPTY_STRING);
         phone.setPreferred(THERE_IS_ONLY_ONE_PHONE_SO_IT_IS_ALWAYS_PREFERRED);
@@ -96,13 +87,10 @@ public final class ContactInfoConverter {
     }
 
     private static PhoneTypes createPhoneTypes() {
-
-        var phoneTypes = new PhoneTypes();
-        phoneTypes.getPhoneType().addAll(PHONE_TYPES);
-        return phoneTypes;
+        return PartnerFragments.PHONE_TYPE_LIST;
     }
 
-    private static Addresses extractAddressesFromRecord(Record record) {
+    private static Addresses extractAddressesFromRecord(LibraryRecord record) {
         var addresses = new Addresses();
         var postAddress = createPAddress(record);
         var visitationAddress = createVAddress(record, postAddress.isPresent());
@@ -111,7 +99,7 @@ public final class ContactInfoConverter {
         return addresses;
     }
 
-    private static Optional<Address> createPAddress(Record record) {
+    private static Optional<Address> createPAddress(LibraryRecord record) {
         return Objects.nonNull(record.getPadr())
                    ? Optional.of(createAddress(record.getPadr(),
                                                record.getBibnr(),
@@ -122,7 +110,7 @@ public final class ContactInfoConverter {
                    : Optional.empty();
     }
 
-    private static Optional<Address> createVAddress(Record record, boolean postAddressAlreadyExists) {
+    private static Optional<Address> createVAddress(LibraryRecord record, boolean postAddressAlreadyExists) {
         return Objects.nonNull(record.getVadr())
                    ? Optional.of(createAddress(record.getVadr(),
                                                record.getBibnr(),
@@ -154,9 +142,7 @@ public final class ContactInfoConverter {
     }
 
     private static AddressTypes createAddressTypes() {
-        var addressTypes = new Address.AddressTypes();
-        addressTypes.getAddressType().addAll(ADDRESS_TYPES);
-        return addressTypes;
+        return PartnerFragments.ADDRESS_TYPE_LIST;
     }
 
     private static Country createCountry(String landkode) {
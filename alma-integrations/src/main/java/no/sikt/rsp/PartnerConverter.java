@@ -1,18 +1,11 @@
 package no.sikt.rsp;
 
-import jakarta.xml.bind.JAXBElement;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import javax.xml.datatype.XMLGregorianCalendar;
-import no.nb.basebibliotek.generated.BaseBibliotek;
-import no.nb.basebibliotek.generated.Record;
 import no.sikt.alma.partners.generated.EmailDetails;
-import no.sikt.alma.partners.generated.GeneralUserIdType;
 import no.sikt.alma.partners.generated.IsoDetails;
 import no.sikt.alma.partners.generated.NcipP2PDetails;
 import no.sikt.alma.partners.generated.Partner;
@@ -21,30 +14,26 @@ import no.sikt.alma.partners.generated.PartnerDetails.LocateProfile;
 import no.sikt.alma.partners.generated.PartnerDetails.SystemType;
 import no.sikt.alma.partners.generated.ProfileDetails;
 import no.sikt.alma.partners.generated.ProfileType;
-import no.sikt.alma.partners.generated.RequestExpiryType;
 import no.sikt.alma.partners.generated.Status;
 import no.sikt.clients.basebibliotek.BaseBibliotekUtils;
 import no.sikt.commons.AlmaObjectConverter;
+import no.sikt.commons.ConversionResult;
+import no.sikt.commons.LibraryRecord;
 import nva.commons.core.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class PartnerConverter extends AlmaObjectConverter {
 
-    private static final Logger logger = LoggerFactory.getLogger(PartnerConverter.class);
     private static final int AVG_SUPPLY_TIME = 1;
     private static final int DELIVERY_DELAY = 0;
     private static final String LENDING_WORKFLOW = "Lending";
     private static final boolean BORROWING_IS_SUPPORTED = true;
     private static final String BORROWING_WORKFLOW = "Borrowing";
     private static final boolean LENDING_IS_SUPPORTED = true;
-    private static final String ISIL_CODE_SEPARATOR = "-";
     private static final String NATIONAL_DEPOT_LIBRARY_BIBNR = "0183300";
     private static final String NATIONAL_DEPOT_LIBRARY_INSTITUTION_CODE = "BIBLIOFIL_DEPOT";
     private static final String NATIONAL_DEPOT_LIBRARY_LOCATE_CODE = "DEPOT";
     private static final String DEPOT_HOLDING_CODE = "available";
     public static final int RESENDING_OVERDUE_MESSAGE_INTERVAL = 7;
-    public static final String NNCIP_URI = "nncip_uri";
     public static final String TEMPORARILY_CLOSED = "U";
     private static final String LOCATE_PROFILE_VALUE_PREFIX = "LOCATE_";
     public static final String LANDKODE = "landkode";
@@ -60,36 +49,16 @@ public class PartnerConverter extends AlmaObjectConverter {
     private final transient String interLibraryLoanServer;
 
     public PartnerConverter(AlmaCodeProvider almaCodeProvider, String interLibraryLoanServer,
-                            BaseBibliotek baseBibliotek) {
-        super(almaCodeProvider, baseBibliotek);
+                            LibraryRecord libraryRecord) {
+        super(almaCodeProvider, libraryRecord);
         this.interLibraryLoanServer = interLibraryLoanServer;
     }
 
-    public List<Partner> toPartners() {
-        return baseBibliotek
-                   .getRecord()
-                   .stream()
-                   .map(this::convertRecordToPartnerWhenConstraintsSatisfied)
-                   .collect(Collectors.toList());
+    public ConversionResult<Partner> toPartner() {
+        return convertWhenValid(this::convertRecordToPartner);
     }
 
-    private Partner convertRecordToPartnerWhenConstraintsSatisfied(Record record) {
-        if (satisfiesConstraints(record)) {
-            return convertRecordToPartner(record);
-        } else {
-            logProblemAndThrowException(record);
-            return null;
-        }
-    }
-
-    @Override
-    protected void logProblemAndThrowException(Record record) {
-        var missingParameters = Objects.nonNull(record.getLandkode()) ? StringUtils.EMPTY_STRING : LANDKODE;
-        logger.info(String.format(COULD_NOT_CONVERT_RECORD, missingParameters, toXml(record)));
-        throw new RuntimeException(String.format(COULD_NOT_CONVERT_RECORD, missingParameters, toXml(record)));
-    }
-
-    private Partner convertRecordToPartner(Record record) {
+    private Partner convertRecordToPartner(LibraryRecord record) {
         var partner = new Partner();
         partner.setPartnerDetails(extractPartnerDetailsFromRecord(record));
         partner.setContactInfo(ContactInfoConverter.extractContactInfoFromRecord(record));
@@ -97,20 +66,20 @@ public class PartnerConverter extends AlmaObjectConverter {
     }
 
     @Override
-    protected List<String> findMissingRequiredFields(Record record) {
+    protected List<String> findMissingRequiredFields(LibraryRecord record) {
         final List<String> missingFields = new ArrayList<>();
 
         if (StringUtils.isEmpty(record.getBibnr())) {
             missingFields.add("bibnr");
         }
         if (StringUtils.isEmpty(record.getLandkode())) {
-            missingFields.add("landkode");
+            missingFields.add(LANDKODE);
         }
 
         return missingFields;
     }
 
-    private PartnerDetails extractPartnerDetailsFromRecord(Record record) {
+    private PartnerDetails extractPartnerDetailsFromRecord(LibraryRecord record) {
         var partnerDetails = new PartnerDetails();
         partnerDetails.setCode(extractCode(record));
         partnerDetails.setName(extractName(record));
@@ -120,7 +89,7 @@ public class PartnerConverter extends AlmaObjectConverter {
         partnerDetails.setLendingSupported(LENDING_IS_SUPPORTED);
         partnerDetails.setBorrowingSupported(BORROWING_IS_SUPPORTED);
         partnerDetails.setBorrowingWorkflow(BORROWING_WORKFLOW);
-        partnerDetails.setHoldingCode(extractHoldingCodeIfAlmaOrBibsysLibrary(record).orElse(null));
+        partnerDetails.setHoldingCode(extractHoldingCodeIfAlmaOrBibsysLibrary(record));
         partnerDetails.setSystemType(extractSystemType(record));
         partnerDetails.setProfileDetails(extractProfileDetails(record, partnerDetails));
         partnerDetails.setStatus(extractStatus(record));
@@ -150,12 +119,12 @@ public class PartnerConverter extends AlmaObjectConverter {
     }
 
     @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
-    private ProfileDetails extractProfileDetails(Record record, final PartnerDetails partnerDetails) {
+    private ProfileDetails extractProfileDetails(LibraryRecord record, final PartnerDetails partnerDetails) {
         ProfileDetails details = new ProfileDetails();
 
-        Optional<String> nncipUri = extractNncipUri(record);
+        Optional<String> nncipUri = record.getNncipUri();
 
-        Optional<String> email = extractEmail(record);
+        String email = extractEmail(record);
 
         if (BaseBibliotekUtils.isAlmaOrBibsysLibrary(record) && BaseBibliotekUtils.isNorwegian(record)) {
             details.setProfileType(ProfileType.ISO);
@@ -175,92 +144,73 @@ public class PartnerConverter extends AlmaObjectConverter {
 
             final NcipP2PDetails ncipP2PDetails = new NcipP2PDetails();
 
-            RequestExpiryType expiryType = new RequestExpiryType();
-            expiryType.setDesc("No expiry");
-            expiryType.setValue("NO_EXPIRY");
-            ncipP2PDetails.setRequestExpiryType(expiryType);
+            ncipP2PDetails.setRequestExpiryType(PartnerFragments.NO_EXPIRY);
             ncipP2PDetails.setIllServer(nncipUri.get());
             ncipP2PDetails.setPartnerSymbol(extractSymbol(record));
-            GeneralUserIdType generalUserIdType = new GeneralUserIdType();
-            generalUserIdType.setDesc("barcode");
-            generalUserIdType.setValue("BARCODE");
-            ncipP2PDetails.setGeneralUserIdType(generalUserIdType);
+            ncipP2PDetails.setGeneralUserIdType(PartnerFragments.BARCODE);
 
-            email.ifPresent(ncipP2PDetails::setEmailAddress);
+            if (Objects.nonNull(email)) {
+                ncipP2PDetails.setEmailAddress(email);
+            }
             ncipP2PDetails.setResendingOverdueMessageInterval(RESENDING_OVERDUE_MESSAGE_INTERVAL);
             details.setNcipP2PDetails(ncipP2PDetails);
         } else {
             details.setProfileType(ProfileType.EMAIL);
             final EmailDetails emailDetails = new EmailDetails();
 
-            emailDetails.setEmail(email.orElse(""));
+            emailDetails.setEmail(Objects.requireNonNullElse(email, StringUtils.EMPTY_STRING));
 
             details.setEmailDetails(emailDetails);
         }
         return details;
     }
 
-    private Optional<String> extractEmail(Record record) {
-        if (StringUtils.isNotEmpty(record.getEpostBest()) && record.getEpostBest().matches(EMAIL_PATTERN)) {
-            return Optional.of(record.getEpostBest());
-        } else if (StringUtils.isNotEmpty(record.getEpostAdr()) && record.getEpostAdr().matches(EMAIL_PATTERN)) {
-            return Optional.of(record.getEpostAdr());
+    private String extractEmail(LibraryRecord record) {
+        if (isEmail(record.getEpostBest())) {
+            return record.getEpostBest();
+        } else if (isEmail(record.getEpostAdr())) {
+            return record.getEpostAdr();
         } else {
-            return Optional.empty();
+            return null;
         }
     }
 
-    private Optional<String> extractNncipUri(Record record) {
-        if (record.getEressurser() == null) {
-            return Optional.empty();
-        } else {
-            return record.getEressurser().getOAIOrSRUOrArielIp().stream()
-                       .filter(element -> NNCIP_URI.equals(element.getName().getLocalPart()))
-                       .map(JAXBElement::getValue)
-                       .filter(StringUtils::isNotEmpty)
-                       .findFirst();
-        }
+    private static boolean isEmail(String value) {
+        return StringUtils.isNotEmpty(value) && EMAIL_PATTERN.matcher(value).matches();
     }
 
-    private SystemType extractSystemType(Record record) {
-        PartnerDetails.SystemType systemTypeValue = new PartnerDetails.SystemType();
-        systemTypeValue.setValue(BaseBibliotekUtils.isAlmaOrBibsysLibrary(record)
-                                     ? SYSTEM_TYPE_VALUE_ALMA
-                                     : SYSTEM_TYPE_VALUE_OTHER);
-        systemTypeValue.setDesc(
-            BaseBibliotekUtils.isAlmaOrBibsysLibrary(record)
-                ? SYSTEM_TYPE_DESC_ALMA
-                : SYSTEM_TYPE_DESC_OTHER);
-        return systemTypeValue;
+    private SystemType extractSystemType(LibraryRecord record) {
+        return BaseBibliotekUtils.isAlmaOrBibsysLibrary(record)
+                   ? PartnerFragments.SYSTEM_TYPE_ALMA
+                   : PartnerFragments.SYSTEM_TYPE_OTHER;
     }
 
-    private Optional<String> extractHoldingCodeIfAlmaOrBibsysLibrary(Record record) {
-        return BaseBibliotekUtils.isAlmaOrBibsysLibrary(record)
-                   ? Optional.of(extractHoldingCode(record)) : Optional.empty();
+    private String extractHoldingCodeIfAlmaOrBibsysLibrary(LibraryRecord record) {
+        return BaseBibliotekUtils.isAlmaOrBibsysLibrary(record) ? extractHoldingCode(record) : null;
     }
 
-    private String extractHoldingCode(Record record) {
+    private String extractHoldingCode(LibraryRecord record) {
         return record.getBibnr();
     }
 
-    private String extractName(Record record) {
+    private String extractName(LibraryRecord record) {
         return Objects.nonNull(record.getInst())
-                   ? record.getInst().replaceAll("\n", " - ")
+                   ? record.getInst().replace(LINEFEED, " - ")
                    : StringUtils.EMPTY_STRING;
     }
 
-    private String extractCode(Record record) {
-        return record.getLandkode().toUpperCase(Locale.ROOT) + ISIL_CODE_SEPARATOR + record.getBibnr();
+    private String extractCode(LibraryRecord record) {
+        return record.getSymbol();
     }
 
-    private static Status extractStatus(Record record) {
+    private static Status extractStatus(LibraryRecord record) {
         return hasTemporaryOrPermanentlyClosedStatus(record)
                || currentDateIsInStengtInterval(record)
                    ? Status.INACTIVE
                    : Status.ACTIVE;
     }
 
-    private static boolean currentDateIsInStengtInterval(Record record) {
+    private static boolean currentDateIsInStengtInterval(LibraryRecord record) {
         var stengtFraIsInTheFuture = isDateInTheFuture(record.getStengtFra());
         var stengtTilIsIntheFuture = isDateInTheFuture(record.getStengtTil());
         var stengtFraIsNotSet = Objects.isNull(record.getStengtFra());
@@ -270,19 +220,18 @@ public class PartnerConverter extends AlmaObjectConverter {
                || stengtFraIsNotSet && !stengtTilisNotSet && stengtTilIsIntheFuture;
     }
 
-    private static boolean hasTemporaryOrPermanentlyClosedStatus(Record record) {
+    private static boolean hasTemporaryOrPermanentlyClosedStatus(LibraryRecord record) {
         var stengtStatus = StringUtils.isNotEmpty(record.getStengt())
                                ? record.getStengt()
                                : StringUtils.EMPTY_STRING;
         return TEMPORARILY_CLOSED.equalsIgnoreCase(stengtStatus) || PERMANENTLY_CLOSED.equalsIgnoreCase(stengtStatus);
     }
 
-    private static boolean isDateInTheFuture(XMLGregorianCalendar date) {
+    private static boolean isDateInTheFuture(Instant date) {
         boolean future = true;
         if (Objects.nonNull(date)) {
-            Instant xmlDate = date.toGregorianCalendar().toInstant();
             Instant currentDate = Instant.now();
-            future = currentDate.isBefore(xmlDate);
+            future = currentDate.isBefore(date);
         }
         return future;
     }
@@ -0,0 +1,77 @@
+package no.sikt.rsp;
+
+import java.util.List;
+import no.sikt.alma.partners.generated.Address;
+import no.sikt.alma.partners.generated.Email;
+import no.sikt.alma.partners.generated.GeneralUserIdType;
+import no.sikt.alma.partners.generated.PartnerDetails;
+import no.sikt.alma.partners.generated.Phone;
+import no.sikt.alma.partners.generated.RequestExpiryType;
+import nva.commons.core.JacocoGenerated;
+
+/**
+ * The parts of a partner that are the same for every library, built once and shared by all converted partners.
+ * Like {@code UserFragments} for users, these are JAXB objects that must not be changed once handed out.
+ **/
+/* default */ final class PartnerFragments {
+
+    private static final List<String> PHONE_TYPES = List.of("claimPhone", "orderPhone", "paymentPhone",
+                                                            "returnsPhone");
+    private static final List<String> ADDRESS_TYPES = List.of("billing", "claim", "order", "payment", "returns",
+                                                              "shipping");
+    private static final List<String> EMAIL_TYPES = List.of("claimMail", "orderMail", "paymentMail", "queries",
+                                                            "returnsMail");
+
+    /* default */ static final Email.EmailTypes EMAIL_TYPE_LIST = emailTypes();
+    /* default */ static final Phone.PhoneTypes PHONE_TYPE_LIST = phoneTypes();
+    /* default */ static final Address.AddressTypes ADDRESS_TYPE_LIST = addressTypes();
+    /* default */ static final PartnerDetails.SystemType SYSTEM_TYPE_ALMA =
+        systemType(PartnerConverter.SYSTEM_TYPE_VALUE_ALMA, PartnerConverter.SYSTEM_TYPE_DESC_ALMA);
+    /* default */ static final PartnerDetails.SystemType SYSTEM_TYPE_OTHER =
+        systemType(PartnerConverter.SYSTEM_TYPE_VALUE_OTHER, PartnerConverter.SYSTEM_TYPE_DESC_OTHER);
+    /* default */ static final RequestExpiryType NO_EXPIRY = noExpiry();
+    /* default */ static final GeneralUserIdType BARCODE = barcode();
+
+    @JacocoGenerated
+    private PartnerFragments() {
+    }
+
+    private static Email.EmailTypes emailTypes() {
+        var emailTypes = new Email.EmailTypes();
+        emailTypes.getEmailType().addAll(EMAIL_TYPES);
+        return emailTypes;
+    }
+
+    private static Phone.PhoneTypes phoneTypes() {
+        var phoneTypes = new Phone.PhoneTypes();
+        phoneTypes.getPhoneType().addAll(PHONE_TYPES);
+        return phoneTypes;
+    }
+
+    private static Address.AddressTypes addressTypes() {
+        var addressTypes = new Address.AddressTypes();
+        addressTypes.getAddressType().addAll(ADDRESS_TYPES);
+        return addressTypes;
+    }
+
+    private static PartnerDetails.SystemType systemType(String value, String desc) {
+        var systemType = new PartnerDetails.SystemType();
+        systemType.setValue(value);
+        systemType.setDesc(desc);
+        return systemType;
+    }
+
+    private static RequestExpiryType noExpiry() {
+        var expiryType = new RequestExpiryType();
+        expiryType.setDesc("No expiry");
+        expiryType.setValue("NO_EXPIRY");
+        return expiryType;
+    }
+
+    private static GeneralUserIdType barcode() {
+        var generalUserIdType = new GeneralUserIdType();
+        generalUserIdType.setDesc("barcode");
+        generalUserIdType.setValue("BARCODE");
+        return generalUserIdType;
+    }
+}
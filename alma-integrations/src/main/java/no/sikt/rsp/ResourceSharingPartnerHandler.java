@@ -5,16 +5,36 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
 import com.google.gson.Gson;
 import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import no.nb.basebibliotek.generated.BaseBibliotek;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import no.sikt.alma.partners.generated.Partner;
-import no.sikt.clients.alma.AlmaPartnerUpserter;
 import no.sikt.clients.BaseBibliotekApi;
+import no.sikt.clients.InFlightRequestLimiter;
+import no.sikt.clients.alma.AlmaPartnerUpserter;
+import no.sikt.clients.alma.AlmaRequestSettings;
 import no.sikt.clients.alma.HttpUrlConnectionAlmaPartnerUpserter;
+import no.sikt.clients.alma.PartnerSnapshot;
+import no.sikt.clients.alma.UpsertResult;
 import no.sikt.clients.basebibliotek.HttpUrlConnectionBaseBibliotekApi;
+import no.sikt.commons.ConversionResult;
 import no.sikt.commons.HandlerUtils;
+import no.sikt.commons.LibraryRecord;
+import no.sikt.commons.ReportSink;
+import no.sikt.commons.flightrecorder.ConversionEvent;
+import no.sikt.commons.flightrecorder.FlightRecording;
+import no.sikt.commons.flightrecorder.S3ReadEvent;
+import no.sikt.commons.retry.RetryBackoff;
+import no.sikt.commons.retry.RetryEntry;
+import no.sikt.commons.retry.RetryManifest;
+import no.sikt.commons.retry.RetryManifestCollector;
+import no.sikt.commons.retry.RetryReplayer;
+import no.sikt.rsp.serialize.SerializedPartner;
+import no.sikt.rsp.serialize.SerializerUtils;
 import no.unit.nva.s3.S3Driver;
 import nva.commons.core.Environment;
 import nva.commons.core.JacocoGenerated;
@@ -29,10 +49,13 @@ public class ResourceSharingPartnerHandler implements RequestHandler<S3Event, In
 
     private static final Logger logger = LoggerFactory.getLogger(ResourceSharingPartnerHandler.class);
     private static final String EVENT = "event";
+    private static final String UPSERT_OUTCOMES = "Upsert outcomes: {}";
+    private static final String INVALID_RECORD = "{}";
     public static final String ALMA_API_HOST = "ALMA_API_HOST";
     public static final String COULD_NOT_CONTACT_ALMA_REPORT_MESSAGE = " could not contact Alma\n";
     public static final String COULD_NOT_CONVERT_TO_PARTNER_ERROR_MESSAGE = " Could not convert to partner";
     public static final String COULD_NOT_CONVERT_TO_PARTNER_REPORT_MESSAGE = " could not convert to partner\n";
+    public static final String COULD_NOT_SERIALIZE_PARTNER_REPORT_MESSAGE = " could not serialize partner\n";
     public static final String OK_REPORT_MESSAGE = "OK\n";
     public static final String HANDLER_NAME = "rsp";
     private final transient Gson gson = new Gson();
@@ -42,6 +65,8 @@ public class ResourceSharingPartnerHandler implements RequestHandler<S3Event, In
     public static final String LIB_CODE_TO_ALMA_CODE_MAPPING_FILE_PATH_ENV_KEY =
         "LIB_CODE_TO_ALMA_CODE_MAPPING_FILE_PATH";
     private static final String ALMA_API_KEY_ENV_KEY = "ALMA_APIKEY";
+    public static final String PARTNER_PREFETCH_MINIMUM_PARTNERS_ENV_NAME = "ALMA_PARTNER_PREFETCH_MINIMUM_PARTNERS";
+    public static final int DEFAULT_PARTNER_PREFETCH_MINIMUM_PARTNERS = 50;
     private final transient S3Client s3Client;
     private final transient AlmaPartnerUpserter almaPartnerUpserter;
     private final transient List<Partner> partners;
@@ -53,6 +78,10 @@ public class ResourceSharingPartnerHandler implements RequestHandler<S3Event, In
     public static final String REPORT_BUCKET_ENVIRONMENT_NAME = "REPORT_BUCKET";
 
     private final transient BaseBibliotekApi baseBibliotekApi;
+    private final transient RetryReplayer retryReplayer;
+    private final transient int maxInFlightRequests;
+    private final transient int partnerPrefetchMinimumPartners;
+    private final transient boolean flightRecordingEnabled;
 
     @JacocoGenerated
     @SuppressWarnings("unused")
@@ -66,18 +95,30 @@ public class ResourceSharingPartnerHandler implements RequestHandler<S3Event, In
 
         final String almaApiKey = environment.readEnv(ALMA_API_KEY_ENV_KEY);
         final URI almaUri = UriWrapper.fromUri(environment.readEnv(ALMA_API_HOST)).getUri();
-        this.almaPartnerUpserter = new HttpUrlConnectionAlmaPartnerUpserter(almaApiKey, almaUri);
+        final AlmaRequestSettings almaRequestSettings = AlmaRequestSettings.fromEnvironment(environment);
+        this.almaPartnerUpserter = new HttpUrlConnectionAlmaPartnerUpserter(almaApiKey, almaUri, almaRequestSettings);
 
         final URI basebibliotekUri =
             UriWrapper.fromUri(environment.readEnv(BASEBIBLIOTEK_URI_ENVIRONMENT_NAME)).getUri();
         this.baseBibliotekApi = new HttpUrlConnectionBaseBibliotekApi(basebibliotekUri);
         this.partners = new ArrayList<>();
         this.reportS3BucketName = environment.readEnv(REPORT_BUCKET_ENVIRONMENT_NAME);
+        this.retryReplayer = new RetryReplayer(s3Client, reportS3BucketName, RetryBackoff.fromEnvironment(environment));
+        this.maxInFlightRequests = InFlightRequestLimiter.readMaxInFlightRequests(environment);
+        this.partnerPrefetchMinimumPartners = environment.readEnvOpt(PARTNER_PREFETCH_MINIMUM_PARTNERS_ENV_NAME)
+                                                  .map(String::trim)
+                                                  .map(Integer::parseInt)
+                                                  .orElse(DEFAULT_PARTNER_PREFETCH_MINIMUM_PARTNERS);
+        this.flightRecordingEnabled = FlightRecording.isEnabled(environment);
     }
 
     @Override
     public Integer handleRequest(S3Event s3event, Context context) {
         logger.info(EVENT + gson.toJson(s3event));
+        var sourceKey = HandlerUtils.extractFilename(s3event);
+        if (RetryManifest.isManifestKey(sourceKey)) {
+            return retryReplayer.replay(s3event, HANDLER_NAME, this::replayEntry);
+        }
 
         String illServer = environment.readEnv(ILL_SERVER_ENV_NAME);
         String sharedConfigBucketName = environment.readEnv(SHARED_CONFIG_BUCKET_NAME_ENV_NAME);
@@ -85,72 +126,141 @@ public class ResourceSharingPartnerHandler implements RequestHandler<S3Event, In
         String libCodeToAlmaCodeMappingFilePath = environment.readEnv(LIB_CODE_TO_ALMA_CODE_MAPPING_FILE_PATH_ENV_KEY);
         logger.info("done setting up drivers and reading environment");
         logger.info(sharedConfigBucketName);
-        try {
+        try (var ignored = FlightRecording.start(flightRecordingEnabled, s3Client, reportS3BucketName,
+                                                 FlightRecording.recordingKey(s3event, HANDLER_NAME),
+                                                 Duration.ofMillis(context.getRemainingTimeInMillis()))) {
             var bibNrFile = HandlerUtils.readFile(s3event, s3Client);
             logger.info("done collecting bibNrFile");
 
-            final String libCodesToAlmaCodesMappings = driver.getFile(UnixPath.of(libCodeToAlmaCodeMappingFilePath));
+            final String libCodesToAlmaCodesMappings =
+                S3ReadEvent.timed(sharedConfigBucketName, libCodeToAlmaCodeMappingFilePath,
+                                  () -> driver.getFile(UnixPath.of(libCodeToAlmaCodeMappingFilePath)));
             logger.info("done collecting library codes to alma codes mappings");
 
             AlmaCodeProvider almaCodeProvider = new AlmaCodeProvider(libCodesToAlmaCodesMappings);
             var bibnrList = HandlerUtils.getBibNrList(bibNrFile);
-            var reportStringBuilder = new StringBuilder();
-            var basebiblioteks = HandlerUtils
-                .generateBasebibliotek(bibnrList, reportStringBuilder, baseBibliotekApi);
-            partners.addAll(generatePartners(basebiblioteks, reportStringBuilder, almaCodeProvider, illServer));
-            int counter = sendToAlmaAndCountSuccess(partners, reportStringBuilder);
-            HandlerUtils.reportToS3Bucket(reportStringBuilder, s3event, s3Client, reportS3BucketName, HANDLER_NAME);
-            return counter;
+            try (var reportSink = HandlerUtils.openReportSink(s3event, s3Client, reportS3BucketName, HANDLER_NAME)) {
+                var libraryRecords = HandlerUtils.fetchLibraryRecords(bibnrList, reportSink, baseBibliotekApi);
+                partners.addAll(generatePartners(libraryRecords, reportSink, almaCodeProvider, illServer));
+                var retryCollector = new RetryManifestCollector(HANDLER_NAME, sourceKey);
+                var counter = sendToAlmaAndCountSuccess(partners, reportSink, retryCollector);
+                retryCollector.writeTo(s3Client, HandlerUtils.extractBucketName(s3event),
+                                       RetryManifest.manifestKey(sourceKey));
+                reportSink.complete();
+                return counter;
+            }
         } catch (Exception exception) {
             throw logErrorAndThrowException(exception);
         }
     }
 
-    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
-    private int sendToAlmaAndCountSuccess(List<Partner> partners, StringBuilder reportStringBuilder) {
-        var counter = 0;
+    private int sendToAlmaAndCountSuccess(List<Partner> partners, ReportSink reportSink,
+                                          RetryManifestCollector retryCollector) {
+        var snapshot = prefetchPartnerSnapshot(partners.size());
+        var limiter = new InFlightRequestLimiter(maxInFlightRequests);
+        var upserts = new ArrayList<PendingUpsert>();
         for (Partner partner : partners) {
             var charIndexStartOfBibNrInPartnerCode = 3;
             var bibNr = partner
                             .getPartnerDetails()
                             .getCode()
                             .substring(charIndexStartOfBibNrInPartnerCode);
+            var serializedPartner = SerializerUtils.serializePartner(partner);
+            upserts.add(new PendingUpsert(bibNr, serializedPartner,
+                                          serializedPartner.map(
+                                              serialized -> limiter.submit(() -> sendToAlmaAsync(serialized,
+                                                                                                 snapshot)))));
+        }
+        // the report is written in partner order once the upserts have completed
+        var results = upserts.stream()
+                          .flatMap(upsert -> report(upsert, reportSink, retryCollector).stream())
+                          .toList();
+        logger.info(UPSERT_OUTCOMES, results.stream()
+                                         .collect(Collectors.groupingBy(UpsertResult::status,
+                                                                        Collectors.counting())));
+        return (int) results.stream().filter(UpsertResult::isSuccessful).count();
+    }
 
-            if (sendToAlma(partner)) {
-                counter++;
-                reportStringBuilder
-                    .append(bibNr)
-                    .append(StringUtils.SPACE)
-                    .append(OK_REPORT_MESSAGE);
-            } else {
-                reportStringBuilder
-                    .append(bibNr)
-                    .append(COULD_NOT_CONTACT_ALMA_REPORT_MESSAGE);
-            }
+    /**
+     * Lists every partner in Alma up front only when the chunk has enough partners that the paged listing is cheaper
+     * than fetching each of them before the upsert.
+     **/
+    private Optional<PartnerSnapshot> prefetchPartnerSnapshot(int numberOfPartners) {
+        return numberOfPartners > 0 && numberOfPartners >= partnerPrefetchMinimumPartners
+                   ? almaPartnerUpserter.fetchPartnerSnapshot()
+                   : Optional.empty();
+    }
+
+    private static Optional<UpsertResult> report(PendingUpsert upsert, ReportSink reportSink,
+                                                 RetryManifestCollector retryCollector) {
+        if (upsert.result().isEmpty()) {
+            reportSink
+                .append(upsert.bibNr())
+                .append(COULD_NOT_SERIALIZE_PARTNER_REPORT_MESSAGE);
+            return Optional.empty();
+        }
+        var result = upsert.result().get().join();
+        if (result.isSuccessful()) {
+            reportSink
+                .append(upsert.bibNr())
+                .append(StringUtils.SPACE)
+                .append(OK_REPORT_MESSAGE);
+        } else {
+            var serializedPartner = upsert.serializedPartner().orElseThrow();
+            reportSink
+                .append(upsert.bibNr())
+                .append(COULD_NOT_CONTACT_ALMA_REPORT_MESSAGE);
+            retryCollector.add(new RetryEntry(upsert.bibNr(), null, serializedPartner.code(),
+                                              serializedPartner.serializedXml()));
         }
-        return counter;
+        return Optional.of(result);
     }
 
-    private Collection<? extends Partner> generatePartners(List<BaseBibliotek> basebiblioteks,
-                                                           StringBuilder reportStringBuilder,
+    private Collection<? extends Partner> generatePartners(List<LibraryRecord> libraryRecords,
+                                                           ReportSink reportSink,
                                                            AlmaCodeProvider almaCodeProvider,
                                                            String illServer) {
         var partners = new ArrayList<Partner>();
-        for (BaseBibliotek baseBibliotek : basebiblioteks) {
+        for (LibraryRecord libraryRecord : libraryRecords) {
+            var event = ConversionEvent.start(libraryRecord.getBibnr(), null);
             try {
-                partners.addAll(new PartnerConverter(almaCodeProvider, illServer, baseBibliotek).toPartners());
+                var result = new PartnerConverter(almaCodeProvider, illServer, libraryRecord).toPartner();
+                event.complete(result);
+                switch (result) {
+                    case ConversionResult.Converted<Partner> converted -> partners.add(converted.value());
+                    case ConversionResult.Invalid<Partner> invalid -> {
+                        logger.info(INVALID_RECORD, invalid);
+                        reportConversionFailure(reportSink, libraryRecord);
+                    }
+                }
             } catch (Exception e) {
+                event.fail();
                 //Errors in individual libraries should not cause crash in entire execution.
                 logger.info(COULD_NOT_CONVERT_TO_PARTNER_ERROR_MESSAGE, e);
-                reportStringBuilder
-                    .append(baseBibliotek.getRecord().getFirst().getBibnr())
-                    .append(COULD_NOT_CONVERT_TO_PARTNER_REPORT_MESSAGE);
+                reportConversionFailure(reportSink, libraryRecord);
             }
         }
         return partners;
     }
 
-    private boolean sendToAlma(Partner partner) {
+    private static void reportConversionFailure(ReportSink reportSink, LibraryRecord libraryRecord) {
+        reportSink
+            .append(libraryRecord.getBibnr())
+            .append(COULD_NOT_CONVERT_TO_PARTNER_REPORT_MESSAGE);
+    }
+
+    private boolean replayEntry(RetryEntry entry) {
+        return sendToAlma(new SerializedPartner(entry.targetId(), entry.payload()));
+    }
+
+    private CompletableFuture<UpsertResult> sendToAlmaAsync(SerializedPartner partner,
+                                                            Optional<PartnerSnapshot> snapshot) {
+        return snapshot
+                   .map(partnerSnapshot -> almaPartnerUpserter.upsertPartnerAsync(partner, partnerSnapshot))
+                   .orElseGet(() -> almaPartnerUpserter.upsertPartnerAsync(partner));
+    }
+
+    private boolean sendToAlma(SerializedPartner partner) {
         return almaPartnerUpserter.upsertPartner(partner);
     }
 
@@ -158,6 +268,12 @@ public class ResourceSharingPartnerHandler implements RequestHandler<S3Event, In
         return partners;
     }
 
+    private record PendingUpsert(String bibNr,
+                                 Optional<SerializedPartner> serializedPartner,
+                                 Optional<CompletableFuture<UpsertResult>> result) {
+
+    }
+
     private RuntimeException logErrorAndThrowException(Exception exception) {
         logger.error(exception.getMessage());
         return exception instanceof RuntimeException
@@ -0,0 +1,20 @@
+package no.sikt.rsp.serialize;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A partner marshalled once to UTF-8. The payload array is shared, not copied, and must not be modified.
+ **/
+public record SerializedPartner(String code, byte[] payload) {
+
+    public SerializedPartner(String code, String serializedXml) {
+        this(code, serializedXml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The payload as text, for logs and retry files.
+     **/
+    public String serializedXml() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+package no.sikt.rsp.serialize;
+
+import jakarta.xml.bind.JAXB;
+import java.io.ByteArrayOutputStream;
+import java.util.Optional;
+import no.sikt.alma.partners.generated.Partner;
+import no.sikt.commons.flightrecorder.XmlBindingEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SerializerUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerializerUtils.class);
+
+    private static final String PARTNER_OR_CODE_IS_NULL = "Partner is null or partner code is null";
+    private static final String FAILED_TO_SERIALIZE_PARTNER = "Failed to serialize partner with code: {} because of {}";
+
+    public static Optional<SerializedPartner> serializePartner(Partner partner) {
+        if (partner == null || partner.getPartnerDetails() == null || partner.getPartnerDetails().getCode() == null) {
+            logger.error(PARTNER_OR_CODE_IS_NULL);
+            return Optional.empty();
+        }
+        var code = partner.getPartnerDetails().getCode();
+        var event = XmlBindingEvent.start(XmlBindingEvent.MARSHAL, Partner.class, code);
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            JAXB.marshal(partner, outputStream);
+            event.complete(outputStream.size());
+            return Optional.of(new SerializedPartner(code, outputStream.toByteArray()));
+        } catch (Exception e) {
+            event.fail();
+            logger.error(FAILED_TO_SERIALIZE_PARTNER, code, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+}
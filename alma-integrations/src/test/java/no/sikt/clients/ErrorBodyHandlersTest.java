@@ -0,0 +1,67 @@
+package no.sikt.clients;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.badRequest;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.emptyString;
+import static org.hamcrest.Matchers.is;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@WireMockTest
+class ErrorBodyHandlersTest {
+
+    private static final String PATH = "/almaws/v1/users/lib0030100";
+    private static final String ERROR_XML = "<web_service_result><errorCode>401652</errorCode></web_service_result>";
+
+    private HttpClient httpClient;
+    private HttpRequest request;
+
+    @BeforeEach
+    void init(WireMockRuntimeInfo wireMockRuntimeInfo) {
+        httpClient = HttpClientFactory.newClient(Duration.ofSeconds(2));
+        request = HttpRequest.newBuilder(URI.create(wireMockRuntimeInfo.getHttpBaseUrl() + PATH))
+                      .PUT(BodyPublishers.ofByteArray("<user/>".getBytes()))
+                      .build();
+    }
+
+    @Test
+    void shouldDropBodyOfSuccessfulResponse() throws Exception {
+        stubFor(put(urlEqualTo(PATH)).willReturn(ok("<user><primary_id>lib0030100</primary_id></user>")));
+
+        var response = httpClient.send(request, ErrorBodyHandlers.ofErrorBody());
+
+        assertThat(response.body(), is(emptyString()));
+    }
+
+    @Test
+    void shouldKeepErrorBodyThatFitsTheCap() throws Exception {
+        stubFor(put(urlEqualTo(PATH)).willReturn(badRequest().withBody(ERROR_XML)));
+
+        var response = httpClient.send(request, ErrorBodyHandlers.ofErrorBody());
+
+        assertThat(response.body(), is(ERROR_XML));
+    }
+
+    @Test
+    void shouldTruncateErrorBodyLongerThanTheCap() throws Exception {
+        stubFor(put(urlEqualTo(PATH)).willReturn(aResponse().withStatus(500).withBody(ERROR_XML)));
+        BodyHandler<String> handler = ErrorBodyHandlers.ofErrorBody(20);
+
+        var response = httpClient.send(request, handler);
+
+        assertThat(response.body(), is(ERROR_XML.substring(0, 20) + ErrorBodyHandlers.TRUNCATED_SUFFIX));
+    }
+}
@@ -0,0 +1,126 @@
+package no.sikt.clients;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@WireMockTest
+class HedgedRequestSenderTest {
+
+    private static final String PATH = "/users/lib0030100";
+    private static final String HEDGING_SCENARIO = "hedging";
+    private static final String FIRST_REQUEST_SENT = "first request sent";
+    private static final String SLOW_BODY = "slow";
+    private static final String FAST_BODY = "fast";
+    private static final int SLOW_RESPONSE_MILLIS = 5000;
+    private static final Duration SHORT_HEDGE_DELAY = Duration.ofMillis(100);
+
+    private transient HttpClient httpClient;
+    private transient HttpRequest request;
+
+    @BeforeEach
+    void init(WireMockRuntimeInfo wireMockRuntimeInfo) {
+        httpClient = HttpClientFactory.newClient(Duration.ofSeconds(2));
+        request = HttpRequest.newBuilder(URI.create(wireMockRuntimeInfo.getHttpBaseUrl() + PATH)).GET().build();
+    }
+
+    @Test
+    void shouldSendSecondRequestWhenFirstIsSlowAndReturnTheFirstAnswer() throws Exception {
+        stubFor(get(urlEqualTo(PATH)).inScenario(HEDGING_SCENARIO)
+                    .whenScenarioStateIs(Scenario.STARTED)
+                    .willReturn(ok(SLOW_BODY).withFixedDelay(SLOW_RESPONSE_MILLIS))
+                    .willSetStateTo(FIRST_REQUEST_SENT));
+        stubFor(get(urlEqualTo(PATH)).inScenario(HEDGING_SCENARIO)
+                    .whenScenarioStateIs(FIRST_REQUEST_SENT)
+                    .willReturn(ok(FAST_BODY)));
+        var sender = new HedgedRequestSender(httpClient, SHORT_HEDGE_DELAY);
+
+        var started = System.nanoTime();
+        var response = sender.send(request, BodyHandlers.ofString());
+        var elapsed = Duration.ofNanos(System.nanoTime() - started);
+
+        assertThat(response.body(), is(FAST_BODY));
+        assertThat(elapsed.toMillis(), is(lessThan((long) SLOW_RESPONSE_MILLIS)));
+        verify(exactly(2), getRequestedFor(urlEqualTo(PATH)));
+    }
+
+    @Test
+    void shouldHedgeWithoutBlockingTheCallerWhenSendingAsynchronously() {
+        stubFor(get(urlEqualTo(PATH)).inScenario(HEDGING_SCENARIO)
+                    .whenScenarioStateIs(Scenario.STARTED)
+                    .willReturn(ok(SLOW_BODY).withFixedDelay(SLOW_RESPONSE_MILLIS))
+                    .willSetStateTo(FIRST_REQUEST_SENT));
+        stubFor(get(urlEqualTo(PATH)).inScenario(HEDGING_SCENARIO)
+                    .whenScenarioStateIs(FIRST_REQUEST_SENT)
+                    .willReturn(ok(FAST_BODY)));
+        var sender = new HedgedRequestSender(httpClient, SHORT_HEDGE_DELAY);
+
+        var response = sender.sendAsync(request, BodyHandlers.ofString());
+
+        assertThat(response.isDone(), is(false));
+        assertThat(response.join().body(), is(FAST_BODY));
+        verify(exactly(2), getRequestedFor(urlEqualTo(PATH)));
+    }
+
+    @Test
+    void shouldNotSendSecondRequestWhenFirstAnswersWithinTheDelay() throws Exception {
+        stubFor(get(urlEqualTo(PATH)).willReturn(ok(FAST_BODY)));
+        var sender = new HedgedRequestSender(httpClient, Duration.ofSeconds(5));
+
+        var response = sender.send(request, BodyHandlers.ofString());
+
+        assertThat(response.body(), is(FAST_BODY));
+        verify(exactly(1), getRequestedFor(urlEqualTo(PATH)));
+    }
+
+    @Test
+    void shouldThrowIoExceptionWhenBothAttemptsFail() {
+        stubFor(get(urlEqualTo(PATH)).willReturn(aResponse().withFixedDelay(500)
+                                                     .withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        var sender = new HedgedRequestSender(httpClient, SHORT_HEDGE_DELAY);
+
+        assertThrows(IOException.class, () -> sender.send(request, BodyHandlers.ofString()));
+    }
+
+    @Test
+    void shouldThrowIoExceptionWhenFirstAttemptFailsBeforeTheDelay() {
+        stubFor(get(urlEqualTo(PATH)).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        var sender = new HedgedRequestSender(httpClient, Duration.ofSeconds(5));
+
+        assertThrows(IOException.class, () -> sender.send(request, BodyHandlers.ofString()));
+        verify(exactly(1), getRequestedFor(urlEqualTo(PATH)));
+    }
+
+    @Test
+    void shouldUseP95OfRecordedLatenciesAsDelayOnceEnoughSamplesExist() {
+        var latencyTracker = new LatencyTracker(100);
+        var sender = new HedgedRequestSender(httpClient, SHORT_HEDGE_DELAY, latencyTracker);
+        assertThat(sender.hedgeDelay(), is(SHORT_HEDGE_DELAY));
+
+        IntStream.rangeClosed(1, 100).forEach(millis -> latencyTracker.record(Duration.ofMillis(millis)));
+
+        assertThat(sender.hedgeDelay(), is(Duration.ofMillis(95)));
+    }
+}
@@ -0,0 +1,31 @@
+package no.sikt.clients;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class HedgedRequestSendersTest {
+
+    private static final Duration INITIAL_HEDGE_DELAY = Duration.ofMillis(500);
+
+    private final transient HedgedRequestSenders senders =
+        new HedgedRequestSenders(HttpClient.newHttpClient(), INITIAL_HEDGE_DELAY);
+
+    @Test
+    void shouldKeepOneSenderPerKey() {
+        assertThat(senders.forKey("ntnu"), is(sameInstance(senders.forKey("ntnu"))));
+    }
+
+    @Test
+    void shouldNotShareLatenciesBetweenKeys() {
+        var ntnu = senders.forKey("ntnu");
+        var uio = senders.forKey("uio");
+
+        assertThat(ntnu, is(not(sameInstance(uio))));
+        assertThat(uio.hedgeDelay(), is(INITIAL_HEDGE_DELAY));
+    }
+}
@@ -0,0 +1,51 @@
+package no.sikt.clients;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Optional;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+class HttpClientFactoryTest {
+
+    @Test
+    void shouldReuseTheSameClientAcrossCallers() {
+        assertThat(HttpClientFactory.sharedClient(), is(sameInstance(HttpClientFactory.sharedClient())));
+    }
+
+    @Test
+    void shouldCreateHttp2ClientWithConnectTimeoutAndExecutor() {
+        var connectTimeout = Duration.ofSeconds(3);
+
+        var client = HttpClientFactory.newClient(connectTimeout);
+
+        assertThat(client.version(), is(HttpClient.Version.HTTP_2));
+        assertThat(client.connectTimeout(), is(Optional.of(connectTimeout)));
+        assertThat(client.executor().isPresent(), is(true));
+    }
+
+    @Test
+    void shouldUseDefaultTimeoutsWhenNothingIsConfigured() {
+        assertThat(HttpClientFactory.sharedClient().connectTimeout(),
+                   is(Optional.of(HttpClientFactory.DEFAULT_CONNECT_TIMEOUT)));
+        assertThat(HttpClientFactory.defaultRequestTimeout(), is(HttpClientFactory.DEFAULT_REQUEST_TIMEOUT));
+    }
+
+    @Test
+    void shouldReadTimeoutInSecondsFromEnvironment() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(HttpClientFactory.HTTP_REQUEST_TIMEOUT_SECONDS_ENV_NAME))
+            .thenReturn(Optional.of(" 42 "));
+
+        var timeout = HttpClientFactory.readTimeout(environment,
+                                                    HttpClientFactory.HTTP_REQUEST_TIMEOUT_SECONDS_ENV_NAME,
+                                                    HttpClientFactory.DEFAULT_REQUEST_TIMEOUT);
+
+        assertThat(timeout, is(Duration.ofSeconds(42)));
+    }
+}
@@ -0,0 +1,54 @@
+package no.sikt.clients;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+class InFlightRequestLimiterTest {
+
+    @Test
+    void shouldHoldSlotUntilRequestCompletes() {
+        var limiter = new InFlightRequestLimiter(2);
+        var pending = new CompletableFuture<String>();
+
+        var submitted = limiter.submit(() -> pending);
+
+        assertThat(limiter.availableSlots(), is(1));
+
+        pending.complete("done");
+
+        assertThat(submitted.join(), is("done"));
+        assertThat(limiter.availableSlots(), is(2));
+    }
+
+    @Test
+    void shouldReleaseSlotWhenStartingRequestFails() {
+        var limiter = new InFlightRequestLimiter(1);
+
+        assertThrows(IllegalStateException.class, () -> limiter.submit(() -> {
+            throw new IllegalStateException();
+        }));
+        assertThat(limiter.availableSlots(), is(1));
+    }
+
+    @Test
+    void shouldReadMaxInFlightRequestsFromEnvironment() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(anyString())).thenReturn(Optional.empty());
+
+        assertThat(InFlightRequestLimiter.readMaxInFlightRequests(environment),
+                   is(InFlightRequestLimiter.DEFAULT_MAX_IN_FLIGHT_REQUESTS));
+
+        when(environment.readEnvOpt(InFlightRequestLimiter.ALMA_MAX_IN_FLIGHT_REQUESTS_ENV_NAME))
+            .thenReturn(Optional.of(" 64 "));
+
+        assertThat(InFlightRequestLimiter.readMaxInFlightRequests(environment), is(64));
+    }
+}
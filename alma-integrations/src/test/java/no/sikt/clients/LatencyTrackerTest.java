@@ -0,0 +1,31 @@
+package no.sikt.clients;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class LatencyTrackerTest {
+
+    @Test
+    void shouldReturnEmptyUntilMinimumNumberOfSamplesIsRecorded() {
+        var latencyTracker = new LatencyTracker(10);
+        assertThat(latencyTracker.percentile(0.5, 1), is(Optional.empty()));
+
+        latencyTracker.record(Duration.ofMillis(10));
+
+        assertThat(latencyTracker.percentile(0.5, 2), is(Optional.empty()));
+        assertThat(latencyTracker.percentile(0.5, 1), is(Optional.of(Duration.ofMillis(10))));
+    }
+
+    @Test
+    void shouldOnlyKeepTheMostRecentSamples() {
+        var latencyTracker = new LatencyTracker(10);
+        IntStream.range(0, 10).forEach(i -> latencyTracker.record(Duration.ofSeconds(30)));
+        IntStream.range(0, 10).forEach(i -> latencyTracker.record(Duration.ofMillis(20)));
+
+        assertThat(latencyTracker.percentile(1.0, 10), is(Optional.of(Duration.ofMillis(20))));
+    }
+}
@@ -0,0 +1,62 @@
+package no.sikt.clients.alma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.Optional;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+class AlmaInstitutionCircuitBreakerTest {
+
+    private static final String NTNU = "NTNU";
+    private static final String UIT = "UIT";
+
+    @Test
+    void shouldOpenCircuitWhenConsecutiveFailuresReachThreshold() {
+        var circuitBreaker = new AlmaInstitutionCircuitBreaker(3);
+        circuitBreaker.recordFailure(NTNU);
+        circuitBreaker.recordFailure(NTNU);
+
+        assertThat(circuitBreaker.allowsRequest(NTNU), is(true));
+
+        circuitBreaker.recordFailure(NTNU);
+
+        assertThat(circuitBreaker.allowsRequest(NTNU), is(false));
+        assertThat(circuitBreaker.allowsRequest(UIT), is(true));
+        assertThat(circuitBreaker.getOpenInstitutions(), contains(NTNU));
+    }
+
+    @Test
+    void shouldResetFailureCountOnSuccess() {
+        var circuitBreaker = new AlmaInstitutionCircuitBreaker(2);
+        circuitBreaker.recordFailure(UIT);
+        circuitBreaker.recordSuccess(UIT);
+        circuitBreaker.recordFailure(UIT);
+
+        assertThat(circuitBreaker.allowsRequest(UIT), is(true));
+        assertThat(circuitBreaker.getOpenInstitutions(), is(empty()));
+    }
+
+    @Test
+    void shouldUseDefaultThresholdWhenEnvironmentIsEmpty() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(anyString())).thenReturn(Optional.empty());
+
+        assertThat(AlmaInstitutionCircuitBreaker.readFailureThreshold(environment),
+                   is(AlmaInstitutionCircuitBreaker.DEFAULT_FAILURE_THRESHOLD));
+    }
+
+    @Test
+    void shouldReadThresholdFromEnvironment() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(AlmaInstitutionCircuitBreaker.ALMA_CIRCUIT_BREAKER_FAILURE_THRESHOLD_ENV_NAME))
+            .thenReturn(Optional.of(" 12 "));
+
+        assertThat(AlmaInstitutionCircuitBreaker.readFailureThreshold(environment), is(12));
+    }
+}
@@ -0,0 +1,211 @@
+package no.sikt.clients.alma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class AlmaPayloadComparatorTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String PARTNER_XML = """
+        <partner xmlns="http://com/exlibris/urm/rsm/xmlbeans">
+          <partner_details>
+            <code>NO-0030100</code>
+            <name>Nasjonalbiblioteket</name>
+            <status desc="Active">ACTIVE</status>
+          </partner_details>
+          <contact_info>
+            <emails>
+              <email preferred="true">
+                <email_address>post@nb.no</email_address>
+              </email>
+            </emails>
+            <phones/>
+          </contact_info>
+        </partner>
+        """;
+
+    private static final String PARTNER_JSON = """
+        {
+          "partner_details": {
+            "code": "NO-0030100",
+            "name": "%s",
+            "status": {"value": "ACTIVE", "desc": "Aktiv"},
+            "link": "https://api-eu.hosted.exlibrisgroup.com/almaws/v1/partners/NO-0030100"
+          },
+          "contact_info": {
+            "email": [{"preferred": "true", "email_address": "post@nb.no"}],
+            "phone": %s
+          }
+        }
+        """;
+
+    private static final String NO_PHONES = "[]";
+    private static final Set<String> OWNED_PARTNER_FIELDS =
+        Set.of("partner_details.holding_code", "partner_details.locate_profile",
+               "partner_details.auto_claim_supported",
+               "partner_details.profile_details.ncip_p2p_details.email_address");
+
+    @Test
+    void shouldBeUnchangedWhenAlmaHoldsEverythingInPayload() throws JsonProcessingException {
+        var current = partnerJson("Nasjonalbiblioteket", NO_PHONES);
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(PARTNER_XML), current, Set.of(), Set.of()), is(true));
+    }
+
+    @Test
+    void shouldBeChangedWhenLeafValueDiffers() throws JsonProcessingException {
+        var current = partnerJson("Old name", NO_PHONES);
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(PARTNER_XML), current, Set.of(), Set.of()), is(false));
+    }
+
+    @Test
+    void shouldIgnoreFieldsThatAreListedAsIgnored() throws JsonProcessingException {
+        var current = partnerJson("Old name", NO_PHONES);
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(PARTNER_XML), current, Set.of("name"), Set.of()), is(true));
+    }
+
+    @Test
+    void shouldBeChangedWhenAlmaHoldsEntriesThatPayloadRemoves() throws JsonProcessingException {
+        var current = partnerJson("Nasjonalbiblioteket", "[{\"phone_number\": \"12345678\"}]");
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(PARTNER_XML), current, Set.of(), Set.of()), is(false));
+    }
+
+    @Test
+    void shouldBeChangedWhenListSizesDiffer() throws JsonProcessingException {
+        var current = OBJECT_MAPPER.readTree("""
+            {
+              "contact_info": {
+                "email": [
+                  {"preferred": "true", "email_address": "post@nb.no"},
+                  {"preferred": "false", "email_address": "old@nb.no"}
+                ]
+              }
+            }
+            """);
+        var payload = """
+            <partner>
+              <contact_info>
+                <emails>
+                  <email preferred="true"><email_address>post@nb.no</email_address></email>
+                </emails>
+              </contact_info>
+            </partner>
+            """;
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(payload), current, Set.of(), Set.of()), is(false));
+    }
+
+    @Test
+    void shouldMatchRepeatedElementsRegardlessOfOrder() throws JsonProcessingException {
+        var current = OBJECT_MAPPER.readTree("""
+            {"note": [{"content": "b"}, {"content": "a"}]}
+            """);
+        var payload = """
+            <user><note><content>a</content></note><note><content>b</content></note></user>
+            """;
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(payload), current, Set.of(), Set.of()), is(true));
+    }
+
+    @Test
+    void shouldBeChangedWhenPayloadIsNotXml() throws JsonProcessingException {
+        var current = partnerJson("Nasjonalbiblioteket", NO_PHONES);
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8("not xml"), current, Set.of(), Set.of()), is(false));
+    }
+
+    @Test
+    void shouldBeChangedWhenAlmaResponseIsNotJson() {
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(PARTNER_XML), "{not json", Set.of(), Set.of()), is(false));
+    }
+
+    @Test
+    void shouldBeChangedWhenAlmaHoldsOwnedFieldThatPayloadLeavesOut() throws JsonProcessingException {
+        var current = OBJECT_MAPPER.readTree("""
+            {"partner_details": {"code": "NO-0030100", "holding_code": "NB"}}
+            """);
+        var payload = """
+            <partner><partner_details><code>NO-0030100</code></partner_details></partner>
+            """;
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(payload), current, Set.of(), OWNED_PARTNER_FIELDS),
+                   is(false));
+    }
+
+    @Test
+    void shouldBeChangedWhenAlmaHoldsOwnedFieldNestedInEntryThatPayloadLeavesOut() throws JsonProcessingException {
+        var current = OBJECT_MAPPER.readTree("""
+            {"partner_details": {"profile_details": {"ncip_p2p_details": {"request_expiry_type": "NO_EXPIRY",
+                                                                 "email_address": "ill@nb.no"}}}}
+            """);
+        var payload = """
+            <partner>
+              <partner_details>
+                <profile_details>
+                  <ncip_p2p_details><request_expiry_type>NO_EXPIRY</request_expiry_type></ncip_p2p_details>
+                </profile_details>
+              </partner_details>
+            </partner>
+            """;
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(payload), current, Set.of(), OWNED_PARTNER_FIELDS),
+                   is(false));
+    }
+
+    @Test
+    void shouldBeUnchangedWhenOwnedFieldThatPayloadLeavesOutIsEmptyInAlma() throws JsonProcessingException {
+        var current = OBJECT_MAPPER.readTree("""
+            {"partner_details": {"code": "NO-0030100", "holding_code": null, "auto_claim_supported": false,
+                                 "locate_profile": {"value": "", "desc": ""}}}
+            """);
+        var payload = """
+            <partner><partner_details><code>NO-0030100</code></partner_details></partner>
+            """;
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(payload), current, Set.of(), OWNED_PARTNER_FIELDS),
+                   is(true));
+    }
+
+    @Test
+    void shouldBeUnchangedWhenAlmaHoldsFieldThatIsNotOwned() throws JsonProcessingException {
+        var current = OBJECT_MAPPER.readTree("""
+            {"partner_details": {"code": "NO-0030100", "holding_code": "NB"}}
+            """);
+        var payload = """
+            <partner><partner_details><code>NO-0030100</code></partner_details></partner>
+            """;
+
+        assertThat(AlmaPayloadComparator.isUnchanged(utf8(payload), current, Set.of(), Set.of()), is(true));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"emails, email", "phones, phone", "addresses, address", "email_types, email_type",
+        "phone_types, phone_type", "address_types, address_type", "user_roles, user_role",
+        "user_statistics, user_statistic", "user_identifiers, user_identifier", "user_notes, user_note",
+        "user_blocks, user_block", "proxy_for_users, proxy_for_user", "parameters, parameter",
+        "status, status", "address, address", "contact_info, contact_info", "primary_id, primary_id"})
+    void shouldNameEntriesOfAlmaListsAsAlmaDoes(String wrapper, String entry) {
+        assertThat(AlmaPayloadComparator.singularOf(wrapper), is(equalTo(entry)));
+    }
+
+    private static byte[] utf8(String xml) {
+        return xml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static JsonNode partnerJson(String name, String phones) throws JsonProcessingException {
+        return OBJECT_MAPPER.readTree(PARTNER_JSON.formatted(name, phones));
+    }
+}
@@ -0,0 +1,42 @@
+package no.sikt.clients.alma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.util.Optional;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+class AlmaRequestSettingsTest {
+
+    @Test
+    void shouldUseDefaultsWhenEnvironmentIsEmpty() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(anyString())).thenReturn(Optional.empty());
+
+        assertThat(AlmaRequestSettings.fromEnvironment(environment), is(AlmaRequestSettings.defaults()));
+    }
+
+    @Test
+    void shouldReadTimeoutsPerOperationAndHedgingFromEnvironment() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(AlmaRequestSettings.ALMA_FETCH_TIMEOUT_SECONDS_ENV_NAME))
+            .thenReturn(Optional.of("3"));
+        when(environment.readEnvOpt(AlmaRequestSettings.ALMA_CREATE_TIMEOUT_SECONDS_ENV_NAME))
+            .thenReturn(Optional.of("20"));
+        when(environment.readEnvOpt(AlmaRequestSettings.ALMA_UPDATE_TIMEOUT_SECONDS_ENV_NAME))
+            .thenReturn(Optional.of("25"));
+        when(environment.readEnvOpt(AlmaRequestSettings.ALMA_HEDGE_FETCHES_ENV_NAME))
+            .thenReturn(Optional.of("true"));
+        when(environment.readEnvOpt(AlmaRequestSettings.ALMA_INITIAL_HEDGE_DELAY_MILLIS_ENV_NAME))
+            .thenReturn(Optional.of("250"));
+
+        var settings = AlmaRequestSettings.fromEnvironment(environment);
+
+        assertThat(settings, is(new AlmaRequestSettings(Duration.ofSeconds(3), Duration.ofSeconds(20),
+                                                        Duration.ofSeconds(25), true, Duration.ofMillis(250))));
+    }
+}
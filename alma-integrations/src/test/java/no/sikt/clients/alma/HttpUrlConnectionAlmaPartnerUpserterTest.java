@@ -0,0 +1,78 @@
+package no.sikt.clients.alma;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.net.URI;
+import java.util.Map;
+import no.sikt.clients.alma.UpsertResult.Status;
+import no.sikt.rsp.serialize.SerializedPartner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@WireMockTest
+class HttpUrlConnectionAlmaPartnerUpserterTest {
+
+    private static final String PARTNER_CODE = "NO-0030100";
+    private static final String PARTNER_PATH = "/partners/" + PARTNER_CODE;
+    private static final String PARTNER_XML = """
+        <partner>
+          <partner_details>
+            <code>NO-0030100</code>
+            <name>Nasjonalbiblioteket</name>
+            <holding_code>0030100</holding_code>
+          </partner_details>
+        </partner>
+        """;
+    private static final String PARTNER_JSON_TEMPLATE = """
+        {"partner_details": {"code": "NO-0030100", "name": "%s", "holding_code": "0030100"}}
+        """;
+
+    private HttpUrlConnectionAlmaPartnerUpserter upserter;
+
+    @BeforeEach
+    void init(WireMockRuntimeInfo wireMockInfo) {
+        upserter = new HttpUrlConnectionAlmaPartnerUpserter("apikey", URI.create(wireMockInfo.getHttpBaseUrl()),
+                                                            AlmaRequestSettings.defaults());
+        stubFor(put(urlPathEqualTo(PARTNER_PATH)).willReturn(ok()));
+    }
+
+    @Test
+    void shouldSkipUpdateWhenAlmaAlreadyHoldsPartner() {
+        stubFor(get(urlPathEqualTo(PARTNER_PATH))
+                    .willReturn(ok().withBody(PARTNER_JSON_TEMPLATE.formatted("Nasjonalbiblioteket"))));
+
+        assertThat(upserter.upsertPartner(new SerializedPartner(PARTNER_CODE, PARTNER_XML)), is(true));
+        verify(0, putRequestedFor(urlPathEqualTo(PARTNER_PATH)));
+    }
+
+    @Test
+    void shouldUpdateWhenPartnerDiffersFromAlma() {
+        stubFor(get(urlPathEqualTo(PARTNER_PATH))
+                    .willReturn(ok().withBody(PARTNER_JSON_TEMPLATE.formatted("Old name"))));
+
+        assertThat(upserter.upsertPartner(new SerializedPartner(PARTNER_CODE, PARTNER_XML)), is(true));
+        verify(1, putRequestedFor(urlPathEqualTo(PARTNER_PATH)));
+    }
+
+    @Test
+    void shouldReportUnchangedPartnerFromSnapshotWithoutCallingAlma() throws JsonProcessingException {
+        var current = new ObjectMapper().readTree(PARTNER_JSON_TEMPLATE.formatted("Nasjonalbiblioteket"));
+        var snapshot = new PartnerSnapshot(Map.of(PARTNER_CODE, current));
+
+        var result = upserter.upsertPartnerAsync(new SerializedPartner(PARTNER_CODE, PARTNER_XML), snapshot).join();
+
+        assertThat(result.status(), is(Status.UNCHANGED));
+        verify(0, putRequestedFor(urlPathEqualTo(PARTNER_PATH)));
+    }
+}
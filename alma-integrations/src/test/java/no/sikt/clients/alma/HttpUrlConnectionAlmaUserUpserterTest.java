@@ -0,0 +1,155 @@
+package no.sikt.clients.alma;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.badRequest;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.net.URI;
+import java.time.Duration;
+import no.sikt.clients.alma.UpsertResult.Status;
+import no.sikt.lum.serialize.SerializedUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@WireMockTest
+class HttpUrlConnectionAlmaUserUpserterTest {
+
+    private static final String APIKEY = "apikey";
+    private static final String PRIMARY_ID = "lib0030100";
+    private static final String USER_PATH = "/users/" + PRIMARY_ID;
+    private static final String USER_XML = """
+        <user>
+          <primary_id>lib0030100</primary_id>
+          <first_name>Nasjonalbiblioteket</first_name>
+          <user_statistics>
+            <user_statistic>
+              <statistic_category desc="BIM">BIM</statistic_category>
+              <statistic_note>2026-10-19 12:00</statistic_note>
+            </user_statistic>
+          </user_statistics>
+        </user>
+        """;
+    private static final String USER_WITH_PASSWORD_XML = USER_XML.replace(
+        "</first_name>", "</first_name>\n  <password>secret</password>");
+    private static final String USER_JSON_TEMPLATE = """
+        {
+          "primary_id": "lib0030100",
+          "first_name": "%s",
+          "user_statistic": [
+            {"statistic_category": {"value": "BIM", "desc": "BIM"}, "statistic_note": "2026-10-18 12:00"}
+          ]
+        }
+        """;
+
+    private static final String USER_NOT_FOUND_JSON = """
+        {"errorsExist": true, "errorList": {"error": [{"errorCode": "401861", "errorMessage": "User not found"}]}}
+        """;
+    private static final String INVALID_USER_GROUP_ERROR_CODE = "401652";
+    private static final String UPDATE_ERROR_XML = """
+        <web_service_result xmlns="http://com/exlibris/urm/general/xmlbeans">
+          <errorsExist>true</errorsExist>
+          <errorList>
+            <error>
+              <errorCode>401652</errorCode>
+              <errorMessage>General Error - An error has occurred while processing the request.</errorMessage>
+            </error>
+          </errorList>
+        </web_service_result>
+        """;
+
+    private HttpUrlConnectionAlmaUserUpserter upserter;
+
+    @BeforeEach
+    void init(WireMockRuntimeInfo wireMockInfo) {
+        upserter = new HttpUrlConnectionAlmaUserUpserter(URI.create(wireMockInfo.getHttpBaseUrl()),
+                                                         AlmaRequestSettings.defaults());
+        stubFor(put(urlPathEqualTo(USER_PATH)).willReturn(ok()));
+    }
+
+    @Test
+    void shouldSkipUpdateWhenOnlyStatisticNoteDiffers() {
+        stubFor(get(urlPathEqualTo(USER_PATH))
+                    .willReturn(ok().withBody(USER_JSON_TEMPLATE.formatted("Nasjonalbiblioteket"))));
+
+        assertThat(upserter.upsertUser(new SerializedUser(PRIMARY_ID, USER_XML), APIKEY), is(true));
+        verify(0, putRequestedFor(urlPathEqualTo(USER_PATH)));
+    }
+
+    @Test
+    void shouldUpdateUserWithPasswordWhenAlmaMayNotHoldThePassword() {
+        stubFor(get(urlPathEqualTo(USER_PATH))
+                    .willReturn(ok().withBody(USER_JSON_TEMPLATE.formatted("Nasjonalbiblioteket"))));
+
+        var result = upserter.upsertUserAsync(new SerializedUser(PRIMARY_ID, USER_WITH_PASSWORD_XML), APIKEY, false)
+                         .join();
+
+        assertThat(result.status(), is(Status.UPDATED));
+        verify(1, putRequestedFor(urlPathEqualTo(USER_PATH)));
+    }
+
+    @Test
+    void shouldSkipUpdateOfUserWithPasswordWhenAlmaHoldsThePassword() {
+        stubFor(get(urlPathEqualTo(USER_PATH))
+                    .willReturn(ok().withBody(USER_JSON_TEMPLATE.formatted("Nasjonalbiblioteket"))));
+
+        var result = upserter.upsertUserAsync(new SerializedUser(PRIMARY_ID, USER_WITH_PASSWORD_XML), APIKEY, true)
+                         .join();
+
+        assertThat(result.status(), is(Status.UNCHANGED));
+        verify(0, putRequestedFor(urlPathEqualTo(USER_PATH)));
+    }
+
+    @Test
+    void shouldUpdateWhenUserDiffersFromAlma() {
+        stubFor(get(urlPathEqualTo(USER_PATH))
+                    .willReturn(ok().withBody(USER_JSON_TEMPLATE.formatted("Old name"))));
+
+        assertThat(upserter.upsertUser(new SerializedUser(PRIMARY_ID, USER_XML), APIKEY), is(true));
+        verify(1, putRequestedFor(urlPathEqualTo(USER_PATH)));
+    }
+
+    @Test
+    void shouldReportCreatedUserWithLatencyWhenUpsertingAsynchronously() {
+        stubFor(get(urlPathEqualTo(USER_PATH)).willReturn(badRequest().withBody(USER_NOT_FOUND_JSON)));
+        stubFor(post(urlPathEqualTo("/users")).willReturn(ok()));
+
+        var result = upserter.upsertUserAsync(new SerializedUser(PRIMARY_ID, USER_XML), APIKEY).join();
+
+        assertThat(result.status(), is(Status.CREATED));
+        assertThat(result.latency().compareTo(Duration.ZERO) > 0, is(true));
+        assertThat(result.almaErrorCodes(), is(empty()));
+    }
+
+    @Test
+    void shouldReportAlmaErrorCodesWhenUpdateIsRejected() {
+        stubFor(get(urlPathEqualTo(USER_PATH))
+                    .willReturn(ok().withBody(USER_JSON_TEMPLATE.formatted("Old name"))));
+        stubFor(put(urlPathEqualTo(USER_PATH)).willReturn(badRequest().withBody(UPDATE_ERROR_XML)));
+
+        var result = upserter.upsertUserAsync(new SerializedUser(PRIMARY_ID, USER_XML), APIKEY).join();
+
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.almaErrorCodes(), contains(INVALID_USER_GROUP_ERROR_CODE));
+    }
+
+    @Test
+    void shouldReportUnchangedUserWhenUpsertingAsynchronously() {
+        stubFor(get(urlPathEqualTo(USER_PATH))
+                    .willReturn(ok().withBody(USER_JSON_TEMPLATE.formatted("Nasjonalbiblioteket"))));
+
+        var result = upserter.upsertUserAsync(new SerializedUser(PRIMARY_ID, USER_XML), APIKEY).join();
+
+        assertThat(result.status(), is(Status.UNCHANGED));
+    }
+}
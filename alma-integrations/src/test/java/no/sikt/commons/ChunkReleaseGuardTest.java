@@ -0,0 +1,78 @@
+package no.sikt.commons;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+
+class ChunkReleaseGuardTest {
+
+    private static final String BUCKET = "basebibliotek-xml";
+    private static final String CHUNK = "#next=pending/lum/2026-10-19_7.txt\n0030100";
+    private static final Duration PLENTY_OF_TIME = Duration.ofMinutes(15);
+
+    private S3Client s3Client;
+
+    @BeforeEach
+    void init() {
+        s3Client = mock(S3Client.class);
+    }
+
+    @Test
+    void shouldReleaseSuccessorOnCloseWhenChunkCompleted() {
+        var guard = ChunkReleaseGuard.start(CHUNK, s3Client, BUCKET, PLENTY_OF_TIME);
+        guard.complete();
+        verifyNoInteractions(s3Client);
+
+        guard.close();
+
+        verify(s3Client).copyObject(any(CopyObjectRequest.class));
+    }
+
+    @Test
+    void shouldKeepSuccessorPendingWhenChunkFails() {
+        var failure = new IllegalStateException("Alma is down");
+
+        var thrown = assertThrows(IllegalStateException.class, () -> {
+            try (var ignored = ChunkReleaseGuard.start(CHUNK, s3Client, BUCKET, PLENTY_OF_TIME)) {
+                throw failure;
+            }
+        });
+
+        assertThat(thrown, is(sameInstance(failure)));
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void shouldReleaseSuccessorBeforeInvocationRunsOutOfTime() {
+        var remainingTime = ChunkReleaseGuard.RELEASE_MARGIN.plusMillis(100);
+
+        try (var ignored = ChunkReleaseGuard.start(CHUNK, s3Client, BUCKET, remainingTime)) {
+            verify(s3Client, timeout(5000)).copyObject(any(CopyObjectRequest.class));
+        }
+
+        verify(s3Client).copyObject(any(CopyObjectRequest.class));
+    }
+
+    @Test
+    void shouldReleaseOnlyOnCloseWhenInvocationHasNoTimeToSpare() {
+        var guard = ChunkReleaseGuard.start(CHUNK, s3Client, BUCKET, Duration.ZERO);
+        guard.complete();
+        verifyNoInteractions(s3Client);
+
+        guard.close();
+        guard.close();
+
+        verify(s3Client).copyObject(any(CopyObjectRequest.class));
+    }
+}
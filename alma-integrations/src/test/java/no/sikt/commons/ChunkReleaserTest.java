@@ -0,0 +1,119 @@
+package no.sikt.commons;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import java.util.Optional;
+import nva.commons.logutils.LogUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+class ChunkReleaserTest {
+
+    private static final String BUCKET = "basebibliotek-xml";
+    private static final String PENDING_KEY = "pending/lum/2026-10-19_7.txt";
+    private static final String CHUNK = "#institutions=AHO\n#next=" + PENDING_KEY + "\n0030100\n0030101";
+
+    private S3Client s3Client;
+
+    @BeforeEach
+    void init() {
+        s3Client = mock(S3Client.class);
+    }
+
+    @Test
+    void shouldFindNextChunkAmongHeaders() {
+        assertThat(ChunkReleaser.findNextChunkKey(CHUNK), is(equalTo(Optional.of(PENDING_KEY))));
+        assertThat(ChunkReleaser.findNextChunkKey("0030100\n#next=" + PENDING_KEY), is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldMoveNextChunkIntoWatchedFolder() {
+        ChunkReleaser.releaseNext(CHUNK, s3Client, BUCKET);
+
+        var copyCaptor = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3Client).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getValue().sourceKey(), is(equalTo(PENDING_KEY)));
+        assertThat(copyCaptor.getValue().destinationKey(), is(equalTo("lum/2026-10-19_7.txt")));
+        verify(s3Client).deleteObject(DeleteObjectRequest.builder().bucket(BUCKET).key(PENDING_KEY).build());
+    }
+
+    @Test
+    void shouldDoNothingWhenChunkHasNoSuccessor() {
+        ChunkReleaser.releaseNext("0030100\n0030101", s3Client, BUCKET);
+
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void shouldIgnoreSuccessorOutsidePendingFolder() {
+        var appender = LogUtils.getTestingAppender(ChunkReleaser.class);
+
+        ChunkReleaser.releaseNext("#next=rsp/2026-10-19_0.txt\n0030100", s3Client, BUCKET);
+
+        verifyNoInteractions(s3Client);
+        assertThat(appender.getMessages(), containsString("outside the pending folder"));
+    }
+
+    @Test
+    void shouldNotFailWhenSuccessorWasAlreadyReleased() {
+        var appender = LogUtils.getTestingAppender(ChunkReleaser.class);
+        when(s3Client.copyObject(any(CopyObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+
+        ChunkReleaser.releaseNext(CHUNK, s3Client, BUCKET);
+
+        assertThat(appender.getMessages(), containsString("is no longer pending"));
+    }
+
+    @Test
+    void shouldNotFailWhenReleaseFails() {
+        var appender = LogUtils.getTestingAppender(ChunkReleaser.class);
+        var accessDenied = S3Exception.builder().message("Access Denied").statusCode(403).build();
+        when(s3Client.copyObject(any(CopyObjectRequest.class))).thenThrow(accessDenied);
+
+        ChunkReleaser.releaseNext(CHUNK, s3Client, BUCKET);
+
+        assertThat(appender.getMessages(), containsString("Could not release chunk " + PENDING_KEY));
+    }
+
+    @Test
+    void shouldRetryReleaseThatFails() {
+        var throttled = S3Exception.builder().message("Slow Down").statusCode(503).build();
+        when(s3Client.copyObject(any(CopyObjectRequest.class)))
+            .thenThrow(throttled)
+            .thenReturn(CopyObjectResponse.builder().build());
+
+        ChunkReleaser.releaseNext(CHUNK, s3Client, BUCKET);
+
+        verify(s3Client, times(2)).copyObject(any(CopyObjectRequest.class));
+        verify(s3Client).deleteObject(any(DeleteObjectRequest.class));
+    }
+
+    @Test
+    void shouldNotCopyAgainWhenOnlyDeleteFails() {
+        var throttled = S3Exception.builder().message("Slow Down").statusCode(503).build();
+        when(s3Client.deleteObject(any(DeleteObjectRequest.class)))
+            .thenThrow(throttled)
+            .thenReturn(DeleteObjectResponse.builder().build());
+
+        ChunkReleaser.releaseNext(CHUNK, s3Client, BUCKET);
+
+        verify(s3Client).copyObject(any(CopyObjectRequest.class));
+        verify(s3Client, times(2)).deleteObject(any(DeleteObjectRequest.class));
+    }
+}
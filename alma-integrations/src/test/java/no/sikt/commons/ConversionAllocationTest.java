@@ -0,0 +1,165 @@
+package no.sikt.commons;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+import no.sikt.alma.partners.generated.Partner;
+import no.sikt.alma.user.generated.User;
+import no.sikt.clients.basebibliotek.BaseBibliotekUtils;
+import no.sikt.lum.UserConverter;
+import no.sikt.rsp.AlmaCodeProvider;
+import no.sikt.rsp.PartnerConverter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import test.utils.RecordBuilder;
+
+/**
+ * Keeps the cost of converting a record in check. A chunk converts every record once per institution, so a regex
+ * compiled or a formatter built per record shows up here long before it shows up in the Lambda bill. The budgets are
+ * averages over many conversions after warm-up, with room for JDK differences. Parts that are the same for every
+ * record are shared rather than built again.
+ **/
+class ConversionAllocationTest {
+
+    private static final int WARM_UP_CONVERSIONS = 2_000;
+    private static final int MEASURED_CONVERSIONS = 2_000;
+    private static final long USER_BYTES_PER_RECORD_BUDGET = 16 * 1024;
+    private static final long PARTNER_BYTES_PER_RECORD_BUDGET = 12 * 1024;
+    private static final long INVALID_BYTES_PER_RECORD_BUDGET = 1024;
+    private static final String ALMA_CODE = "NTNU";
+    private static final String ILL_SERVER = "ill.example.com";
+    private static final String ALMA_CODE_MAPPING = "[{\"libCode\":\"0030100\",\"almaCode\":\"" + ALMA_CODE + "\"}]";
+
+    private List<LibraryRecord> records;
+
+    @BeforeEach
+    void init() {
+        records = IntStream.range(0, 100)
+                      .mapToObj(i -> new RecordBuilder(BigInteger.valueOf(i), LocalDate.now(),
+                                                       BaseBibliotekUtils.KATSYST_BIBSYS)
+                                         .withBibnr(String.format("NO-%07d", 30_100 + i))
+                                         .withLandkode(BaseBibliotekUtils.COUNTRY_CODE_NORWEGIAN)
+                                         .withInst("Bibliotek & arkiv\nAvdeling " + i)
+                                         .withBiblType("FAG")
+                                         .withEpostAdr("adr" + i + "@example.com")
+                                         .withEpostBest("best" + i + "@example.com")
+                                         .withPaddr("Postboks " + i, "0001", "OSLO")
+                                         .withVaddr("Gate " + i, "0001", "OSLO")
+                                         .build())
+                      .map(LibraryRecord::from)
+                      .toList();
+    }
+
+    @Test
+    void shouldConvertUsersWithinAllocationBudget() {
+        var statisticNote = UserConverter.currentTime();
+        Runnable convertOnce = () -> {
+            for (var record : records) {
+                assertThat(toUser(record, statisticNote), is(notNullValue()));
+            }
+        };
+
+        assertThat(bytesPerRecord(convertOnce), is(lessThan(USER_BYTES_PER_RECORD_BUDGET)));
+    }
+
+    @Test
+    void shouldConvertPartnersWithinAllocationBudget() {
+        var almaCodeProvider = new AlmaCodeProvider(ALMA_CODE_MAPPING);
+        Runnable convertOnce = () -> {
+            for (var record : records) {
+                assertThat(toPartner(record, almaCodeProvider), is(notNullValue()));
+            }
+        };
+
+        assertThat(bytesPerRecord(convertOnce), is(lessThan(PARTNER_BYTES_PER_RECORD_BUDGET)));
+    }
+
+    @Test
+    void shouldShareConstantPartsBetweenConvertedUsers() {
+        var statisticNote = UserConverter.currentTime();
+        var first = toUser(records.get(0), statisticNote);
+        var second = toUser(records.get(1), statisticNote);
+
+        assertThat(first.getRecordType(), is(sameInstance(second.getRecordType())));
+        assertThat(first.getAccountType(), is(sameInstance(second.getAccountType())));
+        assertThat(first.getUserRoles(), is(sameInstance(second.getUserRoles())));
+        assertThat(first.getContactInfo().getEmails().getEmail().getFirst().getEmailTypes(),
+                   is(sameInstance(second.getContactInfo().getEmails().getEmail().getFirst().getEmailTypes())));
+    }
+
+    @Test
+    void shouldShareConstantPartsBetweenConvertedPartners() {
+        var almaCodeProvider = new AlmaCodeProvider(ALMA_CODE_MAPPING);
+        var first = toPartner(records.get(0), almaCodeProvider);
+        var second = toPartner(records.get(1), almaCodeProvider);
+
+        assertThat(first.getPartnerDetails().getSystemType(),
+                   is(sameInstance(second.getPartnerDetails().getSystemType())));
+        assertThat(first.getContactInfo().getPhones().getPhone().getFirst().getPhoneTypes(),
+                   is(sameInstance(second.getContactInfo().getPhones().getPhone().getFirst().getPhoneTypes())));
+    }
+
+    @Test
+    void shouldRejectInvalidRecordsAlmostForFree() {
+        var statisticNote = UserConverter.currentTime();
+        var invalidRecords = records.stream().map(record -> recordWithOnlyBibnr(record.getBibnr())).toList();
+        Runnable convertOnce = () -> {
+            for (var record : invalidRecords) {
+                var result = new UserConverter(record, ALMA_CODE, statisticNote).toUser();
+                assertThat(result, is(instanceOf(ConversionResult.Invalid.class)));
+            }
+        };
+
+        assertThat(bytesPerRecord(convertOnce), is(lessThan(INVALID_BYTES_PER_RECORD_BUDGET)));
+    }
+
+    @Test
+    void shouldNameMissingFieldsOfInvalidRecord() {
+        var record = recordWithOnlyBibnr("0030100");
+
+        var result = (ConversionResult.Invalid<User>) new UserConverter(record, ALMA_CODE, "note").toUser();
+
+        assertThat(result.bibnr(), is(equalTo("0030100")));
+        assertThat(result.missingFields(), contains(UserConverter.INST, UserConverter.BIBLTYPE));
+        assertThat(result.toString(), startsWith("Could not convert record, missing inst, bibltype, record: "));
+    }
+
+    private static LibraryRecord recordWithOnlyBibnr(String bibnr) {
+        return LibraryRecord.from(new RecordBuilder(BigInteger.ONE, LocalDate.now(), BaseBibliotekUtils.KATSYST_BIBSYS)
+                                      .withBibnr(bibnr)
+                                      .build());
+    }
+
+    private User toUser(LibraryRecord record, String statisticNote) {
+        var result = new UserConverter(record, ALMA_CODE, statisticNote).toUser();
+        return ((ConversionResult.Converted<User>) result).value();
+    }
+
+    private Partner toPartner(LibraryRecord record, AlmaCodeProvider almaCodeProvider) {
+        var result = new PartnerConverter(almaCodeProvider, ILL_SERVER, record).toPartner();
+        return ((ConversionResult.Converted<Partner>) result).value();
+    }
+
+    private long bytesPerRecord(Runnable convertOnce) {
+        var threadMxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (var i = 0; i < WARM_UP_CONVERSIONS / records.size(); i++) {
+            convertOnce.run();
+        }
+        var before = threadMxBean.getCurrentThreadAllocatedBytes();
+        for (var i = 0; i < MEASURED_CONVERSIONS / records.size(); i++) {
+            convertOnce.run();
+        }
+        return (threadMxBean.getCurrentThreadAllocatedBytes() - before) / MEASURED_CONVERSIONS;
+    }
+}
@@ -0,0 +1,86 @@
+package no.sikt.commons;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import com.amazonaws.services.lambda.runtime.Context;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import no.unit.nva.s3.S3Driver;
+import no.unit.nva.stubs.FakeS3Client;
+import nva.commons.core.paths.UnixPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+
+class FailedChunkHandlerTest {
+
+    private static final Context CONTEXT = mock(Context.class);
+    private static final String BUCKET = "basebibliotek-xml";
+    private static final String CHUNK_KEY = "lum/2026-10-19_3.txt";
+    private static final String PENDING_KEY = "pending/lum/2026-10-19_7.txt";
+    private static final String FAILED_INVOCATION_TEMPLATE = """
+        {
+          "version": "1.0",
+          "requestContext": {"condition": "RetriesExhausted", "approximateInvokeCount": 3},
+          "requestPayload": {
+            "Records": [{"s3": {"bucket": {"name": "%s"}, "object": {"key": "%s"}}}]
+          }
+        }
+        """;
+
+    private S3Client s3Client;
+    private FailedChunkHandler handler;
+
+    @BeforeEach
+    void init() throws IOException {
+        s3Client = spy(new FakeS3Client());
+        doReturn(CopyObjectResponse.builder().build()).when(s3Client).copyObject(any(CopyObjectRequest.class));
+        doReturn(DeleteObjectResponse.builder().build()).when(s3Client).deleteObject(any(DeleteObjectRequest.class));
+        new S3Driver(s3Client, BUCKET).insertFile(UnixPath.of(CHUNK_KEY), "#next=" + PENDING_KEY + "\n0030100");
+        handler = new FailedChunkHandler(s3Client);
+    }
+
+    @Test
+    void shouldReleaseSuccessorOfChunkThatFailedEveryRetry() {
+        handler.handleRequest(failedInvocation(CHUNK_KEY), new ByteArrayOutputStream(), CONTEXT);
+
+        var copyCaptor = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3Client).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getValue().sourceKey(), is(equalTo(PENDING_KEY)));
+    }
+
+    @Test
+    void shouldIgnoreFailedRetryManifest() {
+        handler.handleRequest(failedInvocation("lum/retry/2026-10-19_3.json"), new ByteArrayOutputStream(), CONTEXT);
+
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+    }
+
+    @Test
+    void shouldIgnoreInvocationWithoutS3Object() {
+        var input = new ByteArrayInputStream("{\"requestPayload\": {}}".getBytes(StandardCharsets.UTF_8));
+
+        handler.handleRequest(input, new ByteArrayOutputStream(), CONTEXT);
+
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+    }
+
+    private static ByteArrayInputStream failedInvocation(String key) {
+        return new ByteArrayInputStream(FAILED_INVOCATION_TEMPLATE.formatted(BUCKET, key)
+                                            .getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,140 @@
+package no.sikt.commons;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import jakarta.xml.bind.JAXBElement;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Optional;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.namespace.QName;
+import no.nb.basebibliotek.generated.Aut;
+import no.nb.basebibliotek.generated.BaseBibliotek;
+import no.nb.basebibliotek.generated.Eressurser;
+import no.nb.basebibliotek.generated.Record;
+import no.sikt.clients.basebibliotek.BaseBibliotekUtils;
+import no.sikt.lum.UserGroupConverter.BibKategori;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import test.utils.RecordBuilder;
+
+class LibraryRecordTest {
+
+    private static final String NAMESPACE = "http://nb.no/BaseBibliotek";
+    private static final String NNCIP_URI = "https://ncip.example.com";
+    private static final String PASSWORD = "secret-password";
+
+    @Test
+    void shouldShareLowCardinalityValuesBetweenRecords() {
+        var first = LibraryRecord.from(norwegianRecord("0030100"));
+        var second = LibraryRecord.from(norwegianRecord("0030101"));
+
+        assertThat(first.getLandkode(), is(sameInstance(second.getLandkode())));
+        assertThat(first.getBibltype(), is(sameInstance(second.getBibltype())));
+        assertThat(first.getKatsyst(), is(sameInstance(second.getKatsyst())));
+        assertThat(first.getPpoststed(), is(sameInstance(second.getPpoststed())));
+        assertThat(first.getVpostnr(), is(sameInstance(second.getVpostnr())));
+    }
+
+    @Test
+    void shouldKeepTheFieldsTheConvertersRead() throws DatatypeConfigurationException {
+        var record = norwegianRecord("0030100");
+        var closedFrom = Instant.parse("2024-01-01T00:00:00Z");
+        record.setStengt("U");
+        record.setStengtFra(DatatypeFactory.newInstance().newXMLGregorianCalendar(closedFrom.toString()));
+        record.setTlf("12 34 56 78");
+        var eressurser = new Eressurser();
+        eressurser.getOAIOrSRUOrArielIp().add(new JAXBElement<>(new QName(NAMESPACE, "sru"), String.class, "sru"));
+        eressurser.getOAIOrSRUOrArielIp().add(
+            new JAXBElement<>(new QName(NAMESPACE, LibraryRecord.NNCIP_URI), String.class, NNCIP_URI));
+        record.setEressurser(eressurser);
+        var baseBibliotek = new BaseBibliotek();
+        baseBibliotek.getRecord().add(record);
+
+        var libraryRecord = LibraryRecord.fromBaseBibliotek(baseBibliotek).getFirst();
+
+        assertThat(libraryRecord.getBibnr(), is(equalTo("0030100")));
+        assertThat(libraryRecord.getInst(), is(equalTo("Inst")));
+        assertThat(libraryRecord.getTlf(), is(equalTo("12 34 56 78")));
+        assertThat(libraryRecord.getEpostAdr(), is(equalTo("adr@example.com")));
+        assertThat(libraryRecord.getEpostBest(), is(equalTo("best@example.com")));
+        assertThat(libraryRecord.getPadr(), is(equalTo("Postboks 1")));
+        assertThat(libraryRecord.getPpostnr(), is(equalTo("0001")));
+        assertThat(libraryRecord.getVadr(), is(equalTo("Gate 1")));
+        assertThat(libraryRecord.getVpoststed(), is(equalTo("OSLO")));
+        assertThat(libraryRecord.getStengt(), is(equalTo("U")));
+        assertThat(libraryRecord.getStengtFra(), is(equalTo(closedFrom)));
+        assertThat(libraryRecord.getStengtTil(), is(nullValue()));
+        assertThat(libraryRecord.getNncipUri(), is(equalTo(Optional.of(NNCIP_URI))));
+        assertThat(libraryRecord.getAut(), is(nullValue()));
+    }
+
+    @Test
+    void shouldLeavePasswordOutOfToString() {
+        var record = norwegianRecord("0030100");
+        var aut = new Aut();
+        aut.setContent(PASSWORD);
+        record.setAut(aut);
+
+        var libraryRecord = LibraryRecord.from(record);
+
+        assertThat(libraryRecord.getAut(), is(equalTo(PASSWORD)));
+        assertThat(libraryRecord.getNncipUri(), is(equalTo(Optional.empty())));
+        assertThat(libraryRecord.toString(), containsString("bibnr=0030100"));
+        assertThat(libraryRecord.toString(), containsString("aut=redacted"));
+        assertThat(libraryRecord.toString(), not(containsString(PASSWORD)));
+    }
+
+    @Test
+    void shouldWorkOutDerivedValuesOnceAndKeepThem() {
+        var libraryRecord = LibraryRecord.from(norwegianRecord("NO-2030100"));
+
+        var libraryNumber = libraryRecord.getLibraryNumber();
+        var symbol = libraryRecord.getSymbol();
+        var userGroupCode = libraryRecord.getUserGroupCode();
+
+        assertThat(libraryNumber, is(equalTo("2030100")));
+        assertThat(symbol, is(equalTo("NO-NO-2030100")));
+        assertThat(userGroupCode, is(equalTo(BibKategori.AndreFagOgForskningsbibliotek.getCode())));
+        assertThat(libraryRecord.getLibraryNumber(), is(sameInstance(libraryNumber)));
+        assertThat(libraryRecord.getSymbol(), is(sameInstance(symbol)));
+        assertThat(libraryRecord.getUserGroupCode(), is(sameInstance(userGroupCode)));
+    }
+
+    @Test
+    void shouldLeaveSymbolOutWhenRecordHasNoCountryCode() {
+        var record = norwegianRecord("0030100");
+        record.setLandkode(null);
+
+        assertThat(LibraryRecord.from(record).getSymbol(), is(nullValue()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0030100", "NO-0030100", "no-se-6330100", "-0030100", "a.b-0030100", "NO--0030100",
+        "NO-", "_x-1-2"})
+    void shouldStripCountryPrefixAsTheRegexDid(String bibnr) {
+        assertThat(LibraryRecord.stripCountryPrefix(bibnr), is(equalTo(bibnr.replaceAll("\\w+-", ""))));
+    }
+
+    private static Record norwegianRecord(String bibnr) {
+        // new String(...) gives every record its own copy, as unmarshalling does
+        return new RecordBuilder(BigInteger.ONE, LocalDate.now(), new String(BaseBibliotekUtils.KATSYST_BIBSYS))
+                   .withBibnr(bibnr)
+                   .withLandkode(new String(BaseBibliotekUtils.COUNTRY_CODE_NORWEGIAN))
+                   .withInst("Inst")
+                   .withBiblType(new String("FAG"))
+                   .withEpostAdr("adr@example.com")
+                   .withEpostBest("best@example.com")
+                   .withPaddr("Postboks 1", new String("0001"), new String("OSLO"))
+                   .withVaddr("Gate 1", new String("0001"), new String("OSLO"))
+                   .build();
+    }
+}
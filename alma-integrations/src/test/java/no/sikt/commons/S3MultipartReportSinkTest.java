@@ -0,0 +1,150 @@
+package no.sikt.commons;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static no.unit.nva.testutils.RandomDataGenerator.randomString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+class S3MultipartReportSinkTest {
+
+    private static final String BUCKET = "report-bucket";
+    private static final String KEY = "report-lum-lum/2024-01-01_0.txt";
+    private static final String UPLOAD_ID = "uploadId";
+    private static final int SMALL_PART_SIZE = 16;
+
+    private transient S3Client s3Client;
+
+    @BeforeEach
+    void init() {
+        s3Client = mock(S3Client.class);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId(UPLOAD_ID).build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenReturn(UploadPartResponse.builder().eTag(randomString()).build());
+    }
+
+    @Test
+    void shouldWriteSmallReportWithSinglePutWhenClosed() {
+        var sink = new S3MultipartReportSink(s3Client, BUCKET, KEY);
+        sink.append("0030100").append(" OK\n").append("0030101 could not contact Alma\n");
+
+        sink.complete();
+        sink.close();
+
+        var requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        var bodyCaptor = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client).putObject(requestCaptor.capture(), bodyCaptor.capture());
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        assertThat(requestCaptor.getValue().bucket(), is(BUCKET));
+        assertThat(requestCaptor.getValue().key(), is(KEY));
+        assertThat(read(bodyCaptor.getValue()), is("0030100 OK\n0030101 could not contact Alma\n"));
+        assertThat(sink.getLineCount(), is(2L));
+        assertThat(sink.getLocation(), is("s3://" + BUCKET + "/" + KEY));
+    }
+
+    @Test
+    void shouldUploadFullPartsWhileWritingAndCompleteUploadWhenClosed() {
+        var sink = new S3MultipartReportSink(s3Client, BUCKET, KEY, SMALL_PART_SIZE);
+        var lines = List.of("lib0030100 \t ok:83\n", "lib0030101 \t ok:82\n", "tail\n");
+        lines.forEach(sink::append);
+
+        verify(s3Client, times(2)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+
+        sink.complete();
+        sink.close();
+
+        var partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        var bodyCaptor = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client, times(3)).uploadPart(partCaptor.capture(), bodyCaptor.capture());
+        var completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(completeCaptor.capture());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+
+        assertThat(partCaptor.getAllValues().stream().map(UploadPartRequest::partNumber).toList(), contains(1, 2, 3));
+        assertThat(bodyCaptor.getAllValues().stream().map(S3MultipartReportSinkTest::read).toList(),
+                   contains(lines.toArray()));
+        assertThat(completeCaptor.getValue().uploadId(), is(UPLOAD_ID));
+        assertThat(completeCaptor.getValue().multipartUpload().parts().size(), is(3));
+    }
+
+    @Test
+    void shouldAbortUploadWhenCompletingFails() {
+        var expectedMessage = randomString();
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+            .thenThrow(new IllegalStateException(expectedMessage));
+        var sink = new S3MultipartReportSink(s3Client, BUCKET, KEY, SMALL_PART_SIZE);
+        sink.append("more than sixteen bytes\n");
+
+        var exception = assertThrows(IllegalStateException.class, sink::complete);
+
+        assertThat(exception.getMessage(), is(expectedMessage));
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void shouldDiscardSmallReportWhenClosedWithoutCompleting() {
+        var sink = new S3MultipartReportSink(s3Client, BUCKET, KEY);
+        sink.append("0030100 OK\n");
+
+        sink.close();
+
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void shouldAbortUploadWhenClosedWithoutCompleting() {
+        var sink = new S3MultipartReportSink(s3Client, BUCKET, KEY, SMALL_PART_SIZE);
+        sink.append("more than sixteen bytes\n");
+
+        sink.close();
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void shouldAbortUploadWhenUploadingPartFails() {
+        var sink = new S3MultipartReportSink(s3Client, BUCKET, KEY, SMALL_PART_SIZE);
+        sink.append("more than sixteen bytes\n");
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenThrow(new IllegalStateException(randomString()));
+
+        assertThrows(IllegalStateException.class, () -> sink.append("another sixteen bytes\n"));
+        sink.close();
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    private static String read(RequestBody requestBody) {
+        try (var inputStream = requestBody.contentStreamProvider().newStream()) {
+            return new String(inputStream.readAllBytes(), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package no.sikt.commons.flightrecorder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import no.sikt.commons.ConversionResult;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+class FlightRecordingTest {
+
+    private static final String BUCKET = "report-bucket";
+    private static final String KEY = "flight-recording-lum-lum/2024-01-01_0.txt.jfr";
+    private static final String BIBNR = "0030100";
+    private static final Duration PLENTY_OF_TIME = Duration.ofMinutes(15);
+
+    private transient S3Client s3Client;
+    private transient Path uploadedRecording;
+
+    @TempDir
+    private transient Path tempDir;
+
+    @BeforeEach
+    void init() {
+        s3Client = mock(S3Client.class);
+        uploadedRecording = tempDir.resolve("recording.jfr");
+        // the recording is uploaded from a temporary file that is gone once the upload returns
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            try (var body = invocation.getArgument(1, RequestBody.class).contentStreamProvider().newStream()) {
+                Files.copy(body, uploadedRecording);
+            }
+            return PutObjectResponse.builder().build();
+        });
+    }
+
+    @Test
+    void shouldWritePipelineEventsToReportBucketWhenClosed() throws IOException {
+        try (var ignored = FlightRecording.start(true, s3Client, BUCKET, KEY, PLENTY_OF_TIME)) {
+            S3ReadEvent.timed(BUCKET, BIBNR, () -> BIBNR);
+            BasebibliotekFetchEvent.start(BIBNR).complete(1);
+            ConversionEvent.start(BIBNR, "NTNU").complete(ConversionResult.converted(BIBNR));
+            ConversionEvent.start(BIBNR, "NTNU").fail();
+            XmlBindingEvent.start(XmlBindingEvent.MARSHAL, String.class, BIBNR).complete(BIBNR.length());
+        }
+
+        var events = readUploadedRecording();
+
+        assertThat(eventNames(events), hasItems("no.sikt.S3Read", "no.sikt.BasebibliotekFetch", "no.sikt.Conversion",
+                                                "no.sikt.XmlBinding"));
+        assertThat(events.stream()
+                       .filter(event -> "no.sikt.Conversion".equals(event.getEventType().getName()))
+                       .map(event -> event.getString("status"))
+                       .toList(),
+                   hasItems(ConversionEvent.CONVERTED, ConversionEvent.FAILED));
+    }
+
+    @Test
+    void shouldWriteRecordingBeforeInvocationRunsOutOfTime() throws IOException {
+        var remainingTime = FlightRecording.WRITE_MARGIN.plusMillis(100);
+
+        try (var ignored = FlightRecording.start(true, s3Client, BUCKET, KEY, remainingTime)) {
+            ConversionEvent.start(BIBNR, "NTNU").complete(ConversionResult.converted(BIBNR));
+            verify(s3Client, timeout(5000)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        }
+
+        assertThat(eventNames(readUploadedRecording()), hasItems("no.sikt.Conversion"));
+    }
+
+    @Test
+    void shouldNotRecordWhenNotEnabled() {
+        FlightRecording.start(false, s3Client, BUCKET, KEY, PLENTY_OF_TIME).close();
+
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void shouldNotFailRunWhenRecordingCannotBeWritten() {
+        doThrow(S3Exception.builder().message("unavailable").build())
+            .when(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+
+        FlightRecording.start(true, s3Client, BUCKET, KEY, PLENTY_OF_TIME).close();
+
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void shouldBeEnabledByEnvironment() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(FlightRecording.FLIGHT_RECORDING_ENV_NAME)).thenReturn(Optional.of(" true "));
+
+        assertThat(FlightRecording.isEnabled(environment), is(true));
+        assertThat(FlightRecording.isEnabled(mock(Environment.class)), is(false));
+    }
+
+    private List<RecordedEvent> readUploadedRecording() throws IOException {
+        var requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(requestCaptor.capture(), any(RequestBody.class));
+        assertThat(requestCaptor.getValue().bucket(), is(BUCKET));
+        assertThat(requestCaptor.getValue().key(), is(KEY));
+        return RecordingFile.readAllEvents(uploadedRecording);
+    }
+
+    private static List<String> eventNames(List<RecordedEvent> events) {
+        return events.stream().map(event -> event.getEventType().getName()).toList();
+    }
+}
@@ -0,0 +1,67 @@
+package no.sikt.commons.retry;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+class RetryBackoffTest {
+
+    @Test
+    void shouldStopAttemptingOnFirstSuccess() {
+        var attempts = new AtomicInteger();
+        var backoff = new RetryBackoff(5, Duration.ofMillis(1));
+
+        var succeeded = backoff.attempt(() -> attempts.incrementAndGet() == 2);
+
+        assertThat(succeeded, is(true));
+        assertThat(attempts.get(), is(2));
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxAttempts() {
+        var attempts = new AtomicInteger();
+        var backoff = new RetryBackoff(3, Duration.ofMillis(1));
+
+        var succeeded = backoff.attempt(() -> {
+            attempts.incrementAndGet();
+            return false;
+        });
+
+        assertThat(succeeded, is(false));
+        assertThat(attempts.get(), is(3));
+    }
+
+    @Test
+    void shouldGiveUpWhenInterrupted() {
+        var attempts = new AtomicInteger();
+        var backoff = new RetryBackoff(3, Duration.ofSeconds(10));
+        Thread.currentThread().interrupt();
+
+        var succeeded = backoff.attempt(() -> {
+            attempts.incrementAndGet();
+            return false;
+        });
+
+        assertThat(succeeded, is(false));
+        assertThat(attempts.get(), is(1));
+        assertThat(Thread.interrupted(), is(true));
+    }
+
+    @Test
+    void shouldReadSettingsFromEnvironmentFallingBackToDefaults() {
+        var environment = mock(Environment.class);
+        when(environment.readEnvOpt(anyString())).thenReturn(Optional.empty());
+        when(environment.readEnvOpt(RetryBackoff.RETRY_MAX_ATTEMPTS_ENV_NAME)).thenReturn(Optional.of("4"));
+
+        var backoff = RetryBackoff.fromEnvironment(environment);
+
+        assertThat(backoff, is(new RetryBackoff(4, RetryBackoff.DEFAULT_INITIAL_DELAY)));
+    }
+}
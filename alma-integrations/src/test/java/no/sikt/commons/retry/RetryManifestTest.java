@@ -0,0 +1,29 @@
+package no.sikt.commons.retry;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RetryManifestTest {
+
+    @Test
+    void shouldPlaceManifestInRetryFolderNextToSourceChunk() {
+        assertThat(RetryManifest.manifestKey("lum/0.txt"), is("lum/retry/0.json"));
+        assertThat(RetryManifest.manifestKey("chunk"), is("retry/chunk.json"));
+    }
+
+    @Test
+    void shouldRecognizeManifestKeys() {
+        assertThat(RetryManifest.isManifestKey("lum/retry/0.json"), is(true));
+        assertThat(RetryManifest.isManifestKey("lum/0.txt"), is(false));
+    }
+
+    @Test
+    void shouldSurviveJsonRoundTrip() {
+        var manifest = new RetryManifest("rsp", "rsp/3.txt",
+                                         List.of(new RetryEntry("1234567", null, "NO-1234567", "<partner/>")));
+
+        assertThat(RetryManifest.fromJson(manifest.toJson()), is(manifest));
+    }
+}
@@ -0,0 +1,76 @@
+package no.sikt.lum;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import no.unit.nva.stubs.FakeS3Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InstitutionLatencyHistoryTest {
+
+    private static final String BUCKET = "basebibliotek-report";
+
+    private FakeS3Client s3Client;
+
+    @BeforeEach
+    void init() {
+        s3Client = new FakeS3Client();
+    }
+
+    @Test
+    void shouldOrderInstitutionsWithoutHistoryFirstAndTheRestSlowestFirst() {
+        var history = new InstitutionLatencyHistory(Map.of("NTNU_UB", 40.0, "UIT", 250.0, "AHO", 40.0));
+
+        var order = history.longestFirst(List.of("NTNU_UB", "AHO", "NEW", "UIT"));
+
+        assertThat(order, contains("NEW", "UIT", "NTNU_UB", "AHO"));
+    }
+
+    @Test
+    void shouldBlendLatestRunIntoHistory() {
+        var history = new InstitutionLatencyHistory(Map.of());
+
+        history.record("UIT", Duration.ofMillis(1000), 10);
+        history.record("UIT", Duration.ofMillis(2000), 10);
+
+        var expected = 100 + InstitutionLatencyHistory.WEIGHT_OF_LATEST_RUN * (200 - 100);
+        assertThat(history.millisPerUser("UIT").orElseThrow(), is(closeTo(expected, 0.001)));
+    }
+
+    @Test
+    void shouldIgnoreRunsWithoutUsers() {
+        var history = new InstitutionLatencyHistory(Map.of());
+
+        history.record("UIT", Duration.ofMillis(1000), 0);
+        history.save(s3Client, BUCKET);
+
+        assertThat(history.millisPerUser("UIT"), is(equalTo(Optional.empty())));
+        assertThat(InstitutionLatencyHistory.load(s3Client, BUCKET).millisPerUser("UIT"),
+                   is(equalTo(Optional.empty())));
+    }
+
+    @Test
+    void shouldReadBackSavedHistory() {
+        var history = new InstitutionLatencyHistory(Map.of());
+        history.record("UIT", Duration.ofMillis(1500), 10);
+
+        history.save(s3Client, BUCKET);
+
+        var loaded = InstitutionLatencyHistory.load(s3Client, BUCKET);
+        assertThat(loaded.millisPerUser("UIT").orElseThrow(), is(closeTo(150.0, 0.001)));
+    }
+
+    @Test
+    void shouldStartEmptyWhenThereIsNoHistory() {
+        var history = InstitutionLatencyHistory.load(s3Client, BUCKET);
+
+        assertThat(history.longestFirst(List.of("UIT", "AHO")), contains("UIT", "AHO"));
+    }
+}
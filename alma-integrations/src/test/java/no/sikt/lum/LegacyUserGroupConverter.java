@@ -0,0 +1,140 @@
+package no.sikt.lum;
+
+import no.sikt.lum.UserGroupConverter.BibKategori;
+
+/**
+ * The branch cascade that {@link UserGroupConverter} replaced, kept unchanged as the reference for its tables.
+ **/
+public final class LegacyUserGroupConverter {
+
+    private LegacyUserGroupConverter() {
+    }
+
+    /**
+     * NB! gammelt kode, overført fra gode gamle webframework.
+     * Produserer code for tilordning av User Group for libbruker som skal importeres til Alma, basert på feltene
+     * &lt;bibnr&gt; og &lt;bibltype&gt; fra Base bibliotek.
+     *
+     * @param libnr     Heltall som brukes til å å bestemme bibliotekskategori
+     * @param kundeType Streng som inneholder en liste med kundetyper. Separator mellom elementer er \"[+]\"
+     * @return Bibliotekskategorien som skal brukes til ved Almaimport
+     */
+
+    //Libnr inneholder informasjon. Kan skape krøll hvis et bibliotek går fra å være et høyskole bibliotek til
+    // universitetsbibliotek.
+    @SuppressWarnings({
+        "PMD.AvoidLiteralsInIfCondition",
+        "PMD.CognitiveComplexity",
+        "PMD.NPathComplexity",
+        "PMD.CollapsibleIfStatements",
+        "PMD.NullAssignment"
+    })
+    public static BibKategori konverterBibKategori(String libnr, String kundeType) {
+        if (libnr == null) {
+            throw new RuntimeException("libnr er null");
+        }
+        BibKategori kat = null;
+        char pos1 = libnr.charAt(0);
+        char pos2 = libnr.charAt(1);
+        char pos3 = libnr.charAt(2);
+        String customerType2 = null;
+        String customerType1;
+
+        if (kundeType != null && kundeType.contains("+")) {
+            customerType1 = kundeType.split(
+                "[+]")[0].trim(); // ta vare på første forekomst og fjern eventuelle whitespace
+            customerType2 = kundeType.split(
+                "[+]")[1].trim(); // ta vare på andre forekomst og fjern eventuelle whitespace
+        } else {
+            customerType1 = kundeType != null ? kundeType.trim() : null;
+        }
+
+        if (pos1 == '0') {
+            kat = BibKategori.NasjonalBiblioteket;
+        }
+        if (kat == null) {
+            if (pos1 == '6') {
+                if (pos2 == '5' || pos2 == '6' || pos2 == '7' || pos2 == '8' || pos2 == '9') {
+                    kat = BibKategori.Danmark;
+                } else if (pos2 == '1') {
+                    kat = BibKategori.Finland;
+                } else if (pos2 == '3') {
+                    kat = BibKategori.Sverige;
+                } else if (pos2 == '4') {
+                    if (pos3 == '7' || pos3 == '8' || pos3 == '9') {
+                        kat = BibKategori.Island_Faroyene_Gronland;
+                    }
+                }
+            }
+        }
+        if (kat == null) {
+            if (pos1 == '7') {
+                kat = BibKategori.Europeisk;
+            } else if (pos1 == '8') {
+                kat = BibKategori.Verden;
+            }
+        }
+
+        if (kat == null) {
+            kat = finnBibKategoriFraKundetype(customerType1);
+            if (kat == null && customerType2 != null) {
+                kat = finnBibKategoriFraKundetype(customerType2);
+            }
+        }
+        if (kat == null) {
+            if (pos1 == '2') {
+                kat = BibKategori.Folkebibliotek;
+            } else if (pos1 == '3' || pos1 == '4') {
+                kat = BibKategori.GrunnkoleOgVideregaaendeBib;
+            } else if (pos1 == '5') {
+                kat = BibKategori.BedriftsBibNorge;
+            }
+            if (kat == null) {
+                kat = BibKategori.Ukjent;
+            }
+        }
+        return kat;
+    }
+
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    private static BibKategori finnBibKategoriFraKundetype(String customerType) {
+        BibKategori kat = null;
+
+        if (matches(customerType, "UNB", "UNI")) {
+            kat = BibKategori.UniversitetsBibNorge;
+        }
+        if (matches(customerType, "HØY")) {
+            kat = BibKategori.HoyskoleBibNorge;
+        }
+        if (matches(customerType, "FIR", "ORG")) {
+            kat = BibKategori.BedriftsBibNorge;
+        }
+        if (matches(customerType, "FAG", "AVD", "ARK", "MUS")) {
+            kat = BibKategori.AndreFagOgForskningsbibliotek;
+        }
+        if (matches(customerType, "FBI", "FIL", "FYB", "FEN")) {
+            kat = BibKategori.Folkebibliotek;
+        }
+        if (matches(customerType, "GSK", "VGS", "FHS")) {
+            kat = BibKategori.GrunnkoleOgVideregaaendeBib;
+        }
+        return kat;
+    }
+
+    /**
+     * utility method for string matching on multiple values.
+     *
+     * @param input  string to check
+     * @param values matching criteria
+     * @return true if any criteria matches input (case ignored)
+     */
+    private static boolean matches(String input, String... values) {
+        for (String value : values) {
+            if (input.trim().equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -16,9 +16,13 @@ import static no.unit.nva.testutils.RandomDataGenerator.randomString;
 import static nva.commons.core.StringUtils.EMPTY_STRING;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.matchesPattern;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
@@ -28,6 +32,7 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.google.gson.Gson;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.file.Path;
@@ -40,7 +45,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import no.nb.basebibliotek.generated.Record;
 import no.sikt.alma.user.generated.Address;
 import no.sikt.alma.user.generated.ContactInfo;
@@ -48,10 +57,15 @@ import no.sikt.alma.user.generated.Email;
 import no.sikt.alma.user.generated.Emails;
 import no.sikt.alma.user.generated.Phones;
 import no.sikt.alma.user.generated.User;
+import no.sikt.clients.alma.AlmaInstitutionCircuitBreaker;
 import no.sikt.clients.alma.HttpUrlConnectionAlmaUserUpserter;
 import no.sikt.clients.basebibliotek.BaseBibliotekUtils;
 import no.sikt.clients.basebibliotek.HttpUrlConnectionBaseBibliotekApi;
 import no.sikt.commons.HandlerUtils;
+import no.sikt.commons.flightrecorder.FlightRecording;
+import no.sikt.commons.retry.RetryBackoff;
+import no.sikt.commons.retry.RetryEntry;
+import no.sikt.commons.retry.RetryManifest;
 import no.sikt.lum.secret.AlmaKeysFetcher;
 import no.unit.nva.s3.S3Driver;
 import no.unit.nva.stubs.FakeS3Client;
@@ -94,7 +108,9 @@ class LibraryUserManagementHandlerTest {
     private static final String EMAIL_ADR = "adr@example.com";
     private static final String EMAIL_BEST = "best@example.com";
     private static final String BUCKET_NAME = "bucket";
+    private static final String JFR_MAGIC = "FLR";
 
+    private static final int NUMBER_OF_FAILING_RECORDS = 64;
     private static final Environment mockedEnvironment = mock(Environment.class);
     private transient FakeS3Client s3Client;
     private transient S3Driver s3Driver;
@@ -116,6 +132,8 @@ class LibraryUserManagementHandlerTest {
             UriWrapper.fromUri(wmRuntimeInfo.getHttpBaseUrl()).addChild(BIBLIOTEK_REST_PATH).toString());
         when(mockedEnvironment.readEnv(LibraryUserManagementHandler.REPORT_BUCKET_ENVIRONMENT_NAME)).thenReturn(
             BASEBIBLIOTEK_REPORT);
+        when(mockedEnvironment.readEnvOpt(RetryBackoff.RETRY_INITIAL_DELAY_MILLIS_ENV_NAME)).thenReturn(
+            Optional.of("1"));
         final String fullAlmaCodeAlmaApiKeyMapping = IoUtils.stringFromResources(
             Path.of(FULL_ALMA_CODE_ALMA_APIKEY_MAPPING_JSON));
         when(getSecretValueResponse.secretString())
@@ -393,6 +411,151 @@ class LibraryUserManagementHandlerTest {
         assertThat(report, not(containsString("failed:[]")));
     }
 
+    @Test
+    void shouldSkipRemainingUsersForAlmaInstanceWhenCircuitOpens() throws IOException {
+        var thresholdEnvName = AlmaInstitutionCircuitBreaker.ALMA_CIRCUIT_BREAKER_FAILURE_THRESHOLD_ENV_NAME;
+        when(mockedEnvironment.readEnvOpt(thresholdEnvName)).thenReturn(Optional.of("1"));
+        var handler = new LibraryUserManagementHandler(s3Client, mockedEnvironment, almaKeysFetcher);
+        when(mockedEnvironment.readEnvOpt(thresholdEnvName)).thenReturn(Optional.empty());
+        var records = IntStream.range(0, NUMBER_OF_FAILING_RECORDS)
+                          .mapToObj(index -> String.valueOf(2_000_000 + index))
+                          .map(this::createFailingRecord)
+                          .toArray(Record[]::new);
+        var s3Event = prepareBaseBibliotekFromRecords(HandlerTestUtils.randomS3Path(), records);
+
+        handler.handleRequest(s3Event, CONTEXT);
+
+        var reports3Driver = new S3Driver(s3Client, BASEBIBLIOTEK_REPORT);
+        var report = reports3Driver.getFile(
+            UnixPath.of(HandlerUtils.extractReportFilename(s3Event, LibraryUserManagementHandler.HANDLER_NAME)));
+        assertThat(report, matchesPattern(Pattern.compile(".*skipped:\\[[A-Z].*", Pattern.DOTALL)));
+        assertThat(report, not(containsString("ok:1")));
+    }
+
+    @Test
+    void shouldOnlyUpdateInstitutionsNamedInBackfillHeader() throws IOException {
+        WireMocker.mockBasebibliotekXml(IoUtils.stringFromResources(Path.of(BASEBIBLIOTEK_0030100_XML)),
+                                        BIBNR_RESOLVABLE_TO_ALMA_CODE);
+        WireMocker.mockAlmaGetResponse(LIB_0030100_ID);
+        WireMocker.mockAlmaPutResponse(LIB_0030100_ID);
+        var chunk = InstitutionFilter.HEADER_PREFIX + "ntnu_ub, UNKNOWN\n" + BIBNR_RESOLVABLE_TO_ALMA_CODE;
+        var s3Event = HandlerTestUtils.createS3Event(s3Driver.insertFile(HandlerTestUtils.randomS3Path(), chunk));
+        var appender = LogUtils.getTestingAppender(InstitutionFilter.class);
+
+        var response = libraryUserManagementHandler.handleRequest(s3Event, CONTEXT);
+
+        assertThat(response, is(equalTo(1)));
+        verify(1, putRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_USERS + "/" + LIB_0030100_ID)));
+        assertThat(libraryUserManagementHandler.getUsers().keySet(), is(equalTo(Set.of("NTNU_UB"))));
+        assertThat(appender.getMessages(), containsString("[UNKNOWN]"));
+    }
+
+    @Test
+    void shouldWriteFlightRecordingToReportBucketWhenEnabled() throws IOException {
+        var bibNrToXmlMap = Collections.singletonMap(BIBNR_RESOLVABLE_TO_ALMA_CODE,
+                                                     IoUtils.stringFromResources(Path.of(BASEBIBLIOTEK_0030100_XML)));
+        var s3Event = HandlerTestUtils.prepareBaseBibliotekFromXml(bibNrToXmlMap, s3Driver);
+        WireMocker.mockAlmaGetResponse(LIB_0030100_ID);
+        WireMocker.mockAlmaPutResponse(LIB_0030100_ID);
+        var flightRecordingEnvName = FlightRecording.FLIGHT_RECORDING_ENV_NAME;
+        when(mockedEnvironment.readEnvOpt(flightRecordingEnvName)).thenReturn(Optional.of("true"));
+        var handler = new LibraryUserManagementHandler(s3Client, mockedEnvironment, almaKeysFetcher);
+        when(mockedEnvironment.readEnvOpt(flightRecordingEnvName)).thenReturn(Optional.empty());
+
+        var response = handler.handleRequest(s3Event, CONTEXT);
+
+        assertThat(response, is(numberOfAlmaInstances));
+        var recording = new S3Driver(s3Client, BASEBIBLIOTEK_REPORT).getFile(
+            UnixPath.of(FlightRecording.recordingKey(s3Event, LibraryUserManagementHandler.HANDLER_NAME)));
+        assertThat(recording, startsWith(JFR_MAGIC));
+    }
+
+    @Test
+    void shouldSendToEveryInstitutionWithSeveralWorkersAndRememberTheirLatency() throws IOException {
+        var bibNrToXmlMap = Collections.singletonMap(BIBNR_RESOLVABLE_TO_ALMA_CODE,
+                                                     IoUtils.stringFromResources(Path.of(BASEBIBLIOTEK_0030100_XML)));
+        var s3Event = HandlerTestUtils.prepareBaseBibliotekFromXml(bibNrToXmlMap, s3Driver);
+        WireMocker.mockAlmaGetResponse(LIB_0030100_ID);
+        WireMocker.mockAlmaPutResponse(LIB_0030100_ID);
+        var workersEnvName = LibraryUserManagementHandler.INSTITUTION_WORKERS_ENV_NAME;
+        when(mockedEnvironment.readEnvOpt(workersEnvName)).thenReturn(Optional.of("4"));
+        var handler = new LibraryUserManagementHandler(s3Client, mockedEnvironment, almaKeysFetcher);
+        when(mockedEnvironment.readEnvOpt(workersEnvName)).thenReturn(Optional.empty());
+
+        var response = handler.handleRequest(s3Event, CONTEXT);
+
+        assertThat(response, is(numberOfAlmaInstances));
+        verify(numberOfAlmaInstances,
+               putRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_USERS + "/" + LIB_0030100_ID)));
+        var history = InstitutionLatencyHistory.load(s3Client, BASEBIBLIOTEK_REPORT);
+        handler.getUsers().keySet()
+            .forEach(almaCode -> assertThat(history.millisPerUser(almaCode).isPresent(), is(true)));
+        assertThat(handler.getUsers().keySet(), hasSize(numberOfAlmaInstances));
+    }
+
+    @Test
+    void shouldRememberPasswordDigestForEveryInstitutionTheUserWasSentTo() throws IOException {
+        var bibNrToXmlMap = Collections.singletonMap(BIBNR_RESOLVABLE_TO_ALMA_CODE,
+                                                     IoUtils.stringFromResources(Path.of(BASEBIBLIOTEK_0030100_XML)));
+        var s3Event = HandlerTestUtils.prepareBaseBibliotekFromXml(bibNrToXmlMap, s3Driver);
+        WireMocker.mockAlmaGetResponse(LIB_0030100_ID);
+        WireMocker.mockAlmaPutResponse(LIB_0030100_ID);
+
+        libraryUserManagementHandler.handleRequest(s3Event, CONTEXT);
+
+        var digestsJson = new S3Driver(s3Client, BASEBIBLIOTEK_REPORT).getFile(
+            UnixPath.of(PasswordDigests.DIGEST_FOLDER + LIB_0030100_ID + ".json"));
+        var digests = new Gson().fromJson(digestsJson, Map.class);
+        assertThat(digests.keySet(), is(equalTo(libraryUserManagementHandler.getUsers().keySet())));
+    }
+
+    @Test
+    void shouldWriteRetryManifestWithoutUserPayloadForEveryFailedUpsert() throws IOException {
+        var bibNr = "1234567";
+        var s3Path = UnixPath.of("lum/0.txt");
+        var s3Event = prepareBaseBibliotekFromRecords(s3Path, createFailingRecord(bibNr));
+
+        libraryUserManagementHandler.handleRequest(s3Event, CONTEXT);
+
+        var manifest = RetryManifest.fromJson(
+            s3Driver.getFile(UnixPath.of(RetryManifest.manifestKey(s3Path.toString()))));
+        assertThat(manifest.handlerName(), is(equalTo(LibraryUserManagementHandler.HANDLER_NAME)));
+        assertThat(manifest.entries().size(), is(equalTo(numberOfAlmaInstances)));
+        assertThat(manifest.entries().stream().map(RetryEntry::almaCode).distinct().count(),
+                   is(equalTo((long) numberOfAlmaInstances)));
+        manifest.entries().forEach(entry -> {
+            assertThat(entry.bibnr(), is(equalTo(bibNr)));
+            assertThat(entry.targetId(), is(equalTo(LIB_USER_PREFIX + bibNr)));
+            assertThat(entry.payload(), is(nullValue()));
+        });
+    }
+
+    @Test
+    void shouldReplayOnlyTheEntriesInRetryManifestAndKeepThoseStillFailing() throws IOException {
+        var replayable = new RetryEntry("0030100", "NTNU_UB", LIB_0030100_ID, null);
+        var unknownInstance = new RetryEntry("0030100", "UNKNOWN", LIB_0030100_ID, null);
+        var manifest = new RetryManifest(LibraryUserManagementHandler.HANDLER_NAME, "lum/0.txt",
+                                         List.of(replayable, unknownInstance));
+        var manifestUri = s3Driver.insertFile(UnixPath.of("lum/retry/0.json"), manifest.toJson());
+        var s3Event = HandlerTestUtils.createS3Event(manifestUri);
+        WireMocker.mockBasebibliotekXml(IoUtils.stringFromResources(Path.of(BASEBIBLIOTEK_0030100_XML)), "0030100");
+        WireMocker.mockAlmaGetResponse(LIB_0030100_ID);
+        WireMocker.mockAlmaPutResponse(LIB_0030100_ID);
+
+        var replayed = libraryUserManagementHandler.handleRequest(s3Event, CONTEXT);
+
+        assertThat(replayed, is(equalTo(1)));
+        verify(1, putRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_USERS + "/" + LIB_0030100_ID)));
+        var reports3Driver = new S3Driver(s3Client, BASEBIBLIOTEK_REPORT);
+        var report = reports3Driver.getFile(
+            UnixPath.of(HandlerUtils.extractReportFilename(s3Event, LibraryUserManagementHandler.HANDLER_NAME)));
+        assertThat(report, containsString(LIB_0030100_ID + " NTNU_UB OK"));
+        assertThat(report, containsString(LIB_0030100_ID + " UNKNOWN still failing"));
+        var stillFailing = RetryManifest.fromJson(reports3Driver.getFile(UnixPath.of(
+            RetryManifest.failedReplayKey(LibraryUserManagementHandler.HANDLER_NAME, "lum/retry/0.json"))));
+        assertThat(stillFailing.entries(), is(equalTo(List.of(unknownInstance))));
+    }
+
     @Test
     void shouldGenerateReportWhenBasebibliotekFetchFailure() throws IOException {
         var basebibliotekFailureBibnr = "2000000";
@@ -482,6 +645,17 @@ class LibraryUserManagementHandlerTest {
                                                                                                almaKeysFetcher));
     }
 
+    private Record createFailingRecord(String bibNr) {
+        WireMocker.mockAlmaForbiddenGetResponse(LIB_USER_PREFIX + bibNr);
+        WireMocker.mockAlmaForbiddenPostResponse(LIB_USER_PREFIX + bibNr);
+        return new RecordBuilder(BigInteger.ONE, LocalDate.now(), BaseBibliotekUtils.KATSYST_TIDEMANN)
+                   .withBibnr(bibNr)
+                   .withLandkode(BaseBibliotekUtils.COUNTRY_CODE_NORWEGIAN)
+                   .withInst(INST)
+                   .withBiblType("VGS")
+                   .build();
+    }
+
     private S3Event prepareBaseBibliotekFromRecords(final UnixPath s3Path, final Record... records) throws IOException {
         return prepareBaseBibliotekFromRecords(s3Path, null, records);
     }
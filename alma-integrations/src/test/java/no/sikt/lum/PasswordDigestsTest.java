@@ -0,0 +1,76 @@
+package no.sikt.lum;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import no.unit.nva.stubs.FakeS3Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+class PasswordDigestsTest {
+
+    private static final String BUCKET = "basebibliotek-report";
+    private static final String PRIMARY_ID = "lib0030100";
+    private static final String PASSWORD = "secret";
+    private static final String APIKEY = "apikey";
+
+    private FakeS3Client s3Client;
+
+    @BeforeEach
+    void init() {
+        s3Client = new FakeS3Client();
+    }
+
+    @Test
+    void shouldDigestPasswordDifferentlyForEachApiKey() {
+        var digest = PasswordDigests.digest(PASSWORD, APIKEY);
+
+        assertThat(digest, is(equalTo(PasswordDigests.digest(PASSWORD, APIKEY))));
+        assertThat(digest, is(not(equalTo(PasswordDigests.digest(PASSWORD, "other apikey")))));
+        assertThat(digest, is(not(equalTo(PasswordDigests.digest("other secret", APIKEY)))));
+        assertThat(digest.contains(PASSWORD), is(false));
+    }
+
+    @Test
+    void shouldReadBackSavedDigests() {
+        var digest = PasswordDigests.digest(PASSWORD, APIKEY);
+        var digests = new PasswordDigests(s3Client, BUCKET);
+        digests.record(PRIMARY_ID, "UIT", digest);
+
+        digests.save();
+
+        var loaded = new PasswordDigests(s3Client, BUCKET);
+        assertThat(loaded.isSent(PRIMARY_ID, "UIT", digest), is(true));
+        assertThat(loaded.isSent(PRIMARY_ID, "AHO", digest), is(false));
+        assertThat(loaded.isSent(PRIMARY_ID, "UIT", PasswordDigests.digest("new secret", APIKEY)), is(false));
+    }
+
+    @Test
+    void shouldNotWriteUsersWhoseDigestsAreUnchanged() {
+        var digest = PasswordDigests.digest(PASSWORD, APIKEY);
+        var digests = new PasswordDigests(s3Client, BUCKET);
+        digests.record(PRIMARY_ID, "UIT", digest);
+        digests.save();
+        var watchedS3Client = spy(s3Client);
+        var unchanged = new PasswordDigests(watchedS3Client, BUCKET);
+
+        unchanged.record(PRIMARY_ID, "UIT", digest);
+        unchanged.save();
+
+        verify(watchedS3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void shouldTreatUserWithoutDigestsAsNeverSent() {
+        var digests = new PasswordDigests(s3Client, BUCKET);
+
+        assertThat(digests.isSent(PRIMARY_ID, "UIT", PasswordDigests.digest(PASSWORD, APIKEY)), is(false));
+    }
+}
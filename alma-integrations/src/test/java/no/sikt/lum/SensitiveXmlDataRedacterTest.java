@@ -2,7 +2,10 @@ package no.sikt.lum;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 
 class SensitiveXmlDataRedacterTest {
@@ -57,4 +60,20 @@ class SensitiveXmlDataRedacterTest {
         assertThat(actual, not(containsString(secret)));
     }
 
+    @Test
+    void shouldRedactEveryConfiguredTagInOnePassAndLeaveOthersAlone() {
+        var redacter = new SensitiveXmlDataRedacter(Set.of("pin", "secret"));
+
+        var xml = "<pin>1234</pin><aut>kept</aut><secret type=\"x\">hidden</secret><pin>5678</pin>";
+
+        assertThat(redacter.redact(xml), is(equalTo(
+            "<pin>redacted</pin><aut>kept</aut><secret>redacted</secret><pin>redacted</pin>")));
+    }
+
+    @Test
+    void shouldLeaveInputUntouchedWhenNoTagsAreConfigured() {
+        var xml = "<aut>my-secret-password</aut>";
+
+        assertThat(new SensitiveXmlDataRedacter(Set.of()).redact(xml), is(equalTo(xml)));
+    }
 }
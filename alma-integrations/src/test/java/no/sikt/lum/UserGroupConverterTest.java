@@ -0,0 +1,65 @@
+package no.sikt.lum;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import no.sikt.lum.UserGroupConverter.BibKategori;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class UserGroupConverterTest {
+
+    private static final List<String> KNOWN_BIBLTYPES = List.of("UNB", "UNI", "HØY", "FIR", "ORG", "FAG", "AVD",
+                                                                "ARK", "MUS", "FBI", "FIL", "FYB", "FEN", "GSK",
+                                                                "VGS", "FHS", "SPE", "KOM", "");
+
+    public static Stream<String> bibltypes() {
+        var bibltypes = new ArrayList<>(KNOWN_BIBLTYPES);
+        bibltypes.add("høy");
+        bibltypes.add(" vgs ");
+        bibltypes.add("FAG+UNI+FBI");
+        for (var first : KNOWN_BIBLTYPES) {
+            for (var second : KNOWN_BIBLTYPES) {
+                if (!second.isEmpty()) {
+                    bibltypes.add(first + "+" + second.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return bibltypes.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("bibltypes")
+    void shouldClassifyEveryPrefixAsTheLegacyCascadeDid(String bibltype) {
+        for (var prefix = 0; prefix < 1000; prefix++) {
+            var libnr = String.format(Locale.ROOT, "%03d0100", prefix);
+
+            assertThat(libnr + " " + bibltype,
+                       UserGroupConverter.konverterBibKategori(libnr, bibltype),
+                       is(equalTo(LegacyUserGroupConverter.konverterBibKategori(libnr, bibltype))));
+        }
+    }
+
+    @Test
+    void shouldFallBackToLibraryNumberForInputTheLegacyCascadeRejected() {
+        assertThat(UserGroupConverter.konverterBibKategori("2030100", null), is(BibKategori.Folkebibliotek));
+        assertThat(UserGroupConverter.konverterBibKategori("5030100", "FAG+"),
+                   is(BibKategori.AndreFagOgForskningsbibliotek));
+        assertThat(UserGroupConverter.konverterBibKategori("12", "UNI"), is(BibKategori.UniversitetsBibNorge));
+        assertThat(UserGroupConverter.konverterBibKategori("X030100", "SPE"), is(BibKategori.Ukjent));
+        assertThrows(RuntimeException.class, () -> UserGroupConverter.konverterBibKategori(null, "UNI"));
+    }
+
+    @Test
+    void shouldGiveNotFoundForUnknownCategory() {
+        assertThat(UserGroupConverter.userGroupCode("1030100", "SPE"), is(equalTo(UserGroupConverter.NOTFOUND)));
+        assertThat(UserGroupConverter.userGroupCode("0030100", "SPE"),
+                   is(equalTo(BibKategori.NasjonalBiblioteket.getCode())));
+    }
+}
@@ -1,12 +1,23 @@
 package no.sikt.lum.reporting;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 
 class AlmaReportBuilderTest {
 
+    private static final int NUMBER_OF_THREADS = 32;
+    private static final int NUMBER_OF_LIBRARIES = 100;
+    private static final int SUCCESSES_PER_LIBRARY_AND_THREAD = 50;
+
     @Test
     void shouldCreateReportStringWithCorrectNumberOfSuccessesAndFailures() {
         var reportBuilder = new AlmaReportBuilder();
@@ -24,6 +35,17 @@ class AlmaReportBuilderTest {
         assertThat(report, containsString("lib003 \t ok:2 \t failures:2 \t failed:[NTNU, NORDFORSK]"));
     }
 
+    @Test
+    void shouldListSkippedInstancesSeparatelyFromFailures() {
+        var reportBuilder = new AlmaReportBuilder();
+        reportBuilder.addFailure("lib003", "NTNU");
+        reportBuilder.addSkipped("lib003", "UIT");
+
+        var report = reportBuilder.generateReport().toString();
+
+        assertThat(report, containsString("lib003 \t ok:0 \t failures:1 \t failed:[NTNU] \t skipped:[UIT]"));
+    }
+
     @Test
     void shouldNotCrashOnNullValuesButCountThemLikeTheOthers() {
         var reportBuilder = new AlmaReportBuilder();
@@ -82,4 +104,39 @@ class AlmaReportBuilderTest {
         assertThat(report, containsString("mixedLib \t ok:500 \t failures:500"));
     }
 
+    @Test
+    void shouldKeepExactCountsAndFirstSeenOrderUnderHeavyConcurrency() throws InterruptedException {
+        var reportBuilder = new AlmaReportBuilder();
+        var libraryCodes = IntStream.range(0, NUMBER_OF_LIBRARIES).mapToObj(i -> "lib" + i).toList();
+        libraryCodes.forEach(reportBuilder::addSuccess);
+
+        var startSignal = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+        IntStream.range(0, NUMBER_OF_THREADS).forEach(thread -> executor.submit(() -> {
+            startSignal.await();
+            for (int i = 0; i < SUCCESSES_PER_LIBRARY_AND_THREAD; i++) {
+                libraryCodes.forEach(reportBuilder::addSuccess);
+            }
+            libraryCodes.forEach(libraryCode -> reportBuilder.addFailure(libraryCode, "instance" + thread));
+            return null;
+        }));
+        startSignal.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+
+        var report = reportBuilder.generateReport().toString();
+
+        var expectedSuccesses = 1 + NUMBER_OF_THREADS * SUCCESSES_PER_LIBRARY_AND_THREAD;
+        libraryCodes.forEach(libraryCode -> assertThat(report, containsString(
+            libraryCode + " \t ok:" + expectedSuccesses + " \t failures:" + NUMBER_OF_THREADS + " \t")));
+        assertThat(reportedLibraryCodes(report), contains(libraryCodes.toArray()));
+        assertThat(reportBuilder.generateReport().toString(), is(report));
+    }
+
+    private static List<String> reportedLibraryCodes(String report) {
+        return Arrays.stream(report.split(AlmaReportBuilder.LINE_BREAK))
+                   .map(line -> line.substring(0, line.indexOf(' ')))
+                   .toList();
+    }
+
 }
@@ -1,7 +1,13 @@
 package no.sikt.lum.reporting;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 
@@ -46,4 +52,35 @@ class UserReportBuilderTest {
         assertThat(report, containsString("testLib \t failures:1000"));
     }
 
+    @Test
+    void shouldReportLibrariesInFirstSeenOrderWithExactCountsUnderHeavyConcurrency() throws InterruptedException {
+        var numberOfThreads = 16;
+        var failuresPerThread = 200;
+        var reportBuilder = new UserReportBuilder();
+        var libraryCodes = IntStream.range(0, 50).mapToObj(i -> "00" + i).toList();
+        libraryCodes.forEach(libraryCode -> reportBuilder.addFailure(libraryCode, "FIRST"));
+
+        var startSignal = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(numberOfThreads);
+        IntStream.range(0, numberOfThreads).forEach(thread -> executor.submit(() -> {
+            startSignal.await();
+            IntStream.range(0, failuresPerThread)
+                .forEach(i -> reportBuilder.addFailure(libraryCodes.get(i % libraryCodes.size()), "NTNU"));
+            return null;
+        }));
+        startSignal.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+
+        var report = reportBuilder.generateReport().toString();
+
+        var expectedFailures = 1 + numberOfThreads * failuresPerThread / libraryCodes.size();
+        libraryCodes.forEach(libraryCode -> assertThat(report, containsString(
+            libraryCode + " \t failures:" + expectedFailures + " \t Could not convert to user \t failed:[FIRST, ")));
+        var reportedLibraryCodes = Arrays.stream(report.split(UserReportBuilder.LINE_BREAK))
+                                       .map(line -> line.substring(0, line.indexOf(' ')))
+                                       .toList();
+        assertThat(reportedLibraryCodes, contains(libraryCodes.toArray()));
+    }
+
 }
@@ -28,6 +28,7 @@ import static test.utils.HandlerTestUtils.createS3Event;
 import static test.utils.HandlerTestUtils.randomS3Path;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import java.io.IOException;
@@ -42,7 +43,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import no.nb.basebibliotek.generated.Record;
 import no.sikt.alma.partners.generated.Address;
@@ -62,6 +65,7 @@ import no.sikt.clients.alma.HttpUrlConnectionAlmaPartnerUpserter;
 import no.sikt.clients.basebibliotek.BaseBibliotekUtils;
 import no.sikt.clients.basebibliotek.HttpUrlConnectionBaseBibliotekApi;
 import no.sikt.commons.HandlerUtils;
+import no.sikt.commons.retry.RetryManifest;
 import no.unit.nva.s3.S3Driver;
 import no.unit.nva.stubs.FakeS3Client;
 import nva.commons.core.Environment;
@@ -96,6 +100,7 @@ public class ResourceSharingPartnerTest {
     private static final String BASEBIBLIOTEK_2062200_XML = "bb_2062200.xml";
     private static final String LIB_CODE_TO_ALMA_CODE_MAPPING_FILE_PATH = "/libCodeToAlmaCodeMapping.json";
     private static final String NO_0030100_ID = "NO-0030100";
+    private static final String PARTNER_JSON_TEMPLATE = "{\"partner_details\":{\"code\":\"%s\",\"name\":\"Old name\"}}";
     private static final String INVALID_BASEBIBLIOTEK_XML_STRING = "invalid";
     private static final String SHARED_CONFIG_BUCKET_NAME_ENV_VALUE = "SharedConfigBucket";
     private static final String HYPHEN = "-";
@@ -173,6 +178,47 @@ public class ResourceSharingPartnerTest {
         assertThat(response, is(1));
     }
 
+    @Test
+    void shouldChooseBetweenUpdateAndCreateFromPartnerSnapshot() throws IOException {
+        final Map<String, String> bibNrToXmlMap = Map.of(
+            BIBNR_RESOLVABLE_TO_ALMA_CODE, IoUtils.stringFromResources(Path.of(BASEBIBLIOTEK_0030100_XML)),
+            "2062200", IoUtils.stringFromResources(Path.of(BASEBIBLIOTEK_2062200_XML)));
+        final S3Event s3Event = HandlerTestUtils.prepareBaseBibliotekFromXml(bibNrToXmlMap, s3Driver);
+        var listedPartners = IntStream.range(0, HttpUrlConnectionAlmaPartnerUpserter.PARTNER_LISTING_PAGE_SIZE + 50)
+                                 .mapToObj(index -> String.format(PARTNER_JSON_TEMPLATE, "NO-" + (5_000_000 + index)))
+                                 .collect(Collectors.toCollection(ArrayList::new));
+        listedPartners.add(String.format(PARTNER_JSON_TEMPLATE, NO_0030100_ID));
+        WireMocker.mockAlmaPartnerListing(listedPartners,
+                                          HttpUrlConnectionAlmaPartnerUpserter.PARTNER_LISTING_PAGE_SIZE);
+        WireMocker.mockAlmaPutResponse(NO_0030100_ID);
+        WireMocker.mockAlmaPostResponse();
+
+        var response = createHandlerPrefetchingPartners().handleRequest(s3Event, CONTEXT);
+
+        assertThat(response, is(equalTo(2)));
+        verify(1, getRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_PARTNER))
+                      .withQueryParam(WireMocker.OFFSET_QUERY_PARAMETER, WireMock.equalTo("100")));
+        verify(0, getRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_PARTNER + "/" + NO_0030100_ID)));
+        verify(1, putRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_PARTNER + "/" + NO_0030100_ID)));
+        verify(1, postRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_PARTNER)));
+    }
+
+    @Test
+    void shouldFetchPartnersOneByOneWhenChunkIsTooSmallForListing() throws IOException {
+        final Map<String, String> bibNrToXmlMap = Collections.singletonMap(BIBNR_RESOLVABLE_TO_ALMA_CODE,
+                                                                           IoUtils.stringFromResources(
+                                                                               Path.of(BASEBIBLIOTEK_0030100_XML)));
+        final S3Event s3Event = HandlerTestUtils.prepareBaseBibliotekFromXml(bibNrToXmlMap, s3Driver);
+        WireMocker.mockAlmaGetResponse(NO_0030100_ID);
+        WireMocker.mockAlmaPutResponse(NO_0030100_ID);
+
+        var response = resourceSharingPartnerHandler.handleRequest(s3Event, CONTEXT);
+
+        assertThat(response, is(equalTo(1)));
+        verify(0, getRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_PARTNER)));
+        verify(1, getRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_PARTNER + "/" + NO_0030100_ID)));
+    }
+
     @Test
     public void shouldLogExceptionWhenS3ClientFails() {
         var s3Event = createS3Event(randomString());
@@ -944,6 +990,37 @@ public class ResourceSharingPartnerTest {
             bibNr + ResourceSharingPartnerHandler.COULD_NOT_CONTACT_ALMA_REPORT_MESSAGE));
     }
 
+    @Test
+    void shouldWriteRetryManifestForFailedUpsertsAndReplayIt() throws IOException {
+        var bibNr = "1234567";
+        var partnerCode = "NO-" + bibNr;
+        var record = new RecordBuilder(BigInteger.ONE, LocalDate.now(), BaseBibliotekUtils.KATSYST_TIDEMANN)
+                         .withBibnr(bibNr)
+                         .withLandkode(BaseBibliotekUtils.COUNTRY_CODE_NORWEGIAN)
+                         .withEpostBest(EMAIL_BEST)
+                         .withEpostAdr(EMAIL_ADR)
+                         .build();
+        var s3Path = UnixPath.of("rsp/0.txt");
+        var s3Event = prepareBaseBibliotekFromRecords(s3Path, record);
+        WireMocker.mockAlmaForbiddenGetResponse(partnerCode);
+
+        resourceSharingPartnerHandler.handleRequest(s3Event, CONTEXT);
+
+        var manifestKey = RetryManifest.manifestKey(s3Path.toString());
+        var manifest = RetryManifest.fromJson(s3Driver.getFile(UnixPath.of(manifestKey)));
+        assertThat(manifest.entries(), hasSize(1));
+        assertThat(manifest.entries().getFirst().bibnr(), is(equalTo(bibNr)));
+        assertThat(manifest.entries().getFirst().targetId(), is(equalTo(partnerCode)));
+        assertThat(manifest.entries().getFirst().payload(), containsString(partnerCode));
+
+        WireMocker.mockAlmaGetResponse(partnerCode);
+        WireMocker.mockAlmaPutResponse(partnerCode);
+        var replayed = resourceSharingPartnerHandler.handleRequest(createS3Event(manifestKey), CONTEXT);
+
+        assertThat(replayed, is(equalTo(1)));
+        verify(putRequestedFor(urlPathEqualTo(WireMocker.URL_PATH_PARTNER + "/" + partnerCode)));
+    }
+
     @Test
     void shouldGenerateReportWhenBasebibliotekFetchFailure() throws IOException {
         var basebibliotekFailureBibnr = "2000000";
@@ -1254,4 +1331,12 @@ public class ResourceSharingPartnerTest {
     private boolean hasLine1CorrespondingToRecord(Address address, String recordAddr) {
         return recordAddr.equals(address.getLine1());
     }
+
+    private ResourceSharingPartnerHandler createHandlerPrefetchingPartners() {
+        var prefetchEnvName = ResourceSharingPartnerHandler.PARTNER_PREFETCH_MINIMUM_PARTNERS_ENV_NAME;
+        when(mockedEnvironment.readEnvOpt(prefetchEnvName)).thenReturn(Optional.of("1"));
+        var handler = new ResourceSharingPartnerHandler(s3Client, mockedEnvironment);
+        when(mockedEnvironment.readEnvOpt(prefetchEnvName)).thenReturn(Optional.empty());
+        return handler;
+    }
 }
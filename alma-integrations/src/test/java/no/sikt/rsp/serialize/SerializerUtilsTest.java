@@ -0,0 +1,33 @@
+package no.sikt.rsp.serialize;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import no.sikt.alma.partners.generated.Partner;
+import no.sikt.alma.partners.generated.PartnerDetails;
+import org.junit.jupiter.api.Test;
+
+class SerializerUtilsTest {
+
+    @Test
+    void shouldIgnorePartnersWithoutCode() {
+        assertThat(SerializerUtils.serializePartner(null).isEmpty(), equalTo(true));
+        assertThat(SerializerUtils.serializePartner(new Partner()).isEmpty(), equalTo(true));
+    }
+
+    @Test
+    void shouldSerializePartnerWithCode() {
+        var partnerDetails = new PartnerDetails();
+        partnerDetails.setCode("NO-1234567");
+        partnerDetails.setName("Test library");
+        var partner = new Partner();
+        partner.setPartnerDetails(partnerDetails);
+
+        var result = SerializerUtils.serializePartner(partner);
+
+        assertThat(result.isPresent(), equalTo(true));
+        assertThat(result.get().code(), equalTo("NO-1234567"));
+        assertThat(result.get().serializedXml(), containsString("<code>NO-1234567</code>"));
+    }
+
+}
@@ -2,10 +2,12 @@ package test.utils;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.badRequest;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
 import static com.github.tomakehurst.wiremock.client.WireMock.forbidden;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.put;
 import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
@@ -33,6 +35,9 @@ public class WireMocker {
     public static final String LUM_0030100_JSON = "lum_0030100.json";
     public static final String RSP_0030100_JSON = "rsp_0030100.json";
     public static final String DUMMY = "DUMMY";
+    public static final String OFFSET_QUERY_PARAMETER = "offset";
+    private static final String LIST_JSON_TEMPLATE = "{\"%s\":[%s],\"total_record_count\":%d}";
+    private static final String PARTNER_LIST_FIELD = "partner";
 
     public static void mockAlmaGetResponse(final String almaCode) {
         String responseBodyPartner = IoUtils.stringFromResources(Path.of(EMPTY_STRING, RSP_0030100_JSON));
@@ -104,6 +109,26 @@ public class WireMocker {
         stubFor(put(URL_PATH_USERS + SLASH + code).willReturn(badRequest().withBody(almaGetResponseBodyUser)));
     }
 
+    /**
+     * Serves the given partner json objects from the partner listing, split into pages of the given size by offset.
+     **/
+    public static void mockAlmaPartnerListing(final List<String> partnersJson, final int pageSize) {
+        mockAlmaListing(URL_PATH_PARTNER, PARTNER_LIST_FIELD, partnersJson, pageSize);
+    }
+
+    private static void mockAlmaListing(final String urlPath, final String listField, final List<String> entriesJson,
+                                        final int pageSize) {
+        var offset = 0;
+        do {
+            var page = entriesJson.subList(offset, Math.min(offset + pageSize, entriesJson.size()));
+            var body = String.format(LIST_JSON_TEMPLATE, listField, String.join(",", page), entriesJson.size());
+            stubFor(get(urlPathEqualTo(urlPath))
+                        .withQueryParam(OFFSET_QUERY_PARAMETER, equalTo(String.valueOf(offset)))
+                        .willReturn(okJson(body)));
+            offset += pageSize;
+        } while (offset < entriesJson.size());
+    }
+
     public static void mockBasebibliotekXml(String basebibliotek, String bibNr) {
         stubFor(
             get(urlPathMatching(URL_PATH_BASEBIBLIOTEK_REST_BIBNR + bibNr))
@@ -7,16 +7,18 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
 import jakarta.xml.bind.JAXB;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Date;
@@ -24,10 +26,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import no.nb.basebibliotek.generated.BaseBibliotek;
 import no.nb.basebibliotek.generated.Record;
+import no.sikt.clients.DecompressingBodyHandlers;
 import no.unit.nva.language.tooling.JacocoGenerated;
 import no.unit.nva.s3.S3Driver;
 import nva.commons.core.Environment;
@@ -45,6 +50,8 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
     public static final String BASEBIBLILOTEK_USERNAME_ENVIRONMENT_NAME = "BASEBIBLIOTEK_USERNAME";
     public static final String BASEBIBLIOTEK_PASSWORD_ENVIRONMENT_NAME = "BASEBIBLIOTEK_PASSWORD";
     public static final String S3_BUCKET_ENVIRONMENT_NAME = "BASEBIBLIOTEK_XML_BUCKET";
+    public static final String LUM_RESERVED_CONCURRENCY_ENVIRONMENT_NAME = "LUM_RESERVED_CONCURRENCY";
+    public static final int DEFAULT_LUM_RESERVED_CONCURRENCY = 5;
     private static final Logger logger = LoggerFactory.getLogger(BasebibliotekFetchHandler.class);
     private static final String FILENAME_REGEX = ".*?\">(bb-.*?.xml)</a>.*";
     private static final String BASIC_AUTHORIZATION = "Basic %s";
@@ -56,7 +63,17 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
     private static final String COULD_NOT_GET_ERROR_MESSAGE = "could not GET ";
     private static final String BASEBIBLIOTEK_RESPONSE_ERROR =
         "could not connect to basebibliotek, Connection responded with status: ";
+    private static final String UNEXPECTED_STATUS_MESSAGE_FORMAT = BASEBIBLIOTEK_RESPONSE_ERROR + "%d for %s";
+    private static final String COULD_NOT_CLOSE_RESPONSE = "Could not close response from {}";
     private static final String IMPORT_ALL_LIBRARIES = "bb-full.xml";
+    private static final String BACKFILLING_INSTITUTIONS = "Backfilling all libraries for alma institutions {}";
+    private static final String INSTITUTION_DELIMITER = ",";
+    private static final String LINE_DELIMITER = "\n";
+    private static final String QUARANTINED_LIBRARIES = "{} libraries lack fields required for conversion";
+    private static final String PACED_LUM_CHUNKS = "{} lum chunks dispatched in {} lanes, manifest at {}";
+    private static final String LANE_DELIMITER = " -> ";
+    private static final String MANIFEST = "manifest";
+    private static final String RECORD_WITH_MISSING_BIBNR = "Record with missing bibnr {}";
 
     //Because LUM has to contact 80 servers to update alma for each bibNr, the maximum number of bibNR in each file
     // is reduces. This ensures that the LUM handler does not exceed 15 minutes run time.
@@ -68,6 +85,19 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
     public static final String FOLDER_DELIMITER = "/";
     public static final String LUM_FOLDER_NAME = "lum";
     public static final String RSP_FOLDER_NAME = "rsp";
+    // Not watched by any handler: the libraries listed here would only fail conversion, so nothing is dispatched.
+    public static final String QUARANTINE_FOLDER_NAME = "quarantine";
+    public static final String BACKFILL_INSTITUTIONS_DETAIL_NAME = "backfillInstitutions";
+    public static final String BACKFILL_FILENAME_PREFIX = "backfill-";
+    // Read back by InstitutionFilter in the lum handler, which only updates the institutions listed here.
+    public static final String INSTITUTIONS_HEADER_PREFIX = "#institutions=";
+    // Lum chunks beyond the reserved concurrency wait here. Read back by ChunkReleaser in alma-integrations, which
+    // moves the chunk named in the "#next=" header to the lum folder when the chunk holding the header is done.
+    public static final String PENDING_FOLDER_NAME = "pending";
+    public static final String NEXT_CHUNK_HEADER_PREFIX = "#next=";
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    // The export files are large, so the whole download gets more room than a single connect attempt.
+    public static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
     private final transient S3Client s3Client;
     private final transient HttpClient httpClient;
     private final transient String basebibliotekUri;
@@ -75,12 +105,12 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
     private final transient String basebibliotekPassword;
     private final transient String s3BasebibliotekXmlBucket;
     private final transient String basebibliotekAuthorization;
+    private final transient int lumReservedConcurrency;
 
     @JacocoGenerated
     @SuppressWarnings("unused")
     public BasebibliotekFetchHandler() {
-        this(S3Driver.defaultS3Client().build(),
-             HttpClient.newBuilder().build(), new Environment());
+        this(S3Driver.defaultS3Client().build(), createHttpClient(), new Environment());
     }
 
     public BasebibliotekFetchHandler(S3Client s3Client, HttpClient httpClient, Environment environment) {
@@ -91,36 +121,92 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
         this.basebibliotekPassword = environment.readEnv(BASEBIBLIOTEK_PASSWORD_ENVIRONMENT_NAME);
         this.s3BasebibliotekXmlBucket = environment.readEnv(S3_BUCKET_ENVIRONMENT_NAME);
         this.basebibliotekAuthorization = createAuthorization();
+        this.lumReservedConcurrency = environment.readEnvOpt(LUM_RESERVED_CONCURRENCY_ENVIRONMENT_NAME)
+                                          .map(String::trim)
+                                          .map(Integer::parseInt)
+                                          .filter(concurrency -> concurrency > 0)
+                                          .orElse(DEFAULT_LUM_RESERVED_CONCURRENCY);
     }
 
     @Override
     public List<List<String>> handleRequest(ScheduledEvent scheduledEvent, Context context) {
-        return attempt(() -> getBasebibliotekData(UriWrapper.fromUri(basebibliotekUri).getUri()))
+        var backfillInstitutions = readBackfillInstitutions(scheduledEvent);
+        if (!backfillInstitutions.isEmpty()) {
+            return backfill(backfillInstitutions);
+        }
+        return attempt(() -> getBasebibliotekIndex(UriWrapper.fromUri(basebibliotekUri).getUri()))
                    .map(this::getBodyFromResponse)
                    .map(this::snipIncrementalBasebibliotekUrls)
-                   .map(this::fetchBasebibliotekXmls)
-                   .map(this::convertXmls)
+                   .map(this::fetchBasebiblioteks)
                    .map(this::collectBibnrFromBaseBibliotek)
                    .map(this::chunkAndUploadBibNrs)
                    .orElseThrow(
                        fail -> logExpectionAndThrowRuntimeError(fail.getException(), fail.getException().getMessage()));
     }
 
+    /**
+     * Sends the whole registry to LUM, restricted to the given Alma institutions, e.g. after a new institution got an
+     * api key. RSP is not involved, since partners do not depend on the institution.
+     **/
+    private List<List<String>> backfill(List<String> institutions) {
+        logger.info(BACKFILLING_INSTITUTIONS, institutions);
+        var bibNrs = collectBibnrFromBaseBibliotek(List.of(fetchBasebibliotek(IMPORT_ALL_LIBRARIES)));
+        var lumBibNrs = convertToListOfListOfBibNr(bibNrs.lum(), NUMBER_OF_LIBRARIES_THAT_LUM_CAN_HANDLE_AT_ONCE);
+        var header = INSTITUTIONS_HEADER_PREFIX + String.join(INSTITUTION_DELIMITER, institutions) + LINE_DELIMITER;
+        putLumChunksToS3(lumBibNrs, BACKFILL_FILENAME_PREFIX, header);
+        if (bibNrs.hasQuarantined()) {
+            putQuarantineReportToS3(bibNrs, BACKFILL_FILENAME_PREFIX);
+        }
+        return lumBibNrs;
+    }
+
+    private static List<String> readBackfillInstitutions(ScheduledEvent scheduledEvent) {
+        return Optional.ofNullable(scheduledEvent.getDetail())
+                   .map(detail -> detail.get(BACKFILL_INSTITUTIONS_DETAIL_NAME))
+                   .map(BasebibliotekFetchHandler::toInstitutionList)
+                   .orElse(List.of());
+    }
+
+    private static List<String> toInstitutionList(Object institutions) {
+        var values = institutions instanceof Collection<?> collection
+                         ? collection.stream().map(String::valueOf)
+                         : Arrays.stream(String.valueOf(institutions).split(INSTITUTION_DELIMITER));
+        return values.map(String::trim).filter(institution -> !institution.isEmpty()).toList();
+    }
+
+    @SuppressWarnings("PMD.DoNotUseThreads")
+    private static HttpClient createHttpClient() {
+        return HttpClient.newBuilder()
+                   .version(HttpClient.Version.HTTP_2)
+                   .connectTimeout(CONNECT_TIMEOUT)
+                   .executor(Executors.newVirtualThreadPerTaskExecutor())
+                   .build();
+    }
+
     private String createAuthorization() {
         String loginPassword = basebibliotekUsername + USERNAME_PASSWORD_DELIMITER + basebibliotekPassword;
         return String.format(BASIC_AUTHORIZATION, Base64.getEncoder().encodeToString(loginPassword.getBytes()));
     }
 
-    private List<List<String>> chunkAndUploadBibNrs(Set<String> bibNr) {
-        var rspBibNrs = convertToListOfListOfBibNr(bibNr, NUMBER_OF_LIBRARIES_THAT_RSP_CAN_HANDLE_AT_ONCE);
-        var lumBibNrs = convertToListOfListOfBibNr(bibNr, NUMBER_OF_LIBRARIES_THAT_LUM_CAN_HANDLE_AT_ONCE);
+    private List<List<String>> chunkAndUploadBibNrs(ValidatedBibnrs bibNrs) {
+        var rspBibNrs = convertToListOfListOfBibNr(bibNrs.rsp(), NUMBER_OF_LIBRARIES_THAT_RSP_CAN_HANDLE_AT_ONCE);
+        var lumBibNrs = convertToListOfListOfBibNr(bibNrs.lum(), NUMBER_OF_LIBRARIES_THAT_LUM_CAN_HANDLE_AT_ONCE);
 
         putObjectsToS3(rspBibNrs, RSP_FOLDER_NAME);
-        putObjectsToS3(lumBibNrs, LUM_FOLDER_NAME);
+        putLumChunksToS3(lumBibNrs, "", "");
+        if (bibNrs.hasQuarantined()) {
+            putQuarantineReportToS3(bibNrs, "");
+        }
 
         return rspBibNrs;
     }
 
+    private void putQuarantineReportToS3(ValidatedBibnrs bibNrs, String filenamePrefix) {
+        logger.info(QUARANTINED_LIBRARIES, bibNrs.quarantined().size());
+        putObjectToS3(QUARANTINE_FOLDER_NAME + FOLDER_DELIMITER + filenamePrefix + createFileName(),
+                      bibNrs.quarantineReport());
+    }
+
     private List<List<String>> convertToListOfListOfBibNr(Set<String> bibNr, int chunkSize) {
         List<List<String>> result = new ArrayList<>();
         List<String> bibNrs = new ArrayList<>(bibNr);
@@ -135,24 +221,24 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
         return result;
     }
 
-    private Set<String> collectBibnrFromBaseBibliotek(List<BaseBibliotek> baseBiblioteks) {
-        return baseBiblioteks.stream()
-                   .map(this::getBibNrFromRecords)
-                   .flatMap(Collection::stream)
-                   .collect(Collectors.toSet());
-    }
-
-    private Set<String> getBibNrFromRecords(BaseBibliotek baseBibliotek) {
-        return baseBibliotek.getRecord().stream().map(
-            this::getBibnrFromRecord).flatMap(Optional::stream).collect(Collectors.toSet());
+    private ValidatedBibnrs collectBibnrFromBaseBibliotek(List<BaseBibliotek> baseBiblioteks) {
+        return ValidatedBibnrs.of(baseBiblioteks.stream()
+                                      .map(BaseBibliotek::getRecord)
+                                      .flatMap(Collection::stream)
+                                      .map(this::getRecordWithBibnr)
+                                      .flatMap(Optional::stream)
+                                      .toList());
     }
 
-    private Optional<String> getBibnrFromRecord(Record record) {
-        return nonNull(record.getBibnr()) ? Optional.of(record.getBibnr()) : logRecordWithMissingBibnr(record);
+    private Optional<Record> getRecordWithBibnr(Record record) {
+        return nonNull(record.getBibnr()) ? Optional.of(record) : logRecordWithMissingBibnr(record);
     }
 
-    private Optional<String> logRecordWithMissingBibnr(Record record) {
-        logger.info("Record with missing bibnr " + getRecordXmlAsString(record));
+    /**
+     * The record is only marshalled when info is enabled for this logger.
+     **/
+    private Optional<Record> logRecordWithMissingBibnr(Record record) {
+        logger.atInfo().addArgument(() -> getRecordXmlAsString(record)).log(RECORD_WITH_MISSING_BIBNR);
         return Optional.empty();
     }
 
@@ -162,34 +248,66 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
         return xmlWriter.toString();
     }
 
-    private List<BaseBibliotek> convertXmls(List<String> basebibliotekXmlStrings) {
-        return basebibliotekXmlStrings.stream()
-                   .map(this::convertXmlToBaseBibliotek)
-                   .collect(
-                       Collectors.toList());
+    private void putObjectsToS3(List<List<String>> bibNrs, String folderName) {
+        for (int i = 0; i < bibNrs.size(); i++) {
+            putObjectToS3(folderName + FOLDER_DELIMITER + createFileName(Integer.toString(i)),
+                          craftBibnrString(bibNrs.get(i)));
+        }
     }
 
-    private BaseBibliotek convertXmlToBaseBibliotek(String basebibliotekXmlString) {
-        return JAXB.unmarshal(new StringReader(basebibliotekXmlString), BaseBibliotek.class);
+    /**
+     * Every lum chunk fires its own invocation, and chunks beyond the reserved concurrency would only be throttled and
+     * retried after an unpredictable delay. So only the first chunks go to the lum folder. Chunk i names chunk
+     * i + concurrency as its successor, which stays pending until chunk i is done, giving one lane per reserved
+     * instance. Pending chunks are written first, so a successor always exists by the time it is released.
+     **/
+    private void putLumChunksToS3(List<List<String>> lumBibNrs, String filenamePrefix, String header) {
+        var keys = new ArrayList<String>();
+        for (int i = 0; i < lumBibNrs.size(); i++) {
+            var key = LUM_FOLDER_NAME + FOLDER_DELIMITER + filenamePrefix + createFileName(Integer.toString(i));
+            keys.add(i < lumReservedConcurrency ? key : PENDING_FOLDER_NAME + FOLDER_DELIMITER + key);
+        }
+        if (keys.size() > lumReservedConcurrency) {
+            putDispatchManifestToS3(keys, filenamePrefix);
+        }
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            var next = i + lumReservedConcurrency < keys.size()
+                           ? NEXT_CHUNK_HEADER_PREFIX + keys.get(i + lumReservedConcurrency) + LINE_DELIMITER
+                           : "";
+            putObjectToS3(keys.get(i), header + next + craftBibnrString(lumBibNrs.get(i)));
+        }
     }
 
-    private void putObjectsToS3(List<List<String>> bibNrs, String folderName) {
-        for (int i = 0; i < bibNrs.size(); i++) {
-            putObjectToS3(bibNrs.get(i), Integer.toString(i), folderName);
+    /**
+     * One line per lane, listing its chunks in release order, so that a stalled lane can be spotted and released by
+     * hand.
+     **/
+    private void putDispatchManifestToS3(List<String> keys, String filenamePrefix) {
+        var lanes = new ArrayList<String>();
+        for (int lane = 0; lane < lumReservedConcurrency; lane++) {
+            var chunks = new ArrayList<String>();
+            for (int i = lane; i < keys.size(); i += lumReservedConcurrency) {
+                chunks.add(keys.get(i));
+            }
+            lanes.add(String.join(LANE_DELIMITER, chunks));
         }
+        var manifestKey = PENDING_FOLDER_NAME + FOLDER_DELIMITER + LUM_FOLDER_NAME + FOLDER_DELIMITER
+                          + filenamePrefix + createFileName(MANIFEST);
+        putObjectToS3(manifestKey, String.join(LINE_DELIMITER, lanes));
+        logger.info(PACED_LUM_CHUNKS, keys.size(), lanes.size(), manifestKey);
     }
 
-    private void putObjectToS3(List<String> subsetBibNr, String subsetNumber, String folderName) {
+    private void putObjectToS3(String key, String content) {
         try {
-            s3Client.putObject(createPutObjectRequest(subsetNumber, folderName),
-                               RequestBody.fromString(craftBibnrString(subsetBibNr)));
+            s3Client.putObject(PutObjectRequest.builder().bucket(s3BasebibliotekXmlBucket).key(key).build(),
+                               RequestBody.fromString(content));
         } catch (Exception ex) {
             throw logExpectionAndThrowRuntimeError(ex, COULD_NOT_UPLOAD_FILE_TO_S_3_ERROR_MESSAGE);
         }
     }
 
     private String craftBibnrString(List<String> bibNrs) {
-        return String.join("\n", bibNrs);
+        return String.join(LINE_DELIMITER, bibNrs);
     }
 
     private RuntimeException logExpectionAndThrowRuntimeError(Exception exception, String message) {
@@ -199,49 +317,86 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
                    : new RuntimeException(exception);
     }
 
-    private PutObjectRequest createPutObjectRequest(String subsetNumber, String folder) {
-        var filename = createFileName(subsetNumber);
-        var folderAndFileNameKey = nonNull(folder) ? folder + FOLDER_DELIMITER + filename : filename;
+    private String createFileName(String subsetNumber) {
+        return createDate() + BIBNR_FILENAME_DELIMITER + subsetNumber + TXT;
+    }
 
-        return PutObjectRequest.builder()
-                   .bucket(s3BasebibliotekXmlBucket)
-                   .key(folderAndFileNameKey)
-                   .build();
+    private String createFileName() {
+        return createDate() + TXT;
     }
 
-    private String createFileName(String subsetNumber) {
+    private String createDate() {
         Date date = new Date();
         SimpleDateFormat formatter = new SimpleDateFormat(YYYY_MM_DD_PATTERN, Locale.ROOT);
 
-        return formatter.format(date) + BIBNR_FILENAME_DELIMITER + subsetNumber + TXT;
+        return formatter.format(date);
     }
 
-    private List<String> fetchBasebibliotekXmls(List<String> filenames) {
+    private List<BaseBibliotek> fetchBasebiblioteks(List<String> filenames) {
         return filenames.stream()
-                   .map(this::getBasebibliotekXmlAsString)
+                   .map(this::fetchBasebibliotek)
                    .collect(Collectors.toList());
     }
 
-    private String getBasebibliotekXmlAsString(String filename) {
+    private BaseBibliotek fetchBasebibliotek(String filename) {
         return attempt(
-            () -> getBasebibliotekData(UriWrapper.fromUri(basebibliotekUri).addChild(filename).getUri()))
-                   .map(this::getBodyFromResponse)
+            () -> getBasebibliotekXml(UriWrapper.fromUri(basebibliotekUri).addChild(filename).getUri()))
+                   .map(this::getStreamFromResponse)
+                   .map(this::parseBasebibliotekXml)
                    .orElseThrow(
                        fail -> logExpectionAndThrowRuntimeError(fail.getException(), COULD_NOT_GET_ERROR_MESSAGE
                                                                                      + filename));
     }
 
+    /**
+     * Unmarshals straight from the (decompressed) response stream, so the export file is never held as a string.
+     **/
+    private BaseBibliotek parseBasebibliotekXml(Supplier<InputStream> body) throws IOException {
+        try (InputStream xml = body.get()) {
+            return JAXB.unmarshal(xml, BaseBibliotek.class);
+        }
+    }
+
     private String getBodyFromResponse(HttpResponse<String> response) {
         if (response.statusCode() != HttpURLConnection.HTTP_OK) {
-            logger.info(BASEBIBLIOTEK_RESPONSE_ERROR + response.statusCode());
-            throw new RuntimeException();
+            throw unexpectedStatus(response);
         }
         return response.body();
     }
 
-    private HttpResponse<String> getBasebibliotekData(URI uri) throws IOException, InterruptedException {
-        var request = createRequest(uri);
-        return httpClient.send(request, BodyHandlers.ofString());
+    /**
+     * The connection behind a streamed body is only released when the stream is closed, so an error response is
+     * closed unread.
+     **/
+    private Supplier<InputStream> getStreamFromResponse(HttpResponse<Supplier<InputStream>> response) {
+        if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+            closeBody(response);
+            throw unexpectedStatus(response);
+        }
+        return response.body();
+    }
+
+    private void closeBody(HttpResponse<Supplier<InputStream>> response) {
+        try {
+            response.body().get().close();
+        } catch (IOException | UncheckedIOException e) {
+            logger.info(COULD_NOT_CLOSE_RESPONSE, response.uri(), e);
+        }
+    }
+
+    private RuntimeException unexpectedStatus(HttpResponse<?> response) {
+        var message = String.format(UNEXPECTED_STATUS_MESSAGE_FORMAT, response.statusCode(), response.uri());
+        logger.info(message);
+        return new RuntimeException(message);
+    }
+
+    private HttpResponse<String> getBasebibliotekIndex(URI uri) throws IOException, InterruptedException {
+        return httpClient.send(createRequest(uri), DecompressingBodyHandlers.ofDecodedString());
+    }
+
+    private HttpResponse<Supplier<InputStream>> getBasebibliotekXml(URI uri)
+        throws IOException, InterruptedException {
+        return httpClient.send(createRequest(uri), DecompressingBodyHandlers.ofDecodedInputStream());
     }
 
     private List<String> snipIncrementalBasebibliotekUrls(String body) {
@@ -261,6 +416,9 @@ public class BasebibliotekFetchHandler implements RequestHandler<ScheduledEvent,
         return HttpRequest.newBuilder()
                    .uri(uri)
                    .setHeader(AUTHORIZATION, basebibliotekAuthorization)
+                   .setHeader(DecompressingBodyHandlers.ACCEPT_ENCODING_HEADER_NAME,
+                              DecompressingBodyHandlers.SUPPORTED_ENCODINGS)
+                   .timeout(REQUEST_TIMEOUT)
                    .GET()
                    .build();
     }
@@ -0,0 +1,39 @@
+package no.sikt;
+
+import java.util.ArrayList;
+import java.util.List;
+import no.nb.basebibliotek.generated.Record;
+import nva.commons.core.StringUtils;
+
+/**
+ * The required-field checks of UserConverter (lum) and PartnerConverter (rsp) in alma-integrations. A library that
+ * fails them can never be converted, so the cronjob leaves it out of that handler's chunks.
+ **/
+public final class RecordValidator {
+
+    public static final String INST = "inst";
+    public static final String BIBLTYPE = "bibltype";
+    public static final String LANDKODE = "landkode";
+
+    private RecordValidator() {
+    }
+
+    public static List<String> findMissingLumFields(Record record) {
+        final List<String> missingFields = new ArrayList<>();
+        if (StringUtils.isEmpty(record.getInst())) {
+            missingFields.add(INST);
+        }
+        if (StringUtils.isEmpty(record.getBibltype())) {
+            missingFields.add(BIBLTYPE);
+        }
+        return missingFields;
+    }
+
+    public static List<String> findMissingRspFields(Record record) {
+        final List<String> missingFields = new ArrayList<>();
+        if (StringUtils.isEmpty(record.getLandkode())) {
+            missingFields.add(LANDKODE);
+        }
+        return missingFields;
+    }
+}
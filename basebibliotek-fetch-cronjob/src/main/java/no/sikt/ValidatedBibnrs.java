@@ -0,0 +1,69 @@
+package no.sikt;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import no.nb.basebibliotek.generated.Record;
+
+/**
+ * The bibnrs of one run, split by which handlers can convert them. A library that appears in several export files
+ * is judged by its last version, since that is the one the handlers will fetch.
+ **/
+public record ValidatedBibnrs(Set<String> lum, Set<String> rsp, Map<String, String> quarantined) {
+
+    private static final String MISSING = " missing ";
+    private static final String REASON_DELIMITER = "; ";
+    private static final String LINE_DELIMITER = "\n";
+
+    /**
+     * Sorts records that all have a bibnr, in the order they were exported.
+     **/
+    public static ValidatedBibnrs of(List<Record> records) {
+        var latestRecords = records.stream()
+                                .collect(Collectors.toMap(Record::getBibnr, Function.identity(),
+                                                          (earlier, later) -> later, LinkedHashMap::new));
+        var quarantined = new TreeMap<String, String>();
+        var lum = acceptedBibnrs(latestRecords, RecordValidator::findMissingLumFields,
+                                 BasebibliotekFetchHandler.LUM_FOLDER_NAME, quarantined);
+        var rsp = acceptedBibnrs(latestRecords, RecordValidator::findMissingRspFields,
+                                 BasebibliotekFetchHandler.RSP_FOLDER_NAME, quarantined);
+        return new ValidatedBibnrs(lum, rsp, quarantined);
+    }
+
+    public boolean hasQuarantined() {
+        return !quarantined.isEmpty();
+    }
+
+    /**
+     * One line per rejected library, e.g. "0030104 lum missing [inst, bibltype]".
+     **/
+    public String quarantineReport() {
+        return quarantined.entrySet().stream()
+                   .map(entry -> entry.getKey() + " " + entry.getValue())
+                   .collect(Collectors.joining(LINE_DELIMITER));
+    }
+
+    private static Set<String> acceptedBibnrs(Map<String, Record> records,
+                                              Function<Record, List<String>> findMissingFields,
+                                              String handlerName,
+                                              Map<String, String> quarantined) {
+        return records.values().stream()
+                   .filter(record -> isAccepted(record, findMissingFields.apply(record), handlerName, quarantined))
+                   .map(Record::getBibnr)
+                   .collect(Collectors.toSet());
+    }
+
+    private static boolean isAccepted(Record record, List<String> missingFields, String handlerName,
+                                      Map<String, String> quarantined) {
+        if (missingFields.isEmpty()) {
+            return true;
+        }
+        quarantined.merge(record.getBibnr(), handlerName + MISSING + missingFields,
+                          (earlier, later) -> earlier + REASON_DELIMITER + later);
+        return false;
+    }
+}
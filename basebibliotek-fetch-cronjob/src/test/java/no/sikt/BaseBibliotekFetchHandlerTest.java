@@ -1,10 +1,13 @@
 package no.sikt;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
 import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static no.sikt.BasebibliotekFetchHandler.NUMBER_OF_LIBRARIES_THAT_LUM_CAN_HANDLE_AT_ONCE;
 import static no.sikt.BasebibliotekFetchHandler.NUMBER_OF_LIBRARIES_THAT_RSP_CAN_HANDLE_AT_ONCE;
@@ -15,7 +18,10 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
@@ -28,18 +34,26 @@ import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 import no.unit.nva.stubs.WiremockHttpClient;
 import nva.commons.core.Environment;
 import nva.commons.logutils.LogUtils;
@@ -59,6 +73,7 @@ public class BaseBibliotekFetchHandlerTest {
 
     public static final String BASEBIBLIOTEK_REDACTED_INCREMENTAL_1_XML = "basebibliotek_redacted_incremental_1.xml";
     public static final String BASEBIBLIOTEK_REDACTED_INCREMENTAL_2_XML = "basebibliotek_redacted_incremental_2.xml";
+    public static final String BASEBIBLIOTEK_REDACTED_INCREMENTAL_4_XML = "basebibliotek_redacted_incremental_4.xml";
     public static final String BIBLIOTEK_EKSPORT_BIBLEV_PATH = "/bibliotek/eksport/biblev";
     public static final String BASEBIBLIOTEK_URL_HTML = "basebibliotek-url.html";
     public static final Context CONTEXT = mock(Context.class);
@@ -66,8 +81,11 @@ public class BaseBibliotekFetchHandlerTest {
     private static final String BASEBIBLIOTEK_BB_2022_04_27_XML = "bb-2022-04-27.xml";
     private static final String BASEBIBLIOTEK_BB_2022_05_04_XML = "bb-2022-05-04.xml";
     private static final String BASEBIBLIOTEK_BB_FULL_XML = "bb-full.xml";
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
     private transient BasebibliotekFetchHandler baseBibliotekFetchHandler;
     private transient S3Client s3Client;
+    private transient Environment environment;
 
     private transient TestAppender appender;
 
@@ -75,7 +93,7 @@ public class BaseBibliotekFetchHandlerTest {
     public void init(WireMockRuntimeInfo wireMockInfo) {
         appender = LogUtils.getTestingAppender(BasebibliotekFetchHandler.class);
         s3Client = mock(S3Client.class);
-        Environment environment = mock(Environment.class);
+        environment = mock(Environment.class);
         when(environment.readEnv(BasebibliotekFetchHandler.BASEBIBLIOTEK_URI_ENVIRONMENT_NAME)).thenReturn(
             wireMockInfo.getHttpBaseUrl()
             + BIBLIOTEK_EKSPORT_BIBLEV_PATH);
@@ -110,12 +128,14 @@ public class BaseBibliotekFetchHandlerTest {
         mockedWiremockStubFor(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_2022_05_04_XML,
                               basebibliotekXML2);
 
-        assertThrows(RuntimeException.class, () -> baseBibliotekFetchHandler
-                                                       .handleRequest(new ScheduledEvent(), CONTEXT));
+        var exception = assertThrows(RuntimeException.class, () -> baseBibliotekFetchHandler
+                                                                       .handleRequest(new ScheduledEvent(), CONTEXT));
 
         var expectedMessage =
             "could not GET " + BASEBIBLIOTEK_BB_2022_04_27_XML;
         assertThat(appender.getMessages(), containsString(expectedMessage));
+        assertThat(exception.getMessage(), containsString(String.valueOf(HttpURLConnection.HTTP_FORBIDDEN)));
+        assertThat(exception.getMessage(), containsString(BASEBIBLIOTEK_BB_2022_04_27_XML));
     }
 
     @Test
@@ -166,6 +186,114 @@ public class BaseBibliotekFetchHandlerTest {
         assertThat(s3Keys, containsInAnyOrder(expectedKeys.toArray()));
     }
 
+    @Test
+    public void shouldAskForCompressionAndDecodeGzipAndDeflateResponses() throws IOException {
+        var basebibliotekUrlsAsHtml = stringFromResources(Path.of(BASEBIBLIOTEK_URL_HTML));
+        mockedCompressedResponse(BIBLIOTEK_EKSPORT_BIBLEV_PATH, GZIP, gzip(basebibliotekUrlsAsHtml));
+        mockedCompressedResponse(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_2022_04_27_XML, GZIP,
+                                 gzip(stringFromResources(Path.of(BASEBIBLIOTEK_REDACTED_INCREMENTAL_1_XML))));
+        mockedCompressedResponse(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_2022_05_04_XML, DEFLATE,
+                                 deflate(stringFromResources(Path.of(BASEBIBLIOTEK_REDACTED_INCREMENTAL_2_XML))));
+
+        var listOfBibNr = baseBibliotekFetchHandler.handleRequest(new ScheduledEvent(), CONTEXT).stream()
+                              .flatMap(Collection::stream)
+                              .collect(Collectors.toList());
+
+        assertThat(listOfBibNr, containsInAnyOrder("0030100", "0030101", "7049304", "0030103"));
+        WireMock.verify(3, getRequestedFor(urlMatching(BIBLIOTEK_EKSPORT_BIBLEV_PATH + ".*"))
+                               .withHeader(DecompressingBodyHandlers.ACCEPT_ENCODING_HEADER_NAME,
+                                           containing(GZIP)));
+    }
+
+    @Test
+    public void shouldQuarantineLibrariesThatCannotBeConvertedInsteadOfChunkingThem() {
+        var basebibliotekUrlsAsHtml = stringFromResources(Path.of(BASEBIBLIOTEK_URL_HTML));
+        mockedGetRequestThatReturnsSpecifiedResponse(basebibliotekUrlsAsHtml);
+
+        var basebibliotekXML1 = stringFromResources(Path.of(BASEBIBLIOTEK_REDACTED_INCREMENTAL_1_XML));
+        var basebibliotekXML4 = stringFromResources(Path.of(BASEBIBLIOTEK_REDACTED_INCREMENTAL_4_XML));
+        mockedWiremockStubFor(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_2022_04_27_XML, basebibliotekXML1);
+        mockedWiremockStubFor(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_2022_05_04_XML, basebibliotekXML4);
+
+        var rspBibNrs = baseBibliotekFetchHandler.handleRequest(new ScheduledEvent(), CONTEXT).stream()
+                            .flatMap(Collection::stream)
+                            .collect(Collectors.toList());
+
+        assertThat(rspBibNrs, containsInAnyOrder("0030100", "0030101", "0030103", "0030104"));
+
+        var uploads = capturedUploads(3);
+        var filename = createFileName();
+        assertThat(List.of(uploads.get("lum/" + filename).split("\n")),
+                   containsInAnyOrder("0030100", "0030101", "0030103", "0030105"));
+        assertThat(uploads.get("quarantine/" + filename.replace("_0", "")),
+                   equalTo("0030104 lum missing [inst, bibltype]\n0030105 rsp missing [landkode]"));
+        assertThat(appender.getMessages(), containsString("2 libraries lack fields required for conversion"));
+    }
+
+    @Test
+    public void shouldWriteLumChunksForBackfillInstitutionsFromFullExport() {
+        mockedWiremockStubFor(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_FULL_XML,
+                              stringFromResources(Path.of(BASEBIBLIOTEK_REDACTED_INCREMENTAL_4_XML)));
+        var scheduledEvent = new ScheduledEvent();
+        scheduledEvent.setDetail(Map.of(BasebibliotekFetchHandler.BACKFILL_INSTITUTIONS_DETAIL_NAME,
+                                        List.of("AHO", "BI")));
+
+        var lumBibNrs = baseBibliotekFetchHandler.handleRequest(scheduledEvent, CONTEXT).stream()
+                            .flatMap(Collection::stream)
+                            .collect(Collectors.toList());
+
+        assertThat(lumBibNrs, containsInAnyOrder("0030103", "0030105"));
+        WireMock.verify(0, getRequestedFor(urlEqualTo(BIBLIOTEK_EKSPORT_BIBLEV_PATH)));
+        var uploads = capturedUploads(2);
+        var filename = createFileName();
+        var lumChunk = uploads.get("lum/" + BasebibliotekFetchHandler.BACKFILL_FILENAME_PREFIX + filename);
+        assertThat(lumChunk, startsWith(BasebibliotekFetchHandler.INSTITUTIONS_HEADER_PREFIX + "AHO,BI\n"));
+        assertThat(uploads.keySet(), hasItem("quarantine/" + BasebibliotekFetchHandler.BACKFILL_FILENAME_PREFIX
+                                             + filename.replace("_0", "")));
+    }
+
+    @Test
+    public void shouldAcceptBackfillInstitutionsAsCommaSeparatedString() {
+        mockedWiremockStubFor(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_FULL_XML,
+                              stringFromResources(Path.of(BASEBIBLIOTEK_REDACTED_INCREMENTAL_2_XML)));
+        var scheduledEvent = new ScheduledEvent();
+        scheduledEvent.setDetail(Map.of(BasebibliotekFetchHandler.BACKFILL_INSTITUTIONS_DETAIL_NAME, " NTNU_UB, "));
+
+        baseBibliotekFetchHandler.handleRequest(scheduledEvent, CONTEXT);
+
+        var lumChunk = capturedUploads(1).get("lum/" + BasebibliotekFetchHandler.BACKFILL_FILENAME_PREFIX
+                                              + createFileName());
+        assertThat(lumChunk, startsWith(BasebibliotekFetchHandler.INSTITUTIONS_HEADER_PREFIX + "NTNU_UB\n"));
+    }
+
+    @Test
+    public void shouldOnlyDispatchAsManyLumChunksAsTheReservedConcurrencyAndChainTheRest() {
+        when(environment.readEnvOpt(BasebibliotekFetchHandler.LUM_RESERVED_CONCURRENCY_ENVIRONMENT_NAME))
+            .thenReturn(Optional.of("2"));
+        var handler = new BasebibliotekFetchHandler(s3Client, WiremockHttpClient.create(), environment);
+        mockedGetRequestThatReturnsSpecifiedResponse(stringFromResources(Path.of(BASEBIBLIOTEK_URL_HTML)));
+        mockedWiremockStubFor(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_2022_04_27_XML,
+                              exportWithLibraries(25));
+        mockedWiremockStubFor(BIBLIOTEK_EKSPORT_BIBLEV_PATH + "/" + BASEBIBLIOTEK_BB_2022_05_04_XML,
+                              stringFromResources(Path.of("basebibliotek_redacted_incremental_3.xml")));
+
+        handler.handleRequest(new ScheduledEvent(), CONTEXT);
+
+        var uploads = capturedUploads(5);
+        var date = createFileName().replace("_0.txt", "");
+        var firstChunk = "lum/" + date + "_0.txt";
+        var secondChunk = "lum/" + date + "_1.txt";
+        var pendingChunk = "pending/lum/" + date + "_2.txt";
+        assertThat(uploads.keySet(), containsInAnyOrder("rsp/" + date + "_0.txt", firstChunk, secondChunk,
+                                                        pendingChunk, "pending/lum/" + date + "_manifest.txt"));
+        assertThat(uploads.get(firstChunk),
+                   startsWith(BasebibliotekFetchHandler.NEXT_CHUNK_HEADER_PREFIX + pendingChunk + "\n"));
+        assertThat(uploads.get(secondChunk), not(containsString(BasebibliotekFetchHandler.NEXT_CHUNK_HEADER_PREFIX)));
+        assertThat(uploads.get("pending/lum/" + date + "_manifest.txt"),
+                   equalTo(firstChunk + " -> " + pendingChunk + "\n" + secondChunk));
+        assertThat(uploadedKeys().indexOf(pendingChunk), lessThan(uploadedKeys().indexOf(firstChunk)));
+    }
+
     @Test
     public void shouldHandleS3Exceptions() {
         var basebibliotekUrlsAsHtml = stringFromResources(Path.of(BASEBIBLIOTEK_URL_HTML));
@@ -262,11 +390,13 @@ public class BaseBibliotekFetchHandlerTest {
             }
         }
 
-        // Verify LUM files have at most 10 bibNrs each
+        // Verify LUM files have at most 10 bibNrs each, not counting the header naming the next chunk
         for (RequestBody body : lumBodies) {
             try (var stream = body.contentStreamProvider().newStream()) {
                 var content = new String(stream.readAllBytes());
-                var lineCount = content.split("\n").length;
+                var lineCount = (int) Arrays.stream(content.split("\n"))
+                                          .filter(line -> !line.startsWith("#"))
+                                          .count();
                 assertThat("LUM file should have at most 10 bibNrs",
                     lineCount, lessThanOrEqualTo(NUMBER_OF_LIBRARIES_THAT_LUM_CAN_HANDLE_AT_ONCE));
             } catch (IOException e) {
@@ -299,6 +429,30 @@ public class BaseBibliotekFetchHandlerTest {
                                     .withBody(response)));
     }
 
+    private void mockedCompressedResponse(String path, String contentEncoding, byte[] body) {
+        stubFor(get(urlEqualTo(path))
+                    .willReturn(aResponse()
+                                    .withHeader(CONTENT_ENCODING, contentEncoding)
+                                    .withStatus(HttpURLConnection.HTTP_OK)
+                                    .withBody(body)));
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflate(String content) throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
     private void mockedGetRequestWithSpecifiedStatusCode(int statusCode, String path) {
         stubFor(get(urlEqualTo(path))
                     .willReturn(aResponse()
@@ -315,6 +469,53 @@ public class BaseBibliotekFetchHandlerTest {
                                     .withBody(body)));
     }
 
+    private Map<String, String> capturedUploads(int expectedUploads) {
+        var putObjectRequestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        var requestBodyCaptor = ArgumentCaptor.forClass(RequestBody.class);
+        Mockito.verify(this.s3Client, times(expectedUploads))
+            .putObject(putObjectRequestCaptor.capture(), requestBodyCaptor.capture());
+        var uploads = new HashMap<String, String>();
+        for (int i = 0; i < putObjectRequestCaptor.getAllValues().size(); i++) {
+            uploads.put(putObjectRequestCaptor.getAllValues().get(i).key(),
+                        contentOf(requestBodyCaptor.getAllValues().get(i)));
+        }
+        return uploads;
+    }
+
+    private List<String> uploadedKeys() {
+        var putObjectRequestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(this.s3Client, Mockito.atLeastOnce()).putObject(putObjectRequestCaptor.capture(),
+                                                                       any(RequestBody.class));
+        return putObjectRequestCaptor.getAllValues().stream().map(PutObjectRequest::key).toList();
+    }
+
+    private static String exportWithLibraries(int numberOfLibraries) {
+        var records = new StringBuilder();
+        for (int i = 0; i < numberOfLibraries; i++) {
+            records.append("""
+                  <record rid="%d" tstamp="2018-12-06 07:56:14">
+                    <bibnr>%07d</bibnr>
+                    <bibltype>FAG</bibltype>
+                    <inst>Redacted bibliotek</inst>
+                    <landkode>NO</landkode>
+                  </record>
+                """.formatted(i, 1_000_000 + i));
+        }
+        return """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <BaseBibliotek export="2022-04-27 21:00:02" xmlns="http://nb.no/BaseBibliotek">
+            %s</BaseBibliotek>
+            """.formatted(records);
+    }
+
+    private static String contentOf(RequestBody body) {
+        try (var stream = body.contentStreamProvider().newStream()) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private String createFileName() {
         Date date = new Date();
         SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
@@ -0,0 +1,88 @@
+package no.sikt.clients;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Body handlers that decode gzip and deflate encoded responses. java.net.http neither asks for compression nor
+ * decodes it, so requests must send {@link #ACCEPT_ENCODING_HEADER_NAME} themselves.
+ **/
+public final class DecompressingBodyHandlers {
+
+    public static final String ACCEPT_ENCODING_HEADER_NAME = "Accept-Encoding";
+    public static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+    private static final String CONTENT_ENCODING_HEADER_NAME = "Content-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private DecompressingBodyHandlers() {
+    }
+
+    /**
+     * Hands out the body as a stream that is decoded while it is read, so it can go straight into a parser. The
+     * stream is wrapped in a supplier because opening a gzip stream reads its header, which must not happen on the
+     * client's own thread.
+     **/
+    public static BodyHandler<Supplier<InputStream>> ofDecodedInputStream() {
+        return responseInfo -> BodySubscribers.mapping(BodySubscribers.ofInputStream(),
+                                                       body -> () -> decode(body, contentEncoding(responseInfo)));
+    }
+
+    /**
+     * The whole body decoded to a UTF-8 string, for small responses such as an index page.
+     **/
+    public static BodyHandler<String> ofDecodedString() {
+        return responseInfo -> BodySubscribers.mapping(
+            BodySubscribers.ofByteArray(),
+            bytes -> readString(decode(new ByteArrayInputStream(bytes), contentEncoding(responseInfo))));
+    }
+
+    /**
+     * Closes the body if it cannot be decoded, so that the connection behind it is not left open.
+     **/
+    /* default */ static InputStream decode(InputStream body, String contentEncoding) {
+        try {
+            return switch (contentEncoding) {
+                case GZIP -> new GZIPInputStream(body, BUFFER_SIZE);
+                case DEFLATE -> new InflaterInputStream(body);
+                default -> body;
+            };
+        } catch (IOException e) {
+            closeAfterFailure(body, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void closeAfterFailure(InputStream body, IOException failure) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static String readString(InputStream body) {
+        try (body) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String contentEncoding(ResponseInfo responseInfo) {
+        return responseInfo.headers().firstValue(CONTENT_ENCODING_HEADER_NAME)
+                   .map(encoding -> encoding.trim().toLowerCase(Locale.ROOT))
+                   .orElse("");
+    }
+}
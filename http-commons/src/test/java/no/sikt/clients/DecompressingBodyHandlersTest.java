@@ -0,0 +1,103 @@
+package no.sikt.clients;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+@WireMockTest
+class DecompressingBodyHandlersTest {
+
+    private static final String PATH = "/basebibliotek/rest/bibnr/0030100";
+    private static final String XML = "<bibliotek><bibnr>0030100</bibnr></bibliotek>";
+
+    @Test
+    void shouldDecodeGzipEncodedResponseWhileReadingIt(WireMockRuntimeInfo wireMockRuntimeInfo) throws Exception {
+        stubFor(get(urlEqualTo(PATH)).willReturn(aResponse().withHeader("Content-Encoding", "GZIP")
+                                                     .withBody(gzip(XML))));
+        var request = HttpRequest.newBuilder(URI.create(wireMockRuntimeInfo.getHttpBaseUrl() + PATH))
+                          .header(DecompressingBodyHandlers.ACCEPT_ENCODING_HEADER_NAME,
+                                  DecompressingBodyHandlers.SUPPORTED_ENCODINGS)
+                          .build();
+
+        var response = HttpClient.newHttpClient().send(request, DecompressingBodyHandlers.ofDecodedInputStream());
+
+        try (var body = response.body().get()) {
+            assertThat(readString(body), is(XML));
+        }
+    }
+
+    @Test
+    void shouldDecodeGzipEncodedResponseToString(WireMockRuntimeInfo wireMockRuntimeInfo) throws Exception {
+        stubFor(get(urlEqualTo(PATH)).willReturn(aResponse().withHeader("Content-Encoding", "gzip")
+                                                     .withBody(gzip(XML))));
+        var request = HttpRequest.newBuilder(URI.create(wireMockRuntimeInfo.getHttpBaseUrl() + PATH)).build();
+
+        var response = HttpClient.newHttpClient().send(request, DecompressingBodyHandlers.ofDecodedString());
+
+        assertThat(response.body(), is(XML));
+    }
+
+    @Test
+    void shouldCloseBodyThatCannotBeDecoded() {
+        var closed = new AtomicBoolean();
+        var body = new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        assertThrows(UncheckedIOException.class, () -> DecompressingBodyHandlers.decode(body, "gzip"));
+        assertThat(closed.get(), is(true));
+    }
+
+    @Test
+    void shouldDecodeDeflateEncodedBody() throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(XML.getBytes(StandardCharsets.UTF_8));
+        }
+
+        var decoded = DecompressingBodyHandlers.decode(new ByteArrayInputStream(compressed.toByteArray()), "deflate");
+
+        assertThat(readString(decoded), is(XML));
+    }
+
+    @Test
+    void shouldPassUnencodedBodyThrough() throws IOException {
+        var body = new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(readString(DecompressingBodyHandlers.decode(body, "")), is(XML));
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String readString(InputStream body) throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+}